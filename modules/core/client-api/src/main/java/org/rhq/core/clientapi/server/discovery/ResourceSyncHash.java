@@ -0,0 +1,77 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.clientapi.server.discovery;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.rhq.core.domain.discovery.ResourceSyncInfo;
+import org.rhq.core.util.MessageDigestGenerator;
+
+/**
+ * Computes the digest the agent and the server use to find out whether their copies of a resource hierarchy are in
+ * sync, without exchanging the {@link ResourceSyncInfo} of every resource in it. Both sides must compute the digest
+ * over the same sync info: the id, uuid, mtime and inventory status of each resource in the hierarchy.
+ *
+ * <p>The digest does not depend on the order of the given sync info.</p>
+ */
+public class ResourceSyncHash {
+
+    private static final Comparator<ResourceSyncInfo> BY_ID = new Comparator<ResourceSyncInfo>() {
+        @Override
+        public int compare(ResourceSyncInfo o1, ResourceSyncInfo o2) {
+            return (o1.getId() < o2.getId()) ? -1 : ((o1.getId() == o2.getId()) ? 0 : 1);
+        }
+    };
+
+    private ResourceSyncHash() {
+    }
+
+    /**
+     * @param syncInfos the sync info of all the resources in a hierarchy, including its root
+     * @return the digest of the hierarchy, as a hex string
+     */
+    public static String compute(Collection<ResourceSyncInfo> syncInfos) {
+        List<ResourceSyncInfo> sorted = new ArrayList<ResourceSyncInfo>(syncInfos);
+        Collections.sort(sorted, BY_ID);
+
+        // MD5 is good enough here, the digest only needs to detect differences, not to withstand attacks
+        MessageDigestGenerator generator = new MessageDigestGenerator(MessageDigestGenerator.MD5);
+        StringBuilder entry = new StringBuilder(96);
+        try {
+            for (ResourceSyncInfo syncInfo : sorted) {
+                entry.setLength(0);
+                entry.append(syncInfo.getId()).append('|').append(syncInfo.getUuid()).append('|')
+                    .append(syncInfo.getMtime()).append('|').append(syncInfo.getInventoryStatus()).append('\n');
+                generator.add(entry.toString().getBytes("UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+        return generator.getDigestString();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.clientapi.server.discovery;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.ResourceSyncInfo;
+import org.rhq.core.domain.resource.InventoryStatus;
+
+@Test
+public class ResourceSyncHashTest {
+
+    public void hashDoesNotDependOnOrder() {
+        List<ResourceSyncInfo> syncInfos = createSyncInfos();
+        String hash = ResourceSyncHash.compute(syncInfos);
+
+        List<ResourceSyncInfo> reversed = new ArrayList<ResourceSyncInfo>(syncInfos);
+        Collections.reverse(reversed);
+
+        assertEquals(ResourceSyncHash.compute(reversed), hash, "The hash should not depend on the order");
+    }
+
+    public void hashChangesWithEveryField() {
+        String hash = ResourceSyncHash.compute(createSyncInfos());
+
+        assertFalse(hash.equals(ResourceSyncHash.compute(replaceLast(new ResourceSyncInfo(4, "uuid-3", 3000L,
+            InventoryStatus.COMMITTED)))), "The hash should change with the id");
+        assertFalse(hash.equals(ResourceSyncHash.compute(replaceLast(new ResourceSyncInfo(3, "uuid-4", 3000L,
+            InventoryStatus.COMMITTED)))), "The hash should change with the uuid");
+        assertFalse(hash.equals(ResourceSyncHash.compute(replaceLast(new ResourceSyncInfo(3, "uuid-3", 3001L,
+            InventoryStatus.COMMITTED)))), "The hash should change with the mtime");
+        assertFalse(hash.equals(ResourceSyncHash.compute(replaceLast(new ResourceSyncInfo(3, "uuid-3", 3000L,
+            InventoryStatus.IGNORED)))), "The hash should change with the inventory status");
+    }
+
+    public void hashChangesWhenResourceIsRemoved() {
+        List<ResourceSyncInfo> syncInfos = createSyncInfos();
+        String hash = ResourceSyncHash.compute(syncInfos);
+
+        assertFalse(hash.equals(ResourceSyncHash.compute(syncInfos.subList(0, 2))),
+            "The hash should change when a resource is removed");
+    }
+
+    private List<ResourceSyncInfo> createSyncInfos() {
+        return Arrays.asList(new ResourceSyncInfo(1, "uuid-1", 1000L, InventoryStatus.COMMITTED),
+            new ResourceSyncInfo(2, "uuid-2", 2000L, InventoryStatus.COMMITTED), new ResourceSyncInfo(3, "uuid-3",
+                3000L, InventoryStatus.COMMITTED));
+    }
+
+    private List<ResourceSyncInfo> replaceLast(ResourceSyncInfo syncInfo) {
+        List<ResourceSyncInfo> syncInfos = new ArrayList<ResourceSyncInfo>(createSyncInfos());
+        syncInfos.set(syncInfos.size() - 1, syncInfo);
+        return syncInfos;
+    }
+}
@@ -57,8 +57,10 @@ import org.rhq.core.domain.resource.Agent;
 @NamedQueries( //
 {
     @NamedQuery(name = FailoverList.QUERY_DELETE_VIA_AGENT, query = "DELETE FROM FailoverList fl WHERE fl.agent = :agent"),
+    @NamedQuery(name = FailoverList.QUERY_DELETE_VIA_AGENT_IDS, query = "DELETE FROM FailoverList fl WHERE fl.agentId IN ( :agentIds )"),
     @NamedQuery(name = FailoverList.QUERY_DELETE_VIA_PARTITION_EVENT, query = "DELETE FROM FailoverList fl WHERE fl.partitionEvent = :partitionEvent"),
     @NamedQuery(name = FailoverList.QUERY_GET_VIA_AGENT, query = "SELECT fl FROM FailoverList fl WHERE fl.agent = :agent"),
+    @NamedQuery(name = FailoverList.QUERY_UPDATE_PARTITION_EVENT_VIA_IDS, query = "UPDATE FailoverList fl SET fl.partitionEvent = :partitionEvent WHERE fl.id IN ( :failoverListIds )"),
     @NamedQuery(name = FailoverList.QUERY_TRUNCATE, query = "DELETE FROM FailoverList") })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_FAILOVER_LIST_ID_SEQ", sequenceName = "RHQ_FAILOVER_LIST_ID_SEQ")
 @Table(name = "RHQ_FAILOVER_LIST")
@@ -67,8 +69,10 @@ public class FailoverList implements Serializable {
     public static final long serialVersionUID = 1L;
 
     public static final String QUERY_DELETE_VIA_AGENT = "FailoverList.deletViaAgent";
+    public static final String QUERY_DELETE_VIA_AGENT_IDS = "FailoverList.deleteViaAgentIds";
     public static final String QUERY_DELETE_VIA_PARTITION_EVENT = "FailoverList.deletViaPartitionEvent";
     public static final String QUERY_GET_VIA_AGENT = "FailoverList.getViaAgent";
+    public static final String QUERY_UPDATE_PARTITION_EVENT_VIA_IDS = "FailoverList.updatePartitionEventViaIds";
     public static final String QUERY_TRUNCATE = "FailoverList.truncate";
 
     @Column(name = "ID", nullable = false)
@@ -52,6 +52,9 @@ import javax.persistence.Table;
     @NamedQuery(name = FailoverListDetails.QUERY_GET_VIA_AGENT_ID, query = "SELECT fld FROM FailoverListDetails fld WHERE fld.failoverList IN ( SELECT fl FROM FailoverList fl WHERE fl.agent.id = :agentId )"),
     @NamedQuery(name = FailoverListDetails.QUERY_GET_VIA_AGENT_ID_WITH_SERVERS, query = "SELECT fld FROM FailoverListDetails fld JOIN FETCH fld.server server WHERE fld.failoverList IN ( SELECT fl FROM FailoverList fl WHERE fl.agent.id = :agentId )"),
     @NamedQuery(name = FailoverListDetails.QUERY_DELETE_VIA_AGENT, query = "DELETE FROM FailoverListDetails fld WHERE fld.failoverList IN ( SELECT fl FROM FailoverList fl WHERE fl.agent = :agent )"),
+    @NamedQuery(name = FailoverListDetails.QUERY_DELETE_VIA_FAILOVER_LIST_IDS_AND_ORDINAL, query = "DELETE FROM FailoverListDetails fld WHERE fld.ordinal = :ordinal AND fld.failoverList.id IN ( :failoverListIds )"),
+    @NamedQuery(name = FailoverListDetails.QUERY_UPDATE_SERVER_VIA_FAILOVER_LIST_IDS_AND_ORDINAL, query = "UPDATE FailoverListDetails fld SET fld.server = :server WHERE fld.ordinal = :ordinal AND fld.failoverList.id IN ( :failoverListIds )"),
+    @NamedQuery(name = FailoverListDetails.QUERY_GET_SERVER_IDS_VIA_AGENT_IDS, query = "SELECT fl.agentId, fl.id, fld.ordinal, fld.serverId FROM FailoverListDetails fld JOIN fld.failoverList fl WHERE fl.agentId IN ( :agentIds ) ORDER BY fl.agentId, fld.ordinal"),
     @NamedQuery(name = FailoverListDetails.QUERY_DELETE_VIA_SERVER, query = "DELETE FROM FailoverListDetails fld WHERE fld.server.id = :serverId"),
     @NamedQuery(name = FailoverListDetails.QUERY_GET_ASSIGNED_LOADS, query = "SELECT new org.rhq.core.domain.cloud.composite.FailoverListDetailsComposite(fld.ordinal, fld.serverId, COUNT(fld.serverId)) FROM FailoverListDetails fld GROUP BY fld.ordinal, fld.serverId ORDER BY fld.ordinal ASC"),
     @NamedQuery(name = FailoverListDetails.QUERY_TRUNCATE, query = "DELETE FROM FailoverListDetails") })
@@ -64,6 +67,9 @@ public class FailoverListDetails implements Serializable {
     public static final String QUERY_GET_VIA_AGENT_ID = "FailoverListDetails.getViaAgentId";
     public static final String QUERY_GET_VIA_AGENT_ID_WITH_SERVERS = "FailoverListDetails.getViaAgentIdWithServers";
     public static final String QUERY_DELETE_VIA_AGENT = "FailoverListDetails.deleteViaAgent";
+    public static final String QUERY_DELETE_VIA_FAILOVER_LIST_IDS_AND_ORDINAL = "FailoverListDetails.deleteViaFailoverListIdsAndOrdinal";
+    public static final String QUERY_UPDATE_SERVER_VIA_FAILOVER_LIST_IDS_AND_ORDINAL = "FailoverListDetails.updateServerViaFailoverListIdsAndOrdinal";
+    public static final String QUERY_GET_SERVER_IDS_VIA_AGENT_IDS = "FailoverListDetails.getServerIdsViaAgentIds";
     public static final String QUERY_DELETE_VIA_SERVER = "FailoverListDetails.deleteViaServer";
     public static final String QUERY_GET_ASSIGNED_LOADS = "FailoverListDetails.getAssignedLoads";
     public static final String QUERY_TRUNCATE = "FailoverListDetails.truncate";
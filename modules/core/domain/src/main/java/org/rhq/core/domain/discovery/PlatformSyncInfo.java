@@ -24,6 +24,7 @@ package org.rhq.core.domain.discovery;
 
 import java.io.Serializable;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.rhq.core.domain.resource.Resource;
@@ -43,12 +44,19 @@ public class PlatformSyncInfo implements Serializable {
     private ResourceSyncInfo platform;
     private Set<ResourceSyncInfo> services;
     private Set<Integer> topLevelServerIds;
+    private Map<Integer, String> topLevelServerHashes;
 
     public PlatformSyncInfo(ResourceSyncInfo platform, Set<ResourceSyncInfo> services, Set<Integer> topLevelServerIds) {
+        this(platform, services, topLevelServerIds, null);
+    }
+
+    public PlatformSyncInfo(ResourceSyncInfo platform, Set<ResourceSyncInfo> services, Set<Integer> topLevelServerIds,
+        Map<Integer, String> topLevelServerHashes) {
         super();
         this.platform = platform;
         this.services = services;
         this.topLevelServerIds = topLevelServerIds;
+        this.topLevelServerHashes = topLevelServerHashes;
     }
 
     /**
@@ -72,6 +80,15 @@ public class PlatformSyncInfo implements Serializable {
         return topLevelServerIds;
     }
 
+    /**
+     * @return the hash of the sync info of each top level server's hierarchy, keyed by top level server id. The agent
+     * only needs to call back for the sync info of the top level servers whose local hierarchy hashes differently.
+     * Null if the server did not compute the hashes, in which case the agent calls back for every top level server.
+     */
+    public Map<Integer, String> getTopLevelServerHashes() {
+        return topLevelServerHashes;
+    }
+
     // for testing
     public static PlatformSyncInfo buildPlatformSyncInfo(Resource platform) {
         Set<Integer> toplevelServerIds = new HashSet<Integer>();
@@ -91,6 +91,27 @@ public class ResourceSyncInfo implements Serializable {
         + " SELECT id, uuid, mtime, inventory_status " //
         + "   FROM childResource ";
 
+    /** Sync info of the hierarchies rooted at the specified top level servers, the last column being the id of the
+     * top level server each resource belongs to */
+    public static final String QUERY_NATIVE_QUERY_TOP_LEVEL_SERVERS_ORACLE = "" //
+        + "           SELECT r.id, r.uuid, r.mtime, r.inventory_status, CONNECT_BY_ROOT r.id " //
+        + "             FROM rhq_resource r " //
+        + "       START WITH r.id IN ( :resourceIds ) " //
+        + " CONNECT BY PRIOR r.id = r.parent_resource_id ";
+    public static final String QUERY_NATIVE_QUERY_TOP_LEVEL_SERVERS_POSTGRES = "" //
+        + " WITH RECURSIVE childResource AS " //
+        + " (   SELECT r.id, r.uuid, r.mtime, r.inventory_status, r.id AS root_id " //
+        + "       FROM rhq_resource AS r " //
+        + "      WHERE r.id IN ( :resourceIds ) " // non-recursive term
+        + "  UNION ALL " //
+        + "     SELECT r.id, r.uuid, r.mtime, r.inventory_status, cr.root_id " // recursive term
+        + "       FROM rhq_resource AS r " //
+        + "       JOIN childResource AS cr " //
+        + "         ON (r.parent_resource_id = cr.id) " //
+        + " ) " //
+        + " SELECT id, uuid, mtime, inventory_status, root_id " //
+        + "   FROM childResource ";
+
     /**
      * Server-assigned id
      */
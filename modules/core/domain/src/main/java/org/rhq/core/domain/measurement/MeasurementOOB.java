@@ -94,6 +94,9 @@ import javax.persistence.Table;
     @NamedQuery(name = MeasurementOOB.DELETE_FOR_SCHEDULE, query = "" //
         + "DELETE FROM MeasurementOOB o " //
         + "      WHERE o.id = :id"), //
+    @NamedQuery(name = MeasurementOOB.DELETE_FOR_SCHEDULES, query = "" //
+        + "DELETE FROM MeasurementOOB o " //
+        + "      WHERE o.id IN ( :ids )"), //
     @NamedQuery(name = MeasurementOOB.DELETE_FOR_GROUP_AND_DEFINITION, query = "" //
         + "DELETE FROM MeasurementOOB o " //
         + "      WHERE o.id IN ( SELECT ms.id " //
@@ -151,6 +154,7 @@ public class MeasurementOOB {
     public static final String GET_HIGHEST_FACTORS_FOR_GROUP = "GetHighestOOBFactorForGroup";
     public static final String DELETE_FOR_GROUP_AND_DEFINITION = "DeleteOOBForGroupAndDefinition";
     public static final String DELETE_FOR_SCHEDULE = "DeleteOOBForSchedule";
+    public static final String DELETE_FOR_SCHEDULES = "DeleteOOBForSchedules";
 
     public static final String DELETE_FOR_RESOURCES = "DeleteOOBForResurces";
 
@@ -22,7 +22,15 @@
   */
 package org.rhq.core.domain.measurement;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -34,19 +42,34 @@ import org.rhq.core.domain.measurement.calltime.CallTimeData;
  * A report of measurement information. When a plugin collects measurement data that is emitted from a monitored
  * resource, it will store that measurement data in an instance of this type.
  * <p/>
- * <p>This report has an optimized serialization strategy.</p>
+ * <p>This report has an optimized serialization strategy. Numeric data, which makes up the bulk of most reports, is
+ * not serialized object by object but as columns: the schedule ids and the timestamps are written as variable length
+ * deltas from the previous data point and the values as raw doubles. Collected data points are mostly grouped by
+ * resource and share a collection time, so most ids and timestamps take one or two bytes. Names of numeric data points
+ * are not part of the serialized form; the receiver only needs the schedule ids.</p>
+ * <p/>
+ * <p>The columns are only a wire format. Both the sender and the receiver still hold numeric data as
+ * {@link MeasurementDataNumeric} objects.</p>
+ * <p/>
+ * <p>Because it uses Java serialization hooks this class is not available to GWT clients.</p>
  *
  * @author Greg Hinkle
  * @author Ian Springer
  */
 public class MeasurementReport implements Serializable {
-    private static final long serialVersionUID = 1;
+    // 2 = numeric data is serialized in columns, see writeObject()
+    private static final long serialVersionUID = 2;
+
+    /**
+     * How many schedule ids are allocated for at once while deserializing, see readObject().
+     */
+    private static final int READ_CHUNK_SIZE = 8192;
 
     /*
      * instead of using synchronized collection wrappers - which won't GWT-compile - we can use the synchronized
      * modifier on the various methods that access these collections
      */
-    private Set<MeasurementDataNumeric> measurementNumericData = new LinkedHashSet<MeasurementDataNumeric>();
+    private transient Set<MeasurementDataNumeric> measurementNumericData = new LinkedHashSet<MeasurementDataNumeric>();
     private Set<MeasurementDataTrait> measurementTraitData = new LinkedHashSet<MeasurementDataTrait>();
     private Set<CallTimeData> callTimeData = new LinkedHashSet<CallTimeData>();
 
@@ -136,4 +159,118 @@ public class MeasurementReport implements Serializable {
     public void incrementCollectionTime(long collectionTime) {
         this.collectionTime += collectionTime;
     }
-}
\ No newline at end of file
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        int size = measurementNumericData.size();
+        int[] scheduleIds = new int[size];
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        byte[] nulls = null;
+
+        int i = 0;
+        for (MeasurementDataNumeric data : measurementNumericData) {
+            scheduleIds[i] = data.getScheduleId();
+            timestamps[i] = data.getTimestamp();
+            Double value = data.getValue();
+            if (value != null) {
+                values[i] = value.doubleValue();
+            } else {
+                if (nulls == null) {
+                    nulls = new byte[(size + 7) / 8];
+                }
+                nulls[i >> 3] |= (byte) (1 << (i & 7));
+            }
+            ++i;
+        }
+
+        out.writeInt(size);
+        long previous = 0L;
+        for (i = 0; i < size; ++i) {
+            writeVarLong(out, zigZag(scheduleIds[i] - previous));
+            previous = scheduleIds[i];
+        }
+        previous = 0L;
+        for (i = 0; i < size; ++i) {
+            writeVarLong(out, zigZag(timestamps[i] - previous));
+            previous = timestamps[i];
+        }
+        out.writeBoolean(nulls != null);
+        if (nulls != null) {
+            out.write(nulls);
+        }
+        for (i = 0; i < size; ++i) {
+            out.writeDouble(values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        int size = in.readInt();
+        if (size < 0) {
+            throw new InvalidObjectException("Invalid numeric data count: " + size);
+        }
+
+        // The count comes from the stream, so it is not trusted for allocation: the ids column grows as it is
+        // actually read. Everything allocated after it is proportional to the bytes the stream already delivered.
+        int[] scheduleIds = new int[Math.min(size, READ_CHUNK_SIZE)];
+        long previous = 0L;
+        for (int i = 0; i < size; ++i) {
+            if (i == scheduleIds.length) {
+                scheduleIds = Arrays.copyOf(scheduleIds, (int) Math.min(size, 2L * i));
+            }
+            previous += unZigZag(readVarLong(in));
+            scheduleIds[i] = (int) previous;
+        }
+        long[] timestamps = new long[size];
+        previous = 0L;
+        for (int i = 0; i < size; ++i) {
+            previous += unZigZag(readVarLong(in));
+            timestamps[i] = previous;
+        }
+        byte[] nulls = null;
+        if (in.readBoolean()) {
+            nulls = new byte[(size + 7) / 8];
+            in.readFully(nulls);
+        }
+
+        // size the set up front so it never has to rehash
+        measurementNumericData = new LinkedHashSet<MeasurementDataNumeric>(Math.max(16, (int) (size / .75f) + 1));
+        for (int i = 0; i < size; ++i) {
+            double value = in.readDouble();
+            boolean isNull = (nulls != null) && ((nulls[i >> 3] & (1 << (i & 7))) != 0);
+            measurementNumericData.add(new MeasurementDataNumeric(timestamps[i], scheduleIds[i], isNull ? null
+                : Double.valueOf(value)));
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0L) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length number");
+    }
+}
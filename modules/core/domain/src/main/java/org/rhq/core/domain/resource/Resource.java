@@ -685,6 +685,16 @@ import org.rhq.core.domain.util.Summary;
     @NamedQuery(name = Resource.QUERY_FIND_BY_ID_WITH_INSTALLED_PACKAGE_HIST, query = "SELECT r FROM Resource AS r LEFT JOIN r.installedPackageHistory ip WHERE r.id = :id"),
     @NamedQuery(name = Resource.QUERY_FIND_PLATFORM_BY_AGENT, query = "SELECT res FROM Resource res WHERE res.resourceType.category = :category AND res.agent = :agent"),
     @NamedQuery(name = Resource.QUERY_FIND_PARENT_ID, query = "SELECT res.parentResource.id FROM Resource AS res WHERE res.id = :id"),
+    @NamedQuery(name = Resource.QUERY_FIND_PARENT_ID_AND_ANCESTRY, query = "" //
+        + "   SELECT parent.id, res.ancestry " //
+        + "     FROM Resource res " //
+        + "LEFT JOIN res.parentResource parent " //
+        + "    WHERE res.id = :id "),
+    @NamedQuery(name = Resource.QUERY_FIND_PARENT_IDS_BY_IDS, query = "" //
+        + "   SELECT res.id, parent.id " //
+        + "     FROM Resource res " //
+        + "LEFT JOIN res.parentResource parent " //
+        + "    WHERE res.id IN ( :ids ) "),
     @NamedQuery(name = Resource.QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE, query = ""
         + "SELECT DISTINCT r FROM Resource r "
         + "WHERE r.parentResource.id is null "
@@ -892,6 +902,8 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_FIND_PLATFORM_BY_AGENT = "Resource.findPlatformByAgent";
 
     public static final String QUERY_FIND_PARENT_ID = "Resource.findParentId";
+    public static final String QUERY_FIND_PARENT_ID_AND_ANCESTRY = "Resource.findParentIdAndAncestry";
+    public static final String QUERY_FIND_PARENT_IDS_BY_IDS = "Resource.findParentIdsByIds";
 
     public static final String QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE = "Resource.findRootPlatformOfResource";
 
@@ -34,6 +34,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
@@ -58,12 +60,19 @@ import org.rhq.core.domain.auth.Subject;
  * @author Joseph Marques
  */
 @Entity
+@NamedQueries( { @NamedQuery(name = SavedSearch.QUERY_UPDATE_RESULT_COUNT, query = "" //
+    + "UPDATE SavedSearch ss " //
+    + "   SET ss.resultCount = :resultCount, " //
+    + "       ss.lastComputeTime = :lastComputeTime " //
+    + " WHERE ss.id IN ( :savedSearchIds )") })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_SAVED_SEARCH_ID_SEQ", sequenceName = "RHQ_SAVED_SEARCH_ID_SEQ")
 @Table(name = "RHQ_SAVED_SEARCH")
 public class SavedSearch implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final String QUERY_UPDATE_RESULT_COUNT = "SavedSearch.updateResultCount";
+
     @Id
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "RHQ_SAVED_SEARCH_ID_SEQ")
@@ -0,0 +1,186 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.measurement.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.NumericType;
+
+@Test
+public class MeasurementReportTest {
+
+    public void testEmptyReport() throws Exception {
+        MeasurementReport report = new MeasurementReport();
+        report.setCollectionTime(42L);
+
+        MeasurementReport copy = copy(report);
+        Assert.assertEquals(copy.getDataCount(), 0L);
+        Assert.assertEquals(copy.getCollectionTime(), 42L);
+        copy.addData(new MeasurementDataNumeric(1L, 1, 1.0));
+        Assert.assertEquals(copy.getNumericData().size(), 1);
+    }
+
+    public void testNumericDataSurvivesSerialization() throws Exception {
+        MeasurementReport report = new MeasurementReport();
+        List<MeasurementDataNumeric> expected = new ArrayList<MeasurementDataNumeric>();
+        // ids and timestamps going up and down, extreme values and a null
+        expected.add(new MeasurementDataNumeric(1400000000000L, 10001, 1.5));
+        expected.add(new MeasurementDataNumeric(1400000000000L, 10002, -3.25));
+        expected.add(new MeasurementDataNumeric(1399999990000L, 7, null));
+        expected.add(new MeasurementDataNumeric(Long.MAX_VALUE, Integer.MAX_VALUE, Double.MAX_VALUE));
+        expected.add(new MeasurementDataNumeric(Long.MIN_VALUE, Integer.MIN_VALUE, Double.MIN_VALUE));
+        expected.add(new MeasurementDataNumeric(0L, 0, 0.0));
+        for (MeasurementDataNumeric data : expected) {
+            report.addData(data);
+        }
+        report.addData(new MeasurementDataTrait(new MeasurementDataPK(1400000000000L, 10003), "trait"));
+        report.setCollectionTime(123L);
+
+        MeasurementReport copy = copy(report);
+        Assert.assertEquals(copy.getDataCount(), 7L);
+        Assert.assertEquals(copy.getCollectionTime(), 123L);
+        Assert.assertEquals(copy.getTraitData().iterator().next().getValue(), "trait");
+
+        Iterator<MeasurementDataNumeric> iter = copy.getNumericData().iterator();
+        for (MeasurementDataNumeric data : expected) {
+            MeasurementDataNumeric actual = iter.next();
+            Assert.assertEquals(actual.getScheduleId(), data.getScheduleId());
+            Assert.assertEquals(actual.getTimestamp(), data.getTimestamp());
+            Assert.assertEquals(actual.getValue(), data.getValue());
+        }
+        Assert.assertFalse(iter.hasNext());
+    }
+
+    public void testNumericDataIsCompact() throws Exception {
+        // a typical report: a few hundred resources, each with a handful of metrics collected at the same time
+        MeasurementReport report = new MeasurementReport();
+        Set<MeasurementDataNumeric> legacy = new LinkedHashSet<MeasurementDataNumeric>();
+        long now = 1400000000000L;
+        int scheduleId = 10000;
+        for (int resource = 0; resource < 500; ++resource) {
+            for (int metric = 0; metric < 10; ++metric) {
+                MeasurementScheduleRequest request = new MeasurementScheduleRequest(scheduleId, "metric" + metric,
+                    60000L, true, DataType.MEASUREMENT, NumericType.DYNAMIC);
+                MeasurementDataNumeric data = new MeasurementDataNumeric(now + resource, request,
+                    resource * 1.1 + metric);
+                report.addData(data);
+                legacy.add(data);
+                ++scheduleId;
+            }
+        }
+
+        int size = serialize(report).length;
+        int legacySize = serialize(legacy).length;
+        Assert.assertTrue(size * 4 < legacySize, "Report of " + size + " bytes is not much smaller than the "
+            + legacySize + " bytes of the object by object form");
+        Assert.assertEquals(copy(report).getNumericData().size(), 5000);
+    }
+
+    public void testLargeReportSurvivesSerialization() throws Exception {
+        // more points than are allocated for at once while reading
+        MeasurementReport report = new MeasurementReport();
+        for (int i = 0; i < 20000; ++i) {
+            report.addData(new MeasurementDataNumeric(1400000000000L + i, 10001 + i, (double) i));
+        }
+
+        MeasurementReport copy = copy(report);
+        Assert.assertEquals(copy.getNumericData().size(), 20000);
+        int i = 0;
+        for (MeasurementDataNumeric data : copy.getNumericData()) {
+            Assert.assertEquals(data.getScheduleId(), 10001 + i);
+            Assert.assertEquals(data.getTimestamp(), 1400000000000L + i);
+            Assert.assertEquals(data.getValue(), Double.valueOf(i));
+            ++i;
+        }
+    }
+
+    public void testForgedCountDoesNotAllocate() throws Exception {
+        byte[] bytes = serialize(new MeasurementReport());
+        // the block data of an empty report is the count, 0, followed by the "has nulls" flag, false
+        byte[] emptyBlock = { 0x77, 5, 0, 0, 0, 0, 0 };
+        int offset = indexOf(bytes, emptyBlock);
+        Assert.assertTrue(offset >= 0);
+        bytes[offset + 2] = 0x7F;
+        bytes[offset + 3] = (byte) 0xFF;
+        bytes[offset + 4] = (byte) 0xFF;
+        bytes[offset + 5] = (byte) 0xFF;
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            ois.readObject();
+            Assert.fail("A report claiming " + Integer.MAX_VALUE + " data points should not deserialize");
+        } catch (EOFException expected) {
+            // the stream ran out long before the claimed points, nothing was allocated for them
+        } finally {
+            ois.close();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= bytes.length; ++i) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                ++j;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MeasurementReport copy(MeasurementReport report) throws Exception {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialize(report)));
+        try {
+            return (MeasurementReport) ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(object);
+        oos.close();
+        return baos.toByteArray();
+    }
+}
@@ -61,8 +61,29 @@ public class NativeSystemInfo implements SystemInfo {
 
     private final Log log = LogFactory.getLog(NativeSystemInfo.class);
 
+    /**
+     * The number of milliseconds a snapshot of the process table is reused by {@link #getProcesses(String)}; can be
+     * overridden by the system property "rhq.system.process-table.snapshot-interval". Zero or less disables sharing.
+     */
+    private static final long PROCESS_TABLE_SNAPSHOT_INTERVAL;
+
+    static {
+        long interval = 5000L;
+        try {
+            interval = Long.parseLong(System.getProperty("rhq.system.process-table.snapshot-interval", "5000"));
+        } catch (Exception e) {
+            LogFactory.getLog(NativeSystemInfo.class).warn(
+                "Invalid value for rhq.system.process-table.snapshot-interval, using default of " + interval);
+        }
+        PROCESS_TABLE_SNAPSHOT_INTERVAL = interval;
+    }
+
     private SigarProxy sigar;
 
+    private final Object processTableSnapshotLock = new Object();
+    private ProcessInfoQuery processTableSnapshot;
+    private long processTableSnapshotTime;
+
     /**
      * Always returns <code>true</code> to indicate that the native library is available.
      *
@@ -247,8 +268,31 @@ public class NativeSystemInfo implements SystemInfo {
     }
 
     public List<ProcessInfo> getProcesses(String piq) {
-        ProcessInfoQuery piql = new ProcessInfoQuery(getAllProcesses());
-        return piql.query(piq);
+        return getProcessTableSnapshot().query(piq);
+    }
+
+    /**
+     * Returns a query object over the process table that is shared by all callers until it is older than the
+     * snapshot interval. Enumerating the process table is expensive and many components query it in bursts (discovery,
+     * availability checks), so the table is read at most once per interval and the query indexes are built only once.
+     *
+     * @return the current process table snapshot
+     */
+    private ProcessInfoQuery getProcessTableSnapshot() {
+        if (PROCESS_TABLE_SNAPSHOT_INTERVAL <= 0) {
+            return new ProcessInfoQuery(getAllProcesses());
+        }
+
+        // callers arriving while the table is being read wait for that snapshot rather than reading it themselves
+        synchronized (processTableSnapshotLock) {
+            long now = System.currentTimeMillis();
+            if (processTableSnapshot == null || now - processTableSnapshotTime >= PROCESS_TABLE_SNAPSHOT_INTERVAL
+                || now < processTableSnapshotTime) {
+                processTableSnapshot = new ProcessInfoQuery(getAllProcesses());
+                processTableSnapshotTime = System.currentTimeMillis();
+            }
+            return processTableSnapshot;
+        }
     }
 
     public ProcessInfo getThisProcess() {
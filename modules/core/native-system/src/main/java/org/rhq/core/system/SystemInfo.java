@@ -113,7 +113,9 @@ public interface SystemInfo {
     List<ProcessInfo> getAllProcesses();
 
     /**
-     * Returns ProcessInfo objects for all processes that match the provided PIQL query string
+     * Returns ProcessInfo objects for all processes that match the provided PIQL query string. Implementations may
+     * evaluate the query against a recent, shared snapshot of the process table rather than reading the table anew
+     * for every call.
      *
      * @param  processInfoQuery the PIQL query string
      *
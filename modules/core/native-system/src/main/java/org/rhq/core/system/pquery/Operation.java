@@ -22,11 +22,17 @@
   */
 package org.rhq.core.system.pquery;
 
+import java.util.regex.Pattern;
+
 import org.rhq.core.system.pquery.Conditional.Operator;
 
 class Operation {
     private final Operator operator;
 
+    // the last regular expression used, compiled; the same one is usually used against many processes
+    private String lastRegex;
+    private Pattern lastPattern;
+
     Operation(Operator operator) {
         this.operator = operator;
     }
@@ -41,12 +47,20 @@ class Operation {
         }
 
         if (operator.equals(Operator.match)) {
-            return value1.matches(value2);
+            return getPattern(value2).matcher(value1).matches();
         } else if (operator.equals(Operator.nomatch)) {
-            return !value1.matches(value2);
+            return !getPattern(value2).matcher(value1).matches();
         } else {
             // should never happen unless we add more operators but forgot to create a new else clause for it
             throw new IllegalArgumentException("Invalid operator: " + operator);
         }
     }
-}
\ No newline at end of file
+
+    private Pattern getPattern(String regex) {
+        if (!regex.equals(lastRegex)) {
+            lastPattern = Pattern.compile(regex);
+            lastRegex = regex;
+        }
+        return lastPattern;
+    }
+}
@@ -38,6 +38,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.rhq.core.system.NativeSystemInfo;
 import org.rhq.core.system.ProcessInfo;
+import org.rhq.core.system.pquery.Conditional.Operator;
 import org.rhq.core.system.pquery.Conditional.Qualifier;
 
 /**
@@ -192,11 +193,21 @@ public class ProcessInfoQuery {
 
     private static final Log log = LogFactory.getLog(ProcessInfoQuery.class);
 
+    private static final String REGEX_SPECIAL_CHARACTERS = "\\^$.|?*+()[]{}";
+
     /**
      * The map of all processes keyed on their pids.
      */
     private final Map<Long, ProcessInfo> allProcesses;
 
+    /**
+     * The processes grouped by their names, base names and command line arguments. These are built the first time they
+     * are needed so criteria can be evaluated once per distinct value rather than once per process.
+     */
+    private Map<String, List<ProcessInfo>> nameIndex;
+    private Map<String, List<ProcessInfo>> baseNameIndex;
+    private Map<String, List<ProcessInfo>> argIndex;
+
     /**
      * Constructor for {@link ProcessInfoQuery} given an collection of process information that represents the processes
      * currently running. Think of the <code>processes</code> data as coming from part of the output you see in the
@@ -294,7 +305,12 @@ public class ProcessInfoQuery {
         String operand1 = null;
         String operand2 = criteria.getValue();
 
-        for (ProcessInfo process : getProcesses()) {
+        if (!qualifier.equals(Qualifier.parent) && attribute.getAttributeValue().equals("*")) {
+            // * means see if any arg matches - which only depends on the distinct argument values
+            return doIndexedQuery(getArgIndex(), op, operand2);
+        }
+
+        for (ProcessInfo process : this.allProcesses.values()) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -392,7 +408,16 @@ public class ProcessInfoQuery {
 
         String pidfileContentsCache = null; // so we avoid reading the file over and over again
 
-        for (ProcessInfo process : getProcesses()) {
+        if (!qualifier.equals(Qualifier.parent)) {
+            // name and basename matches only depend on the distinct names, not on each process
+            if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.name.toString())) {
+                return doIndexedQuery(getNameIndex(), op, criteria.getValue());
+            } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.basename.toString())) {
+                return doIndexedQuery(getBaseNameIndex(), op, criteria.getValue());
+            }
+        }
+
+        for (ProcessInfo process : this.allProcesses.values()) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -431,6 +456,111 @@ public class ProcessInfoQuery {
         return matches;
     }
 
+    /**
+     * Evaluates an operation against each distinct value of an index and returns all processes of the matching values.
+     *
+     * @param  index    the processes keyed on the values to match
+     * @param  op       the operation to perform
+     * @param  operand2 the value to match against
+     *
+     * @return the matched processes keyed on the pids
+     */
+    private Map<Long, ProcessInfo> doIndexedQuery(Map<String, List<ProcessInfo>> index, Operation op, String operand2) {
+        Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
+
+        if (op.getOperator().equals(Operator.match) && isLiteral(operand2)) {
+            // a regular expression without special characters only matches itself
+            List<ProcessInfo> processes = index.get(operand2);
+            if (processes != null) {
+                for (ProcessInfo process : processes) {
+                    matches.put(process.getPid(), process);
+                }
+            }
+            return matches;
+        }
+
+        for (Map.Entry<String, List<ProcessInfo>> entry : index.entrySet()) {
+            if (op.doOperation(entry.getKey(), operand2)) {
+                for (ProcessInfo process : entry.getValue()) {
+                    matches.put(process.getPid(), process);
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    private static boolean isLiteral(String regex) {
+        if (regex == null) {
+            return false;
+        }
+
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_SPECIAL_CHARACTERS.indexOf(regex.charAt(i)) != -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Map<String, List<ProcessInfo>> getNameIndex() {
+        buildIndexes();
+        return this.nameIndex;
+    }
+
+    private Map<String, List<ProcessInfo>> getBaseNameIndex() {
+        buildIndexes();
+        return this.baseNameIndex;
+    }
+
+    private Map<String, List<ProcessInfo>> getArgIndex() {
+        buildIndexes();
+        return this.argIndex;
+    }
+
+    /**
+     * Builds the name, base name and argument indexes if this is the first time they are needed. Since a query object
+     * may be shared by several threads, this is synchronized.
+     */
+    private synchronized void buildIndexes() {
+        if (this.nameIndex != null) {
+            return;
+        }
+
+        Map<String, List<ProcessInfo>> names = new HashMap<String, List<ProcessInfo>>();
+        Map<String, List<ProcessInfo>> baseNames = new HashMap<String, List<ProcessInfo>>();
+        Map<String, List<ProcessInfo>> args = new HashMap<String, List<ProcessInfo>>();
+
+        for (ProcessInfo process : this.allProcesses.values()) {
+            addToIndex(names, process.getName(), process);
+            addToIndex(baseNames, process.getBaseName(), process);
+
+            String[] cmdline = process.getCommandLine();
+            if (cmdline != null) {
+                Set<String> distinctArgs = new HashSet<String>();
+                for (String arg : cmdline) {
+                    if (distinctArgs.add(arg)) {
+                        addToIndex(args, arg, process);
+                    }
+                }
+            }
+        }
+
+        this.nameIndex = names;
+        this.baseNameIndex = baseNames;
+        this.argIndex = args;
+    }
+
+    private static void addToIndex(Map<String, List<ProcessInfo>> index, String key, ProcessInfo process) {
+        List<ProcessInfo> processes = index.get(key);
+        if (processes == null) {
+            processes = new ArrayList<ProcessInfo>(1);
+            index.put(key, processes);
+        }
+        processes.add(process);
+    }
+
     /**
      * Gets the parent process for the given process. The parent will be searched for within the {@link #getProcesses()}
      * list.
@@ -585,6 +585,32 @@ public class ProcessInfoQueryTest {
         assert p8.getCommandLine()[2].equals("/bin/sh");
     }
 
+    /**
+     * Literal values are looked up directly in the indexes, regular expressions are evaluated per distinct key - both
+     * must return the same processes, and repeated queries against the same instance must be stable.
+     */
+    public void testPIQLIndexedLookups() {
+        results = query.query("process|basename|match=exec");
+        assert results.size() == 3 : "should have been three exec processes: " + results;
+        List<ProcessInfo> regexResults = query.query("process|basename|match=e.ec");
+        assert regexResults.size() == 3 : "literal and regex lookups should match: " + regexResults;
+        assert query.query("process|basename|match=exec").size() == 3 : "repeated query should be stable";
+
+        results = query.query("process|name|match=/bin/sh");
+        assert results.size() == 1 : "should have been one /bin/sh process: " + results;
+        assertPidExists(2, results, "pid 2 is /bin/sh");
+
+        results = query.query("arg|*|match=--daemon");
+        assert results.size() == 1 : "only pid 4 has the exact --daemon arg: " + results;
+        assertPidExists(4, results, "pid 4 has the --daemon arg");
+
+        results = query.query("arg|*|match=--daemon.*");
+        assert results.size() == 2 : "pids 4 and 5 have --daemon args: " + results;
+
+        results = query.query("process|basename|match=doesnotexist");
+        assert results.size() == 0 : "no process should match: " + results;
+    }
+
     @BeforeMethod
     protected void setup() {
         this.query = new ProcessInfoQuery(buildTestProcesses());
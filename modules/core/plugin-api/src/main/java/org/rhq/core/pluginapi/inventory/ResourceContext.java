@@ -44,7 +44,6 @@ import org.rhq.core.pluginapi.upgrade.ResourceUpgradeContext;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.core.system.SystemInfoFactory;
-import org.rhq.core.system.pquery.ProcessInfoQuery;
 import org.rhq.core.util.MessageDigestGenerator;
 
 /**
@@ -402,9 +401,8 @@ public class ResourceContext<T extends ResourceComponent<?>> {
         try {
             Set<ProcessScan> processScans = this.resource.getResourceType().getProcessScans();
             if (processScans != null && !processScans.isEmpty()) {
-                ProcessInfoQuery piq = new ProcessInfoQuery(systemInfo.getAllProcesses());
                 for (ProcessScan processScan : processScans) {
-                    List<ProcessInfo> queryResults = piq.query(processScan.getQuery());
+                    List<ProcessInfo> queryResults = systemInfo.getProcesses(processScan.getQuery());
                     if ((queryResults != null) && (queryResults.size() > 0)) {
                         for (ProcessInfo autoDiscoveredProcess : queryResults) {
                             scanResults.add(new ProcessScanResult(processScan, autoDiscoveredProcess));
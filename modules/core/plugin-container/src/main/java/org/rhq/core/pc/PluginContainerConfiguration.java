@@ -73,6 +73,11 @@ public class PluginContainerConfiguration {
     public static final long SERVICE_DISCOVERY_PERIOD_DEFAULT = 24 * 60 * 60L; // in seconds
     private static final String CHILD_RESOURCE_DISCOVERY_DELAY_PROP = PROP_PREFIX + "child-resource-discovery-delay";
     public static final long CHILD_RESOURCE_DISCOVERY_DELAY_DEFAULT = 5L; //in seconds
+    private static final String DISCOVERY_THREADPOOL_SIZE_PROP = PROP_PREFIX + "discovery-threadpool-size";
+    public static final int DISCOVERY_THREADPOOL_SIZE_DEFAULT = 5;
+    private static final String DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_PROP = PROP_PREFIX
+        + "discovery-max-concurrent-per-plugin";
+    public static final int DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_DEFAULT = 3;
     private static final String RESOURCE_FACTORY_CORE_POOL_SIZE_PROP = PROP_PREFIX + "resource-factory-core-pool-size";
     public static final int RESOURCE_FACTORY_CORE_POOL_SIZE_DEFAULT = 1;
     private static final String RESOURCE_FACTORY_MAX_POOL_SIZE_PROP = PROP_PREFIX + "resource-factory-max-pool-size";
@@ -98,6 +103,10 @@ public class PluginContainerConfiguration {
     private static final String MEASUREMENT_COLLECTION_THREADCOUNT_PROP = PROP_PREFIX
         + "measurement-collection-threadpoolsize";
     public static final int MEASUREMENT_COLLECTION_THREADCOUNT_DEFAULT = 5;
+    private static final String MEASUREMENT_BACKLOG_SIZE_PROP = PROP_PREFIX + "measurement-backlog-size";
+    public static final int MEASUREMENT_BACKLOG_SIZE_DEFAULT = 500000;
+    private static final String MEASUREMENT_BACKLOG_PERSISTENT_PROP = PROP_PREFIX + "measurement-backlog-persistent";
+    public static final boolean MEASUREMENT_BACKLOG_PERSISTENT_DEFAULT = false;
 
     // Drift ----------
 
@@ -628,6 +637,48 @@ public class PluginContainerConfiguration {
         configuration.put(CHILD_RESOURCE_DISCOVERY_DELAY_PROP, Long.valueOf(delay));
     }
 
+    /**
+     * Returns the number of threads that can be concurrently executing discovery components during a single server
+     * or service discovery scan. A value of 1 runs all discovery components in the scanning thread itself.
+     *
+     * @return threadpool size used for thread pool that runs discovery components
+     */
+    public int getDiscoveryThreadPoolSize() {
+        Integer size = (Integer) configuration.get(DISCOVERY_THREADPOOL_SIZE_PROP);
+        return (size == null) ? DISCOVERY_THREADPOOL_SIZE_DEFAULT : size.intValue();
+    }
+
+    /**
+     * Sets the number of threads that can be concurrently executing discovery components during a single server
+     * or service discovery scan.
+     *
+     * @param size threadpool size used for thread pool that runs discovery components
+     */
+    public void setDiscoveryThreadPoolSize(int size) {
+        configuration.put(DISCOVERY_THREADPOOL_SIZE_PROP, Integer.valueOf(size));
+    }
+
+    /**
+     * Returns the maximum number of discovery components of any one plugin that can be executing at the same time.
+     * This keeps a single plugin from hammering its managed product (or starving the other plugins) when it has
+     * many parents to scan.
+     *
+     * @return the maximum number of concurrent discoveries per plugin
+     */
+    public int getDiscoveryMaxConcurrentPerPlugin() {
+        Integer max = (Integer) configuration.get(DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_PROP);
+        return (max == null) ? DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_DEFAULT : max.intValue();
+    }
+
+    /**
+     * Sets the maximum number of discovery components of any one plugin that can be executing at the same time.
+     *
+     * @param max the maximum number of concurrent discoveries per plugin
+     */
+    public void setDiscoveryMaxConcurrentPerPlugin(int max) {
+        configuration.put(DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_PROP, Integer.valueOf(max));
+    }
+
     /**
      * Returns the instance of <code>PluginFinder</code> for the container to use to locate all plugins to be loaded.
      *
@@ -668,6 +719,47 @@ public class PluginContainerConfiguration {
         configuration.put(MEASUREMENT_COLLECTION_THREADCOUNT_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * While the server cannot be reached, collected numeric measurements are kept in a fixed size backlog outside of
+     * the Java heap and sent once the server is back. This is the number of measurements the backlog can hold; when it
+     * is full the oldest measurements are dropped. A size of 0 disables the backlog.
+     *
+     * @return the number of measurements the backlog can hold
+     */
+    public int getMeasurementBacklogSize() {
+        Integer size = (Integer) configuration.get(MEASUREMENT_BACKLOG_SIZE_PROP);
+        return (size == null) ? MEASUREMENT_BACKLOG_SIZE_DEFAULT : size.intValue();
+    }
+
+    /**
+     * Defines the number of measurements the measurement backlog can hold.
+     *
+     * @param size the new size of the backlog, 0 to disable it
+     */
+    public void setMeasurementBacklogSize(int size) {
+        configuration.put(MEASUREMENT_BACKLOG_SIZE_PROP, Integer.valueOf(size));
+    }
+
+    /**
+     * If <code>true</code>, the measurement backlog is a memory-mapped file in the {@link #getDataDirectory() data
+     * directory}, so measurements that could not be sent yet survive a restart.
+     *
+     * @return whether the measurement backlog is kept in a file
+     */
+    public boolean isMeasurementBacklogPersistent() {
+        Boolean persistent = (Boolean) configuration.get(MEASUREMENT_BACKLOG_PERSISTENT_PROP);
+        return (persistent == null) ? MEASUREMENT_BACKLOG_PERSISTENT_DEFAULT : persistent.booleanValue();
+    }
+
+    /**
+     * Defines whether the measurement backlog is kept in a memory-mapped file.
+     *
+     * @param persistent <code>true</code> to keep the backlog in a file
+     */
+    public void setMeasurementBacklogPersistent(boolean persistent) {
+        configuration.put(MEASUREMENT_BACKLOG_PERSISTENT_PROP, Boolean.valueOf(persistent));
+    }
+
     /**
      * Returns the length of time, in seconds, before drift detection first begins.
      *
@@ -46,6 +46,7 @@ public class ServerServices {
     private CoreServerService coreServerService;
     private DiscoveryServerService discoveryServerService;
     private MeasurementServerService measurementServerService;
+    private MeasurementServerService synchronousMeasurementServerService;
     private ConfigurationServerService configurationServerService;
     private OperationServerService operationServerService;
     private ResourceFactoryServerService resourceFactoryServerService;
@@ -78,6 +79,21 @@ public class ServerServices {
         this.measurementServerService = measurementServerService;
     }
 
+    /**
+     * Returns a measurement server service whose calls ignore the annotations of the interface: they are synchronous
+     * and not guaranteed, so the caller knows whether the server got the data. May be <code>null</code>, in which case
+     * {@link #getMeasurementServerService()} has to do.
+     *
+     * @return the synchronous measurement server service, or <code>null</code>
+     */
+    public MeasurementServerService getSynchronousMeasurementServerService() {
+        return synchronousMeasurementServerService;
+    }
+
+    public void setSynchronousMeasurementServerService(MeasurementServerService synchronousMeasurementServerService) {
+        this.synchronousMeasurementServerService = synchronousMeasurementServerService;
+    }
+
     public ConfigurationServerService getConfigurationServerService() {
         return configurationServerService;
     }
@@ -27,7 +27,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -43,6 +46,7 @@ import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.domain.state.discovery.AutoDiscoveryScanType;
+import org.rhq.core.pc.PluginContainerConfiguration;
 import org.rhq.core.pc.plugin.PluginComponentFactory;
 import org.rhq.core.pc.plugin.PluginManager;
 import org.rhq.core.pluginapi.inventory.ProcessScanResult;
@@ -161,49 +165,98 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         ResourceContainer platformContainer = inventoryManager.getResourceContainer(inventoryManager.getPlatform());
         Resource platformResource = platformContainer.getResource();
 
-        for (ResourceType serverType : serverTypes) {
-            if (!serverType.getParentResourceTypes().isEmpty()) {
-                continue; // TODO GH: Need to stop discovering embedded tomcats here and other non-top level servers
-            }
+        // one query object for all server types, so the process table is only indexed once per scan
+        ProcessInfoQuery processTable = (processInfos == null || processInfos.isEmpty()) ? null
+            : new ProcessInfoQuery(processInfos);
 
-            try {
-                ResourceDiscoveryComponent component = factory.getDiscoveryComponent(serverType, platformContainer);
-                // TODO GH: Manage plugin component call
+        PluginContainerConfiguration configuration = inventoryManager.getConfiguration();
+        DiscoveryTaskPool taskPool = new DiscoveryTaskPool(inventoryManager, configuration.getDiscoveryThreadPoolSize(),
+            configuration.getDiscoveryMaxConcurrentPerPlugin());
+        try {
+            // The top level server types are independent of each other, so their discoveries run concurrently. The
+            // results are merged afterwards, in type order, by this thread.
+            List<ResourceType> discoveredTypes = new ArrayList<ResourceType>();
+            List<Future<Set<Resource>>> discoveries = new ArrayList<Future<Set<Resource>>>();
+
+            for (ResourceType serverType : new TreeSet<ResourceType>(serverTypes)) {
+                if (!serverType.getParentResourceTypes().isEmpty()) {
+                    continue; // TODO GH: Need to stop discovering embedded tomcats here and other non-top level servers
+                }
 
-                /* TODO GH: Fixme
-                 * if (!verifyComponentCompatibility(component,platformComponent)) { log.warn("Resource has parent
-                 * resource with incompatible component " + serverType); continue; }
-                 */
+                try {
+                    ResourceDiscoveryComponent component = factory.getDiscoveryComponent(serverType, platformContainer);
+                    // TODO GH: Manage plugin component call
 
-                if (platformContainer.getSynchronizationState() == ResourceContainer.SynchronizationState.NEW) {
-                    report.addAddedRoot(platformResource);
-                }
+                    /* TODO GH: Fixme
+                     * if (!verifyComponentCompatibility(component,platformComponent)) { log.warn("Resource has parent
+                     * resource with incompatible component " + serverType); continue; }
+                     */
+
+                    if (platformContainer.getSynchronizationState() == ResourceContainer.SynchronizationState.NEW) {
+                        report.addAddedRoot(platformResource);
+                    }
 
-                // Perform auto-discovery PIQL queries now to see if we can auto-detect servers that are currently running.
-                List<ProcessScanResult> scanResults = performProcessScans(processInfos, serverType);
+                    // Perform auto-discovery PIQL queries now to see if we can auto-detect servers that are currently
+                    // running.
+                    List<ProcessScanResult> scanResults = performProcessScans(processTable, serverType);
+
+                    discoveries.add(taskPool.submitDiscovery(serverType, component, platformContainer, scanResults));
+                    discoveredTypes.add(serverType);
+                } catch (ResourceTypeNotEnabledException rtne) {
+                    // skipping all ignored resources
+                } catch (Throwable e) {
+                    report.getErrors().add(new ExceptionPackage(Severity.Severe, e));
+                    log.error("Error in auto discovery", e);
+                }
+            }
 
-                Set<Resource> discoveredServers = this.inventoryManager.executeComponentDiscovery(serverType,
-                    component, platformContainer, scanResults);
+            // wait for all of the discoveries before touching the inventory
+            try {
+                for (Future<Set<Resource>> discovery : discoveries) {
+                    try {
+                        discovery.get();
+                    } catch (ExecutionException e) {
+                        // reported when the result is merged
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.info("Server discovery interrupted. Returning results collected up to this point.");
+                DiscoveryTaskPool.cancel(discoveries);
+                discoveries.clear();
+                Thread.currentThread().interrupt();
+            }
 
-                for (Resource discoveredServer : discoveredServers) {
-                    Resource inventoriedResource = this.inventoryManager.mergeResourceFromDiscovery(discoveredServer,
-                        platformResource);
+            for (int i = 0, size = discoveries.size(); i < size; ++i) {
+                try {
+                    Set<Resource> discoveredServers;
+                    try {
+                        discoveredServers = discoveries.get(i).get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause();
+                    }
 
-                    if (inventoriedResource.getInventoryStatus() == InventoryStatus.NEW) {
-                        // The resource is new to the Server inventory.
-                        if (platformContainer.getSynchronizationState() == ResourceContainer.SynchronizationState.SYNCHRONIZED) {
-                            // The Platform is already in Server inventory, so this'll be a report root. Otherwise,
-                            // it'll get included in the report under the Platform.
-                            report.addAddedRoot(inventoriedResource);
+                    for (Resource discoveredServer : discoveredServers) {
+                        Resource inventoriedResource = this.inventoryManager.mergeResourceFromDiscovery(
+                            discoveredServer, platformResource);
+
+                        if (inventoriedResource.getInventoryStatus() == InventoryStatus.NEW) {
+                            // The resource is new to the Server inventory.
+                            if (platformContainer.getSynchronizationState()
+                                == ResourceContainer.SynchronizationState.SYNCHRONIZED) {
+                                // The Platform is already in Server inventory, so this'll be a report root. Otherwise,
+                                // it'll get included in the report under the Platform.
+                                report.addAddedRoot(inventoriedResource);
+                            }
                         }
                     }
+                } catch (Throwable e) {
+                    report.getErrors().add(new ExceptionPackage(Severity.Severe, e));
+                    log.error("Error in auto discovery of [" + discoveredTypes.get(i) + "]", e);
                 }
-            } catch (ResourceTypeNotEnabledException rtne) {
-                // skipping all ignored resources
-            } catch (Throwable e) {
-                report.getErrors().add(new ExceptionPackage(Severity.Severe, e));
-                log.error("Error in auto discovery", e);
             }
+        } finally {
+            taskPool.shutdown();
+            taskPool.logTimings("Server");
         }
 
         // if we have nothing, our plugins didn't discovery anything, but we want to at least report the platform
@@ -216,14 +269,13 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         return;
     }
 
-    private List<ProcessScanResult> performProcessScans(List<ProcessInfo> processInfos, ResourceType serverType) {
-        if (processInfos == null || processInfos.isEmpty())
+    private List<ProcessScanResult> performProcessScans(ProcessInfoQuery piq, ResourceType serverType) {
+        if (piq == null)
             return Collections.emptyList();
         List<ProcessScanResult> scanResults = new ArrayList<ProcessScanResult>();
         Set<ProcessScan> processScans = serverType.getProcessScans();
         if (processScans != null && !processScans.isEmpty()) {
             log.debug("Executing process scans for server type " + serverType + "...");
-            ProcessInfoQuery piq = new ProcessInfoQuery(processInfos);
             for (ProcessScan processScan : processScans) {
                 List<ProcessInfo> queryResults = piq.query(processScan.getQuery());
                 if ((queryResults != null) && (queryResults.size() > 0)) {
@@ -0,0 +1,269 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.inventory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pc.util.LoggingThreadFactory;
+import org.rhq.core.pluginapi.inventory.ProcessScanResult;
+import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
+
+/**
+ * Runs the discovery components of a single discovery scan on a bounded thread pool. No more than a configured
+ * number of tasks belonging to the same plugin run at once; the remaining tasks of that plugin wait in a queue of
+ * their own so they never tie up pool threads that other plugins could use.
+ * <p/>
+ * Tasks only <i>discover</i>. The caller keeps the returned futures in the order it wants the results merged and
+ * does all of the inventory merging itself, on its own thread, so merge order does not depend on thread scheduling.
+ * Discovery component timeouts still apply, because discovery goes through
+ * {@link InventoryManager#executeComponentDiscovery} and therefore through the discovery component proxy.
+ * <p/>
+ * A pool size of 1 (or less) runs every task inline in the calling thread, which is how discovery scans used to run.
+ * Instances are used for a single scan and must be {@link #shutdown() shut down} when the scan is done.
+ */
+class DiscoveryTaskPool {
+    private static final Log log = LogFactory.getLog(DiscoveryTaskPool.class);
+
+    private static final String THREAD_POOL_NAME = "InventoryManager.discovery";
+
+    /**
+     * Resource types whose discoveries took longer than this in total are reported at INFO level.
+     */
+    private static final long SLOW_DISCOVERY_MILLIS = 20000L;
+
+    private final InventoryManager inventoryManager;
+    private final int maxConcurrentPerPlugin;
+    private final ExecutorService threadPool;
+
+    // guarded by "this"
+    private final Map<String, PluginSlots> pluginSlots = new HashMap<String, PluginSlots>();
+
+    private final ConcurrentMap<ResourceType, DiscoveryTiming> timings =
+        new ConcurrentHashMap<ResourceType, DiscoveryTiming>();
+
+    DiscoveryTaskPool(InventoryManager inventoryManager, int threadPoolSize, int maxConcurrentPerPlugin) {
+        this.inventoryManager = inventoryManager;
+        this.maxConcurrentPerPlugin = Math.max(1, maxConcurrentPerPlugin);
+        this.threadPool = (threadPoolSize > 1) ? Executors.newFixedThreadPool(threadPoolSize,
+            new LoggingThreadFactory(THREAD_POOL_NAME, true)) : null;
+    }
+
+    /**
+     * Submits the discovery of all resources of the given type under the given parent. The time the discovery took
+     * is added to the {@link #getTimings() timings} of the type.
+     *
+     * @return the future result of {@link InventoryManager#executeComponentDiscovery}
+     */
+    Future<Set<Resource>> submitDiscovery(final ResourceType resourceType,
+        final ResourceDiscoveryComponent discoveryComponent, final ResourceContainer parentContainer,
+        final List<ProcessScanResult> processScanResults) {
+
+        return submit(resourceType.getPlugin(), new Callable<Set<Resource>>() {
+            public Set<Resource> call() throws Exception {
+                long startTime = System.currentTimeMillis();
+                try {
+                    return inventoryManager.executeComponentDiscovery(resourceType, discoveryComponent,
+                        parentContainer, processScanResults);
+                } finally {
+                    addTiming(resourceType, System.currentTimeMillis() - startTime);
+                }
+            }
+        });
+    }
+
+    /**
+     * Submits a task that calls into the given plugin, subject to the per-plugin concurrency limit.
+     */
+    <T> Future<T> submit(String pluginName, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        if (threadPool == null) {
+            future.run();
+        } else {
+            dispatch(pluginName, future);
+        }
+        return future;
+    }
+
+    /**
+     * Cancels the given tasks, interrupting the ones already running.
+     */
+    static void cancel(Collection<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    void shutdown() {
+        if (threadPool != null) {
+            threadPool.shutdownNow();
+        }
+    }
+
+    Map<ResourceType, DiscoveryTiming> getTimings() {
+        return timings;
+    }
+
+    /**
+     * Logs how long the discovery of each resource type took in total during this scan. Every type is logged at
+     * DEBUG level; types that took longer than 20 seconds are logged at INFO level.
+     */
+    void logTimings(String scanName) {
+        if (timings.isEmpty() || !log.isInfoEnabled()) {
+            return;
+        }
+
+        // slowest types first
+        List<ResourceType> resourceTypes = new ArrayList<ResourceType>(timings.keySet());
+        Collections.sort(resourceTypes, new Comparator<ResourceType>() {
+            public int compare(ResourceType type1, ResourceType type2) {
+                long time1 = timings.get(type1).getTotalTime();
+                long time2 = timings.get(type2).getTotalTime();
+                return (time1 < time2) ? 1 : ((time1 == time2) ? type1.compareTo(type2) : -1);
+            }
+        });
+
+        boolean debug = log.isDebugEnabled();
+        for (ResourceType resourceType : resourceTypes) {
+            DiscoveryTiming timing = timings.get(resourceType);
+            if (debug || timing.getTotalTime() > SLOW_DISCOVERY_MILLIS) {
+                String msg = scanName + " discovery of [" + resourceType + "] ran " + timing.getCount()
+                    + " time(s) and took [" + timing.getTotalTime() + "] ms in total, [" + timing.getMaxTime()
+                    + "] ms at most";
+                if (timing.getTotalTime() > SLOW_DISCOVERY_MILLIS) {
+                    log.info(msg);
+                } else {
+                    log.debug(msg);
+                }
+            }
+        }
+    }
+
+    private void addTiming(ResourceType resourceType, long elapsedTime) {
+        DiscoveryTiming timing = timings.get(resourceType);
+        if (timing == null) {
+            DiscoveryTiming newTiming = new DiscoveryTiming();
+            timing = timings.putIfAbsent(resourceType, newTiming);
+            if (timing == null) {
+                timing = newTiming;
+            }
+        }
+        timing.add(elapsedTime);
+    }
+
+    private synchronized void dispatch(String pluginName, Runnable task) {
+        PluginSlots slots = pluginSlots.get(pluginName);
+        if (slots == null) {
+            slots = new PluginSlots();
+            pluginSlots.put(pluginName, slots);
+        }
+
+        if (slots.running < maxConcurrentPerPlugin) {
+            slots.running++;
+            threadPool.execute(new PluginTask(pluginName, task));
+        } else {
+            slots.pending.add(task);
+        }
+    }
+
+    private synchronized void release(String pluginName) {
+        PluginSlots slots = pluginSlots.get(pluginName);
+        slots.running--;
+        if (threadPool.isShutdown()) {
+            return;
+        }
+
+        Runnable next = slots.pending.poll();
+        if (next != null) {
+            slots.running++;
+            threadPool.execute(new PluginTask(pluginName, next));
+        }
+    }
+
+    private static class PluginSlots {
+        private int running;
+        private final Queue<Runnable> pending = new LinkedList<Runnable>();
+    }
+
+    private class PluginTask implements Runnable {
+        private final String pluginName;
+        private final Runnable task;
+
+        private PluginTask(String pluginName, Runnable task) {
+            this.pluginName = pluginName;
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                release(pluginName);
+            }
+        }
+    }
+
+    /**
+     * How many times the discovery of a resource type ran during a scan, and how long it took.
+     */
+    static class DiscoveryTiming {
+        private int count;
+        private long totalTime;
+        private long maxTime;
+
+        synchronized void add(long elapsedTime) {
+            count++;
+            totalTime += elapsedTime;
+            maxTime = Math.max(maxTime, elapsedTime);
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        synchronized long getTotalTime() {
+            return totalTime;
+        }
+
+        synchronized long getMaxTime() {
+            return maxTime;
+        }
+    }
+}
@@ -66,6 +66,7 @@ import org.rhq.core.clientapi.server.configuration.ConfigurationServerService;
 import org.rhq.core.clientapi.server.discovery.DiscoveryServerService;
 import org.rhq.core.clientapi.server.discovery.InvalidInventoryReportException;
 import org.rhq.core.clientapi.server.discovery.InventoryReport;
+import org.rhq.core.clientapi.server.discovery.ResourceSyncHash;
 import org.rhq.core.clientapi.server.discovery.StaleTypeException;
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.configuration.ConfigurationUtility;
@@ -1334,6 +1335,7 @@ public class InventoryManager extends AgentService implements ContainerService,
      * @param platformSyncInfo sync info on the platform and references to the top level servers. not null.
      */
     private void syncPlatform(PlatformSyncInfo platformSyncInfo) {
+        final long syncStart = System.currentTimeMillis();
         final Set<String> allServerSideUuids = new HashSet<String>();
         ResourceSyncInfo platformResourceSyncInfo = platformSyncInfo.getPlatform();
 
@@ -1357,12 +1359,33 @@ public class InventoryManager extends AgentService implements ContainerService,
 
         // then sync the top level servers by calling back to the server for the sync info for each. We
         // do this one at a time to avoid forcing the whole inventory into active memory at one time during the sync.
+        // If the server sent the hashes of the top level server hierarchies, skip the call back for every hierarchy
+        // our copy of which hashes the same. We then sync against our own copy, which the server just confirmed.
+        int unchangedServers = 0;
+        int unchangedResources = 0;
+        long unchangedBytes = 0L;
         Collection<Integer> topLevelServerIds = platformSyncInfo.getTopLevelServerIds();
         if (null != topLevelServerIds) {
             DiscoveryServerService service = configuration.getServerServices().getDiscoveryServerService();
+            Map<Integer, String> topLevelServerHashes = platformSyncInfo.getTopLevelServerHashes();
 
             for (Integer topLevelServerId : topLevelServerIds) {
-                syncInfos = service.getResourceSyncInfo(topLevelServerId);
+                String serverHash = (null != topLevelServerHashes) ? topLevelServerHashes.get(topLevelServerId) : null;
+                Collection<ResourceSyncInfo> localSyncInfos = (null != serverHash) ? getLocalResourceSyncInfo(
+                    topLevelServerId) : null;
+                boolean unchanged = (null != localSyncInfos)
+                    && serverHash.equals(ResourceSyncHash.compute(localSyncInfos));
+
+                if (unchanged) {
+                    syncInfos = localSyncInfos;
+                    unchangedServers++;
+                    unchangedResources += localSyncInfos.size();
+                    unchangedBytes += estimateSyncInfoSize(localSyncInfos);
+                } else {
+                    syncInfos = service.getResourceSyncInfo(topLevelServerId);
+                }
+                localSyncInfos = null;
+
                 if (null != syncInfos) {
                     addAllUuids(syncInfos, allServerSideUuids);
                     log.info("Sync Starting: Top Level Server  [" + topLevelServerId + "]");
@@ -1373,6 +1396,11 @@ public class InventoryManager extends AgentService implements ContainerService,
 
                     syncInfos = null; // release to GC
 
+                    if (unchanged) {
+                        // nothing was fetched from the server, there is no need to give it room for breathing
+                        continue;
+                    }
+
                     // (jshaughn) Is this really necessary?
                     try {
                         // Wait a little to get other tasks room for breathing
@@ -1386,7 +1414,14 @@ public class InventoryManager extends AgentService implements ContainerService,
 
         purgeObsoleteResources(allServerSideUuids);
 
-        log.info("Sync Complete: Platform [" + platformSyncInfo.getPlatform().getId() + "].");
+        if (null != topLevelServerIds && null != platformSyncInfo.getTopLevelServerHashes()) {
+            log.info("Sync: [" + unchangedServers + "] of [" + topLevelServerIds.size()
+                + "] top level servers were unchanged, skipped fetching sync info for [" + unchangedResources
+                + "] resources (about [" + unchangedBytes + "] bytes) and [" + (unchangedServers * 800L)
+                + "]ms of pauses between fetches");
+        }
+        log.info("Sync Complete: Platform [" + platformSyncInfo.getPlatform().getId() + "] in ["
+            + (System.currentTimeMillis() - syncStart) + "]ms.");
 
         // kick off a service scan to scan synced Resources for new child Resources.
         //
@@ -1416,6 +1451,51 @@ public class InventoryManager extends AgentService implements ContainerService,
         }
     }
 
+    /**
+     * Builds the sync info of our copy of a resource hierarchy, to compare its {@link ResourceSyncHash} with the
+     * server's.
+     *
+     * @param rootResourceId the root of the hierarchy
+     * @return the sync info of the root and all its descendants, or null if we do not have the root
+     */
+    private Collection<ResourceSyncInfo> getLocalResourceSyncInfo(int rootResourceId) {
+        ResourceContainer rootContainer = getResourceContainer(rootResourceId);
+        if (null == rootContainer) {
+            return null;
+        }
+
+        List<ResourceSyncInfo> result = new ArrayList<ResourceSyncInfo>();
+        Deque<Resource> resources = new LinkedList<Resource>();
+        resources.push(rootContainer.getResource());
+
+        this.inventoryLock.readLock().lock();
+        try {
+            while (!resources.isEmpty()) {
+                Resource r = resources.pop();
+                result.add(ResourceSyncInfo.buildResourceSyncInfo(r));
+                for (Resource child : getContainerChildren(r)) {
+                    resources.push(child);
+                }
+            }
+        } finally {
+            this.inventoryLock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return roughly the number of bytes the sync info takes on the wire
+     */
+    private static long estimateSyncInfoSize(Collection<ResourceSyncInfo> syncInfos) {
+        long size = 0L;
+        for (ResourceSyncInfo syncInfo : syncInfos) {
+            // id, mtime, a reference to the shared status enum, and the uuid
+            size += 4 + 8 + 4 + ((null != syncInfo.getUuid()) ? syncInfo.getUuid().length() : 0);
+        }
+        return size;
+    }
+
     /**
      * Performs a synch on only the single resource and its descendants. This is assumed to be a partial
      * inventory.  To synch on the full inventory call {@link #syncPlatform(PlatformSyncInfo)}
@@ -3781,6 +3861,10 @@ public class InventoryManager extends AgentService implements ContainerService,
         return this.pluginFactory;
     }
 
+    PluginContainerConfiguration getConfiguration() {
+        return this.configuration;
+    }
+
     public PluginManager getPluginManager() {
         return pluginManager;
     }
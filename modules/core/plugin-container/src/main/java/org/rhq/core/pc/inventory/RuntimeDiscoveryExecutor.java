@@ -21,11 +21,16 @@ package org.rhq.core.pc.inventory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -137,62 +142,120 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
     }
 
     private void runtimeDiscover(InventoryReport report) throws PluginContainerException {
-        try {
-            if (this.rootResource == null) {
-                // Run a full scan for all resources in the inventory
-                Resource platform = this.inventoryManager.getPlatform();
-
-                // Discover platform services here
-                discoverForResource(platform, report, false);
+        // Run a full scan for all resources in the inventory (starting with the platform services), or a single scan
+        // for just a resource and its descendants
+        Resource root = (this.rootResource == null) ? this.inventoryManager.getPlatform() : this.rootResource;
 
-            } else {
-                // Run a single scan for just a resource and its descendants
-                discoverForResource(rootResource, report, false);
+        DiscoveryTaskPool taskPool = new DiscoveryTaskPool(this.inventoryManager,
+            this.pluginContainerConfiguration.getDiscoveryThreadPoolSize(),
+            this.pluginContainerConfiguration.getDiscoveryMaxConcurrentPerPlugin());
+        try {
+            // The hierarchy is scanned one level at a time. The parents on a level are independent of each other so
+            // their discoveries run concurrently, but a whole level is merged before its children are scanned.
+            List<DiscoveryTarget> level = Collections.singletonList(new DiscoveryTarget(root, false));
+            while (!level.isEmpty()) {
+                level = discoverForResources(level, report, taskPool);
             }
         } catch (InterruptedException e) {
             log.info("Service discovery interrupted. This is OK and typically due to new request for service scan. Returning results collected up to this point.");
+        } finally {
+            taskPool.shutdown();
+            taskPool.logTimings("Service");
         }
 
         return;
     }
 
     /**
-     * @param  parent         The parent resource to look for children of
-     * @param  report         The report to add the resource to
-     * @param  parentReported true if the resources parent is already in the inventory report and therefore will include
-     *                        this resource and its descendants in the report under that root
+     * Discovers the children of one level of the inventory hierarchy. The discoveries are run by the task pool, but
+     * the results are merged into the inventory by the calling thread, parent by parent and child type by child type
+     * in the order of the given targets, so that the outcome of a scan does not depend on which discovery finished
+     * first.
+     *
+     * @param  targets  the parent resources to look for children of
+     * @param  report   the report to add the resources to
+     * @param  taskPool runs the availability checks and discoveries
      *
-     * @throws PluginContainerException on error
+     * @return the next level to scan, i.e. the children of all parents that were scanned successfully
+     *
+     * @throws InterruptedException if the scan was canceled, in which case all outstanding tasks are canceled too
      */
-    private void discoverForResource(Resource parent, InventoryReport report, boolean parentReported)
-        throws PluginContainerException, InterruptedException {
+    private List<DiscoveryTarget> discoverForResources(List<DiscoveryTarget> targets, InventoryReport report,
+        DiscoveryTaskPool taskPool) throws InterruptedException {
 
-        if (Thread.interrupted()) {
-            throw new InterruptedException("Job canceled, stopping service discovery and reporting partial results.");
+        List<ParentScan> scans = new ArrayList<ParentScan>(targets.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            // figure out which parents can be scanned, starting any live availability checks that are needed
+            for (DiscoveryTarget target : targets) {
+                checkInterrupted();
+                ParentScan scan = prepareScan(target, taskPool);
+                if (scan != null) {
+                    scans.add(scan);
+                    if (scan.availability != null) {
+                        futures.add(scan.availability);
+                    }
+                }
+            }
+
+            // start the discoveries for all child types of the parents that are UP
+            for (ParentScan scan : scans) {
+                checkInterrupted();
+                submitDiscoveries(scan, taskPool, futures);
+            }
+
+            // wait for the whole level to finish, then merge everything in order
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // reported when the result is merged
+                }
+            }
+
+            List<DiscoveryTarget> nextLevel = new ArrayList<DiscoveryTarget>();
+            for (ParentScan scan : scans) {
+                checkInterrupted();
+                mergeDiscoveries(scan, report, nextLevel);
+            }
+
+            return nextLevel;
+        } catch (InterruptedException e) {
+            DiscoveryTaskPool.cancel(futures);
+            throw e;
         }
+    }
 
+    /**
+     * @param  target   the parent resource to look for children of
+     * @param  taskPool used to perform a live availability check on the parent, if one is needed
+     *
+     * @return the scan to perform or <code>null</code> if the children of the parent cannot be discovered
+     */
+    private ParentScan prepareScan(DiscoveryTarget target, DiscoveryTaskPool taskPool) {
+        Resource parent = target.resource;
         log.debug("Discovering child Resources for " + parent + "...");
 
-        ResourceContainer parentContainer = this.inventoryManager.getResourceContainer(parent);
+        final ResourceContainer parentContainer = this.inventoryManager.getResourceContainer(parent);
         if (parentContainer == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Cannot perform service scan on parent [" + parent + "] without a container");
             }
-            return;
+            return null;
         }
 
         if (parentContainer.getResourceComponentState() != ResourceContainer.ResourceComponentState.STARTED) {
             if (log.isTraceEnabled()) {
                 log.trace("Parent [" + parent + "] is not STARTED - not performing service scan");
             }
-            return;
+            return null;
         }
 
         if (parent.getInventoryStatus() != InventoryStatus.COMMITTED) {
             if (log.isDebugEnabled()) {
                 log.debug("Parent [" + parent + "] must be imported/committed before service scan can run.");
             }
-            return;
+            return null;
         }
 
         // For each child resource type of the server, do a discovery for resources of that type
@@ -203,10 +266,12 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
                 if (log.isDebugEnabled()) {
                     log.debug("Parent resource type [" + parent + "] has no child types; cannot perform service scan.");
                 }
-                return;
+                return null;
             }
         }
 
+        ParentScan scan = new ParentScan(target, parentContainer, childResourceTypes);
+
         // At this point we used to always do a live check of availability.  This buys us very little and
         // costs us a lot.  For a platform-rooted scan this ends up being an avail check for all but leaf
         // nodes of the tree.  That is costly on top of the discovery check itself, and is antithetical to
@@ -228,35 +293,55 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
         AvailabilityType currentAvailabilityType = (null == currentAvailability) ? AvailabilityType.DOWN
             : currentAvailability.getAvailabilityType();
 
-        // If there is no current avail, or this is a SERVER, we must perform the live check.
+        // If there is no current avail, or this is a SERVER, we must perform the live check. All of the checks for
+        // a level are done concurrently.
         if (AvailabilityType.UP != currentAvailabilityType
             || ResourceCategory.SERVER == parentContainer.getResource().getResourceType().getCategory()) {
 
-            AvailabilityFacet parentAvailabilityProxy = parentContainer.getAvailabilityProxy();
-
-            try {
-                currentAvailabilityType = parentAvailabilityProxy.getAvailability();
-            } catch (Exception e) {
-                currentAvailabilityType = AvailabilityType.DOWN;
-            }
+            scan.availability = taskPool.submit(parent.getResourceType().getPlugin(),
+                new Callable<AvailabilityType>() {
+                    public AvailabilityType call() {
+                        AvailabilityFacet parentAvailabilityProxy = parentContainer.getAvailabilityProxy();
+                        try {
+                            return parentAvailabilityProxy.getAvailability();
+                        } catch (Exception e) {
+                            return AvailabilityType.DOWN;
+                        }
+                    }
+                });
+        } else {
+            scan.availabilityType = currentAvailabilityType;
         }
 
-        if (AvailabilityType.UP != currentAvailabilityType) {
-            if (log.isDebugEnabled()) {
-                log.debug("Availability of [" + parent + "] is not UP, cannot perform service scan on it.");
-            }
-            return;
-        }
+        return scan;
+    }
 
-        PluginComponentFactory factory = inventoryManager.getPluginComponentFactory();
+    /**
+     * Submits the discovery of each child type of the scanned parent, if the parent is UP. Errors are recorded on
+     * the scan and reported when it is merged.
+     */
+    private void submitDiscoveries(ParentScan scan, DiscoveryTaskPool taskPool, List<Future<?>> futures)
+        throws InterruptedException {
 
+        Resource parent = scan.target.resource;
         try {
+            if (scan.availability != null) {
+                scan.availabilityType = scan.availability.get();
+            }
+            if (AvailabilityType.UP != scan.availabilityType) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Availability of [" + parent + "] is not UP, cannot perform service scan on it.");
+                }
+                return;
+            }
+
+            PluginComponentFactory factory = inventoryManager.getPluginComponentFactory();
 
-            for (ResourceType childResourceType : childResourceTypes) {
+            for (ResourceType childResourceType : scan.childResourceTypes) {
                 // Make sure we have a discovery component for that type, otherwise there is nothing to do
                 ResourceDiscoveryComponent discoveryComponent = null;
                 try {
-                    discoveryComponent = factory.getDiscoveryComponent(childResourceType, parentContainer);
+                    discoveryComponent = factory.getDiscoveryComponent(childResourceType, scan.container);
                 } catch (ResourceTypeNotEnabledException rtne) {
                     if (log.isDebugEnabled()) {
                         log.debug("Resource not discoverable, type is disabled: " + childResourceType);
@@ -278,9 +363,44 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
                     log.debug("Running service scan on parent resource [" + parent + "] looking for children of type ["
                         + childResourceType + "]");
                 }
-                Set<Resource> discoveredChildResources = this.inventoryManager
-                    .executeComponentDiscovery(childResourceType, discoveryComponent, parentContainer,
-                        Collections.<ProcessScanResult> emptyList());
+                Future<Set<Resource>> discovery = taskPool.submitDiscovery(childResourceType, discoveryComponent,
+                    scan.container, Collections.<ProcessScanResult> emptyList());
+                scan.discoveredTypes.add(childResourceType);
+                scan.discoveries.add(discovery);
+                futures.add(discovery);
+            }
+        } catch (InterruptedException e) {
+            throw e; // if we're interrupted then exit out
+        } catch (Throwable t) {
+            scan.error = (t instanceof ExecutionException) ? t.getCause() : t;
+        }
+    }
+
+    /**
+     * Merges the discovered children of the scanned parent into the inventory and adds the parent's children to the
+     * next level to scan.
+     */
+    private void mergeDiscoveries(ParentScan scan, InventoryReport report, List<DiscoveryTarget> nextLevel)
+        throws InterruptedException {
+
+        Resource parent = scan.target.resource;
+        boolean parentReported = scan.target.parentReported;
+        try {
+            if (scan.error != null) {
+                throw scan.error;
+            }
+            if (AvailabilityType.UP != scan.availabilityType) {
+                return;
+            }
+
+            for (int i = 0, size = scan.discoveries.size(); i < size; ++i) {
+                ResourceType childResourceType = scan.discoveredTypes.get(i);
+                Set<Resource> discoveredChildResources;
+                try {
+                    discoveredChildResources = scan.discoveries.get(i).get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
 
                 // For each discovered child resource, update it in the inventory manager
                 Map<String, Resource> mergedResources = new HashMap<String, Resource>();
@@ -298,10 +418,10 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
                 removeStaleResources(parent, childResourceType, mergedResources);
             }
 
-            // now, recursively perform discovery on all of the parent's children, which includes the newly
+            // now, perform discovery on all of the parent's children, which includes the newly
             // merged children as well as previously existing children.
             for (Resource childResource : parent.getChildResources()) {
-                discoverForResource(childResource, report, parentReported);
+                nextLevel.add(new DiscoveryTarget(childResource, parentReported));
             }
 
         } catch (InterruptedException e) {
@@ -314,6 +434,12 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
         return;
     }
 
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Job canceled, stopping service discovery and reporting partial results.");
+        }
+    }
+
     // TODO: Move this to InventoryManager, so it can be used by AutoDiscoveryExecutor too.
     private void removeStaleResources(Resource parent, ResourceType childResourceType,
         Map<String, Resource> mergedResources) {
@@ -329,4 +455,43 @@ public class RuntimeDiscoveryExecutor implements Runnable, Callable<InventoryRep
             }
         }
     }
+
+    /**
+     * A parent resource to look for children of.
+     */
+    private static class DiscoveryTarget {
+        private final Resource resource;
+        /**
+         * true if the resource's parent is already in the inventory report and therefore will include this resource
+         * and its descendants in the report under that root
+         */
+        private final boolean parentReported;
+
+        private DiscoveryTarget(Resource resource, boolean parentReported) {
+            this.resource = resource;
+            this.parentReported = parentReported;
+        }
+    }
+
+    /**
+     * The state of the discovery of a single parent's children within a level.
+     */
+    private static class ParentScan {
+        private final DiscoveryTarget target;
+        private final ResourceContainer container;
+        private final Set<ResourceType> childResourceTypes;
+        private Future<AvailabilityType> availability;
+        private AvailabilityType availabilityType;
+        private final List<ResourceType> discoveredTypes = new ArrayList<ResourceType>();
+        private final List<Future<Set<Resource>>> discoveries = new ArrayList<Future<Set<Resource>>>();
+        private Throwable error;
+
+        private ParentScan(DiscoveryTarget target, ResourceContainer container, Set<ResourceType> childResourceTypes) {
+            this.target = target;
+            this.container = container;
+            // merge the child types in a fixed order
+            this.childResourceTypes = (childResourceTypes == null) ? Collections.<ResourceType> emptySet()
+                : new TreeSet<ResourceType>(childResourceTypes);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Histograms of how long the {@link org.rhq.core.pluginapi.measurement.MeasurementFacet#getValues} calls take, one per
+ * plugin and resource type. The buckets are fixed so recording a call is just an atomic increment.
+ */
+class CollectionLatencyHistograms {
+    /**
+     * Upper bounds, in milliseconds, of all buckets but the last one, which counts everything slower.
+     */
+    static final long[] BUCKET_LIMITS = { 10L, 50L, 100L, 500L, 1000L, 2000L, 5000L, 10000L, 30000L };
+
+    // per key: the count of every bucket, then the total number of calls, then their total time
+    private final ConcurrentMap<String, AtomicLongArray> histograms = new ConcurrentHashMap<String, AtomicLongArray>();
+
+    void record(ResourceType resourceType, long millis) {
+        String key = resourceType.getPlugin() + ":" + resourceType.getName();
+        AtomicLongArray histogram = histograms.get(key);
+        if (histogram == null) {
+            AtomicLongArray newHistogram = new AtomicLongArray(BUCKET_LIMITS.length + 3);
+            histogram = histograms.putIfAbsent(key, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && millis > BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+        histogram.incrementAndGet(BUCKET_LIMITS.length + 1);
+        histogram.addAndGet(BUCKET_LIMITS.length + 2, millis);
+    }
+
+    /**
+     * @return one line per plugin and resource type, sorted by plugin and type name, such as
+     *         <code>Platforms:Linux count=12, avg=4ms, &lt;=10ms=11, &lt;=50ms=1</code>. Empty buckets are left out.
+     */
+    String[] toStringArray() {
+        Map<String, AtomicLongArray> sorted = new TreeMap<String, AtomicLongArray>(histograms);
+        String[] lines = new String[sorted.size()];
+        int i = 0;
+        for (Map.Entry<String, AtomicLongArray> entry : sorted.entrySet()) {
+            AtomicLongArray histogram = entry.getValue();
+            long count = histogram.get(BUCKET_LIMITS.length + 1);
+            long total = histogram.get(BUCKET_LIMITS.length + 2);
+
+            StringBuilder line = new StringBuilder(entry.getKey());
+            line.append(" count=").append(count);
+            line.append(", avg=").append((count == 0) ? 0 : (total / count)).append("ms");
+            for (int bucket = 0; bucket <= BUCKET_LIMITS.length; bucket++) {
+                long bucketCount = histogram.get(bucket);
+                if (bucketCount > 0) {
+                    if (bucket < BUCKET_LIMITS.length) {
+                        line.append(", <=").append(BUCKET_LIMITS[bucket]);
+                    } else {
+                        line.append(", >").append(BUCKET_LIMITS[BUCKET_LIMITS.length - 1]);
+                    }
+                    line.append("ms=").append(bucketCount);
+                }
+            }
+            lines[i++] = line.toString();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+
+/**
+ * A fixed size ring buffer of numeric measurements (schedule id, timestamp, value) kept outside of the Java heap. It
+ * holds the numeric data collected while the server cannot be reached, so a long outage neither grows the agent heap
+ * nor the command spool. When the buffer is full the oldest measurement is dropped to make room for the newest one;
+ * the number of dropped measurements is {@link #getDropped() counted}.
+ * <p/>
+ * The buffer is either a direct byte buffer or a memory-mapped file. A mapped file also keeps the backlog across agent
+ * restarts: the file starts with a small header holding the position of the oldest measurement and the number of
+ * measurements, followed by the fixed size records.
+ * <p/>
+ * Measurements are sent by {@link #copyTo(MeasurementReport, int) copying} the oldest ones and only
+ * {@link #removeUpTo(long) removing} them once the server has them, so a failed send leaves them in place.
+ */
+class MeasurementBacklog {
+    private static final Log log = LogFactory.getLog(MeasurementBacklog.class);
+
+    static final int RECORD_SIZE = 4 + 8 + 8; // schedule id, timestamp, value
+
+    private static final int MAGIC = 0x52485142;
+    private static final int VERSION = 1;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int HEAD_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int DROPPED_OFFSET = 20;
+    static final int HEADER_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final RandomAccessFile file;
+    private final int capacity;
+
+    // guarded by "this"
+    private int head;
+    private int count;
+    private long dropped;
+    // the number of measurements that ever left the backlog, dropped or removed; the position of the oldest one
+    private long position;
+
+    /**
+     * Creates a backlog in a direct byte buffer.
+     *
+     * @param capacity the number of measurements the backlog can hold
+     */
+    MeasurementBacklog(int capacity) {
+        this.capacity = capacity;
+        this.file = null;
+        this.buffer = ByteBuffer.allocateDirect(HEADER_SIZE + (capacity * RECORD_SIZE));
+        writeHeader();
+    }
+
+    /**
+     * Creates a backlog in the given memory-mapped file. If the file holds a backlog of the same capacity, the
+     * measurements in it are kept.
+     *
+     * @param capacity the number of measurements the backlog can hold
+     * @param file     the file to map, created if it does not exist
+     */
+    MeasurementBacklog(int capacity, File file) throws IOException {
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            long size = HEADER_SIZE + ((long) capacity * RECORD_SIZE);
+            boolean reuse = (this.file.length() == size);
+            this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (reuse && readHeader()) {
+                return;
+            }
+            head = 0;
+            count = 0;
+            dropped = 0;
+            writeHeader();
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    synchronized void addAll(Collection<MeasurementDataNumeric> data) {
+        for (MeasurementDataNumeric numeric : data) {
+            if (numeric.getValue() != null) {
+                add(numeric.getScheduleId(), numeric.getTimestamp(), numeric.getValue());
+            }
+        }
+    }
+
+    synchronized void add(int scheduleId, long timestamp, double value) {
+        if (count == capacity) {
+            head = next(head);
+            count--;
+            dropped++;
+            position++;
+        }
+
+        int offset = HEADER_SIZE + (((head + count) % capacity) * RECORD_SIZE);
+        buffer.putInt(offset, scheduleId);
+        buffer.putLong(offset + 4, timestamp);
+        buffer.putDouble(offset + 12, value);
+        count++;
+        writeHeader();
+    }
+
+    /**
+     * Copies the oldest measurements, at most <code>max</code> of them, into the given report. They stay in the
+     * backlog until they are {@link #removeUpTo(long) removed}.
+     *
+     * @return the position following the copied measurements, to pass to {@link #removeUpTo(long)}
+     */
+    synchronized long copyTo(MeasurementReport report, int max) {
+        int copied = Math.min(max, count);
+        int index = head;
+        for (int i = 0; i < copied; i++) {
+            int offset = HEADER_SIZE + (index * RECORD_SIZE);
+            report.addData(new MeasurementDataNumeric(buffer.getLong(offset + 4), buffer.getInt(offset), buffer
+                .getDouble(offset + 12)));
+            index = next(index);
+        }
+        return position + copied;
+    }
+
+    /**
+     * Removes the measurements before the given position, as returned by {@link #copyTo(MeasurementReport, int)}.
+     * Those of them that were dropped in the meantime to make room for new ones are not removed twice.
+     *
+     * @return the number of measurements removed
+     */
+    synchronized int removeUpTo(long endPosition) {
+        int removed = (int) Math.max(0L, Math.min(count, endPosition - position));
+        head = (int) (((long) head + removed) % capacity);
+        count -= removed;
+        position += removed;
+        writeHeader();
+        return removed;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    synchronized void close() {
+        if (file != null) {
+            try {
+                ((MappedByteBuffer) buffer).force();
+                file.close();
+            } catch (IOException e) {
+                log.warn("Failed to close the measurement backlog file: " + e);
+            }
+        }
+    }
+
+    private int next(int index) {
+        return (index + 1 == capacity) ? 0 : index + 1;
+    }
+
+    private boolean readHeader() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(CAPACITY_OFFSET) != capacity) {
+            return false;
+        }
+        int storedHead = buffer.getInt(HEAD_OFFSET);
+        int storedCount = buffer.getInt(COUNT_OFFSET);
+        if (storedHead < 0 || storedHead >= capacity || storedCount < 0 || storedCount > capacity) {
+            return false;
+        }
+        head = storedHead;
+        count = storedCount;
+        dropped = buffer.getLong(DROPPED_OFFSET);
+        return true;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(HEAD_OFFSET, head);
+        buffer.putInt(COUNT_OFFSET, count);
+        buffer.putLong(DROPPED_OFFSET, dropped);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the collection times of all the schedules of a resource on a common grid so that the schedules that are due
+ * together are collected with a single call to the resource's measurement facet.
+ * <p/>
+ * Every resource has an anchor time. A schedule with interval <code>I</code> is collected at <code>anchor + n*I</code>,
+ * so schedules whose intervals are multiples of each other (the usual case - 1, 5, 10 minutes...) always fall due at
+ * the very same moment. Without the anchor, a schedule that was late, or that was updated on its own, would keep its
+ * own phase forever and cost its resource an extra facet call on every collection.
+ * <p/>
+ * This class is not thread safe; the measurement manager only uses it while holding its own lock.
+ */
+class MeasurementCollectionPlanner {
+    private final Map<Integer, Long> anchors = new HashMap<Integer, Long>();
+
+    /**
+     * Returns the time the first collection of a newly scheduled measurement should happen. The first collection is
+     * never delayed; if the resource does not have an anchor yet, that time becomes its anchor.
+     */
+    long getFirstCollection(int resourceId, long earliest) {
+        if (!anchors.containsKey(resourceId)) {
+            anchors.put(resourceId, earliest);
+        }
+        return earliest;
+    }
+
+    /**
+     * Returns the time of the collection that follows the one due at <code>previous</code>. That is the grid point of
+     * the resource nearest to <code>previous + interval</code>, so a schedule that is off the grid gets back on it
+     * after a single collection, with a gap somewhere between a half and one and a half of its interval.
+     */
+    long getNextCollection(int resourceId, long interval, long previous) {
+        Long anchor = anchors.get(resourceId);
+        if (anchor == null || interval <= 0) {
+            return previous + interval;
+        }
+        return align(anchor, interval, previous + interval - (interval / 2));
+    }
+
+    /**
+     * Moves the anchor of the resource to the given time, for instance to push its collections away from a period in
+     * which they ran late. The returned time is where schedules of the resource being rescheduled now should go.
+     */
+    long moveAnchor(int resourceId, long anchor) {
+        anchors.put(resourceId, anchor);
+        return anchor;
+    }
+
+    void remove(int resourceId) {
+        anchors.remove(resourceId);
+    }
+
+    /**
+     * @return the first time at or after <code>earliest</code> that is a whole number of intervals away from the
+     *         anchor
+     */
+    static long align(long anchor, long interval, long earliest) {
+        long offset = earliest - anchor;
+        long periods = offset / interval;
+        if (periods * interval < offset) {
+            periods++;
+        }
+        return anchor + (periods * interval);
+    }
+}
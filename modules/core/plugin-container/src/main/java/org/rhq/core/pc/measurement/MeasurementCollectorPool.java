@@ -0,0 +1,189 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.pc.util.LoggingThreadFactory;
+
+/**
+ * Runs measurement collections for different resources in parallel. The number of collections allowed to run at once
+ * adapts to the load: it starts at one, grows by one whenever a collection is waiting for a free slot and is already
+ * running more than a second behind its schedule, and shrinks by one every time the collector finds nothing due while
+ * slots are unused. It never exceeds the configured thread pool size. Pool threads that are not needed time out.
+ * <p/>
+ * Collections of the same resource never overlap: a collection handed in while another one of its resource is still
+ * running is deferred, and run by the same pool thread right after it, in the order they were handed in.
+ * <p/>
+ * A maximum of 1 (or less) runs every collection inline in the calling thread, which is how collection used to run.
+ */
+class MeasurementCollectorPool {
+    private static final Log log = LogFactory.getLog(MeasurementCollectorPool.class);
+
+    private static final String THREAD_POOL_NAME = "MeasurementManager.collector.worker";
+
+    /**
+     * How far behind schedule a waiting collection must be to let one more collection run in parallel.
+     */
+    static final long BEHIND_MILLIS = 1000L;
+
+    private final int maxConcurrency;
+    private final ThreadPoolExecutor threadPool;
+
+    // guarded by "this"
+    private int concurrency = 1;
+    private int active;
+    // resources with a running collection, mapped to their deferred collections
+    private final Map<Integer, LinkedList<Runnable>> inFlight = new HashMap<Integer, LinkedList<Runnable>>();
+
+    MeasurementCollectorPool(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        if (this.maxConcurrency > 1) {
+            threadPool = new ThreadPoolExecutor(this.maxConcurrency, this.maxConcurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LoggingThreadFactory(THREAD_POOL_NAME, true));
+            threadPool.allowCoreThreadTimeOut(true);
+        } else {
+            threadPool = null;
+        }
+    }
+
+    /**
+     * Runs the given collection as soon as a slot is free, blocking the caller until then. If a collection of the same
+     * resource is still running, the given one is deferred until that one is done and this method returns right away.
+     * If the pool has been shut down, the collection is rejected and its slot is released again.
+     *
+     * @param collection     the collection to run
+     * @param collectionTime when the collection was due, used to tell whether collection is falling behind
+     * @param resourceId     the resource the collection is for
+     *
+     * @throws RejectedExecutionException if the pool has been shut down
+     */
+    void execute(final Runnable collection, long collectionTime, final int resourceId) throws InterruptedException {
+        if (threadPool == null) {
+            collection.run();
+            return;
+        }
+
+        synchronized (this) {
+            LinkedList<Runnable> deferred = inFlight.get(resourceId);
+            if (deferred != null) {
+                deferred.add(collection);
+                if (log.isDebugEnabled()) {
+                    log.debug("Deferring collection for resource [" + resourceId + "], [" + deferred.size()
+                        + "] collection(s) of it waiting for the running one");
+                }
+                return;
+            }
+            while (active >= concurrency) {
+                if (concurrency < maxConcurrency && (System.currentTimeMillis() - collectionTime) > BEHIND_MILLIS) {
+                    concurrency++;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Measurement collection is behind, now collecting for up to [" + concurrency
+                            + "] resources in parallel");
+                    }
+                } else {
+                    wait(BEHIND_MILLIS);
+                }
+            }
+            active++;
+            inFlight.put(resourceId, new LinkedList<Runnable>());
+        }
+
+        try {
+            threadPool.execute(new Runnable() {
+                public void run() {
+                    Runnable next = collection;
+                    do {
+                        try {
+                            next.run();
+                        } catch (Throwable t) {
+                            log.error("Measurement collection for resource [" + resourceId + "] failed", t);
+                        }
+                        next = nextDeferred(resourceId);
+                    } while (next != null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(resourceId);
+            throw e;
+        }
+    }
+
+    /**
+     * Tells the pool there is nothing to collect right now.
+     */
+    synchronized void idle() {
+        if (concurrency > 1 && active < concurrency) {
+            concurrency--;
+        }
+    }
+
+    synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    synchronized int getActive() {
+        return active;
+    }
+
+    synchronized int getDeferred(int resourceId) {
+        LinkedList<Runnable> deferred = inFlight.get(resourceId);
+        return (deferred != null) ? deferred.size() : 0;
+    }
+
+    void shutdown() {
+        if (threadPool != null) {
+            threadPool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the next deferred collection of the resource, or null after releasing the resource and its slot
+     */
+    private synchronized Runnable nextDeferred(int resourceId) {
+        LinkedList<Runnable> deferred = inFlight.get(resourceId);
+        if (deferred != null && !deferred.isEmpty()) {
+            return deferred.removeFirst();
+        }
+        release(resourceId);
+        return null;
+    }
+
+    /**
+     * Releases the resource and its slot. Collections still deferred for the resource are dropped.
+     */
+    private synchronized void release(int resourceId) {
+        LinkedList<Runnable> deferred = inFlight.remove(resourceId);
+        if (deferred != null && !deferred.isEmpty()) {
+            log.warn("Dropping [" + deferred.size() + "] deferred collection(s) for resource [" + resourceId + "]");
+        }
+        active--;
+        notifyAll();
+    }
+}
@@ -29,8 +29,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
@@ -41,7 +44,9 @@ import org.rhq.core.util.exception.ThrowableUtil;
 
 /**
 * Executes the collection of measurements. Every call results in one new batch of measurements collected. Each batch is
-* limited to a single resource and the measurements that are due to be collected at that time.
+* limited to a single resource and the measurements that are due to be collected at that time. Batches of different
+* resources may be collected concurrently; each one is collected into a report of its own which is then added to the
+* active report in one go.
 *
 * @author Greg Hinkle
 */
@@ -58,6 +63,18 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
     }
 
     public MeasurementReport call() {
+        return collect(this.measurementManager.getNextScheduledSet());
+    }
+
+    /**
+     * Collects the given batch of measurements and adds the values to the active report.
+     *
+     * @param requests the measurements of a single resource that are due at the same time, <code>null</code> if
+     *                 nothing is due
+     *
+     * @return the active report
+     */
+    MeasurementReport collect(Set<ScheduledMeasurementInfo> requests) {
         MeasurementReport report = null;
         try {
             this.measurementManager.getLock().readLock().lock();
@@ -67,8 +84,6 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
 
             InventoryManager im = this.measurementManager.getInventoryManager();
 
-            Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
-
             if (requests != null) {
                 ScheduledMeasurementInfo next = requests.iterator().next();
 
@@ -89,6 +104,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                     return report;
                 }
 
+                MeasurementReport collected = new MeasurementReport();
                 Integer resourceId = next.getResourceId();
                 ResourceContainer container = im.getResourceContainer(resourceId);
                 if (container.getResourceComponentState() != ResourceContainer.ResourceComponentState.STARTED
@@ -108,12 +124,12 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                         scheduleHistory.addRequests(requests);
                     }
 
-                    getValues(measurementComponent, report, requests, container.getResource());
+                    getValues(measurementComponent, collected, requests, container.getResource());
                 }
 
                 this.measurementManager.reschedule(requests);
 
-                report.incrementCollectionTime(System.currentTimeMillis() - start);
+                addToReport(report, collected, System.currentTimeMillis() - start);
             }
         } catch (Throwable t) {
             log.error("Failed to run measurement collection", t);
@@ -124,10 +140,25 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
         return report;
     }
 
+    private void addToReport(MeasurementReport report, MeasurementReport collected, long collectionTime) {
+        synchronized (report) {
+            for (MeasurementDataNumeric data : collected.getNumericData()) {
+                report.addData(data);
+            }
+            for (MeasurementDataTrait data : collected.getTraitData()) {
+                report.addData(data);
+            }
+            for (CallTimeData data : collected.getCallTimeData()) {
+                report.addData(data);
+            }
+            report.incrementCollectionTime(collectionTime);
+        }
+    }
+
     private void getValues(MeasurementFacet measurementComponent, MeasurementReport report,
         Set<? extends MeasurementScheduleRequest> requests, Resource resource) {
+        long start = System.currentTimeMillis();
         try {
-            long start = System.currentTimeMillis();
             measurementComponent.getValues(report, Collections.unmodifiableSet(requests));
             long duration = (System.currentTimeMillis() - start);
             if (duration > 2000L || log.isTraceEnabled()) {
@@ -147,6 +178,9 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                 log.warn("Failure to collect measurement data for " + resource + " - cause: "
                     + ThrowableUtil.getAllMessages(t));
             }
+        } finally {
+            this.measurementManager.recordCollectionLatency(resource.getResourceType(), System.currentTimeMillis()
+                - start);
         }
     }
 
@@ -178,7 +212,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             }
         }
 
-        public void addRequests(Set<ScheduledMeasurementInfo> requests) {
+        public synchronized void addRequests(Set<ScheduledMeasurementInfo> requests) {
             String now = new Date().toString() + " ";
 
             for (ScheduledMeasurementInfo request : requests) {
@@ -186,7 +220,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             }
         }
 
-        public String toString() {
+        public synchronized String toString() {
             StringBuilder sb = new StringBuilder();
             while (!isEmpty()) {
                 sb.append("\n  ");
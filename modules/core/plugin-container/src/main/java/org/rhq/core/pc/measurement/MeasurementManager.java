@@ -19,6 +19,8 @@
 
 package org.rhq.core.pc.measurement;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.Date;
@@ -29,6 +31,7 @@ import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,6 +45,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.clientapi.agent.measurement.MeasurementAgentService;
+import org.rhq.core.clientapi.server.measurement.MeasurementServerService;
 import org.rhq.core.domain.measurement.DataType;
 import org.rhq.core.domain.measurement.MeasurementData;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
@@ -56,6 +60,7 @@ import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.pc.ContainerService;
 import org.rhq.core.pc.PluginContainer;
 import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.ServerServices;
 import org.rhq.core.pc.agent.AgentService;
 import org.rhq.core.pc.agent.AgentServiceStreamRemoter;
 import org.rhq.core.pc.inventory.InventoryManager;
@@ -86,10 +91,22 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     static final int FACET_METHOD_TIMEOUT = 30 * 1000; // 30 seconds
 
+    private static final String BACKLOG_FILE_NAME = "measurement-backlog.dat";
+
+    // the backlog is a single buffer, so the number of bytes it takes, header included, must fit in an int
+    private static final int MAX_BACKLOG_SIZE = (Integer.MAX_VALUE - MeasurementBacklog.HEADER_SIZE)
+        / MeasurementBacklog.RECORD_SIZE;
+
+    // the backlog is sent in reports of this many measurements, and no more than this many reports at a time
+    private static final int BACKLOG_BATCH_SIZE = 20000;
+    private static final int BACKLOG_BATCHES_PER_SEND = 5;
+
     static final Log LOG = LogFactory.getLog(MeasurementManager.class);
 
     private final ScheduledThreadPoolExecutor collectorThreadPool;
     private final ScheduledThreadPoolExecutor senderThreadPool;
+    private final MeasurementCollectorPool collectorPool;
+    private final MeasurementBacklog backlog;
 
     private final MeasurementSenderRunner measurementSenderRunner;
     private final MeasurementCollectorRunner measurementCollectorRunner;
@@ -99,6 +116,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     private final PriorityQueue<ScheduledMeasurementInfo> scheduledRequests = new PriorityQueue<ScheduledMeasurementInfo>(
         10000);
 
+    private final MeasurementCollectionPlanner collectionPlanner = new MeasurementCollectionPlanner();
+
     private final InventoryManager inventoryManager;
 
     private final Map<Integer, String> traitCache = new HashMap<Integer, String>();
@@ -107,6 +126,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private volatile MeasurementReport activeReport = new MeasurementReport();
 
+    private volatile boolean serverReachable = true;
+
     private final ReentrantReadWriteLock measurementLock = new ReentrantReadWriteLock(true);
 
     // -- monitoring information
@@ -117,6 +138,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private final AtomicLong lateCollections = new AtomicLong(0);
     private final AtomicLong failedCollection = new AtomicLong(0);
+    private final CollectionLatencyHistograms collectionLatencies = new CollectionLatencyHistograms();
 
     public MeasurementManager(PluginContainerConfiguration configuration, AgentServiceStreamRemoter streamRemoter,
         InventoryManager inventoryManager) {
@@ -127,21 +149,60 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         this.inventoryManager = inventoryManager;
 
         if (configuration.isInsideAgent()) {
-            int threadPoolSize = configuration.getMeasurementCollectionThreadPoolSize();
-            collectorThreadPool = new ScheduledThreadPoolExecutor(threadPoolSize, new LoggingThreadFactory(
+            // one thread hands out the due collections, the collector pool runs them
+            collectorThreadPool = new ScheduledThreadPoolExecutor(1, new LoggingThreadFactory(
                 COLLECTOR_THREAD_POOL_NAME, true));
+            collectorPool = new MeasurementCollectorPool(configuration.getMeasurementCollectionThreadPoolSize());
             senderThreadPool = new ScheduledThreadPoolExecutor(2, new LoggingThreadFactory(SENDER_THREAD_POOL_NAME,
                 true));
             measurementSenderRunner = new MeasurementSenderRunner(this);
             measurementCollectorRunner = new MeasurementCollectorRunner(this);
+            backlog = createBacklog(configuration);
         } else {
             senderThreadPool = null;
             collectorThreadPool = null;
+            collectorPool = null;
+            backlog = null;
             measurementSenderRunner = null;
             measurementCollectorRunner = null;
         }
     }
 
+    private static MeasurementBacklog createBacklog(PluginContainerConfiguration configuration) {
+        int size = Math.min(configuration.getMeasurementBacklogSize(), MAX_BACKLOG_SIZE);
+        if (size <= 0) {
+            return null;
+        }
+
+        File dataDirectory = configuration.getDataDirectory();
+        if (configuration.isMeasurementBacklogPersistent() && dataDirectory != null && dataDirectory.isDirectory()) {
+            File file = new File(dataDirectory, BACKLOG_FILE_NAME);
+            try {
+                MeasurementBacklog fileBacklog = new MeasurementBacklog(size, file);
+                if (fileBacklog.size() > 0) {
+                    LOG.info("Found [" + fileBacklog.size() + "] measurements that were not sent yet in " + file);
+                }
+                return fileBacklog;
+            } catch (IOException e) {
+                LOG.warn("Cannot map the measurement backlog file " + file + ", the backlog is kept in memory: " + e);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Cannot map the measurement backlog file " + file + ", the backlog is kept in memory: " + e);
+            }
+        }
+
+        try {
+            return new MeasurementBacklog(size);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Cannot allocate a measurement backlog of [" + size + "] measurements, measurements collected "
+                + "while the server cannot be reached are queued with the other commands: " + e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            LOG.warn("Cannot allocate a measurement backlog of [" + size + "] measurements, measurements collected "
+                + "while the server cannot be reached are queued with the other commands: " + e);
+            return null;
+        }
+    }
+
     public void initialize() {
         LOG.info("Initializing Measurement Manager...");
 
@@ -183,13 +244,29 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
                 while (!collectorThreadPool.isShutdown()) {
                     long next = getNextExpectedCollectionTime();
                     if (next == Long.MIN_VALUE) {
+                        collectorPool.idle();
                         Thread.sleep(10000);
                     } else {
                         long delay = next - System.currentTimeMillis();
                         if (delay <= 0) {
-                            //                  collectorThreadPool.execute(measurementCollectorRunner);
-                            measurementCollectorRunner.call();
+                            final Set<ScheduledMeasurementInfo> requests = getNextScheduledSet();
+                            if (requests != null) {
+                                ScheduledMeasurementInfo first = requests.iterator().next();
+                                try {
+                                    collectorPool.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            measurementCollectorRunner.collect(requests);
+                                        }
+                                    }, first.getNextCollection(), first.getResourceId());
+                                } catch (RejectedExecutionException e) {
+                                    // the collector pool was shut down, don't lose the schedules taken off the queue
+                                    putBack(requests);
+                                    return;
+                                }
+                            }
                         } else {
+                            collectorPool.idle();
                             if (!collectorThreadPool.isShutdown()) {
                                 Thread.sleep(delay);
                             }
@@ -301,6 +378,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         if (this.collectorThreadPool != null) {
             LOG.debug("Shutting down measurement collector thread pool...");
             PluginContainer.shutdownExecutorService(this.collectorThreadPool, true);
+            this.collectorPool.shutdown();
         }
 
         if (this.senderThreadPool != null) {
@@ -308,6 +386,10 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
             PluginContainer.shutdownExecutorService(this.senderThreadPool, true);
         }
 
+        if (this.backlog != null) {
+            this.backlog.close();
+        }
+
         if (configuration.isStartManagementBean()) {
             MBeanServer server = ManagementFactory.getPlatformMBeanServer();
             try {
@@ -409,6 +491,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         } else {
             firstCollection += 30000L;
         }
+        firstCollection = this.collectionPlanner.getFirstCollection(resourceId, firstCollection);
 
         for (MeasurementScheduleRequest request : requests) {
             ScheduledMeasurementInfo info = new ScheduledMeasurementInfo(request, resourceId);
@@ -426,6 +509,10 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     @Override
     public synchronized void unscheduleCollection(Set<Integer> resourceIds) {
+        for (Integer resourceId : resourceIds) {
+            this.collectionPlanner.remove(resourceId);
+        }
+
         Iterator<ScheduledMeasurementInfo> itr = this.scheduledRequests.iterator();
         while (itr.hasNext()) {
             ScheduledMeasurementInfo info = itr.next();
@@ -540,10 +627,22 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return nextScheduledSet;
     }
 
+    /**
+     * Puts schedules taken off the queue by {@link #getNextScheduledSet()} back, unchanged.
+     *
+     * @param scheduledMeasurementInfos the schedules to put back
+     */
+    private synchronized void putBack(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
+        for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
+            this.scheduledRequests.offer(scheduledMeasurement);
+        }
+    }
+
     /**
      * Reschedules the given measurement schedules so the next collection occurs in the future.
      * The next collection will be pushed out by the number of seconds of the schedule's collection
-     * interval.
+     * interval, adjusted so that it lines up with the other schedules of the same resource
+     * (see {@link MeasurementCollectionPlanner}).
      *
      * @param scheduledMeasurementInfos the schedules to reschedule
      */
@@ -551,7 +650,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
         for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
             long interval = scheduledMeasurement.getInterval();
-            scheduledMeasurement.setNextCollection(scheduledMeasurement.getNextCollection() + interval);
+            scheduledMeasurement.setNextCollection(this.collectionPlanner.getNextCollection(
+                scheduledMeasurement.getResourceId(), interval, scheduledMeasurement.getNextCollection()));
             this.scheduledRequests.offer(scheduledMeasurement);
         }
     }
@@ -563,9 +663,11 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
      * <pre>
      * Now + 30s + [1..Interval]
      *
-     * Where [1..Interval] is some random number of seconds no lower that 1 and no higher than the standard interval
-     * for the measurement.
+     * Where [1..Interval] is some random number of seconds no lower that 1 and no higher than the shortest standard
+     * interval of the late measurements of the resource.
      * </pre>
+     * The random number is picked once per resource and the resource's collections are re-aligned on the new time,
+     * so its measurements keep being collected together.
      *
      * @param scheduledMeasurementInfos the late schedules to reschedule
      */
@@ -576,18 +678,32 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
                 + scheduledMeasurementInfos);
         }
 
-        long now = System.currentTimeMillis();
+        Map<Integer, Long> shortestIntervals = new HashMap<Integer, Long>();
         for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
-            // push out 30s from the current time to at least get a minimal 30s interval
-            long nextCollection = now + 30000L;
-
-            // then add a random number of seconds [1..interval].  This will spread out the next collection times to
-            // hopefully avoid the "hot-spot" that caused us to fall behind.
-            long interval = scheduledMeasurement.getInterval();
-            int maxRandomInterval = (int) (interval / 1000L); // exclusive upper bound
-            long randomInterval = ((RANDOM.nextInt(maxRandomInterval) + 1) * 1000L);
+            Long shortest = shortestIntervals.get(scheduledMeasurement.getResourceId());
+            if (shortest == null || scheduledMeasurement.getInterval() < shortest) {
+                shortestIntervals.put(scheduledMeasurement.getResourceId(), scheduledMeasurement.getInterval());
+            }
+        }
 
-            nextCollection += randomInterval;
+        long now = System.currentTimeMillis();
+        Map<Integer, Long> nextCollections = new HashMap<Integer, Long>();
+        for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
+            int resourceId = scheduledMeasurement.getResourceId();
+            Long nextCollection = nextCollections.get(resourceId);
+            if (nextCollection == null) {
+                // push out 30s from the current time to at least get a minimal 30s interval
+                nextCollection = now + 30000L;
+
+                // then add a random number of seconds [1..interval].  This will spread out the next collection times
+                // to hopefully avoid the "hot-spot" that caused us to fall behind.
+                long interval = shortestIntervals.get(resourceId);
+                int maxRandomInterval = Math.max(1, (int) (interval / 1000L)); // exclusive upper bound
+                long randomInterval = ((RANDOM.nextInt(maxRandomInterval) + 1) * 1000L);
+
+                nextCollection = this.collectionPlanner.moveAnchor(resourceId, nextCollection + randomInterval);
+                nextCollections.put(resourceId, nextCollection);
+            }
 
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Rescheduling next collection of [" + scheduledMeasurement + "] for "
@@ -610,6 +726,14 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         this.sinceLastCollectedMeasurements.addAndGet(report.getDataCount());
         this.totalTimeCollecting.addAndGet(report.getCollectionTime());
         if (configuration.getServerServices() != null) {
+            if (this.backlog != null && !this.serverReachable) {
+                // keep the numeric data out of the command queue until the server is back; the rest is small
+                this.backlog.addAll(report.getNumericData());
+                report.getNumericData().clear();
+                if (report.getDataCount() == 0) {
+                    return;
+                }
+            }
             try {
                 configuration.getServerServices().getMeasurementServerService().mergeMeasurementReport(report);
             } catch (Exception e) {
@@ -618,6 +742,58 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
+    /**
+     * Sends the oldest measurements of the backlog to the server, if there are any and the server can be reached.
+     * Large backlogs are sent a few batches at a time. Each batch is sent synchronously and only removed from the
+     * backlog once the server has it, so a failure leaves it in place, in order, for the next attempt.
+     */
+    void sendBacklog() {
+        ServerServices serverServices = configuration.getServerServices();
+        if (this.backlog == null || serverServices == null) {
+            return;
+        }
+
+        MeasurementServerService service = serverServices.getSynchronousMeasurementServerService();
+        if (service == null) {
+            service = serverServices.getMeasurementServerService();
+        }
+
+        for (int i = 0; i < BACKLOG_BATCHES_PER_SEND && this.serverReachable && this.backlog.size() > 0; i++) {
+            MeasurementReport batch = new MeasurementReport();
+            long sent = this.backlog.copyTo(batch, BACKLOG_BATCH_SIZE);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending [" + batch.getDataCount() + "] measurements from the backlog, ["
+                    + (this.backlog.size() - batch.getDataCount()) + "] left");
+            }
+            try {
+                service.mergeMeasurementReport(batch);
+            } catch (Exception e) {
+                LOG.warn("Failure to report measurements from the backlog to server, will retry later: " + e);
+                return;
+            }
+            this.backlog.removeUpTo(sent);
+        }
+    }
+
+    /**
+     * Tells the manager whether the server can currently be reached. While it cannot, collected numeric measurements
+     * are kept in the measurement backlog instead of being queued for sending.
+     *
+     * @param reachable <code>true</code> if measurement reports can be sent to the server
+     */
+    public void setServerReachable(boolean reachable) {
+        if (this.serverReachable != reachable && this.backlog != null) {
+            if (reachable) {
+                LOG.info("Server can be reached again, sending the [" + this.backlog.size()
+                    + "] measurements of the backlog");
+            } else {
+                LOG.info("Server cannot be reached, keeping numeric measurements in a backlog of ["
+                    + this.backlog.getCapacity() + "] measurements");
+            }
+        }
+        this.serverReachable = reachable;
+    }
+
     private Double updatePerMinuteMetric(MeasurementDataNumeric numeric) {
         CachedValue previousValue = this.perMinuteCache.get(numeric.getScheduleId());
         this.perMinuteCache.put(numeric.getScheduleId(), new CachedValue(numeric.getTimestamp(), numeric.getValue()));
@@ -781,11 +957,35 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         this.failedCollection.addAndGet(count);
     }
 
+    void recordCollectionLatency(ResourceType resourceType, long millis) {
+        this.collectionLatencies.record(resourceType, millis);
+    }
+
     @Override
     public long getFailedCollections() {
         return failedCollection.get();
     }
 
+    @Override
+    public long getBacklogMeasurements() {
+        return (backlog != null) ? backlog.size() : 0;
+    }
+
+    @Override
+    public long getBacklogDroppedMeasurements() {
+        return (backlog != null) ? backlog.getDropped() : 0;
+    }
+
+    @Override
+    public int getCollectionConcurrency() {
+        return (collectorPool != null) ? collectorPool.getConcurrency() : 0;
+    }
+
+    @Override
+    public String[] getCollectionLatencyHistograms() {
+        return collectionLatencies.toStringArray();
+    }
+
     private static class CachedValue {
         CachedValue(long timestamp, double value) {
             this.timestamp = timestamp;
@@ -39,4 +39,24 @@ public interface MeasurementManagerMBean {
     long getLateCollections();
 
     long getFailedCollections();
+
+    /**
+     * @return the number of numeric measurements waiting in the backlog until the server can be reached again
+     */
+    long getBacklogMeasurements();
+
+    /**
+     * @return the number of numeric measurements dropped because the backlog was full
+     */
+    long getBacklogDroppedMeasurements();
+
+    /**
+     * @return the number of resources whose measurements may currently be collected in parallel
+     */
+    int getCollectionConcurrency();
+
+    /**
+     * @return histograms of the time the measurement facets take to collect, one line per plugin and resource type
+     */
+    String[] getCollectionLatencyHistograms();
 }
\ No newline at end of file
@@ -63,6 +63,8 @@ public class MeasurementSenderRunner implements Callable<MeasurementReport>, Run
             LOG.debug("Measurement report contains no data - not sending to Server.");
         }
 
+        this.measurementManager.sendBacklog();
+
         return report;
     }
 
@@ -0,0 +1,124 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+@Test
+public class DiscoveryTaskPoolTest {
+
+    public void testSingleThreadRunsInline() throws Exception {
+        DiscoveryTaskPool pool = new DiscoveryTaskPool(null, 1, 1);
+        try {
+            final Thread caller = Thread.currentThread();
+            Future<Boolean> future = pool.submit("test", new Callable<Boolean>() {
+                public Boolean call() {
+                    return Thread.currentThread() == caller;
+                }
+            });
+            assertTrue(future.isDone());
+            assertTrue(future.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testPerPluginLimit() throws Exception {
+        DiscoveryTaskPool pool = new DiscoveryTaskPool(null, 4, 2);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final CountDownLatch release = new CountDownLatch(1);
+
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 6; ++i) {
+                final int n = i;
+                futures.add(pool.submit("busy", new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), now));
+                        }
+                        release.await(10, TimeUnit.SECONDS);
+                        running.decrementAndGet();
+                        return n;
+                    }
+                }));
+            }
+
+            // the queued tasks of the busy plugin must not keep another plugin from running
+            Future<String> other = pool.submit("other", new Callable<String>() {
+                public String call() {
+                    return "done";
+                }
+            });
+            assertEquals(other.get(5, TimeUnit.SECONDS), "done");
+
+            release.countDown();
+            for (int i = 0; i < futures.size(); ++i) {
+                assertEquals(futures.get(i).get(5, TimeUnit.SECONDS).intValue(), i);
+            }
+            assertEquals(maxRunning.get(), 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testCancel() throws Exception {
+        DiscoveryTaskPool pool = new DiscoveryTaskPool(null, 2, 1);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch interrupted = new CountDownLatch(1);
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 3; ++i) {
+                futures.add(pool.submit("test", new Callable<Object>() {
+                    public Object call() {
+                        started.countDown();
+                        try {
+                            Thread.sleep(10000L);
+                        } catch (InterruptedException e) {
+                            interrupted.countDown();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            DiscoveryTaskPool.cancel(futures);
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            for (Future<Object> future : futures) {
+                assertTrue(future.isCancelled());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+
+@Test
+public class MeasurementBacklogTest {
+
+    public void testOldestMeasurementsAreDropped() {
+        MeasurementBacklog backlog = new MeasurementBacklog(3);
+        for (int i = 1; i <= 5; i++) {
+            backlog.add(i, 1000L * i, i / 2.0);
+        }
+        assertEquals(backlog.size(), 3);
+        assertEquals(backlog.getDropped(), 2L);
+
+        MeasurementReport report = new MeasurementReport();
+        assertEquals(backlog.removeUpTo(backlog.copyTo(report, 2)), 2);
+        assertEquals(backlog.size(), 1);
+        assertNumeric(report, 3, 4);
+
+        backlog.add(6, 6000L, 3.0);
+        report = new MeasurementReport();
+        assertEquals(backlog.removeUpTo(backlog.copyTo(report, 10)), 2);
+        assertEquals(backlog.size(), 0);
+        assertNumeric(report, 5, 6);
+    }
+
+    public void testMeasurementsStayUntilRemoved() {
+        MeasurementBacklog backlog = new MeasurementBacklog(4);
+        for (int i = 1; i <= 3; i++) {
+            backlog.add(i, 1000L * i, i / 2.0);
+        }
+
+        // a failed send leaves the backlog as it was
+        MeasurementReport report = new MeasurementReport();
+        backlog.copyTo(report, 2);
+        assertNumeric(report, 1, 2);
+        assertEquals(backlog.size(), 3);
+
+        report = new MeasurementReport();
+        long sent = backlog.copyTo(report, 2);
+        assertNumeric(report, 1, 2);
+        assertEquals(backlog.removeUpTo(sent), 2);
+        assertEquals(backlog.size(), 1);
+
+        report = new MeasurementReport();
+        backlog.copyTo(report, 10);
+        assertNumeric(report, 3, 3);
+    }
+
+    public void testMeasurementsDroppedWhileSendingAreNotRemovedTwice() {
+        MeasurementBacklog backlog = new MeasurementBacklog(3);
+        for (int i = 1; i <= 3; i++) {
+            backlog.add(i, 1000L * i, i / 2.0);
+        }
+
+        MeasurementReport report = new MeasurementReport();
+        long sent = backlog.copyTo(report, 2);
+        assertNumeric(report, 1, 2);
+
+        // the backlog is full, so these drop the first sent measurement while the send is under way
+        backlog.add(4, 4000L, 2.0);
+        assertEquals(backlog.getDropped(), 1L);
+        assertEquals(backlog.removeUpTo(sent), 1);
+        assertEquals(backlog.size(), 2);
+
+        report = new MeasurementReport();
+        assertEquals(backlog.removeUpTo(backlog.copyTo(report, 10)), 2);
+        assertNumeric(report, 3, 4);
+    }
+
+    public void testMappedFileKeepsTheBacklog() throws Exception {
+        File file = File.createTempFile("measurement-backlog", ".dat");
+        try {
+            MeasurementBacklog backlog = new MeasurementBacklog(4, file);
+            for (int i = 1; i <= 6; i++) {
+                backlog.add(i, 1000L * i, i / 2.0);
+            }
+            assertEquals(backlog.removeUpTo(backlog.copyTo(new MeasurementReport(), 1)), 1);
+            backlog.close();
+
+            backlog = new MeasurementBacklog(4, file);
+            assertEquals(backlog.size(), 3);
+            assertEquals(backlog.getDropped(), 2L);
+            MeasurementReport report = new MeasurementReport();
+            assertEquals(backlog.removeUpTo(backlog.copyTo(report, 10)), 3);
+            assertNumeric(report, 4, 6);
+            backlog.close();
+
+            // a backlog of a different size starts out empty
+            backlog = new MeasurementBacklog(8, file);
+            assertEquals(backlog.size(), 0);
+            backlog.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertNumeric(MeasurementReport report, int firstScheduleId, int lastScheduleId) {
+        assertEquals(report.getNumericData().size(), lastScheduleId - firstScheduleId + 1);
+        Iterator<MeasurementDataNumeric> iter = report.getNumericData().iterator();
+        for (int i = firstScheduleId; i <= lastScheduleId; i++) {
+            MeasurementDataNumeric data = iter.next();
+            assertEquals(data.getScheduleId(), i);
+            assertEquals(data.getTimestamp(), 1000L * i);
+            assertEquals(data.getValue(), i / 2.0);
+        }
+    }
+}
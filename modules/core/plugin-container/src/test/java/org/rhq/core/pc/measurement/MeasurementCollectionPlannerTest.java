@@ -0,0 +1,79 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+@Test
+public class MeasurementCollectionPlannerTest {
+
+    public void testAlign() {
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 1000L), 1000L);
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 1001L), 1060L);
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 1120L), 1120L);
+        // grid points before the anchor
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 999L), 1000L);
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 930L), 940L);
+        assertEquals(MeasurementCollectionPlanner.align(1000L, 60L, 940L), 940L);
+    }
+
+    public void testIntervalsOfAResourceStayAligned() {
+        MeasurementCollectionPlanner planner = new MeasurementCollectionPlanner();
+        long first = planner.getFirstCollection(1, 10000L);
+        assertEquals(first, 10000L);
+
+        long everyMinute = first;
+        long everyFiveMinutes = first;
+        for (int i = 0; i < 5; i++) {
+            everyMinute = planner.getNextCollection(1, 60000L, everyMinute);
+        }
+        everyFiveMinutes = planner.getNextCollection(1, 300000L, everyFiveMinutes);
+        assertEquals(everyMinute, 310000L);
+        assertEquals(everyFiveMinutes, everyMinute);
+    }
+
+    public void testScheduleAddedLaterJoinsTheGrid() {
+        MeasurementCollectionPlanner planner = new MeasurementCollectionPlanner();
+        planner.getFirstCollection(1, 0L);
+
+        // the first collection of a newly scheduled measurement is not delayed...
+        assertEquals(planner.getFirstCollection(1, 25000L), 25000L);
+        // ...but the next one is back on the grid of the resource
+        assertEquals(planner.getNextCollection(1, 60000L, 25000L), 60000L);
+        assertEquals(planner.getNextCollection(1, 60000L, 60000L), 120000L);
+
+        // other resources have grids of their own
+        assertEquals(planner.getFirstCollection(2, 25000L), 25000L);
+        assertEquals(planner.getNextCollection(2, 60000L, 25000L), 85000L);
+    }
+
+    public void testMovedAnchor() {
+        MeasurementCollectionPlanner planner = new MeasurementCollectionPlanner();
+        planner.getFirstCollection(1, 0L);
+        assertEquals(planner.moveAnchor(1, 45000L), 45000L);
+
+        // a schedule that was not late moves to the new grid at its next collection
+        assertEquals(planner.getNextCollection(1, 60000L, 60000L), 105000L);
+
+        planner.remove(1);
+        assertEquals(planner.getNextCollection(1, 60000L, 60000L), 120000L);
+    }
+}
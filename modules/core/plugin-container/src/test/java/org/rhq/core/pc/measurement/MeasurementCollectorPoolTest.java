@@ -0,0 +1,192 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+
+@Test
+public class MeasurementCollectorPoolTest {
+
+    public void testSingleThreadRunsInline() throws Exception {
+        MeasurementCollectorPool pool = new MeasurementCollectorPool(1);
+        try {
+            final Thread caller = Thread.currentThread();
+            final boolean[] inline = new boolean[1];
+            pool.execute(new Runnable() {
+                public void run() {
+                    inline[0] = (Thread.currentThread() == caller);
+                }
+            }, System.currentTimeMillis(), 1);
+            assertTrue(inline[0]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testConcurrencyAdapts() throws Exception {
+        MeasurementCollectorPool pool = new MeasurementCollectorPool(3);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(4);
+            Runnable collection = new Runnable() {
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            };
+
+            long behind = System.currentTimeMillis() - MeasurementCollectorPool.BEHIND_MILLIS - 1000L;
+            pool.execute(collection, behind, 1);
+            assertEquals(pool.getConcurrency(), 1);
+            pool.execute(collection, behind, 2);
+            pool.execute(collection, behind, 3);
+            assertEquals(pool.getConcurrency(), 3);
+            assertEquals(pool.getActive(), 3);
+
+            // never more than the maximum, the collection has to wait for a free slot
+            release.countDown();
+            pool.execute(collection, behind, 4);
+            assertEquals(pool.getConcurrency(), 3);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            // shrinks back when there is nothing to do
+            for (int i = 0; i < 5; i++) {
+                pool.idle();
+            }
+            assertEquals(pool.getConcurrency(), 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testSameResourceCollectionsDoNotOverlap() throws Exception {
+        MeasurementCollectorPool pool = new MeasurementCollectorPool(3);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch otherResourceDone = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(3);
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+            final int[] running = new int[1];
+            final boolean[] overlapped = new boolean[1];
+
+            class Collection implements Runnable {
+                private final String name;
+                private final CountDownLatch await;
+
+                Collection(String name, CountDownLatch await) {
+                    this.name = name;
+                    this.await = await;
+                }
+
+                public void run() {
+                    synchronized (running) {
+                        overlapped[0] |= (++running[0] > 1);
+                    }
+                    try {
+                        if (await != null) {
+                            await.await(10, TimeUnit.SECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    order.add(name);
+                    synchronized (running) {
+                        running[0]--;
+                    }
+                    done.countDown();
+                }
+            }
+
+            long behind = System.currentTimeMillis() - MeasurementCollectorPool.BEHIND_MILLIS - 1000L;
+            pool.execute(new Collection("first", release), behind, 1);
+            pool.execute(new Collection("second", null), behind, 1);
+            pool.execute(new Collection("third", null), behind, 1);
+            assertEquals(pool.getDeferred(1), 2);
+            assertEquals(pool.getActive(), 1);
+
+            // other resources are not held back by the running collection
+            pool.execute(new Runnable() {
+                public void run() {
+                    otherResourceDone.countDown();
+                }
+            }, behind, 2);
+            assertTrue(otherResourceDone.await(10, TimeUnit.SECONDS));
+            assertTrue(order.isEmpty());
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertFalse(overlapped[0]);
+            assertEquals(order, Arrays.asList("first", "second", "third"));
+            assertEquals(pool.getDeferred(1), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testRejectedCollectionReleasesItsSlot() throws Exception {
+        MeasurementCollectorPool pool = new MeasurementCollectorPool(2);
+        pool.shutdown();
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    throw new AssertionError("a shut down pool should not collect");
+                }
+            }, System.currentTimeMillis(), 1);
+            fail("the collection should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(pool.getActive(), 0);
+        assertEquals(pool.getDeferred(1), 0);
+    }
+
+    public void testLatencyHistograms() {
+        ResourceType type = new ResourceType("Linux", "Platforms", ResourceCategory.PLATFORM, null);
+        CollectionLatencyHistograms histograms = new CollectionLatencyHistograms();
+        assertEquals(histograms.toStringArray().length, 0);
+
+        histograms.record(type, 5L);
+        histograms.record(type, 10L);
+        histograms.record(type, 45L);
+        histograms.record(type, 60000L);
+        String[] lines = histograms.toStringArray();
+        assertEquals(lines.length, 1);
+        assertEquals(lines[0], "Platforms:Linux count=4, avg=15015ms, <=10ms=2, <=50ms=1, >30000ms=1");
+    }
+}
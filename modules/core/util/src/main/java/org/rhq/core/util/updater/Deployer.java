@@ -377,8 +377,13 @@ public class Deployer {
         // we cannot expect them being there from previous bundle deployments)
         putDirectoryEntries(original);
 
+        // files that did not change since the last scan don't need to be read again
+        FileHashcodeCache hashcodeCache = this.deploymentsMetadata.loadFileHashcodeCache();
         ChangesFileHashcodeMap current = original.rescan(this.deploymentData.getDestinationDir(),
-            this.deploymentData.getIgnoreRegex(), reportNewRootFilesAsNew);
+            this.deploymentData.getIgnoreRegex(), reportNewRootFilesAsNew, hashcodeCache);
+        if (!dryRun) {
+            this.deploymentsMetadata.storeFileHashcodeCache(hashcodeCache);
+        }
         FileHashcodeMap newFiles = getNewDeploymentFileHashcodeMap();
 
         if (current.getUnknownContent() != null) {
@@ -43,6 +43,7 @@ public class DeploymentsMetadata {
     public static final String PREVIOUS_DEPLOYMENT_FILE = "previous-deployment.properties";
     public static final String DEPLOYMENT_FILE = "deployment.properties";
     public static final String HASHCODES_FILE = "file-hashcodes.dat";
+    public static final String HASHCODES_CACHE_FILE = "file-hashcodes-cache.dat";
     public static final String BACKUP_DIR = "backup";
     public static final String EXT_BACKUP_DIR = "ext-backup";
 
@@ -392,11 +393,37 @@ public class DeploymentsMetadata {
         Set<String> ignored) throws Exception {
 
         // calculate the hashcodes from the live files and write the data to the proper file
-        FileHashcodeMap map = FileHashcodeMap.generateFileHashcodeMap(getRootDirectory(), ignoreRegex, ignored);
+        FileHashcodeCache cache = loadFileHashcodeCache();
+        FileHashcodeMap map = FileHashcodeMap.generateFileHashcodeMap(getRootDirectory(), ignoreRegex, ignored, cache);
         setCurrentDeployment(deploymentProps, map, true);
+        storeFileHashcodeCache(cache);
         return map;
     }
 
+    /**
+     * Loads the cache of the hashcodes calculated for the live files during previous scans. If there is no cache
+     * yet, an empty one is returned.
+     *
+     * @return the hashcode cache of the live files
+     */
+    public FileHashcodeCache loadFileHashcodeCache() {
+        return FileHashcodeCache.loadFromFile(new File(getMetadataDirectory(), HASHCODES_CACHE_FILE));
+    }
+
+    /**
+     * Stores the cache of the hashcodes calculated for the live files so later scans can reuse them. Nothing is
+     * stored if the metadata directory does not exist.
+     *
+     * @param cache the hashcode cache of the live files
+     * @throws Exception if failed to write the cache
+     */
+    public void storeFileHashcodeCache(FileHashcodeCache cache) throws Exception {
+        File metaDir = getMetadataDirectory();
+        if (metaDir.isDirectory()) {
+            cache.storeToFile(new File(metaDir, HASHCODES_CACHE_FILE));
+        }
+    }
+
     private File getCurrentDeploymentMetadataDirectory() throws Exception {
         DeploymentProperties currentDeploymentProps = getCurrentDeploymentProperties();
         return getDeploymentMetadataDirectory(currentDeploymentProps.getDeploymentId());
@@ -0,0 +1,187 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.util.updater;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the hashcodes of files along with the size and last modified time the files had when their hashcodes
+ * were generated. As long as a file's size and last modified time have not changed, its hashcode can be reused
+ * without reading the file again.
+ *
+ * Because file timestamps have limited granularity, a file modified shortly before the cache was stored could be
+ * modified again without its last modified time changing. Such entries are never trusted; their files are simply
+ * hashed again.
+ *
+ * This object is thread-safe.
+ */
+public class FileHashcodeCache {
+    private static final String COLUMN_SEPARATOR = "\t";
+
+    /**
+     * Entries of files modified within this many milliseconds of the time the cache was stored are not trusted.
+     */
+    private static final long RACY_INTERVAL = 2000L;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final Map<String, Entry> used = new ConcurrentHashMap<String, Entry>();
+    private final long storedTime;
+
+    /**
+     * Creates an empty cache.
+     */
+    public FileHashcodeCache() {
+        this(0L);
+    }
+
+    private FileHashcodeCache(long storedTime) {
+        this.storedTime = storedTime;
+    }
+
+    /**
+     * Loads a cache previously stored via {@link #storeToFile(File)}. Since the cache is only an optimization, a
+     * missing or unreadable file results in an empty cache rather than an error.
+     *
+     * @param file the file to load
+     * @return the cache found in the file, or an empty cache
+     */
+    public static FileHashcodeCache loadFromFile(File file) {
+        if (!file.isFile()) {
+            return new FileHashcodeCache();
+        }
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line = reader.readLine();
+                if (line == null) {
+                    return new FileHashcodeCache();
+                }
+
+                FileHashcodeCache cache = new FileHashcodeCache(Long.parseLong(line));
+                line = reader.readLine();
+                while (line != null) {
+                    String[] columns = line.split(COLUMN_SEPARATOR);
+                    if (columns.length != 4) {
+                        return new FileHashcodeCache();
+                    }
+                    cache.entries.put(columns[0],
+                        new Entry(Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[3]));
+                    line = reader.readLine();
+                }
+                return cache;
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            return new FileHashcodeCache();
+        }
+    }
+
+    /**
+     * Stores the entries that were looked up or added since this cache was created or loaded; entries of files that
+     * are no longer scanned are dropped.
+     *
+     * @param file the file to store the cache to
+     * @throws Exception if failed to store the cache to the given file
+     */
+    public void storeToFile(File file) throws Exception {
+        PrintWriter writer = new PrintWriter(file);
+        try {
+            writer.println(System.currentTimeMillis());
+            for (Map.Entry<String, Entry> entry : used.entrySet()) {
+                Entry value = entry.getValue();
+                writer.println(entry.getKey() + COLUMN_SEPARATOR + value.size + COLUMN_SEPARATOR + value.lastModified
+                    + COLUMN_SEPARATOR + value.hashcode);
+            }
+        } finally {
+            writer.close();
+        }
+        return;
+    }
+
+    /**
+     * Returns the cached hashcode of a file if it is still valid for the file's current size and last modified time.
+     *
+     * @param path the path of the file, as used in the {@link FileHashcodeMap}
+     * @param size the current size of the file
+     * @param lastModified the current last modified time of the file
+     * @return the cached hashcode or <code>null</code> if the file needs to be hashed
+     */
+    public String get(String path, long size, long lastModified) {
+        path = convertPath(path);
+        Entry entry = entries.get(path);
+        if (entry == null || entry.size != size || entry.lastModified != lastModified
+            || lastModified + RACY_INTERVAL >= storedTime) {
+            return null;
+        }
+        used.put(path, entry);
+        return entry.hashcode;
+    }
+
+    /**
+     * Remembers the hashcode of a file. The size and last modified time must have been obtained <i>before</i> the
+     * file was read, so a modification made while the file was being hashed is detected later on.
+     *
+     * @param path the path of the file, as used in the {@link FileHashcodeMap}
+     * @param size the size of the file
+     * @param lastModified the last modified time of the file
+     * @param hashcode the hashcode of the file
+     */
+    public void put(String path, long size, long lastModified, String hashcode) {
+        path = convertPath(path);
+        Entry entry = new Entry(size, lastModified, hashcode);
+        entries.put(path, entry);
+        used.put(path, entry);
+    }
+
+    /**
+     * @return the number of entries in this cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static String convertPath(String path) {
+        // use the same path form as FileHashcodeMap
+        return (File.separatorChar != '/') ? path.replace(File.separatorChar, '/') : path;
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String hashcode;
+
+        private Entry(long size, long lastModified, String hashcode) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hashcode = hashcode;
+        }
+    }
+}
@@ -31,6 +31,13 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.rhq.core.util.MessageDigestGenerator;
@@ -54,6 +61,22 @@ public class FileHashcodeMap extends TreeMap<String, String> {
     private static final long serialVersionUID = 1L;
     private static final String COLUMN_SEPARATOR = "\t";
 
+    /**
+     * The number of threads used to generate the hashcodes of files; can be overridden by the system property
+     * "rhq.updater.hashcode-threads". If 1, all hashcodes are generated by the calling thread.
+     */
+    private static final int HASHCODE_THREADS;
+
+    static {
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        try {
+            threads = Integer.parseInt(System.getProperty("rhq.updater.hashcode-threads", String.valueOf(threads)));
+        } catch (Exception e) {
+            // use the default
+        }
+        HASHCODE_THREADS = Math.max(1, threads);
+    }
+
     /**
      * Given a directory, this will recursively traverse that directory's files/subdirectories and
      * generate the hashcode map for all files it encounters and add that data to the given map.
@@ -70,6 +93,23 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      */
     public static FileHashcodeMap generateFileHashcodeMap(File rootDir, Pattern ignoreRegex, Set<String> ignored)
         throws Exception {
+        return generateFileHashcodeMap(rootDir, ignoreRegex, ignored, null);
+    }
+
+    /**
+     * Same as {@link #generateFileHashcodeMap(File, Pattern, Set)} except the hashcodes of files that have not changed
+     * since they were put in the given cache are reused. Files whose hashcodes are generated are added to the cache.
+     *
+     * @param rootDir existing directory to scan and generate hashcodes for all its files
+     * @param ignoreRegex a regular expression that indicates which files/directories should be ignored.
+     *                    If a relative file/directory path matches this regex, it will be skipped.
+     * @param ignored a set that will contain those files/directories that were ignored while scanning the root dir
+     * @param cache the hashcodes of previous scans, may be <code>null</code>
+     * @returns the map containing all files found and their generated hashcodes
+     * @throws Exception if failed to generate hashcode for the directory
+     */
+    public static FileHashcodeMap generateFileHashcodeMap(File rootDir, Pattern ignoreRegex, Set<String> ignored,
+        FileHashcodeCache cache) throws Exception {
 
         if (ignored == null) {
             ignored = new HashSet<String>();
@@ -78,7 +118,10 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         }
 
         FileHashcodeMap map = new FileHashcodeMap();
-        generateFileHashcodeMapRecursive(map, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, ignored);
+        Map<String, File> filesToHash = new HashMap<String, File>();
+        generateFileHashcodeMapRecursive(map, filesToHash, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex,
+            ignored);
+        map.putAll(generateHashcodes(filesToHash, cache, false));
         return map;
     }
 
@@ -88,6 +131,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      * If given a regular file, a single entry is added to the given map.
      * 
      * @param map         the map where the hashcode data is stored
+     * @param filesToHash the files found whose hashcodes are to be generated, keyed by their relative paths
      * @param rootPath    the top root directory that is being scanned - all files in the returned map will be relative to this
      * @param level       the level deep in the file hierarchy currently being processed (0==at top root dir)
      * @param fileOrDir   existing directory to scan and generate hashcodes for all its files, or existing
@@ -98,8 +142,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception if failed to generate hashcode for the file/directory
      */
-    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, String rootPath, int level,
-        File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
+    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, Map<String, File> filesToHash,
+        String rootPath, int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
 
         if (fileOrDir == null || !fileOrDir.exists()) {
             throw new Exception("Non-existent file/directory provided: " + fileOrDir);
@@ -128,24 +172,105 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             File[] children = fileOrDir.listFiles();
             if (children != null) {
                 for (File child : children) {
-                    generateFileHashcodeMapRecursive(map, rootPath, level + 1, child, ignoreRegex, ignored);
+                    generateFileHashcodeMapRecursive(map, filesToHash, rootPath, level + 1, child, ignoreRegex,
+                        ignored);
                 }
             } else {
                 map.put(path, UNKNOWN_DIR_HASHCODE);
             }
         } else {
-            String hashcode;
-            try {
-                hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-            } catch (Exception e) {
-                hashcode = UNKNOWN_FILE_HASHCODE;
-            }
-            map.put(path, hashcode);
+            filesToHash.put(path, fileOrDir);
         }
 
         return;
     }
 
+    /**
+     * Generates the hashcodes of the given files, using multiple threads if there are enough files to make it
+     * worthwhile. Hashcodes found in the cache for unchanged files are reused; generated ones are added to the cache.
+     *
+     * @param filesToHash the files whose hashcodes are to be generated, keyed by their paths
+     * @param cache the hashcodes of previous scans, may be <code>null</code>
+     * @param failOnError if <code>true</code>, a failure to generate a hashcode is thrown; otherwise the file is given
+     *                    the {@link #UNKNOWN_FILE_HASHCODE}
+     * @return the hashcodes of the files, keyed by their paths
+     * @throws Exception if failed to generate a hashcode and <code>failOnError</code> is <code>true</code>
+     */
+    private static Map<String, String> generateHashcodes(Map<String, File> filesToHash, final FileHashcodeCache cache,
+        final boolean failOnError) throws Exception {
+
+        Map<String, String> hashcodes = new HashMap<String, String>(filesToHash.size());
+        int threads = Math.min(HASHCODE_THREADS, filesToHash.size() / 2);
+
+        if (threads <= 1) {
+            for (Map.Entry<String, File> entry : filesToHash.entrySet()) {
+                hashcodes.put(entry.getKey(), generateHashcode(entry.getKey(), entry.getValue(), cache, failOnError));
+            }
+            return hashcodes;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FileHashcodeMap-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            Map<String, Future<String>> futures = new HashMap<String, Future<String>>(filesToHash.size());
+            for (final Map.Entry<String, File> entry : filesToHash.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return generateHashcode(entry.getKey(), entry.getValue(), cache, failOnError);
+                    }
+                }));
+            }
+
+            for (Map.Entry<String, Future<String>> future : futures.entrySet()) {
+                try {
+                    hashcodes.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw (cause instanceof Exception) ? (Exception) cause : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return hashcodes;
+    }
+
+    private static String generateHashcode(String path, File file, FileHashcodeCache cache, boolean failOnError)
+        throws Exception {
+
+        try {
+            // obtain size and modified time before reading, so a change while hashing is noticed by the next scan
+            long size = file.length();
+            long lastModified = file.lastModified();
+            if (cache != null) {
+                String hashcode = cache.get(path, size, lastModified);
+                if (hashcode != null) {
+                    return hashcode;
+                }
+            }
+
+            String hashcode = MessageDigestGenerator.getDigestString(file);
+            if (cache != null) {
+                cache.put(path, size, lastModified, hashcode);
+            }
+            return hashcode;
+        } catch (Exception e) {
+            if (failOnError) {
+                throw e;
+            }
+            return UNKNOWN_FILE_HASHCODE;
+        }
+    }
+
     /**
      * Loads in the file that contains file/hashcode map data.
      *
@@ -221,7 +346,24 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      */
     public ChangesFileHashcodeMap rescan(File rootDir, Pattern ignoreRegex, boolean reportNewRootFilesAsNew)
         throws Exception {
+        return rescan(rootDir, ignoreRegex, reportNewRootFilesAsNew, null);
+    }
+
+    /**
+     * Same as {@link #rescan(File, Pattern, boolean)} except the hashcodes of files that have not changed since they
+     * were put in the given cache are reused. Files whose hashcodes are generated are added to the cache.
+     *
+     * @param rootDir directory where the relative paths are expected to be
+     * @param ignoreRegex if relative paths of files under rootDir match this, they will be ignored.
+     * @param reportNewRootFilesAsNew do not report as new any unrelated files found in the root dir
+     * @param cache the hashcodes of previous scans, may be <code>null</code>
+     * @return a map with current files/hashcodes, including files that were not found in original.
+     * @throws Exception
+     */
+    public ChangesFileHashcodeMap rescan(File rootDir, Pattern ignoreRegex, boolean reportNewRootFilesAsNew,
+        FileHashcodeCache cache) throws Exception {
         ChangesFileHashcodeMap current = new ChangesFileHashcodeMap(this);
+        Map<String, File> filesToHash = new HashMap<String, File>();
 
         // go through our original files and recalculate their hashcodes
         for (Map.Entry<String, String> entry : entrySet()) {
@@ -240,17 +382,10 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             }
 
             if (originalFile.exists()) {
-                String currentHashcode = FileHashcodeMap.DIRECTORY_HASHCODE;
-                if (!originalFile.isDirectory()) {
-                    currentHashcode = MessageDigestGenerator.getDigestString(originalFile);
-                }
-
-                current.put(originalFileString, currentHashcode);
-
-                // if file has been changed, mark it as such in our return map
-                String originalHashcode = entry.getValue();
-                if (!currentHashcode.equals(originalHashcode)) {
-                    current.getChanges().put(originalFileString, currentHashcode);
+                if (originalFile.isDirectory()) {
+                    updateCurrentHashcode(current, originalFileString, FileHashcodeMap.DIRECTORY_HASHCODE);
+                } else {
+                    filesToHash.put(originalFileString, originalFile);
                 }
             } else {
                 // file has been deleted! still put an entry in our returned map but mark it as deleted
@@ -259,12 +394,19 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             }
         }
 
+        // recalculate the hashcodes of the original files that still exist, several at a time
+        for (Map.Entry<String, String> entry : generateHashcodes(filesToHash, cache, true).entrySet()) {
+            updateCurrentHashcode(current, entry.getKey(), entry.getValue());
+        }
+
         // now recursively traverse the root directory and look for new files that aren't in our original map
         // files that have been added need to be put into our returned map and also marked as added
         FileHashcodeMap newFiles = new FileHashcodeMap();
         Set<String> skippedFiles = new HashSet<String>();
-        lookForNewFilesRecursive(newFiles, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, current
-            .getIgnored(), reportNewRootFilesAsNew);
+        Map<String, File> newFilesToHash = new HashMap<String, File>();
+        lookForNewFilesRecursive(newFiles, newFilesToHash, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir,
+            ignoreRegex, current.getIgnored(), reportNewRootFilesAsNew);
+        newFiles.putAll(generateHashcodes(newFilesToHash, cache, false));
         current.putAll(newFiles);
         current.getAdditions().putAll(newFiles);
         current.getSkipped().addAll(skippedFiles);
@@ -272,10 +414,21 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         return current;
     }
 
+    private void updateCurrentHashcode(ChangesFileHashcodeMap current, String path, String currentHashcode) {
+        current.put(path, currentHashcode);
+
+        // if file has been changed, mark it as such in our return map
+        String originalHashcode = get(path);
+        if (!currentHashcode.equals(originalHashcode)) {
+            current.getChanges().put(path, currentHashcode);
+        }
+    }
+
     /**
      * This looks for new files under the given fileOrDir and adds them to <code>newFiles</code>.
      * 
      * @param newFiles    the map where the new, current file/hashcode data will be stored
+     * @param newFilesToHash the new files whose hashcodes are to be generated, keyed by their relative paths
      * @param skippedFiles a set where names of unrelated files/directories are stored. The names
      *                     found here after this method returns are those files/dirs that were found
      *                     in the top level root dir, but were skipped over and not processed. This will not
@@ -291,9 +444,9 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception 
      */
-    private void lookForNewFilesRecursive(FileHashcodeMap newFiles, Set<String> skippedFiles, String rootPath,
-        int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored, boolean reportNewRootFilesAsNew)
-        throws Exception {
+    private void lookForNewFilesRecursive(FileHashcodeMap newFiles, Map<String, File> newFilesToHash,
+        Set<String> skippedFiles, String rootPath, int level, File fileOrDir, Pattern ignoreRegex,
+        Set<String> ignored, boolean reportNewRootFilesAsNew) throws Exception {
 
         if (fileOrDir == null || !fileOrDir.exists()) {
             throw new Exception("Non-existent file/directory provided: " + fileOrDir);
@@ -366,8 +519,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
                 for (File child : children) {
                     // skip this child if we are at the top root dir and it is not related to our fileset
                     if (relatedTopLevelFiles == null || relatedTopLevelFiles.contains(child.getName())) {
-                        lookForNewFilesRecursive(newFiles, skippedFiles, rootPath, level + 1, child, ignoreRegex,
-                            ignored, reportNewRootFilesAsNew);
+                        lookForNewFilesRecursive(newFiles, newFilesToHash, skippedFiles, rootPath, level + 1,
+                            child, ignoreRegex, ignored, reportNewRootFilesAsNew);
                     } else {
                         skippedFiles.add(child.getName());
                     }
@@ -376,13 +529,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         } else {
             // if the file is not yet known to us, add it to the map of new files
             if (!containsKey(path)) {
-                String hashcode;
-                try {
-                    hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-                } catch (Exception e) {
-                    hashcode = UNKNOWN_FILE_HASHCODE;
-                }
-                newFiles.put(path, hashcode);
+                newFilesToHash.put(path, fileOrDir);
             }
         }
 
@@ -0,0 +1,111 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.util.updater;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * Measures how long it takes to scan a large synthetic bundle destination. This only runs if the number of files to
+ * generate is given, e.g. <code>-Drhq.updater.benchmark.files=100000</code>. Run it once more with
+ * <code>-Drhq.updater.hashcode-threads=1</code> to compare against hashing on a single thread.
+ */
+@Test
+public class FileHashcodeMapBenchmarkTest {
+
+    private static final int FILE_COUNT = Integer.getInteger("rhq.updater.benchmark.files", 0);
+    private static final int FILES_PER_DIR = 500;
+    private static final int MAX_FILE_SIZE = 16384;
+
+    public void benchmarkScan() throws Exception {
+        if (FILE_COUNT <= 0) {
+            throw new SkipException("set rhq.updater.benchmark.files to run this benchmark");
+        }
+
+        File tmpDir = FileUtil.createTempDirectory("fileHashcodeMapBenchmark", ".dir", null);
+        try {
+            createFiles(tmpDir);
+
+            long start = System.currentTimeMillis();
+            FileHashcodeMap original = FileHashcodeMap.generateFileHashcodeMap(tmpDir, null, null);
+            report("initial scan", start);
+
+            start = System.currentTimeMillis();
+            ChangesFileHashcodeMap current = original.rescan(tmpDir, null, true);
+            report("rescan", start);
+            assert current.getChanges().isEmpty() : current.getChanges();
+
+            // the first rescan fills the cache, the second one reuses it
+            File cacheFile = new File(tmpDir.getParentFile(), tmpDir.getName() + ".cache");
+            try {
+                FileHashcodeCache cache = new FileHashcodeCache();
+                original.rescan(tmpDir, null, true, cache);
+                cache.storeToFile(cacheFile);
+                Thread.sleep(2500L); // so the files written above are not considered too recent for the cache
+
+                cache = FileHashcodeCache.loadFromFile(cacheFile);
+                start = System.currentTimeMillis();
+                current = original.rescan(tmpDir, null, true, cache);
+                report("rescan with hashcode cache", start);
+                assert current.getChanges().isEmpty() : current.getChanges();
+            } finally {
+                cacheFile.delete();
+            }
+        } finally {
+            FileUtil.purge(tmpDir, true);
+        }
+    }
+
+    private void createFiles(File rootDir) throws Exception {
+        Random random = new Random(FILE_COUNT);
+        byte[] content = new byte[MAX_FILE_SIZE];
+        long lastModified = System.currentTimeMillis() - 60000L;
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            File dir = new File(rootDir, "lib" + (i / FILES_PER_DIR));
+            dir.mkdirs();
+            File file = new File(dir, "file" + i + ".jar");
+            random.nextBytes(content);
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content, 0, random.nextInt(MAX_FILE_SIZE));
+            } finally {
+                out.close();
+            }
+            file.setLastModified(lastModified);
+        }
+    }
+
+    private void report(String what, long start) {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println("[" + what + "] of [" + FILE_COUNT + "] files took [" + elapsed + "]ms ("
+            + (FILE_COUNT * 1000L / elapsed) + " files/s)");
+    }
+}
@@ -289,6 +289,68 @@ public class FileHashcodeMapTest {
         }
     }
 
+    public void testRescanWithCache() throws Exception {
+        File tmpDir = FileUtil.createTempDirectory("fileHashcodeMapTest", ".dir", null);
+        try {
+            long lastModified = System.currentTimeMillis() - 60000L;
+            for (int i = 0; i < 20; i++) {
+                File file = new File(tmpDir, "dir" + (i % 3) + fileSeparator + "test" + i + ".txt");
+                file.getParentFile().mkdirs();
+                StreamUtil.copy(new ByteArrayInputStream(("test" + i).getBytes()), new FileOutputStream(file));
+                assert file.setLastModified(lastModified);
+            }
+
+            FileHashcodeCache cache = new FileHashcodeCache();
+            FileHashcodeMap originalMap = FileHashcodeMap.generateFileHashcodeMap(tmpDir, null, null, cache);
+            assert originalMap.size() == 20 : originalMap;
+            assertSameMap(originalMap, FileHashcodeMap.generateFileHashcodeMap(tmpDir, null, null));
+            assert cache.size() == 20 : cache.size();
+
+            File cacheFile = new File(tmpDir, "cache.dat");
+            cache.storeToFile(cacheFile);
+            cache = FileHashcodeCache.loadFromFile(cacheFile);
+            assert cache.size() == 20 : cache.size();
+            assert cacheFile.delete();
+
+            // same size and same modified time - the cache is trusted and the file is not read again
+            File sameSize = new File(tmpDir, "dir1" + fileSeparator + "test1.txt");
+            StreamUtil.copy(new ByteArrayInputStream("TEST1".getBytes()), new FileOutputStream(sameSize));
+            assert sameSize.setLastModified(lastModified);
+
+            // modified time changed - the file is hashed again
+            File touched = new File(tmpDir, "dir2" + fileSeparator + "test2.txt");
+            StreamUtil.copy(new ByteArrayInputStream("TEST2".getBytes()), new FileOutputStream(touched));
+
+            ChangesFileHashcodeMap currentMap = originalMap.rescan(tmpDir, null, false, cache);
+            assert currentMap.size() == 20 : currentMap;
+            assert currentMap.get("dir1" + fileSeparator + "test1.txt").equals(
+                originalMap.get("dir1" + fileSeparator + "test1.txt")) : currentMap;
+            assert currentMap.getChanges().size() == 1 : currentMap.getChanges();
+            assert currentMap.getChanges().get("dir2" + fileSeparator + "test2.txt").equals(
+                MessageDigestGenerator.getDigestString(touched)) : currentMap.getChanges();
+
+            // without the cache, every change is found
+            currentMap = originalMap.rescan(tmpDir, null, false);
+            assert currentMap.getChanges().size() == 2 : currentMap.getChanges();
+        } finally {
+            FileUtil.purge(tmpDir, true);
+        }
+    }
+
+    public void testLoadMissingOrCorruptCache() throws Exception {
+        File tmpFile = File.createTempFile("fileHashcodeMapTest", ".test");
+        try {
+            assert FileHashcodeCache.loadFromFile(new File(tmpFile.getAbsolutePath() + ".missing")).size() == 0;
+
+            PrintWriter writer = new PrintWriter(tmpFile);
+            writer.println("not a timestamp");
+            writer.close();
+            assert FileHashcodeCache.loadFromFile(tmpFile).size() == 0;
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
     public void testRescanSkipNewRootDirFiles() throws Exception {
         File absPathFile = null;
         File tmpDir = FileUtil.createTempDirectory("fileHashcodeMapTest", ".dir", null);
@@ -913,6 +913,42 @@ public class AgentConfiguration {
         return value;
     }
 
+    /**
+     * Returns the number of bytes remote streams transfer per request (0 or less if they are accessed call by call).
+     *
+     * @return remote stream chunk size
+     */
+    public int getClientSenderRemoteStreamChunkSize() {
+        int value = m_preferences.getInt(AgentConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE,
+            AgentConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE);
+
+        return value;
+    }
+
+    /**
+     * Returns the maximum number of chunk requests a remote input stream has in flight.
+     *
+     * @return remote stream window
+     */
+    public int getClientSenderRemoteStreamWindow() {
+        int value = m_preferences.getInt(AgentConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_WINDOW,
+            AgentConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_WINDOW);
+
+        return value;
+    }
+
+    /**
+     * Returns the flag that, if true, indicates remote input stream chunks are compressed before being sent.
+     *
+     * @return <code>true</code> if remote stream chunks are compressed
+     */
+    public boolean isClientSenderRemoteStreamCompressed() {
+        boolean flag = m_preferences.getBoolean(AgentConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_COMPRESSED,
+            AgentConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_COMPRESSED);
+
+        return flag;
+    }
+
     /**
      * This is a convienence method that returns the full client sender configuration. It combines all the
      * getClientSenderXXX methods and puts all the data in the returned data object.
@@ -928,6 +964,9 @@ public class AgentConfiguration {
         config.dataDirectory = getDataDirectory();
         config.serverPollingIntervalMillis = getClientSenderServerPollingInterval();
         config.commandSpoolFileCompressData = isClientSenderCommandSpoolFileCompressed();
+        config.remoteStreamChunkSize = getClientSenderRemoteStreamChunkSize();
+        config.remoteStreamWindow = getClientSenderRemoteStreamWindow();
+        config.remoteStreamCompress = isClientSenderRemoteStreamCompressed();
         config.retryInterval = getClientSenderRetryInterval();
         config.maxRetries = getClientSenderMaxRetries();
         config.commandSpoolFileName = getClientSenderCommandSpoolFileName();
@@ -1159,6 +1198,14 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_CHILD_RESOURCE_DISOVERY_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_CHILD_RESOURCE_DISCOVERY_PERIOD);
 
+        // get the discovery thread pool size and the per-plugin discovery limit
+        int discovery_threadpool_size = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_DISCOVERY_THREADPOOL_SIZE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_DISCOVERY_THREADPOOL_SIZE);
+        int discovery_max_per_plugin = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_DISCOVERY_MAX_CONCURRENT_PER_PLUGIN,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_DISCOVERY_MAX_CONCURRENT_PER_PLUGIN);
+
         // get the time interval in which availability scans run
         long avail_scan_period = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_PERIOD);
@@ -1184,6 +1231,13 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE);
 
+        // determine how many measurements are kept while the server cannot be reached, and where
+        int meas_backlog_size = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_MEASUREMENT_BACKLOG_SIZE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_BACKLOG_SIZE);
+        boolean meas_backlog_persistent = m_preferences.getBoolean(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_BACKLOG_PERSISTENT,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_BACKLOG_PERSISTENT);
+
         // get the drift settings
         long drift_period = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_DRIFT_DETECTION_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_DRIFT_DETECTION_PERIOD);
@@ -1291,11 +1345,15 @@ public class AgentConfiguration {
         config.setServiceDiscoveryInitialDelay(service_discovery_initial_delay);
         config.setServiceDiscoveryPeriod(service_discovery_period);
         config.setChildResourceDiscoveryDelay(childResourceDiscoveryDelay);
+        config.setDiscoveryThreadPoolSize(discovery_threadpool_size);
+        config.setDiscoveryMaxConcurrentPerPlugin(discovery_max_per_plugin);
         config.setAvailabilityScanInitialDelay(avail_scan_initial_delay);
         config.setAvailabilityScanPeriod(avail_scan_period);
         config.setAvailabilityScanThreadPoolSize(avail_scan_threadpool_size);
         config.setMeasurementCollectionThreadPoolSize(meas_threadpool_size);
         config.setMeasurementCollectionInitialDelay(meas_scan_initial_delay);
+        config.setMeasurementBacklogSize(meas_backlog_size);
+        config.setMeasurementBacklogPersistent(meas_backlog_persistent);
         config.setDriftDetectionInitialDelay(drift_initial_delay);
         config.setDriftDetectionPeriod(drift_period);
         config.setOperationInvokerThreadPoolSize(op_threadpool_size);
@@ -348,6 +348,37 @@ public interface AgentConfigurationConstants {
      */
     boolean DEFAULT_CLIENT_SENDER_COMMAND_SPOOL_FILE_COMPRESSED = false;
 
+    /**
+     * Property that defines the number of bytes remote streams transfer per request. If 0 or less, remote streams are
+     * accessed call by call.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE = PROPERTY_NAME_PREFIX + "client.remote-stream.chunk-size";
+
+    /**
+     * If the remote stream chunk size is not specified, this is the default.
+     */
+    int DEFAULT_CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE = 65536;
+
+    /**
+     * Property that defines the maximum number of chunk requests a remote input stream has in flight.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_WINDOW = PROPERTY_NAME_PREFIX + "client.remote-stream.window";
+
+    /**
+     * If the remote stream window is not specified, this is the default.
+     */
+    int DEFAULT_CLIENT_SENDER_REMOTE_STREAM_WINDOW = 4;
+
+    /**
+     * Property that indicates if remote input stream chunks are compressed before being sent.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_COMPRESSED = PROPERTY_NAME_PREFIX + "client.remote-stream.compressed";
+
+    /**
+     * If the remote stream compress flag is not specified, this is the default.
+     */
+    boolean DEFAULT_CLIENT_SENDER_REMOTE_STREAM_COMPRESSED = false;
+
     /**
      * Property that provides the amount of time, in milliseconds, that the sender will pause before attempting to retry
      * a failed command whose delivery is to be guaranteed.
@@ -637,6 +668,27 @@ public interface AgentConfigurationConstants {
      */
     long DEFAULT_PLUGINS_CHILD_RESOURCE_DISCOVERY_PERIOD = PluginContainerConfiguration.CHILD_RESOURCE_DISCOVERY_DELAY_DEFAULT;
 
+    /**
+     * Defines how many threads can be concurrently running discovery components within a single discovery scan.
+     */
+    String PLUGINS_DISCOVERY_THREADPOOL_SIZE = PROPERTY_NAME_PREFIX + "plugins.discovery.threadpool-size";
+
+    /**
+     * The default threadpool size for discovery scans.
+     */
+    int DEFAULT_PLUGINS_DISCOVERY_THREADPOOL_SIZE = PluginContainerConfiguration.DISCOVERY_THREADPOOL_SIZE_DEFAULT;
+
+    /**
+     * Defines how many discovery components of a single plugin can be running concurrently within a discovery scan.
+     */
+    String PLUGINS_DISCOVERY_MAX_CONCURRENT_PER_PLUGIN = PROPERTY_NAME_PREFIX
+        + "plugins.discovery.max-concurrent-per-plugin";
+
+    /**
+     * The default number of discovery components of a single plugin that can be running concurrently.
+     */
+    int DEFAULT_PLUGINS_DISCOVERY_MAX_CONCURRENT_PER_PLUGIN = PluginContainerConfiguration.DISCOVERY_MAX_CONCURRENT_PER_PLUGIN_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first availability scan is run.
      */
@@ -692,6 +744,27 @@ public interface AgentConfigurationConstants {
      */
     long DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_INITIAL_DELAY = PluginContainerConfiguration.MEASUREMENT_COLLECTION_INITIAL_DELAY_DEFAULT;
 
+    /**
+     * The number of numeric measurements kept outside of the heap while the server cannot be reached. 0 disables the
+     * backlog.
+     */
+    String PLUGINS_MEASUREMENT_BACKLOG_SIZE = PROPERTY_NAME_PREFIX + "plugins.measurement-backlog.size";
+
+    /**
+     * The default size of the measurement backlog.
+     */
+    int DEFAULT_PLUGINS_MEASUREMENT_BACKLOG_SIZE = PluginContainerConfiguration.MEASUREMENT_BACKLOG_SIZE_DEFAULT;
+
+    /**
+     * If <code>true</code>, the measurement backlog is kept in a memory-mapped file in the data directory.
+     */
+    String PLUGINS_MEASUREMENT_BACKLOG_PERSISTENT = PROPERTY_NAME_PREFIX + "plugins.measurement-backlog.persistent";
+
+    /**
+     * By default the measurement backlog is only kept in memory.
+     */
+    boolean DEFAULT_PLUGINS_MEASUREMENT_BACKLOG_PERSISTENT = PluginContainerConfiguration.MEASUREMENT_BACKLOG_PERSISTENT_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first drift detection scan is run.
      */
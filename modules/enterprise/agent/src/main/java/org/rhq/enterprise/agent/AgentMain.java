@@ -117,6 +117,7 @@ import org.rhq.core.pc.PluginContainerConfiguration;
 import org.rhq.core.pc.RebootRequestListener;
 import org.rhq.core.pc.ServerServices;
 import org.rhq.core.pc.inventory.InventoryManager;
+import org.rhq.core.pc.measurement.MeasurementManager;
 import org.rhq.core.pc.plugin.FileSystemPluginFinder;
 import org.rhq.core.pc.util.LoggingThreadFactory;
 import org.rhq.core.system.SystemInfoFactory;
@@ -1881,6 +1882,9 @@ public class AgentMain {
         //the upgrade results with the server due to some network glitch
         m_clientSender.addStateListener(new PluginContainerConditionalRestartListener(), false);
 
+        //and let the measurement subsystem know when it has to keep its data until the server is back
+        m_clientSender.addStateListener(new MeasurementBacklogStateListener(), false);
+
         return register;
     }
 
@@ -2045,10 +2049,18 @@ public class AgentMain {
             BundleServerService bundleServerService = factory.getRemotePojo(BundleServerService.class);
             DriftServerService driftServerService = factory.getRemotePojo(DriftServerService.class);
 
+            // the measurement backlog needs to know whether the server got its data, so it bypasses the
+            // asynchronous, guaranteed delivery that the interface annotations ask for
+            ClientRemotePojoFactory synchronousFactory = m_clientSender.getClientRemotePojoFactory();
+            synchronousFactory.setIgnoreAnnotations(true);
+            MeasurementServerService synchronousMeasurementServerService = synchronousFactory
+                .getRemotePojo(MeasurementServerService.class);
+
             ServerServices serverServices = new ServerServices();
             serverServices.setCoreServerService(coreServerService);
             serverServices.setDiscoveryServerService(discoveryServerService);
             serverServices.setMeasurementServerService(measurementServerService);
+            serverServices.setSynchronousMeasurementServerService(synchronousMeasurementServerService);
             serverServices.setOperationServerService(operationServerService);
             serverServices.setConfigurationServerService(configurationServerService);
             serverServices.setResourceFactoryServerService(resourceFactoryServerSerfice);
@@ -2111,6 +2123,11 @@ public class AgentMain {
         plugin_container.initialize();
         LOG.debug(AgentI18NResourceKeys.PLUGIN_CONTAINER_INITIALIZED, pc_config);
 
+        MeasurementManager measurementManager = plugin_container.getMeasurementManager();
+        if (measurementManager != null && m_clientSender != null) {
+            measurementManager.setServerReachable(m_clientSender.isSending());
+        }
+
         return plugin_container.isStarted();
     }
 
@@ -4049,6 +4066,29 @@ public class AgentMain {
         }
     }
 
+    /**
+     * Tells the measurement manager whether the server can be reached, so measurements collected while it cannot are
+     * kept in the measurement backlog instead of piling up in the sender's queue.
+     */
+    private class MeasurementBacklogStateListener implements ClientCommandSenderStateListener {
+        public boolean startedSending(ClientCommandSender sender) {
+            setServerReachable(true);
+            return true;
+        }
+
+        public boolean stoppedSending(ClientCommandSender sender) {
+            setServerReachable(false);
+            return true;
+        }
+
+        private void setServerReachable(boolean reachable) {
+            MeasurementManager measurementManager = PluginContainer.getInstance().getMeasurementManager();
+            if (measurementManager != null) {
+                measurementManager.setServerReachable(reachable);
+            }
+        }
+    }
+
     /**
      * When the agent starts up, it needs to create the communications servers before starting the plugin container;
      * however, the agent must not process any incoming commands until after the plugin container fully starts. This
@@ -1,6 +1,6 @@
 /*
  * RHQ Management Platform
- * Copyright (C) 2005-2008 Red Hat, Inc.
+ * Copyright (C) 2005-2014 Red Hat, Inc.
  * All rights reserved.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -18,55 +18,198 @@
  */
 package org.rhq.enterprise.communications;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import mazz.i18n.Logger;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.client.CommandPreprocessor;
+import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 import org.rhq.enterprise.communications.command.server.CommandListener;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
+import org.rhq.enterprise.communications.util.ConcurrencyManager;
 import org.rhq.enterprise.communications.util.ConcurrencyManager.Permit;
 import org.rhq.enterprise.communications.util.NotPermittedException;
 
 /**
- * This is a listener for commands coming into the {@link ServiceContainer}'s {@link CommandPreprocessor} and will
- * immediately drop the command if the global concurrent limit has been exceeded. In other words, if we've received too
- * many incoming commands at the same time, we'll start dropping additional incoming commands under the command
- * processor can catch up.
+ * This is a listener for commands coming into the {@link ServiceContainer}'s {@link CommandPreprocessor} and will drop
+ * the command if the global concurrent limit has been exceeded. In other words, if we've received too many incoming
+ * commands at the same time, we'll start dropping additional incoming commands until the command processor can catch
+ * up.
+ *
+ * <p>Commands are admitted according to their {@link Priority}. Normal and low priority commands may only hold a
+ * configured share of the global limit, so that a flood of low value commands (e.g. full inventory reports) cannot
+ * starve the commands we care most about (e.g. measurement and availability reports). The shares are nested: a low
+ * priority command holds a permit of the normal priority pool as well, so normal and low priority commands together
+ * never hold more than the normal priority share and the rest of the global limit is always left to high priority
+ * commands. When no permit is available, a command waits up to the max wait time configured for its priority before
+ * it is dropped. Dropped commands get a retry hint back that asks low priority senders to back off longer.</p>
  *
  * @author John Mazzitelli
  */
 public class GlobalConcurrencyLimitCommandListener implements CommandListener {
     public static final String CONCURRENCY_LIMIT_NAME = "rhq.communications.global-concurrency-limit-semaphore";
 
+    /**
+     * The admission priority of incoming commands.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * Admission counts for a single command type.
+     */
+    public static class AdmissionData implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Priority priority;
+        private final long accepted;
+        private final long queued;
+        private final long dropped;
+
+        AdmissionData(Priority priority, long accepted, long queued, long dropped) {
+            this.priority = priority;
+            this.accepted = accepted;
+            this.queued = queued;
+            this.dropped = dropped;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return number of commands that got a permit, including {@link #getQueued() queued} ones
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * @return number of commands that got a permit only after waiting for one
+         */
+        public long getQueued() {
+            return queued;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return "" + priority + ':' + accepted + ':' + queued + ':' + dropped;
+        }
+    }
+
     private static final Logger LOG = CommI18NFactory.getLogger(GlobalConcurrencyLimitCommandListener.class);
 
     private final ServiceContainer serviceContainer;
-    private final ConcurrentLinkedQueue<Permit> permitsObtained;
-    private final Semaphore droppedCommands;
+    private final Map<String, Priority> priorities;
+    private final Map<Priority, Long> maxWaits;
+    private final Map<Priority, Integer> shares;
+    private final ConcurrentMap<String, AtomicLong[]> admissionCounts;
+
+    // commands are received and processed on the same thread, so this is where we remember the permits
+    // the current command holds until it has been processed
+    private final ThreadLocal<Permit[]> permitsObtained;
 
     public GlobalConcurrencyLimitCommandListener(ServiceContainer serviceContainer) {
+        this(serviceContainer, serviceContainer.getConfiguration());
+    }
+
+    public GlobalConcurrencyLimitCommandListener(ServiceContainer serviceContainer,
+        ServiceContainerConfiguration configuration) {
         this.serviceContainer = serviceContainer;
-        this.permitsObtained = new ConcurrentLinkedQueue<Permit>();
-        this.droppedCommands = new Semaphore(0);
+        this.priorities = new HashMap<String, Priority>();
+        this.maxWaits = new HashMap<Priority, Long>();
+        this.shares = new HashMap<Priority, Integer>();
+        this.admissionCounts = new ConcurrentHashMap<String, AtomicLong[]>();
+        this.permitsObtained = new ThreadLocal<Permit[]>();
+
+        if (configuration != null) {
+            addPriorities(configuration.getGlobalConcurrencyLimitHighPriorityCommands(), Priority.HIGH);
+            addPriorities(configuration.getGlobalConcurrencyLimitLowPriorityCommands(), Priority.LOW);
+            maxWaits.put(Priority.HIGH, configuration.getGlobalConcurrencyLimitHighPriorityMaxWait());
+            maxWaits.put(Priority.NORMAL, configuration.getGlobalConcurrencyLimitNormalPriorityMaxWait());
+            maxWaits.put(Priority.LOW, configuration.getGlobalConcurrencyLimitLowPriorityMaxWait());
+            shares.put(Priority.NORMAL, configuration.getGlobalConcurrencyLimitNormalPriorityShare());
+            shares.put(Priority.LOW, configuration.getGlobalConcurrencyLimitLowPriorityShare());
+        }
+    }
+
+    /**
+     * Returns the concurrency limits of the priority pools, given the global concurrency limit. These must be added to
+     * the {@link ConcurrencyManager} along with the global limit. Because low priority commands also hold a normal
+     * priority permit, a low priority share larger than the normal priority share has no effect.
+     *
+     * @param  globalConcurrencyLimit the global concurrency limit
+     *
+     * @return map keyed on the names of the priority pools whose values are their concurrency limits
+     */
+    public Map<String, Integer> getPriorityConcurrencyLimits(int globalConcurrencyLimit) {
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        for (Map.Entry<Priority, Integer> share : shares.entrySet()) {
+            int percent = share.getValue().intValue();
+            if (globalConcurrencyLimit > 0 && percent > 0 && percent < 100) {
+                limits.put(getPoolName(share.getKey()), Math.max(1, (globalConcurrencyLimit * percent) / 100));
+            } else {
+                limits.put(getPoolName(share.getKey()), -1); // no limit other than the global one
+            }
+        }
+        return limits;
     }
 
     /**
      * This will be called for every command coming in. We'll check to see if we are permitted to process this command -
-     * if we've reached the global concurrency limit, this method will throw a {@link NotPermittedException}.
+     * if we've reached the global concurrency limit (or the share of it the command's priority is allowed to hold) and
+     * no permit frees up within the max wait time of the command's priority, this method will throw a
+     * {@link NotPermittedException}.
      *
      * @see CommandListener#receivedCommand(Command)
      */
     public void receivedCommand(Command command) {
+        String key = getCommandKey(command);
+        Priority priority = getPriority(key);
+        AtomicLong[] counts = getAdmissionCounts(key);
+        long maxWait = getMaxWait(priority);
+        long start = System.currentTimeMillis();
+
+        ConcurrencyManager concurrencyManager = this.serviceContainer.getConcurrencyManager();
+        String[] permitNames = getPermitNames(priority);
+        Permit[] permits = new Permit[permitNames.length];
         try {
-            Permit permit = this.serviceContainer.getConcurrencyManager().getPermit(CONCURRENCY_LIMIT_NAME);
-            this.permitsObtained.add(permit);
+            for (int i = 0; i < permitNames.length; i++) {
+                long remainingWait = Math.max(0L, maxWait - (System.currentTimeMillis() - start));
+                permits[i] = concurrencyManager.getPermit(permitNames[i], remainingWait);
+            }
+            this.permitsObtained.set(permits);
         } catch (NotPermittedException npe) {
-            LOG.debug(CommI18NResourceKeys.COMMAND_NOT_PERMITTED, command, npe.getSleepBeforeRetry());
-            this.droppedCommands.release(); // adds 1 to the semaphore count so we know we dropped another command
-            throw npe; // command processor will get this and abort the command
+            for (Permit permit : permits) {
+                concurrencyManager.releasePermit(permit); // null for the permits we did not get, which is a no-op
+            }
+            counts[2].incrementAndGet();
+
+            // low priority senders should back off longer to leave room for the others
+            long sleepBeforeRetry = npe.getSleepBeforeRetry();
+            if (priority == Priority.LOW) {
+                sleepBeforeRetry *= 2;
+            }
+            LOG.debug(CommI18NResourceKeys.COMMAND_NOT_PERMITTED, command, sleepBeforeRetry);
+            throw new NotPermittedException(sleepBeforeRetry); // command processor will get this and abort the command
+        }
+
+        counts[0].incrementAndGet();
+        if (System.currentTimeMillis() - start > 1L) {
+            counts[1].incrementAndGet();
         }
     }
 
@@ -77,23 +220,118 @@ public class GlobalConcurrencyLimitCommandListener implements CommandListener {
      * @see CommandListener#processedCommand(Command, CommandResponse)
      */
     public void processedCommand(Command command, CommandResponse response) {
-        // The droppedCommands is a semaphore so we can use it for its thread-safety.
-        // If there are 1 or more droppedCommand permits, it means we dropped commands
-        // (number of commands dropped were the number of permits in the droppedCommands semaphore).
-        // If we can acquire a droppedCommands permit, it means this listener needs to finish processing
-        // dropped commands and thus we should not release a concurrency manager permit (since
-        // we only add to permitsObtained when we got a concurrency manager permit).
-        // If we cannot acquire a droppedCommands permit, it means this listener has no more
-        // dropped commands to process and we can start releasing concurrency manager permits.
-        if (!this.droppedCommands.tryAcquire()) {
-            // Notice that we don't care which permit we release, just get the head of the queue
-            // and release it. Permits are not directly associated with a command - concurrency
-            // manager just cares about the number of permits, not which commands go with which permits.
-            // Note also that if the concurrency manager happened to be swapped out between the time
-            // we got the permit and now, this release request will be ignored and nothing will break
+        Permit[] permits = this.permitsObtained.get();
+        if (permits != null) {
+            this.permitsObtained.remove();
+
+            // Note that if the concurrency manager happened to be swapped out between the time
+            // we got the permits and now, these release requests will be ignored and nothing will break
             // since permits are associated with the concurrency manager that granted them and giving a
             // permit to a concurrency manager that didn't grant it will simply be a no-op.
-            this.serviceContainer.getConcurrencyManager().releasePermit(this.permitsObtained.poll());
+            ConcurrencyManager concurrencyManager = this.serviceContainer.getConcurrencyManager();
+            for (Permit permit : permits) {
+                concurrencyManager.releasePermit(permit);
+            }
+        }
+    }
+
+    /**
+     * Returns the admission counts of all command types received so far.
+     *
+     * @return map keyed on command type whose values are the admission counts
+     */
+    public Map<String, AdmissionData> getAdmissionData() {
+        Map<String, AdmissionData> data = new HashMap<String, AdmissionData>();
+        for (Map.Entry<String, AtomicLong[]> entry : admissionCounts.entrySet()) {
+            AtomicLong[] counts = entry.getValue();
+            data.put(entry.getKey(), new AdmissionData(getPriority(entry.getKey()), counts[0].get(), counts[1].get(),
+                counts[2].get()));
         }
+        return data;
+    }
+
+    /**
+     * Resets all admission counts.
+     */
+    public void clearAdmissionData() {
+        admissionCounts.clear();
+    }
+
+    /**
+     * Returns the priority of the command with the given key. A command explicitly listed with its interface and method
+     * name takes precedence over its interface being listed.
+     */
+    Priority getPriority(String commandKey) {
+        Priority priority = priorities.get(commandKey);
+        if (priority == null) {
+            int dot = commandKey.indexOf('.');
+            if (dot > 0) {
+                priority = priorities.get(commandKey.substring(0, dot));
+            }
+        }
+        return (priority != null) ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Identifies the command the same way the command processor metrics do - remote POJO invocations by the simple
+     * name of their interface and their method name, everything else by the command type name.
+     */
+    static String getCommandKey(Command command) {
+        if (command instanceof RemotePojoInvocationCommand) {
+            RemotePojoInvocationCommand pojoCmd = (RemotePojoInvocationCommand) command;
+            String ifaceName = pojoCmd.getTargetInterfaceName();
+            ifaceName = ifaceName.substring(ifaceName.lastIndexOf('.') + 1);
+            return ifaceName + '.' + pojoCmd.getNameBasedInvocation().getMethodName();
+        }
+        return (command.getCommandType() != null) ? command.getCommandType().getName() : "unknown";
+    }
+
+    private void addPriorities(String commands, Priority priority) {
+        if (commands != null) {
+            for (String commandKey : commands.split(",")) {
+                commandKey = commandKey.trim();
+                if (commandKey.length() > 0) {
+                    priorities.put(commandKey, priority);
+                }
+            }
+        }
+    }
+
+    private AtomicLong[] getAdmissionCounts(String key) {
+        AtomicLong[] counts = admissionCounts.get(key);
+        if (counts == null) {
+            counts = new AtomicLong[] { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+            AtomicLong[] existing = admissionCounts.putIfAbsent(key, counts);
+            if (existing != null) {
+                counts = existing;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the names of the semaphores a command of the given priority must get a permit from, in the order the
+     * permits must be obtained. Every command needs a global permit; a low priority command also needs a permit from
+     * the low and the normal priority pools, a normal priority command from the normal priority pool.
+     */
+    String[] getPermitNames(Priority priority) {
+        List<String> names = new ArrayList<String>(3);
+        if (priority == Priority.LOW && shares.containsKey(Priority.LOW)) {
+            names.add(getPoolName(Priority.LOW));
+        }
+        if (priority != Priority.HIGH && shares.containsKey(Priority.NORMAL)) {
+            names.add(getPoolName(Priority.NORMAL));
+        }
+        names.add(CONCURRENCY_LIMIT_NAME);
+        return names.toArray(new String[names.size()]);
+    }
+
+    private long getMaxWait(Priority priority) {
+        Long maxWait = maxWaits.get(priority);
+        return (maxWait != null) ? maxWait.longValue() : 0L;
+    }
+
+    static String getPoolName(Priority priority) {
+        return CONCURRENCY_LIMIT_NAME + '.' + priority.name().toLowerCase();
     }
-}
\ No newline at end of file
+}
@@ -239,6 +239,12 @@ public class ServiceContainer {
      */
     private ConcurrencyManager m_concurrencyManager;
 
+    /**
+     * The listener that enforces the global concurrency limit on incoming commands; <code>null</code> if there is no
+     * global concurrency limit.
+     */
+    private GlobalConcurrencyLimitCommandListener m_globalConcurrencyLimitListener;
+
     /**
      * Custom data is a way to share information across disparate components so long as those components
      * have access to this service container object. This data is never used by the service container - it
@@ -378,6 +384,15 @@ public class ServiceContainer {
         m_concurrencyManager = concurrencyManager;
     }
 
+    /**
+     * Returns the listener that enforces the global concurrency limit on incoming commands.
+     *
+     * @return the listener, or <code>null</code> if the global concurrency limit is disabled
+     */
+    public GlobalConcurrencyLimitCommandListener getGlobalConcurrencyLimitListener() {
+        return m_globalConcurrencyLimitListener;
+    }
+
     /**
      * A convienence method that takes a {@link #getClientConfiguration() client configuration} and builds a sender
      * object with it. Note that regardless of the transport specified in <code>server_endpoint</code>, this method will
@@ -557,10 +572,14 @@ public class ServiceContainer {
             // create a new concurrency manager, add our global concurrency limit and replace the existing manager
             Map<String, Integer> limits = m_concurrencyManager.getAllConfiguredNumberOfPermitsAllowed();
             limits.put(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME, globalConcurrencyLimit);
+
+            // the listener also limits how much of the global limit the lower priority commands can take
+            m_globalConcurrencyLimitListener = new GlobalConcurrencyLimitCommandListener(this, m_configuration);
+            limits.putAll(m_globalConcurrencyLimitListener.getPriorityConcurrencyLimits(globalConcurrencyLimit));
             m_concurrencyManager = new ConcurrencyManager(limits);
 
             // add our listener that will drop commands if we reach our limit
-            addCommandListener(new GlobalConcurrencyLimitCommandListener(this));
+            addCommandListener(m_globalConcurrencyLimitListener);
             LOG.info(CommI18NResourceKeys.GLOBAL_CONCURRENCY_LIMIT_SET, globalConcurrencyLimit);
         } else {
             LOG.info(CommI18NResourceKeys.GLOBAL_CONCURRENCY_LIMIT_DISABLED);
@@ -714,6 +733,7 @@ public class ServiceContainer {
         m_clientConfiguration = null;
         m_servicesIndex = null;
         m_concurrencyManager = null;
+        m_globalConcurrencyLimitListener = null;
         m_discoveryListener.removeAll();
         m_commandListeners.clear();
         m_senderCreationListeners.clear();
@@ -116,6 +116,90 @@ public class ServiceContainerConfiguration {
         return value;
     }
 
+    /**
+     * Returns the commands admitted with high priority under the {@link #getGlobalConcurrencyLimit() global limit}.
+     *
+     * @return comma-separated list of commands
+     */
+    public String getGlobalConcurrencyLimitHighPriorityCommands() {
+        String value = m_preferences.get(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS);
+        return value;
+    }
+
+    /**
+     * Returns the commands admitted with low priority under the {@link #getGlobalConcurrencyLimit() global limit}.
+     *
+     * @return comma-separated list of commands
+     */
+    public String getGlobalConcurrencyLimitLowPriorityCommands() {
+        String value = m_preferences.get(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_COMMANDS,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_COMMANDS);
+        return value;
+    }
+
+    /**
+     * Returns the percentage of the global limit that normal priority commands may hold at the same time.
+     *
+     * @return percentage of the global limit
+     */
+    public int getGlobalConcurrencyLimitNormalPriorityShare() {
+        int value = m_preferences.getInt(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_SHARE,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_SHARE);
+        return value;
+    }
+
+    /**
+     * Returns the percentage of the global limit that low priority commands may hold at the same time.
+     *
+     * @return percentage of the global limit
+     */
+    public int getGlobalConcurrencyLimitLowPriorityShare() {
+        int value = m_preferences.getInt(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_SHARE,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_SHARE);
+        return value;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a high priority command waits for a permit before it is dropped.
+     *
+     * @return max wait time in milliseconds
+     */
+    public long getGlobalConcurrencyLimitHighPriorityMaxWait() {
+        long value = m_preferences.getLong(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_MAX_WAIT,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_MAX_WAIT);
+        return value;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a normal priority command waits for a permit before it is dropped.
+     *
+     * @return max wait time in milliseconds
+     */
+    public long getGlobalConcurrencyLimitNormalPriorityMaxWait() {
+        long value = m_preferences.getLong(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_MAX_WAIT,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_MAX_WAIT);
+        return value;
+    }
+
+    /**
+     * Returns the time, in milliseconds, a low priority command waits for a permit before it is dropped.
+     *
+     * @return max wait time in milliseconds
+     */
+    public long getGlobalConcurrencyLimitLowPriorityMaxWait() {
+        long value = m_preferences.getLong(
+            ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_MAX_WAIT,
+            ServiceContainerConfigurationConstants.DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_MAX_WAIT);
+        return value;
+    }
+
     /**
      * Returns the name of the MBeanServer that will be created to house all the services. This is actually the default
      * domain name of the MBeanServer. If an MBeanServer already exists and is registered with this default domain name,
@@ -58,6 +58,83 @@ public interface ServiceContainerConfigurationConstants {
      */
     String GLOBAL_CONCURRENCY_LIMIT = PROPERTY_NAME_PREFIX + "global-concurrency-limit";
 
+    /**
+     * Comma-separated list of commands that are admitted with high priority when the global concurrency limit is
+     * enabled. Remote POJO invocations are identified by their simple interface name and method name (e.g.
+     * "MeasurementServerService.mergeMeasurementReport") or by their simple interface name alone; other commands by
+     * their command type name.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS = GLOBAL_CONCURRENCY_LIMIT + ".high-priority-commands";
+
+    /**
+     * By default, measurement and availability reports, pings and agent connects have high priority.
+     */
+    String DEFAULT_GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS = "MeasurementServerService.mergeMeasurementReport,"
+        + "DiscoveryServerService.mergeAvailabilityReport,CoreServerService.ping,CoreServerService.connectAgent";
+
+    /**
+     * Comma-separated list of commands that are admitted with low priority when the global concurrency limit is
+     * enabled. See {@link #GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS} for the format.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_COMMANDS = GLOBAL_CONCURRENCY_LIMIT + ".low-priority-commands";
+
+    /**
+     * By default, full inventory reports and content discovery reports have low priority.
+     */
+    String DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_COMMANDS = "DiscoveryServerService.mergeInventoryReport,"
+        + "ContentServerService.mergeDiscoveredPackages";
+
+    /**
+     * The percentage of the global concurrency limit that normal priority commands may hold at the same time.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_SHARE = GLOBAL_CONCURRENCY_LIMIT + ".normal-priority-share";
+
+    /**
+     * By default, normal priority commands may hold 80% of the global limit.
+     */
+    int DEFAULT_GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_SHARE = 80;
+
+    /**
+     * The percentage of the global concurrency limit that low priority commands may hold at the same time. Low priority
+     * commands count against the normal priority share as well.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_SHARE = GLOBAL_CONCURRENCY_LIMIT + ".low-priority-share";
+
+    /**
+     * By default, low priority commands may hold 50% of the global limit.
+     */
+    int DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_SHARE = 50;
+
+    /**
+     * The maximum time, in milliseconds, a high priority command waits for a permit before it is dropped.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_MAX_WAIT = GLOBAL_CONCURRENCY_LIMIT + ".high-priority-max-wait";
+
+    /**
+     * By default, high priority commands wait up to 5 seconds.
+     */
+    long DEFAULT_GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_MAX_WAIT = 5000L;
+
+    /**
+     * The maximum time, in milliseconds, a normal priority command waits for a permit before it is dropped.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_MAX_WAIT = GLOBAL_CONCURRENCY_LIMIT + ".normal-priority-max-wait";
+
+    /**
+     * By default, normal priority commands wait up to 1 second.
+     */
+    long DEFAULT_GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_MAX_WAIT = 1000L;
+
+    /**
+     * The maximum time, in milliseconds, a low priority command waits for a permit before it is dropped.
+     */
+    String GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_MAX_WAIT = GLOBAL_CONCURRENCY_LIMIT + ".low-priority-max-wait";
+
+    /**
+     * By default, low priority commands are dropped immediately.
+     */
+    long DEFAULT_GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_MAX_WAIT = 0L;
+
     /**
      * The name of the MBeanServer that will be created to house all the services. This is actually the name of the
      * default domain of the MBeanServer.
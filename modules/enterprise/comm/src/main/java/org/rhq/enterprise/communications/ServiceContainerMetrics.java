@@ -18,8 +18,10 @@
  */
 package org.rhq.enterprise.communications;
 
+import java.util.HashMap;
 import java.util.Map;
 
+import org.rhq.enterprise.communications.GlobalConcurrencyLimitCommandListener.AdmissionData;
 import org.rhq.enterprise.communications.command.server.CommandProcessor;
 import org.rhq.enterprise.communications.command.server.CommandProcessorMetrics.Calltime;
 
@@ -28,7 +30,7 @@ import org.rhq.enterprise.communications.command.server.CommandProcessorMetrics.
  */
 public class ServiceContainerMetrics implements ServiceContainerMetricsMBean {
     private CommandProcessor commandProcessor;
-    private ServiceContainer serviceContainer; // useful for future, but not used yet
+    private ServiceContainer serviceContainer;
 
     /**
      * Creates a new {@link ServiceContainerMetrics} object.
@@ -43,6 +45,11 @@ public class ServiceContainerMetrics implements ServiceContainerMetricsMBean {
 
     public void clear() {
         commandProcessor.getCommandProcessorMetrics().clear();
+
+        GlobalConcurrencyLimitCommandListener listener = serviceContainer.getGlobalConcurrencyLimitListener();
+        if (listener != null) {
+            listener.clearAdmissionData();
+        }
     }
 
     public long getNumberSuccessfulCommandsReceived() {
@@ -75,4 +82,12 @@ public class ServiceContainerMetrics implements ServiceContainerMetricsMBean {
         Map<String, Calltime> callTimeData = commandProcessor.getCommandProcessorMetrics().getCallTimeData();
         return callTimeData;
     }
+
+    public Map<String, AdmissionData> getAdmissionDataReceived() {
+        GlobalConcurrencyLimitCommandListener listener = serviceContainer.getGlobalConcurrencyLimitListener();
+        if (listener == null) {
+            return new HashMap<String, AdmissionData>();
+        }
+        return listener.getAdmissionData();
+    }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ import java.util.Map;
 import javax.management.ObjectName;
 
 import org.rhq.core.util.ObjectNameFactory;
+import org.rhq.enterprise.communications.GlobalConcurrencyLimitCommandListener.AdmissionData;
 import org.rhq.enterprise.communications.command.server.CommandProcessorMetrics;
 import org.rhq.enterprise.communications.command.server.CommandProcessorMetrics.Calltime;
 
@@ -108,4 +109,15 @@ public interface ServiceContainerMetricsMBean {
      * @see CommandProcessorMetrics#getCallTimeDataReceived()
      */
     public Map<String, Calltime> getCallTimeDataReceived();
+
+    /**
+     * Returns a map of individual command types/pojo invocations and how many of them were accepted, queued and
+     * dropped by the global concurrency limit, along with the admission priority they were given. This is empty if
+     * there is no global concurrency limit.
+     *
+     * @return admission data
+     *
+     * @see GlobalConcurrencyLimitCommandListener#getAdmissionData()
+     */
+    public Map<String, AdmissionData> getAdmissionDataReceived();
 }
\ No newline at end of file
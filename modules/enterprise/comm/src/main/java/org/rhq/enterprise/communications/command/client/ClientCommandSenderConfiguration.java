@@ -227,6 +227,27 @@ public class ClientCommandSenderConfiguration implements Serializable {
      */
     public String securitySecureSocketProtocol;
 
+    /**
+     * The number of bytes a {@link RemoteInputStream} asks for in a single request. Remote input streams are read in
+     * chunks of this size, which are prefetched ahead of the reader. If 0 or less, every <code>InputStream</code>
+     * method call is sent to the remote endpoint as-is, which was the only way streams were read prior to chunking.
+     * This also is the size of the buffer {@link RemoteOutputStream}s use to batch up small writes.
+     */
+    public int remoteStreamChunkSize = 65536;
+
+    /**
+     * The maximum number of chunk requests a {@link RemoteInputStream} has in flight at the same time. This is capped
+     * at {@link org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunk#MAX_RETAINED_CHUNKS}, the
+     * number of chunks the remote endpoint keeps so that a failed request can be retried.
+     */
+    public int remoteStreamWindow = 4;
+
+    /**
+     * If <code>true</code>, the chunks of remote input streams are compressed by the remote endpoint before they are
+     * sent. Useful on slow networks; it costs CPU on both ends and is useless for data that is already compressed.
+     */
+    public boolean remoteStreamCompress = false;
+
     /**
      * Makes a copy of this object; use this if you wish to isolate the caller from seeing changes made to the original
      * object.
@@ -266,6 +287,9 @@ public class ClientCommandSenderConfiguration implements Serializable {
         config_copy.securityTruststoreAlgorithm = this.securityTruststoreAlgorithm;
         config_copy.securityTruststorePassword = this.securityTruststorePassword;
         config_copy.securitySecureSocketProtocol = this.securitySecureSocketProtocol;
+        config_copy.remoteStreamChunkSize = this.remoteStreamChunkSize;
+        config_copy.remoteStreamWindow = this.remoteStreamWindow;
+        config_copy.remoteStreamCompress = this.remoteStreamCompress;
 
         return config_copy;
     }
@@ -45,6 +45,8 @@ public class ClientCommandSenderMetrics {
     AtomicLong successfulCommands = new AtomicLong(0L);
     AtomicLong failedCommands = new AtomicLong(0L);
     AtomicLong averageExecutionTime = new AtomicLong(0L);
+    AtomicLong remoteStreamBytes = new AtomicLong(0L);
+    AtomicLong remoteStreamTransferTime = new AtomicLong(0L);
 
     /**
      * Creates a new {@link ClientCommandSenderMetrics} object given the queue and store used by the sender object whose
@@ -195,6 +197,47 @@ public class ClientCommandSenderMetrics {
         return sendThrottleQuietPeriodDurationMillis.get();
     }
 
+    /**
+     * Returns the number of bytes that were transferred by remote streams using this sender. For compressed streams,
+     * this is the number of bytes that actually went over the wire.
+     *
+     * @return number of bytes transferred by remote streams
+     */
+    public long getRemoteStreamBytesTransferred() {
+        return remoteStreamBytes.get();
+    }
+
+    /**
+     * Returns the amount of time (in milliseconds) that remote streams using this sender spent transferring data. For
+     * streams that have several requests in flight, only the wall-clock time is counted once.
+     *
+     * @return time spent transferring remote stream data
+     */
+    public long getRemoteStreamTransferTime() {
+        return remoteStreamTransferTime.get();
+    }
+
+    /**
+     * Returns the average remote stream throughput, in bytes per second.
+     *
+     * @return the remote stream throughput (0 if no stream data was transferred yet)
+     */
+    public long getRemoteStreamThroughput() {
+        long time = remoteStreamTransferTime.get();
+        return (time > 0L) ? (remoteStreamBytes.get() * 1000L) / time : 0L;
+    }
+
+    /**
+     * Called by remote streams to record a completed transfer.
+     *
+     * @param bytes      the number of bytes transferred
+     * @param timeMillis the time it took
+     */
+    void addRemoteStreamTransfer(long bytes, long timeMillis) {
+        remoteStreamBytes.addAndGet(bytes);
+        remoteStreamTransferTime.addAndGet(timeMillis);
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -212,6 +255,8 @@ public class ClientCommandSenderMetrics {
         buf.append(",queue-throttle-burst-period=" + getQueueThrottleBurstPeriodMillis());
         buf.append(",send-throttle-max-commands=" + getSendThrottleMaxCommands());
         buf.append(",send-throttle-max-commands=" + getSendThrottleMaxCommands());
+        buf.append(",remote-stream-bytes=" + getRemoteStreamBytesTransferred());
+        buf.append(",remote-stream-throughput=" + getRemoteStreamThroughput());
         buf.append(']');
 
         return buf.toString();
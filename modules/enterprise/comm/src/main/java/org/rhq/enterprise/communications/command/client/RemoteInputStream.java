@@ -20,14 +20,25 @@ package org.rhq.enterprise.communications.command.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import mazz.i18n.Logger;
 import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.rhq.enterprise.communications.ServiceContainer;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunk;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
 
@@ -54,6 +65,15 @@ import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
  * Note that remote input streams should be {@link #close() closed} in order to clean up server-side resources in a
  * timely manner.</p>
  *
+ * <p>Unless the sender's configuration {@link ClientCommandSenderConfiguration#remoteStreamChunkSize disables it}, the
+ * stream data is not pulled down call by call but in large chunks that are prefetched ahead of the reader, with up to
+ * {@link ClientCommandSenderConfiguration#remoteStreamWindow} chunk requests in flight. Chunks are requested by their
+ * offset in the stream, so a failed request is simply retried from that offset. Since the remote endpoint only keeps
+ * the last {@link RemoteStreamChunk#MAX_RETAINED_CHUNKS} chunks it read, the window is never larger than that. All
+ * remote input streams share a bounded pool of prefetch threads. If the remote endpoint does not know how to serve
+ * chunks (i.e. it runs an older version), this object falls back to remoting each method call. Note that
+ * {@link #mark(int)} and {@link #reset()} are not supported when reading in chunks.</p>
+ *
  * @author John Mazzitelli
  */
 public class RemoteInputStream extends InputStream implements Serializable {
@@ -77,6 +97,24 @@ public class RemoteInputStream extends InputStream implements Serializable {
     private static Method RESET;
     private static Method SKIP;
 
+    /**
+     * How many times a failed chunk request is retried before the read fails.
+     */
+    private static final int MAX_CHUNK_RETRIES = 3;
+
+    /**
+     * The maximum number of threads all remote input streams together use to prefetch chunks.
+     */
+    private static final int MAX_PREFETCH_THREADS = 16;
+
+    /**
+     * Prefetches the chunks of all remote input streams. Queued requests are started in the order they were submitted
+     * and each stream submits its requests in offset order, so a chunk request is never stuck in the queue behind a
+     * request for a later chunk of the same stream (which the remote endpoint holds until the preceding chunks have
+     * been read).
+     */
+    private static final ThreadPoolExecutor PREFETCHER;
+
     static {
         try {
             AVAILABLE = InputStream.class.getMethod("available", new Class[0]);
@@ -92,6 +130,19 @@ public class RemoteInputStream extends InputStream implements Serializable {
         } catch (Exception e) {
             LOG.error(e, CommI18NResourceKeys.INVALID_INPUT_STREAM_METHOD);
         }
+
+        PREFETCHER = new ThreadPoolExecutor(MAX_PREFETCH_THREADS, MAX_PREFETCH_THREADS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RHQ Remote Input Stream Prefetcher-"
+                        + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        PREFETCHER.allowCoreThreadTimeOut(true);
     }
 
     /**
@@ -112,6 +163,26 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     private final String m_serverEndpoint;
 
+    /**
+     * <code>null</code> until it has been determined if the stream is read in chunks or call by call.
+     */
+    private transient Boolean m_chunked;
+    private transient int m_chunkSize;
+    private transient int m_window;
+    private transient boolean m_compress;
+
+    private transient RemoteStreamChunk m_firstChunk;
+    private transient LinkedList<PendingChunk> m_pending;
+    private transient long m_nextRequestOffset;
+    private transient boolean m_allRequested;
+
+    private transient byte[] m_chunk;
+    private transient int m_chunkIndex;
+    private transient boolean m_endOfStream;
+
+    private transient long m_transferStart;
+    private transient long m_transferBytes;
+
     /**
      * Creates a new {@link RemoteInputStream} object. This constructor is the same as
      * {@link RemoteInputStream#RemoteInputStream(Long, ServiceContainer)} but additionally adds the stream's
@@ -175,6 +246,15 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int available() throws IOException {
+        if (isChunked()) {
+            if ((m_chunk != null) && (m_chunkIndex < m_chunk.length)) {
+                return m_chunk.length - m_chunkIndex;
+            }
+
+            // the first chunk was already pulled when probing the stream, so its data can be read without blocking
+            return (m_firstChunk != null) ? m_firstChunk.getLength() : 0;
+        }
+
         return ((Integer) sendRequest(AVAILABLE, null)).intValue();
     }
 
@@ -183,6 +263,8 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public void close() throws IOException {
+        stopPrefetching();
+        recordTransfer();
         sendRequest(CLOSE, null);
     }
 
@@ -192,6 +274,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
     @Override
     public void mark(int readlimit) {
         try {
+            if (isChunked()) {
+                return; // see markSupported
+            }
+
             sendRequest(MARK, new Object[] { new Integer(readlimit) });
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -204,6 +290,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
     @Override
     public boolean markSupported() {
         try {
+            if (isChunked()) {
+                return false;
+            }
+
             return ((Boolean) sendRequest(MARKSUPPORTED, null)).booleanValue();
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -215,6 +305,13 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read() throws IOException {
+        if (isChunked()) {
+            if (!ensureChunkData()) {
+                return -1;
+            }
+            return m_chunk[m_chunkIndex++] & 0xFF;
+        }
+
         return ((Integer) sendRequest(READ, null)).intValue();
     }
 
@@ -223,6 +320,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read(byte[] b) throws IOException {
+        if (isChunked()) {
+            return read(b, 0, b.length);
+        }
+
         return ((Integer) sendRequest(READBYTEARRAY, new Object[] { b })).intValue();
     }
 
@@ -231,6 +332,19 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
+        if (isChunked()) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureChunkData()) {
+                return -1;
+            }
+            int n = Math.min(len, m_chunk.length - m_chunkIndex);
+            System.arraycopy(m_chunk, m_chunkIndex, b, off, n);
+            m_chunkIndex += n;
+            return n;
+        }
+
         return ((Integer) sendRequest(READBYTEARRAY_LEN, new Object[] { b, off, len })).intValue();
     }
 
@@ -239,6 +353,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public void reset() throws IOException {
+        if (isChunked()) {
+            throw new IOException("mark/reset not supported when reading a remote stream in chunks");
+        }
+
         sendRequest(RESET, null);
     }
 
@@ -247,9 +365,178 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public long skip(long n) throws IOException {
+        if (isChunked()) {
+            long skipped = 0L;
+            while (skipped < n && ensureChunkData()) {
+                int step = (int) Math.min(n - skipped, m_chunk.length - m_chunkIndex);
+                m_chunkIndex += step;
+                skipped += step;
+            }
+            return skipped;
+        }
+
         return ((Long) sendRequest(SKIP, new Object[] { n })).longValue();
     }
 
+    /**
+     * Determines, on first use, whether this stream is read in chunks. This is the case if the sender's configuration
+     * enables it and the remote endpoint is able to serve the first chunk.
+     *
+     * @return <code>true</code> if the stream is read in chunks
+     *
+     * @throws RemoteIOException if the first chunk could not be read
+     */
+    private boolean isChunked() throws RemoteIOException {
+        if (m_chunked != null) {
+            return m_chunked.booleanValue();
+        }
+
+        if (m_sender == null) {
+            return false; // let the call by call request fail with the proper error
+        }
+
+        ClientCommandSenderConfiguration config = m_sender.getConfiguration();
+        if (config.remoteStreamChunkSize <= 0) {
+            m_chunked = Boolean.FALSE;
+            return false;
+        }
+
+        m_chunkSize = config.remoteStreamChunkSize;
+        m_window = Math.min(Math.max(1, config.remoteStreamWindow), RemoteStreamChunk.MAX_RETAINED_CHUNKS);
+        m_compress = config.remoteStreamCompress;
+        m_pending = new LinkedList<PendingChunk>();
+        m_transferStart = System.currentTimeMillis();
+
+        try {
+            m_firstChunk = requestChunk(0L);
+        } catch (RemoteIOException e) {
+            if (isChunkingUnsupported(e)) {
+                LOG.debug(CommI18NResourceKeys.REMOTE_INPUT_STREAM_CHUNKS_NOT_SUPPORTED, m_streamId, m_serverEndpoint);
+                m_chunked = Boolean.FALSE;
+                return false;
+            }
+            m_chunked = Boolean.TRUE;
+            m_firstChunk = retryChunk(0L, e);
+        }
+
+        m_chunked = Boolean.TRUE;
+        m_nextRequestOffset = m_chunkSize;
+        return true;
+    }
+
+    /**
+     * Makes sure there is unread data in the current chunk, pulling the next chunk if necessary.
+     *
+     * @return <code>false</code> if the end of the stream has been reached
+     */
+    private boolean ensureChunkData() throws IOException {
+        while ((m_chunk == null) || (m_chunkIndex >= m_chunk.length)) {
+            if (m_endOfStream) {
+                recordTransfer();
+                return false;
+            }
+
+            RemoteStreamChunk chunk = nextChunk();
+            m_chunk = chunk.getData();
+            m_chunkIndex = 0;
+            if (chunk.isEndOfStream()) {
+                m_endOfStream = true;
+                stopPrefetching();
+            }
+        }
+
+        return true;
+    }
+
+    private RemoteStreamChunk nextChunk() throws IOException {
+        RemoteStreamChunk chunk = m_firstChunk;
+        m_firstChunk = null;
+
+        if (chunk == null) {
+            // keep the window full
+            while ((m_pending.size() < m_window) && !m_allRequested) {
+                final long offset = m_nextRequestOffset;
+                m_nextRequestOffset += m_chunkSize;
+                Future<RemoteStreamChunk> future = PREFETCHER.submit(new Callable<RemoteStreamChunk>() {
+                    public RemoteStreamChunk call() throws Exception {
+                        return requestChunk(offset);
+                    }
+                });
+                m_pending.add(new PendingChunk(offset, future));
+            }
+
+            PendingChunk pending = m_pending.removeFirst();
+            try {
+                chunk = pending.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + this);
+            } catch (ExecutionException e) {
+                chunk = retryChunk(pending.offset, e.getCause());
+            }
+        }
+
+        m_transferBytes += chunk.getTransferLength();
+        if (chunk.isEndOfStream()) {
+            m_allRequested = true;
+        }
+
+        return chunk;
+    }
+
+    private RemoteStreamChunk retryChunk(long offset, Throwable cause) throws RemoteIOException {
+        for (int i = 0; i < MAX_CHUNK_RETRIES; i++) {
+            LOG.warn(CommI18NResourceKeys.REMOTE_INPUT_STREAM_CHUNK_RETRY, m_streamId, offset, cause);
+            try {
+                return requestChunk(offset);
+            } catch (RemoteIOException e) {
+                cause = e;
+            }
+        }
+
+        throw (cause instanceof RemoteIOException) ? (RemoteIOException) cause : new RemoteIOException(cause);
+    }
+
+    private RemoteStreamChunk requestChunk(long offset) throws RemoteIOException {
+        Object[] args = new Object[] { Long.valueOf(offset), Integer.valueOf(m_chunkSize), Boolean.valueOf(m_compress) };
+        String[] signature = new String[] { Long.TYPE.getName(), Integer.TYPE.getName(), Boolean.TYPE.getName() };
+
+        return (RemoteStreamChunk) sendRequest(new NameBasedInvocation(RemoteStreamChunk.READ_CHUNK, args, signature),
+            args);
+    }
+
+    /**
+     * Remote endpoints that do not know about chunks try to invoke the chunk request as an <code>InputStream</code>
+     * method, which fails with a <code>NoSuchMethodException</code>.
+     */
+    private static boolean isChunkingUnsupported(Throwable t) {
+        while (t != null) {
+            if (t instanceof NoSuchMethodException) {
+                return true;
+            }
+            t = (t.getCause() == t) ? null : t.getCause();
+        }
+        return false;
+    }
+
+    private synchronized void stopPrefetching() {
+        if (m_pending != null) {
+            for (PendingChunk pending : m_pending) {
+                pending.future.cancel(true);
+            }
+            m_pending.clear();
+        }
+        m_allRequested = true;
+    }
+
+    private void recordTransfer() {
+        if ((m_transferBytes > 0L) && (m_sender != null)) {
+            m_sender.getMetrics().addRemoteStreamTransfer(m_transferBytes,
+                System.currentTimeMillis() - m_transferStart);
+            m_transferBytes = 0L;
+        }
+    }
+
     /**
      * Builds the command to execute the method on the remote stream and submit the request.
      *
@@ -262,6 +549,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      *                           encountered a problem
      */
     protected Object sendRequest(Method method, Object[] args) throws RemoteIOException {
+        return sendRequest(new NameBasedInvocation(method, args), args);
+    }
+
+    private Object sendRequest(NameBasedInvocation invocation, Object[] args) throws RemoteIOException {
         if (m_sender == null) {
             throw new RemoteIOException(LOG.getMsgString(CommI18NResourceKeys.REMOTE_INPUT_STREAM_HAS_NO_SENDER,
                 m_streamId, m_serverEndpoint));
@@ -270,7 +561,7 @@ public class RemoteInputStream extends InputStream implements Serializable {
         RemoteInputStreamCommandResponse response;
         RemoteInputStreamCommand cmd = new RemoteInputStreamCommand();
 
-        cmd.setNameBasedInvocation(new NameBasedInvocation(method, args));
+        cmd.setNameBasedInvocation(invocation);
         cmd.setStreamId(m_streamId);
 
         try {
@@ -300,4 +591,17 @@ public class RemoteInputStream extends InputStream implements Serializable {
 
         return response.getResults();
     }
-}
\ No newline at end of file
+
+    /**
+     * A chunk request that is in flight.
+     */
+    private static class PendingChunk {
+        private final long offset;
+        private final Future<RemoteStreamChunk> future;
+
+        private PendingChunk(long offset, Future<RemoteStreamChunk> future) {
+            this.offset = offset;
+            this.future = future;
+        }
+    }
+}
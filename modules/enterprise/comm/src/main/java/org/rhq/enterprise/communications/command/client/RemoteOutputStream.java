@@ -54,6 +54,10 @@ import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
  * Note that remote output streams should be {@link #close() closed} in order to clean up server-side resources in a
  * timely manner.</p>
  *
+ * <p>Unless the sender's configuration {@link ClientCommandSenderConfiguration#remoteStreamChunkSize disables it},
+ * small writes are buffered and sent to the remote stream in chunks of that size. Buffered data is sent when the
+ * stream is {@link #flush() flushed} or {@link #close() closed}.</p>
+ *
  * @author John Mazzitelli
  */
 public class RemoteOutputStream extends OutputStream implements Serializable {
@@ -101,6 +105,14 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
      */
     private final String m_serverEndpoint;
 
+    /**
+     * Buffers small writes until a chunk is full; <code>null</code> until the first write (or if buffering is
+     * disabled).
+     */
+    private transient byte[] m_buffer;
+    private transient int m_count;
+    private transient boolean m_bufferInitialized;
+
     /**
      * Creates a new {@link RemoteOutputStream} object. This constructor is the same as
      * {@link RemoteOutputStream#RemoteOutputStream(Long, ServiceContainer)} but additionally adds the stream's
@@ -162,27 +174,86 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
 
     @Override
     public void close() throws IOException {
+        flushBuffer();
         sendRequest(CLOSE, null);
     }
 
     @Override
     public void flush() throws IOException {
+        flushBuffer();
         sendRequest(FLUSH, null);
     }
 
     @Override
     public void write(int b) throws IOException {
-        sendRequest(WRITE_INT, new Object[] { new Integer(b) });
+        byte[] buffer = getBuffer();
+        if (buffer == null) {
+            sendRequest(WRITE_INT, new Object[] { new Integer(b) });
+            return;
+        }
+
+        if (m_count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[m_count++] = (byte) b;
     }
 
     @Override
     public void write(byte[] b) throws IOException {
+        if (getBuffer() != null) {
+            write(b, 0, b.length);
+            return;
+        }
+
         sendRequest(WRITE_BYTEARRAY, new Object[] { b });
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        sendRequest(WRITE_BYTEARRAY_INT_INT, new Object[] { b, off, len });
+        byte[] buffer = getBuffer();
+        if (buffer == null) {
+            sendRequest(WRITE_BYTEARRAY_INT_INT, new Object[] { b, off, len });
+            return;
+        }
+
+        if (len >= buffer.length) {
+            // no point in copying large writes into the buffer, send them as they are
+            flushBuffer();
+            byte[] data = new byte[len];
+            System.arraycopy(b, off, data, 0, len);
+            sendData(data);
+            return;
+        }
+
+        if (len > buffer.length - m_count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, m_count, len);
+        m_count += len;
+    }
+
+    private byte[] getBuffer() {
+        if (!m_bufferInitialized && (m_sender != null)) {
+            int chunkSize = m_sender.getConfiguration().remoteStreamChunkSize;
+            m_buffer = (chunkSize > 0) ? new byte[chunkSize] : null;
+            m_bufferInitialized = true;
+        }
+        return m_buffer;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (m_count > 0) {
+            byte[] data = new byte[m_count];
+            System.arraycopy(m_buffer, 0, data, 0, m_count);
+            m_count = 0;
+            sendData(data);
+        }
+    }
+
+    private void sendData(byte[] data) throws IOException {
+        long start = System.currentTimeMillis();
+        sendRequest(WRITE_BYTEARRAY, new Object[] { data });
+        m_sender.getMetrics().addRemoteStreamTransfer(data.length, System.currentTimeMillis() - start);
     }
 
     /**
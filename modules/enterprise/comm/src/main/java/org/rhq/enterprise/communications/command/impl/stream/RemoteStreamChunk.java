@@ -0,0 +1,172 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications.command.impl.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A chunk of data read from a remote input stream in a single request. Clients ask for the chunk starting at a given
+ * offset of the stream (see {@link #READ_CHUNK}), which allows them to have several chunk requests in flight at the
+ * same time and to simply ask again for the same offset when a request fails.
+ *
+ * <p>The data is optionally compressed, in which case it is inflated again by {@link #getData()}.</p>
+ */
+public class RemoteStreamChunk implements Serializable {
+    /**
+     * The name of the pseudo-method a {@link RemoteInputStreamCommand} invokes to read a chunk. Its parameters are the
+     * offset (<code>long</code>), the maximum length (<code>int</code>) and the compression flag (<code>boolean</code>).
+     */
+    public static final String READ_CHUNK = "readChunk";
+
+    /**
+     * The number of most recently read chunks the remote endpoint keeps so they can be requested again. A chunk that
+     * is further behind the stream position than that cannot be requested again, which is why clients never have more
+     * chunk requests than this in flight.
+     */
+    public static final int MAX_RETAINED_CHUNKS = 8;
+
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+    private final int length;
+    private final byte[] data;
+    private final boolean compressed;
+    private final boolean endOfStream;
+
+    /**
+     * Creates a chunk.
+     *
+     * @param offset      the offset in the stream of the first byte of this chunk
+     * @param data        the bytes read from the stream
+     * @param length      the number of valid bytes in <code>data</code>
+     * @param compress    if <code>true</code>, the data is compressed when that actually makes it smaller
+     * @param endOfStream <code>true</code> if the end of the stream was reached after this chunk
+     */
+    public RemoteStreamChunk(long offset, byte[] data, int length, boolean compress, boolean endOfStream) {
+        this.offset = offset;
+        this.length = length;
+        this.endOfStream = endOfStream;
+
+        byte[] deflated = compress ? deflate(data, length) : null;
+        if (deflated != null) {
+            this.data = deflated;
+            this.compressed = true;
+        } else {
+            this.data = new byte[length];
+            System.arraycopy(data, 0, this.data, 0, length);
+            this.compressed = false;
+        }
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of (uncompressed) bytes in this chunk
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes that were actually transferred for this chunk
+     */
+    public int getTransferLength() {
+        return data.length;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * Returns the (uncompressed) data of this chunk.
+     *
+     * @return the chunk's data, exactly {@link #getLength()} bytes long
+     *
+     * @throws IOException if the compressed data is corrupt
+     */
+    public byte[] getData() throws IOException {
+        if (!compressed) {
+            return data;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] inflated = new byte[length];
+            int inflatedLength = 0;
+            while (inflatedLength < length && !inflater.finished()) {
+                int n = inflater.inflate(inflated, inflatedLength, length - inflatedLength);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflatedLength += n;
+            }
+            if (inflatedLength != length) {
+                throw new IOException("Chunk at offset [" + offset + "] inflated to [" + inflatedLength
+                    + "] bytes, expected [" + length + "]");
+            }
+            return inflated;
+        } catch (DataFormatException e) {
+            throw new IOException("Chunk at offset [" + offset + "] is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return the deflated data or <code>null</code> if it does not get any smaller
+     */
+    private static byte[] deflate(byte[] data, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+                if (out.size() >= length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteStreamChunk: offset=[" + offset + "]; length=[" + length + "]; compressed=[" + compressed
+            + "]; eos=[" + endOfStream + "]";
+    }
+}
@@ -18,10 +18,12 @@
  */
 package org.rhq.enterprise.communications.command.impl.stream.server;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -34,6 +36,7 @@ import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.CommandType;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunk;
 import org.rhq.enterprise.communications.command.server.CommandMBean;
 import org.rhq.enterprise.communications.command.server.CommandService;
 import org.rhq.enterprise.communications.command.server.CommandServiceMBean;
@@ -74,6 +77,11 @@ public class RemoteInputStreamCommandService extends CommandService {
      */
     private final Map<Long, AtomicLong> m_lastAccessTimes;
 
+    /**
+     * The state of the streams that are read in chunks - the key values are the streams' index numbers.
+     */
+    private final Map<Long, ChunkReader> m_chunkReaders;
+
     /**
      * The maximum amount of milliseconds a stream is allowed to be idle before it will be removed and no longer
      * accessible to clients.
@@ -93,6 +101,7 @@ public class RemoteInputStreamCommandService extends CommandService {
         m_index = 0L;
         m_remotedInputStreams = new HashMap<Long, InputStream>();
         m_lastAccessTimes = new HashMap<Long, AtomicLong>();
+        m_chunkReaders = new HashMap<Long, ChunkReader>();
         m_maxIdleTime = 30000L;
         m_idleTimer = null;
     }
@@ -145,6 +154,7 @@ public class RemoteInputStreamCommandService extends CommandService {
         synchronized (m_lock) {
             doomed_stream = m_remotedInputStreams.remove(stream_id);
             doomed_lat = m_lastAccessTimes.remove(stream_id);
+            m_chunkReaders.remove(stream_id);
 
             if ((m_remotedInputStreams.size() == 0) && (m_idleTimer != null)) {
                 m_idleTimer.cancel();
@@ -224,6 +234,7 @@ public class RemoteInputStreamCommandService extends CommandService {
             // get the stream that the command wants to access
             Long stream_id = remote_command.getStreamId();
             InputStream the_stream;
+            ChunkReader chunk_reader = null;
 
             synchronized (m_lock) {
                 the_stream = m_remotedInputStreams.get(stream_id);
@@ -234,17 +245,34 @@ public class RemoteInputStreamCommandService extends CommandService {
                 }
 
                 setLastAccess(stream_id, System.currentTimeMillis());
+
+                if (RemoteStreamChunk.READ_CHUNK.equals(method_name)) {
+                    chunk_reader = m_chunkReaders.get(stream_id);
+                    if (chunk_reader == null) {
+                        chunk_reader = new ChunkReader(stream_id, the_stream);
+                        m_chunkReaders.put(stream_id, chunk_reader);
+                    }
+                }
             }
 
             LOG.debug(CommI18NResourceKeys.INVOKING_STREAM_FROM_REMOTE_CLIENT, stream_id, method_name);
 
-            // use reflection to make the call
-            for (int x = 0; x < signature.length; x++) {
-                class_signature[x] = ClassUtil.getClassFromTypeName(signature[x]);
-            }
+            Object results;
+
+            if (chunk_reader != null) {
+                long offset = ((Long) params[0]).longValue();
+                int length = ((Integer) params[1]).intValue();
+                boolean compress = ((Boolean) params[2]).booleanValue();
+                results = chunk_reader.read(offset, length, compress, m_maxIdleTime);
+            } else {
+                // use reflection to make the call
+                for (int x = 0; x < signature.length; x++) {
+                    class_signature[x] = ClassUtil.getClassFromTypeName(signature[x]);
+                }
 
-            Method method = InputStream.class.getMethod(method_name, class_signature);
-            Object results = method.invoke(the_stream, params);
+                Method method = InputStream.class.getMethod(method_name, class_signature);
+                results = method.invoke(the_stream, params);
+            }
 
             response = new RemoteInputStreamCommandResponse(remote_command, results);
 
@@ -324,4 +352,81 @@ public class RemoteInputStreamCommandService extends CommandService {
 
         return;
     }
-}
\ No newline at end of file
+
+    /**
+     * Serves the chunks of a stream to clients that request them by offset. Since a client may have several chunk
+     * requests in flight, a request for a chunk further down the stream waits until the preceding chunks have been
+     * read. The {@link RemoteStreamChunk#MAX_RETAINED_CHUNKS most recent chunks} are kept so a client can ask for them
+     * again if a response got lost; clients never have more requests than that in flight. Older chunks cannot be
+     * requested again, the stream would have to be read from its start.
+     */
+    private static class ChunkReader {
+        private final Long streamId;
+        private final InputStream stream;
+        private final Map<Long, byte[]> recentChunks = new LinkedHashMap<Long, byte[]>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > RemoteStreamChunk.MAX_RETAINED_CHUNKS;
+            }
+        };
+        private long position = 0L;
+        private boolean endOfStream = false;
+
+        private ChunkReader(Long streamId, InputStream stream) {
+            this.streamId = streamId;
+            this.stream = stream;
+        }
+
+        public synchronized RemoteStreamChunk read(long offset, int length, boolean compress, long maxWait)
+            throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + maxWait;
+            while (offset > position && !endOfStream) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) {
+                    throw new IOException(LOG.getMsgString(CommI18NResourceKeys.REMOTE_STREAM_CHUNK_WAIT_TIMEOUT,
+                        streamId, offset, position));
+                }
+                wait(remaining);
+            }
+
+            if (offset < position) {
+                byte[] data = recentChunks.get(offset);
+                if (data == null) {
+                    throw new IOException(LOG.getMsgString(CommI18NResourceKeys.REMOTE_STREAM_CHUNK_NOT_AVAILABLE,
+                        streamId, offset, position, RemoteStreamChunk.MAX_RETAINED_CHUNKS));
+                }
+                return new RemoteStreamChunk(offset, data, data.length, compress, endOfStream
+                    && (offset + data.length == position));
+            }
+
+            if (endOfStream) {
+                return new RemoteStreamChunk(offset, new byte[0], 0, false, true);
+            }
+
+            byte[] data = new byte[length];
+            int total = 0;
+            while (total < length) {
+                int n = stream.read(data, total, length - total);
+                if (n < 0) {
+                    endOfStream = true;
+                    break;
+                }
+                total += n;
+            }
+
+            if (total < length) {
+                byte[] shortData = new byte[total];
+                System.arraycopy(data, 0, shortData, 0, total);
+                data = shortData;
+            }
+
+            recentChunks.put(offset, data);
+            position += total;
+            notifyAll();
+
+            return new RemoteStreamChunk(offset, data, total, compress, endOfStream);
+        }
+    }
+}
@@ -827,6 +827,18 @@ public interface CommI18NResourceKeys {
     @I18NMessages( { @I18NMessage("A remote output stream with an ID of [{0}] and server endpoint of [{1}] has not yet been assigned a sender object - cannot access the stream") })
     String REMOTE_OUTPUT_STREAM_HAS_NO_SENDER = "RemoteOutputStream.remote-output-stream-missing-sender";
 
+    @I18NMessages( { @I18NMessage("The remote endpoint [{1}] of the input stream with an ID of [{0}] does not support chunked reads - falling back to reading the stream call by call") })
+    String REMOTE_INPUT_STREAM_CHUNKS_NOT_SUPPORTED = "RemoteInputStream.chunks-not-supported";
+
+    @I18NMessages( { @I18NMessage("Failed to read the chunk at offset [{1}] of the remote input stream with an ID of [{0}] - will retry from that offset. Cause: [{2}]") })
+    String REMOTE_INPUT_STREAM_CHUNK_RETRY = "RemoteInputStream.chunk-retry";
+
+    @I18NMessages( { @I18NMessage("The remote input stream with an ID of [{0}] cannot provide the chunk at offset [{1}] anymore - the stream is already at offset [{2}] and only its last [{3}] chunks are kept to be requested again. The stream must be read again from its start") })
+    String REMOTE_STREAM_CHUNK_NOT_AVAILABLE = "RemoteInputStreamCommandService.chunk-not-available";
+
+    @I18NMessages( { @I18NMessage("Timed out waiting for the remote input stream with an ID of [{0}] to reach offset [{1}] - it is still at offset [{2}]") })
+    String REMOTE_STREAM_CHUNK_WAIT_TIMEOUT = "RemoteInputStreamCommandService.chunk-wait-timeout";
+
     @I18NMessages( { @I18NMessage("Failed to create a command sender for [{0}]") })
     String FAILED_TO_CREATE_SENDER = "ServiceContainer.failed-to-create-sender";
 
@@ -21,6 +21,7 @@ package org.rhq.enterprise.communications.util;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import mazz.i18n.Logger;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
@@ -82,6 +83,22 @@ public class ConcurrencyManager {
      * @throws NotPermittedException if the calling thread cannot obtain a permit
      */
     public Permit getPermit(String name) throws NotPermittedException {
+        return getPermit(name, 0L);
+    }
+
+    /**
+     * Same as {@link #getPermit(String)} except that if no permit is immediately available, the calling thread will
+     * wait up to the given amount of time for one to be released before it is denied permission.
+     *
+     * @param  name        the name of the semaphore to acquire the permit from (may be <code>null</code>)
+     * @param  maxWaitTime the maximum number of milliseconds to wait for a permit; 0 or less means do not wait
+     *
+     * @return the permit that allows the thread to continue. The caller must eventually
+     *         {@link #releasePermit(Permit) release it}.
+     *
+     * @throws NotPermittedException if the calling thread cannot obtain a permit within the given time
+     */
+    public Permit getPermit(String name, long maxWaitTime) throws NotPermittedException {
         Permit permit = new Permit();
         permit.name = name;
         permit.managerId = this.hashCode(); // identifes this manager as the originator of this permit
@@ -99,6 +116,14 @@ public class ConcurrencyManager {
 
         boolean permitted = semaphore.tryAcquire();
 
+        if (!permitted && (maxWaitTime > 0L)) {
+            try {
+                permitted = semaphore.tryAcquire(maxWaitTime, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // deny the permit, but let the caller know it was interrupted
+            }
+        }
+
         if (!permitted) {
             int deniedCount = getDeniedCount(name).incrementAndGet(); // don't worry about this not being atomic with aquire, no biggie
             long sleepBeforeRetry = getSleepBeforeRetryHint(deniedCount);
@@ -0,0 +1,192 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications;
+
+import java.util.Map;
+import java.util.prefs.Preferences;
+
+import org.jboss.remoting.invocation.NameBasedInvocation;
+import org.testng.annotations.Test;
+
+import org.rhq.enterprise.communications.GlobalConcurrencyLimitCommandListener.AdmissionData;
+import org.rhq.enterprise.communications.GlobalConcurrencyLimitCommandListener.Priority;
+import org.rhq.enterprise.communications.command.Command;
+import org.rhq.enterprise.communications.command.CommandType;
+import org.rhq.enterprise.communications.command.impl.generic.GenericCommand;
+import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
+import org.rhq.enterprise.communications.util.ConcurrencyManager;
+import org.rhq.enterprise.communications.util.ConcurrencyManager.Permit;
+import org.rhq.enterprise.communications.util.NotPermittedException;
+
+/**
+ * Tests {@link GlobalConcurrencyLimitCommandListener}.
+ */
+@Test
+public class GlobalConcurrencyLimitCommandListenerTest {
+    private static final String HIGH_COMMAND = "MeasurementServerService.mergeMeasurementReport";
+    private static final String NORMAL_COMMAND = "DiscoveryServerService.mergeAvailabilityReport";
+    private static final String LOW_COMMAND = "DiscoveryServerService.mergeInventoryReport";
+
+    public void testPriorityClassification() throws Exception {
+        GlobalConcurrencyLimitCommandListener listener = createListener(new ServiceContainer());
+
+        assert listener.getPriority(HIGH_COMMAND) == Priority.HIGH;
+        assert listener.getPriority(LOW_COMMAND) == Priority.LOW;
+        assert listener.getPriority(NORMAL_COMMAND) == Priority.NORMAL;
+        assert listener.getPriority("identify") == Priority.NORMAL;
+
+        // the whole interface is listed, unless one of its methods is listed explicitly
+        assert listener.getPriority("CoreServerService.getLatestPlugins") == Priority.HIGH;
+        assert listener.getPriority("CoreServerService.getFileContents") == Priority.LOW;
+
+        RemotePojoInvocationCommand pojoCmd = new RemotePojoInvocationCommand();
+        pojoCmd.setTargetInterfaceName("org.rhq.core.clientapi.server.discovery.DiscoveryServerService");
+        pojoCmd.setNameBasedInvocation(new NameBasedInvocation("mergeInventoryReport", new Object[0]));
+        assert GlobalConcurrencyLimitCommandListener.getCommandKey(pojoCmd).equals(LOW_COMMAND);
+        assert GlobalConcurrencyLimitCommandListener.getCommandKey(createCommand("identify")).equals("identify");
+    }
+
+    public void testPoolSizing() throws Exception {
+        GlobalConcurrencyLimitCommandListener listener = createListener(new ServiceContainer());
+
+        Map<String, Integer> limits = listener.getPriorityConcurrencyLimits(10);
+        assert limits.size() == 2 : limits;
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.NORMAL)) == 8 : limits;
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.LOW)) == 5 : limits;
+
+        // a pool never gets less than a single permit
+        limits = listener.getPriorityConcurrencyLimits(1);
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.NORMAL)) == 1 : limits;
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.LOW)) == 1 : limits;
+
+        // no global limit, no pool limits
+        limits = listener.getPriorityConcurrencyLimits(0);
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.NORMAL)) == -1 : limits;
+        assert limits.get(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.LOW)) == -1 : limits;
+
+        // low priority commands hold normal priority permits too, so the low share is part of the normal share
+        String[] names = listener.getPermitNames(Priority.LOW);
+        assert names.length == 3;
+        assert names[0].equals(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.LOW));
+        assert names[1].equals(GlobalConcurrencyLimitCommandListener.getPoolName(Priority.NORMAL));
+        assert names[2].equals(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME);
+        assert listener.getPermitNames(Priority.NORMAL).length == 2;
+        assert listener.getPermitNames(Priority.HIGH).length == 1;
+    }
+
+    public void testLowAndNormalPriorityCommandsCannotStarveHighPriorityCommands() throws Exception {
+        ServiceContainer serviceContainer = new ServiceContainer();
+        GlobalConcurrencyLimitCommandListener listener = createListener(serviceContainer);
+        serviceContainer.setConcurrencyManager(createConcurrencyManager(listener, 10));
+
+        // commands are never processed here, so every admitted command keeps its permits
+        assert admit(listener, LOW_COMMAND, 10) == 5;
+        assert admit(listener, NORMAL_COMMAND, 10) == 3;
+        assert admit(listener, HIGH_COMMAND, 10) == 2;
+
+        Map<String, AdmissionData> data = listener.getAdmissionData();
+        assert data.get(LOW_COMMAND).getAccepted() == 5;
+        assert data.get(LOW_COMMAND).getDropped() == 5;
+        assert data.get(NORMAL_COMMAND).getAccepted() == 3;
+        assert data.get(NORMAL_COMMAND).getDropped() == 7;
+        assert data.get(HIGH_COMMAND).getAccepted() == 2;
+        assert data.get(HIGH_COMMAND).getDropped() == 8;
+    }
+
+    public void testPermitsReleasedWhenNotPermitted() throws Exception {
+        ServiceContainer serviceContainer = new ServiceContainer();
+        GlobalConcurrencyLimitCommandListener listener = createListener(serviceContainer);
+        ConcurrencyManager concurrencyManager = createConcurrencyManager(listener, 2);
+        serviceContainer.setConcurrencyManager(concurrencyManager);
+
+        // the pools have a single permit each, high priority commands take the whole global limit
+        assert admit(listener, HIGH_COMMAND, 2) == 2;
+
+        // the low priority command gets the pool permits but not the global one; it must give the pool permits back
+        long sleepBeforeRetry = 0L;
+        try {
+            listener.receivedCommand(createCommand(LOW_COMMAND));
+            assert false : "low priority command should not have been permitted";
+        } catch (NotPermittedException e) {
+            sleepBeforeRetry = e.getSleepBeforeRetry();
+        }
+        assert sleepBeforeRetry > 0L;
+
+        String lowPool = GlobalConcurrencyLimitCommandListener.getPoolName(Priority.LOW);
+        String normalPool = GlobalConcurrencyLimitCommandListener.getPoolName(Priority.NORMAL);
+        Permit lowPermit = concurrencyManager.getPermit(lowPool);
+        Permit normalPermit = concurrencyManager.getPermit(normalPool);
+        concurrencyManager.releasePermit(lowPermit);
+        concurrencyManager.releasePermit(normalPermit);
+
+        // a processed command gives all its permits back
+        serviceContainer.setConcurrencyManager(concurrencyManager = createConcurrencyManager(listener, 2));
+        Command command = createCommand(LOW_COMMAND);
+        listener.receivedCommand(command);
+        listener.processedCommand(command, null);
+        concurrencyManager.getPermit(lowPool);
+        concurrencyManager.getPermit(normalPool);
+        concurrencyManager.getPermit(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME);
+        concurrencyManager.getPermit(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME);
+    }
+
+    private GlobalConcurrencyLimitCommandListener createListener(ServiceContainer serviceContainer) throws Exception {
+        Preferences prefs = Preferences.userRoot().node("rhqtest").node("GlobalConcurrencyLimitCommandListenerTest");
+        prefs.clear();
+        prefs.put(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_COMMANDS, HIGH_COMMAND
+            + ", CoreServerService");
+        prefs.put(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_COMMANDS, LOW_COMMAND
+            + ",CoreServerService.getFileContents");
+        prefs.putInt(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_SHARE, 80);
+        prefs.putInt(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_SHARE, 50);
+
+        // don't wait for permits, we want to know right away if a command is admitted
+        prefs.putLong(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_HIGH_PRIORITY_MAX_WAIT, 0L);
+        prefs.putLong(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_NORMAL_PRIORITY_MAX_WAIT, 0L);
+        prefs.putLong(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT_LOW_PRIORITY_MAX_WAIT, 0L);
+
+        return new GlobalConcurrencyLimitCommandListener(serviceContainer, new ServiceContainerConfiguration(prefs));
+    }
+
+    private ConcurrencyManager createConcurrencyManager(GlobalConcurrencyLimitCommandListener listener,
+        int globalConcurrencyLimit) {
+        Map<String, Integer> limits = listener.getPriorityConcurrencyLimits(globalConcurrencyLimit);
+        limits.put(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME, globalConcurrencyLimit);
+        return new ConcurrencyManager(limits);
+    }
+
+    private int admit(GlobalConcurrencyLimitCommandListener listener, String commandKey, int count) {
+        int admitted = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                listener.receivedCommand(createCommand(commandKey));
+                admitted++;
+            } catch (NotPermittedException e) {
+                // this command was dropped
+            }
+        }
+        return admitted;
+    }
+
+    private Command createCommand(String commandKey) {
+        GenericCommand command = new GenericCommand();
+        command.setCommandType(new CommandType(commandKey, 1));
+        return command;
+    }
+}
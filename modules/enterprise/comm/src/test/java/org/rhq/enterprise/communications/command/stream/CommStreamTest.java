@@ -29,9 +29,14 @@ import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
+import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -39,12 +44,18 @@ import org.testng.annotations.Test;
 import org.rhq.enterprise.communications.ServiceContainer;
 import org.rhq.enterprise.communications.ServiceContainerConfigurationConstants;
 import org.rhq.enterprise.communications.CommTestConstants;
+import org.rhq.enterprise.communications.command.Command;
+import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.client.ClientCommandSender;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
 import org.rhq.enterprise.communications.command.client.JBossRemotingRemoteCommunicator;
 import org.rhq.enterprise.communications.command.client.RemoteCommunicator;
 import org.rhq.enterprise.communications.command.client.RemoteInputStream;
 import org.rhq.enterprise.communications.command.client.RemoteOutputStream;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunk;
+import org.rhq.enterprise.communications.command.impl.stream.server.RemoteInputStreamCommandService;
 
 /**
  * Tests remote streams. This will create two "servers" - #1 listening on one port and #2 listening on another. The
@@ -467,6 +478,175 @@ public class CommStreamTest {
         }
     }
 
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedInputStreamOutOfOrder() throws Exception {
+        byte[] data = createRandomData(10 * 1024 + 100);
+
+        // later chunks of a window get to the stream service first and their responses come back first
+        LoopbackSender sender = new LoopbackSender(createChunkedConfig(1024, 4, false));
+        sender.reorder = true;
+
+        assert Arrays.equals(readAll(sender, data), data);
+        assert sender.chunkRequests.get() >= 11 : sender.chunkRequests;
+        assert sender.legacyRequests.get() == 1 : "only close() should have been sent call by call";
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedInputStreamEndsAtChunkBoundary() throws Exception {
+        byte[] data = createRandomData(4 * 1024);
+
+        LoopbackSender sender = new LoopbackSender(createChunkedConfig(1024, 4, false));
+        assert Arrays.equals(readAll(sender, data), data);
+
+        // the end of the stream is only known once the chunk after the last full one comes back empty
+        Long streamId = sender.service.addInputStream(new ByteArrayInputStream(data));
+        RemoteInputStream in = new RemoteInputStream(streamId, serviceContainer1);
+        in.setClientCommandSender(sender);
+        try {
+            assert in.skip(data.length) == data.length;
+            assert in.read() == -1;
+            assert in.read(new byte[10]) == -1;
+            assert in.skip(10) == 0;
+        } finally {
+            in.close();
+        }
+
+        assert readAll(sender, new byte[0]).length == 0;
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedInputStreamCompressed() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 8 * 1024) {
+            text.append("RHQ remote input stream chunks compress well when the data repeats. ");
+        }
+        byte[] data = text.toString().getBytes();
+
+        LoopbackSender sender = new LoopbackSender(createChunkedConfig(1024, 4, true));
+        assert Arrays.equals(readAll(sender, data), data);
+        assert sender.compressedChunks.get() > 0 : "compressible chunks should have been sent compressed";
+
+        // random data does not get any smaller, it is sent as is
+        sender = new LoopbackSender(createChunkedConfig(1024, 4, true));
+        data = createRandomData(8 * 1024);
+        assert Arrays.equals(readAll(sender, data), data);
+        assert sender.compressedChunks.get() == 0 : sender.compressedChunks;
+
+        RemoteStreamChunk chunk = new RemoteStreamChunk(0L, text.toString().getBytes(), 1024, true, false);
+        assert chunk.isCompressed();
+        assert chunk.getTransferLength() < chunk.getLength();
+        assert Arrays.equals(chunk.getData(), Arrays.copyOf(text.toString().getBytes(), 1024));
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedInputStreamRetriesLostChunks() throws Exception {
+        byte[] data = createRandomData(40 * 1024);
+
+        // the window is capped at the number of chunks the stream service keeps for retries
+        LoopbackSender sender = new LoopbackSender(createChunkedConfig(1024, 100, false));
+        sender.failOnce.add(Long.valueOf(1024L));
+        sender.failOnce.add(Long.valueOf(20 * 1024L));
+        sender.delay = true;
+
+        assert Arrays.equals(readAll(sender, data), data);
+        assert sender.failOnce.isEmpty();
+        assert sender.maxChunkRequestsInFlight.get() <= RemoteStreamChunk.MAX_RETAINED_CHUNKS : "in flight: "
+            + sender.maxChunkRequestsInFlight;
+
+        // a chunk that is older than the retained chunks cannot be requested again
+        Long streamId = sender.service.addInputStream(new ByteArrayInputStream(data));
+        for (int i = 0; i <= RemoteStreamChunk.MAX_RETAINED_CHUNKS; i++) {
+            assert sender.sendChunkRequest(streamId, i * 1024L, 1024).isSuccessful();
+        }
+        assert sender.sendChunkRequest(streamId, 1024L, 1024).isSuccessful();
+        CommandResponse response = sender.sendChunkRequest(streamId, 0L, 1024);
+        assert !response.isSuccessful();
+        assert response.getException() instanceof IOException : response.getException();
+        sender.service.removeInputStream(streamId);
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedInputStreamFallsBackToLegacyProtocol() throws Exception {
+        byte[] data = createRandomData(3 * 1024 + 10);
+
+        // the stream service does not know about chunks, like the ones of older versions
+        LoopbackSender sender = new LoopbackSender(createChunkedConfig(1024, 4, false));
+        sender.legacy = true;
+
+        Long streamId = sender.service.addInputStream(new ByteArrayInputStream(data));
+        RemoteInputStream in = new RemoteInputStream(streamId, serviceContainer1);
+        in.setClientCommandSender(sender);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            assert in.markSupported() : "mark is supported by the underlying stream when read call by call";
+            byte[] buffer = new byte[1000];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        assert Arrays.equals(out.toByteArray(), data);
+        assert sender.chunkRequests.get() == 1 : "the chunk request should have been tried only once";
+        assert sender.legacyRequests.get() > 4 : sender.legacyRequests;
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testOutputStreamFlush() throws Exception {
+        assert pojo.ping();
+
+        OutputStream out = pojo.returnOutputStream();
+        assert out instanceof RemoteOutputStream;
+
+        // small writes are buffered until the stream is flushed
+        String str = "buffered write test";
+        out.write(str.getBytes());
+        out.write('!');
+        assert pojoImpl.byteArrayOutputStream.size() == 0 : pojoImpl.byteArrayOutputStream;
+
+        out.flush();
+        assert (str + '!').equals(pojoImpl.byteArrayOutputStream.toString());
+
+        out.write(str.getBytes(), 0, 8);
+        out.close();
+        assert (str + '!' + str.substring(0, 8)).equals(pojoImpl.byteArrayOutputStream.toString());
+    }
+
+    private byte[] readAll(LoopbackSender sender, byte[] data) throws Exception {
+        Long streamId = sender.service.addInputStream(new ByteArrayInputStream(data));
+        RemoteInputStream in = new RemoteInputStream(streamId, serviceContainer1);
+        in.setClientCommandSender(sender);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[700]; // not aligned with the chunks on purpose
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            assert in.read() == -1;
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+
+    private byte[] createRandomData(int length) {
+        byte[] data = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    private ClientCommandSenderConfiguration createChunkedConfig(int chunkSize, int window, boolean compress) {
+        ClientCommandSenderConfiguration config = new ClientCommandSenderConfiguration();
+        config.commandSpoolFileName = null;
+        config.remoteStreamChunkSize = chunkSize;
+        config.remoteStreamWindow = window;
+        config.remoteStreamCompress = compress;
+        return config;
+    }
+
     private Preferences getPrefs1() {
         Preferences topNode = Preferences.userRoot().node("rhq-agent");
         Preferences preferencesNode = topNode.node("commstream1test");
@@ -497,6 +677,88 @@ public class CommStreamTest {
         return new RemoteOutputStream(out, serviceContainer2);
     }
 
+    /**
+     * Hands remote input stream commands directly to a stream service, which allows the tests to reorder, delay, lose
+     * or reject chunk requests.
+     */
+    private static class LoopbackSender extends ClientCommandSender {
+        final RemoteInputStreamCommandService service = new RemoteInputStreamCommandService();
+        final Set<Long> failOnce = Collections.synchronizedSet(new HashSet<Long>());
+        final AtomicInteger chunkRequests = new AtomicInteger();
+        final AtomicInteger legacyRequests = new AtomicInteger();
+        final AtomicInteger compressedChunks = new AtomicInteger();
+        final AtomicInteger chunkRequestsInFlight = new AtomicInteger();
+        final AtomicInteger maxChunkRequestsInFlight = new AtomicInteger();
+        volatile boolean reorder;
+        volatile boolean delay;
+        volatile boolean legacy;
+
+        LoopbackSender(ClientCommandSenderConfiguration config) throws Exception {
+            super(new JBossRemotingRemoteCommunicator("socket://127.0.0.1:" + CommTestConstants.CONNECTOR_BIND_PORT),
+                config);
+        }
+
+        @Override
+        public CommandResponse sendSynch(Command command) throws Exception {
+            NameBasedInvocation invocation = new RemoteInputStreamCommand(command).getNameBasedInvocation();
+            if (!RemoteStreamChunk.READ_CHUNK.equals(invocation.getMethodName())) {
+                legacyRequests.incrementAndGet();
+                return service.execute(command, null, null);
+            }
+
+            chunkRequests.incrementAndGet();
+            if (legacy) {
+                // this is what the InputStream method lookup of an older stream service fails with
+                return new RemoteInputStreamCommandResponse(command, new NoSuchMethodException(
+                    InputStream.class.getName() + '.' + RemoteStreamChunk.READ_CHUNK));
+            }
+
+            long offset = ((Long) invocation.getParameters()[0]).longValue();
+            int chunkSize = ((Integer) invocation.getParameters()[1]).intValue();
+            int positionInWindow = (int) ((offset / chunkSize) % 4);
+
+            int inFlight = chunkRequestsInFlight.incrementAndGet();
+            try {
+                synchronized (maxChunkRequestsInFlight) {
+                    if (inFlight > maxChunkRequestsInFlight.get()) {
+                        maxChunkRequestsInFlight.set(inFlight);
+                    }
+                }
+
+                if (reorder && (positionInWindow % 2 == 0)) {
+                    Thread.sleep(50L); // lets the next chunk request reach the service first
+                }
+                if (delay) {
+                    Thread.sleep(10L);
+                }
+
+                CommandResponse response = service.execute(command, null, null);
+
+                if (failOnce.remove(Long.valueOf(offset))) {
+                    throw new IOException("Lost the response of the chunk at offset " + offset);
+                }
+                if (reorder) {
+                    Thread.sleep(20L * (4 - positionInWindow)); // the later chunks of the window come back first
+                }
+                if (response.isSuccessful() && ((RemoteStreamChunk) response.getResults()).isCompressed()) {
+                    compressedChunks.incrementAndGet();
+                }
+                return response;
+            } finally {
+                chunkRequestsInFlight.decrementAndGet();
+            }
+        }
+
+        CommandResponse sendChunkRequest(Long streamId, long offset, int length) {
+            RemoteInputStreamCommand command = new RemoteInputStreamCommand();
+            command.setStreamId(streamId);
+            command.setNameBasedInvocation(new NameBasedInvocation(RemoteStreamChunk.READ_CHUNK, new Object[] {
+                Long.valueOf(offset), Integer.valueOf(length), Boolean.FALSE }, new String[] { Long.TYPE.getName(),
+                Integer.TYPE.getName(), Boolean.TYPE.getName() }));
+            return service.execute(command, null, null);
+        }
+    }
+
     private class SocketThread extends Thread {
         public String contentsToExpect; // test will set this before starting thread
         public String results; // public so tests can access it
@@ -91,4 +91,38 @@ public class ConcurrencyManagerTest {
         cm2.releasePermit(permit2);
         cm2.releasePermit(permit1); // a no-op since permit1 wasn't granted by cm2
     }
+
+    public void testConcurrencyManagerMaxWait() throws Exception {
+        String foo = "foo";
+
+        HashMap<String, Integer> map = new HashMap<String, Integer>();
+        map.put(foo, 1);
+        final ConcurrencyManager cm = new ConcurrencyManager(map);
+
+        final Permit permit = cm.getPermit(foo);
+        assert permit != null;
+
+        long start = System.currentTimeMillis();
+        try {
+            cm.getPermit(foo, 100L);
+            assert false : "should not have succeeded";
+        } catch (NotPermittedException e) {
+            // this exception is the one that is to be expected
+        }
+        assert (System.currentTimeMillis() - start) >= 90L : "should have waited for a permit before being denied";
+
+        // release the permit while another caller is waiting for one - that caller should get it
+        Thread releaser = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(200L);
+                } catch (InterruptedException e) {
+                }
+                cm.releasePermit(permit);
+            }
+        };
+        releaser.start();
+        assert null != cm.getPermit(foo, 10000L);
+        releaser.join();
+    }
 }
\ No newline at end of file
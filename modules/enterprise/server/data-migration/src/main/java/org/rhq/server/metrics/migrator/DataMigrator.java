@@ -20,6 +20,9 @@
 
 package org.rhq.server.metrics.migrator;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.persistence.EntityManager;
 
 import com.datastax.driver.core.Session;
@@ -30,7 +33,9 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.server.metrics.migrator.workers.AggregateDataMigrator;
 import org.rhq.server.metrics.migrator.workers.CallableMigrationWorker;
 import org.rhq.server.metrics.migrator.workers.DeleteAllData;
+import org.rhq.server.metrics.migrator.workers.MigrationCheckpoint;
 import org.rhq.server.metrics.migrator.workers.MigrationTable;
+import org.rhq.server.metrics.migrator.workers.MigrationThrottle;
 import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 
 
@@ -108,6 +113,39 @@ public class DataMigrator {
         config.setDeleteDataImmediatelyAfterMigration(false);
     }
 
+    /**
+     * Migrate the data in schedule id partitions and record every migrated partition in the checkpoint file.
+     * Failed migrations are retried, and can be resumed by a later run, from the last recorded partition.
+     * Without checkpoints a retry starts the table over.
+     *
+     * @param checkpointFile file that stores the migrated partitions
+     * @param resume true to skip the partitions recorded by a previous run, false to start a new migration
+     * @throws IOException if the checkpoint file cannot be read or written
+     */
+    public void enableCheckpoints(File checkpointFile, boolean resume) throws IOException {
+        config.setCheckpoint(new MigrationCheckpoint(checkpointFile, resume));
+    }
+
+    /**
+     * Number of partitions migrated in parallel. More than one partition migrates the data in schedule id
+     * partitions, even without checkpoints.
+     *
+     * @param parallelism number of partitions migrated in parallel
+     */
+    public void setParallelism(int parallelism) {
+        config.setParallelism(Math.max(1, parallelism));
+    }
+
+    /**
+     * Combined throughput limit of all the partitions migrated in parallel. A limit migrates the data in schedule
+     * id partitions, even without checkpoints.
+     *
+     * @param maxRowsPerSecond maximum number of rows migrated per second, zero for no limit
+     */
+    public void setMaxRowsPerSecond(int maxRowsPerSecond) {
+        config.setThrottle(new MigrationThrottle(maxRowsPerSecond));
+    }
+
     public long estimate() throws Exception {
         this.estimation = 0;
         if (config.isRunRawDataMigration()) {
@@ -234,6 +272,10 @@ public class DataMigrator {
         private boolean run6HAggregateDataMigration;
         private boolean run1DAggregateDataMigration;
 
+        private MigrationCheckpoint checkpoint;
+        private int parallelism = 1;
+        private MigrationThrottle throttle = new MigrationThrottle(0);
+
         public DataMigratorConfiguration(EntityManager entityManager, Session session, DatabaseType databaseType,
             boolean experimentalDataSource) {
             this.entityManager = entityManager;
@@ -290,6 +332,38 @@ public class DataMigrator {
             run1DAggregateDataMigration = run1dAggregateDataMigration;
         }
 
+        public MigrationCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        private void setCheckpoint(MigrationCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        private void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public MigrationThrottle getThrottle() {
+            return throttle;
+        }
+
+        /**
+         * @return true if the data is migrated in schedule id partitions, which is the case if checkpoints, more
+         * than one partition in parallel, or a throughput limit are requested
+         */
+        public boolean isPartitionedMigration() {
+            return checkpoint != null || parallelism > 1 || throttle.getMaxRowsPerSecond() > 0;
+        }
+
+        private void setThrottle(MigrationThrottle throttle) {
+            this.throttle = throttle;
+        }
+
         public EntityManager getEntityManager() {
             return entityManager;
         }
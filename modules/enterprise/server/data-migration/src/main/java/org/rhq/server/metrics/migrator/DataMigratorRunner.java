@@ -59,6 +59,7 @@ import org.rhq.server.metrics.migrator.DataMigrator.DatabaseType;
 import org.rhq.server.metrics.migrator.workers.AggregateDataMigrator;
 import org.rhq.server.metrics.migrator.workers.DeleteAllData;
 import org.rhq.server.metrics.migrator.workers.MetricsIndexMigrator;
+import org.rhq.server.metrics.migrator.workers.MigrationProgress;
 import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 
 
@@ -78,6 +79,7 @@ import org.rhq.server.metrics.migrator.workers.RawDataMigrator;
 public class DataMigratorRunner {
 
     private static final int DEFAULT_CASSANDRA_PORT = 9142;
+    private static final String DEFAULT_CHECKPOINT_FILE = "data-migration.checkpoint";
     private final Log log = LogFactory.getLog(DataMigratorRunner.class);
 
     //Cassandra
@@ -141,6 +143,19 @@ public class DataMigratorRunner {
         .withLongOpt("experimental-export").hasOptionalArg().withType(Boolean.class)
         .withDescription("Enable experimental bulk export for Postgres, option ignored for Oracle migration (default: false)")
         .create();
+    private final Option parallelismOption = OptionBuilder.withLongOpt("parallelism").hasArg().withType(Integer.class)
+        .withDescription("Number of schedule id partitions migrated in parallel (default: 1)").create();
+    private final Option maxRowsPerSecondOption = OptionBuilder.withLongOpt("max-rows-per-second").hasArg()
+        .withType(Integer.class)
+        .withDescription("Maximum number of rows migrated per second by all the partitions combined, 0 for no limit (default: 0)")
+        .create();
+    private final Option checkpointFileOption = OptionBuilder.withLongOpt("checkpoint-file").hasArg()
+        .withType(String.class)
+        .withDescription("File that records the migrated partitions, no checkpoints are recorded without it or --resume (default with --resume: data-migration.checkpoint)")
+        .create();
+    private final Option resumeOption = OptionBuilder.withLongOpt("resume").hasOptionalArg().withType(Boolean.class)
+        .withDescription("Resume an interrupted migration, the partitions recorded in the checkpoint file are not migrated again (default: false)")
+        .create();
 
     //Runner
     private final Option helpOption = OptionBuilder.withLongOpt("help").create("h");
@@ -219,6 +234,14 @@ public class DataMigratorRunner {
                 migratorLogging.setLevel(level);
             }
         }
+
+        //always report the migration progress
+        Logger progressLogging = root.getLogger(MigrationProgress.class);
+        if (Level.DEBUG.equals(level)) {
+            progressLogging.setLevel(Level.ALL);
+        } else {
+            progressLogging.setLevel(Level.INFO);
+        }
     }
 
     private void configure(String args[]) throws Exception {
@@ -247,6 +270,10 @@ public class DataMigratorRunner {
         options.addOption(estimateOnlyOption);
         options.addOption(deleteOnlyOption);
         options.addOption(experimentalExportOption);
+        options.addOption(parallelismOption);
+        options.addOption(maxRowsPerSecondOption);
+        options.addOption(checkpointFileOption);
+        options.addOption(resumeOption);
 
         options.addOption(helpOption);
         options.addOption(debugLogOption);
@@ -329,6 +356,9 @@ public class DataMigratorRunner {
         configuration.put(deleteDataOption, false);
         configuration.put(deleteOnlyOption, false);
         configuration.put(experimentalExportOption, false);
+        configuration.put(parallelismOption, 1);
+        configuration.put(maxRowsPerSecondOption, 0);
+        configuration.put(resumeOption, false);
     }
 
 
@@ -553,6 +583,25 @@ public class DataMigratorRunner {
             value = tryParseBoolean(commandLine.getOptionValue(experimentalExportOption.getLongOpt()), true);
             configuration.put(experimentalExportOption, value);
         }
+
+        if (commandLine.hasOption(parallelismOption.getLongOpt())) {
+            configuration.put(parallelismOption,
+                tryParseInteger(commandLine.getOptionValue(parallelismOption.getLongOpt()), 1));
+        }
+
+        if (commandLine.hasOption(maxRowsPerSecondOption.getLongOpt())) {
+            configuration.put(maxRowsPerSecondOption,
+                tryParseInteger(commandLine.getOptionValue(maxRowsPerSecondOption.getLongOpt()), 0));
+        }
+
+        if (commandLine.hasOption(checkpointFileOption.getLongOpt())) {
+            configuration.put(checkpointFileOption, commandLine.getOptionValue(checkpointFileOption.getLongOpt()));
+        }
+
+        if (commandLine.hasOption(resumeOption.getLongOpt())) {
+            value = tryParseBoolean(commandLine.getOptionValue(resumeOption.getLongOpt()), true);
+            configuration.put(resumeOption, value);
+        }
     }
 
     private void run() throws Exception {
@@ -592,6 +641,16 @@ public class DataMigratorRunner {
             System.out.println("Estimation process - ended\n\n");
 
             if (!(Boolean) configuration.get(estimateOnlyOption)) {
+                migrator.setParallelism((Integer) configuration.get(parallelismOption));
+                migrator.setMaxRowsPerSecond((Integer) configuration.get(maxRowsPerSecondOption));
+                // checkpoints are only recorded on request, so a plain run never replaces the file of a previous run
+                boolean resume = (Boolean) configuration.get(resumeOption);
+                String checkpointFile = (String) configuration.get(checkpointFileOption);
+                if (checkpointFile != null || resume) {
+                    migrator.enableCheckpoints(new File(checkpointFile != null ? checkpointFile
+                        : DEFAULT_CHECKPOINT_FILE), resume);
+                }
+
                 System.out.println("Migration process - starting\n");
                 long startTime = System.currentTimeMillis();
                 migrator.migrateData();
@@ -20,6 +20,14 @@
 
 package org.rhq.server.metrics.migrator.workers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.StatelessSession;
@@ -39,6 +47,12 @@ import org.rhq.server.metrics.migrator.datasources.ScrollableDataSource;
 public abstract class AbstractMigrationWorker {
     private final Log log = LogFactory.getLog(AbstractMigrationWorker.class);
 
+    /**
+     * Width of the schedule id range migrated by a single partition. The partition boundaries only depend
+     * on this value, so checkpoints stay valid when a migration is resumed with a different parallelism.
+     */
+    protected static final int SCHEDULES_PER_PARTITION = 1000;
+
     /**
      * Returns a list of all the raw SQL metric tables.
      * There is no equivalent in Cassandra, all raw data is stored in a single column family.
@@ -120,4 +134,194 @@ public abstract class AbstractMigrationWorker {
         }
     }
 
+    /**
+     * Splits the schedule id range of a SQL metric table in partitions that can be migrated independently.
+     *
+     * @param table SQL metric table
+     * @param config migration configuration
+     * @return partitions covering all the schedule ids stored in the table, empty if the table has no data
+     */
+    protected List<SchedulePartition> getSchedulePartitions(String table, DataMigratorConfiguration config) {
+        List<SchedulePartition> partitions = new ArrayList<SchedulePartition>();
+
+        StatelessSession session = getSQLSession(config);
+        try {
+            org.hibernate.Query query = session.createSQLQuery(String.format(
+                MigrationQuery.SCHEDULE_ID_RANGE.toString(), table));
+            query.setReadOnly(true);
+            query.setTimeout(DataMigrator.SQL_TIMEOUT);
+
+            Object[] range = (Object[]) query.uniqueResult();
+            if (range == null || range[0] == null || range[1] == null) {
+                return partitions;
+            }
+
+            int minScheduleId = Integer.parseInt(range[0].toString());
+            int maxScheduleId = Integer.parseInt(range[1].toString());
+
+            int start = (minScheduleId / SCHEDULES_PER_PARTITION) * SCHEDULES_PER_PARTITION;
+            for (; start <= maxScheduleId; start += SCHEDULES_PER_PARTITION) {
+                partitions.add(new SchedulePartition(table, start, start + SCHEDULES_PER_PARTITION));
+            }
+        } finally {
+            closeSQLSession(session);
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Migrates the partitions not yet recorded in the migration checkpoint, using up to the configured
+     * parallelism. A partition is recorded in the checkpoint only after its data and the corresponding
+     * metrics index entries were written to Cassandra. Without a checkpoint all the partitions are migrated.
+     *
+     * @param partitions partitions of a single SQL table
+     * @param tableRowCount number of rows in the SQL table, used to adjust the progress for skipped partitions
+     * @param partitionQuery select query of a partition, formatted with the table and the schedule id range
+     * @param inserter writes a batch of the selected rows to Cassandra
+     * @param metricsIndexAccumulator index accumulator shared by the partitions
+     * @param progress progress tracker
+     * @param config migration configuration
+     * @throws Exception the first partition failure
+     */
+    protected void migratePartitions(List<SchedulePartition> partitions, long tableRowCount,
+        final MigrationQuery partitionQuery, final BatchInserter inserter,
+        final MetricsIndexMigrator metricsIndexAccumulator, final MigrationProgress progress,
+        final DataMigratorConfiguration config) throws Exception {
+        final MigrationCheckpoint checkpoint = config.getCheckpoint();
+
+        List<SchedulePartition> pendingPartitions = new ArrayList<SchedulePartition>();
+        for (SchedulePartition partition : partitions) {
+            if (checkpoint == null || !checkpoint.isComplete(partition.getKey())) {
+                pendingPartitions.add(partition);
+            }
+        }
+
+        int skippedPartitions = partitions.size() - pendingPartitions.size();
+        if (skippedPartitions > 0) {
+            log.info("Skipping " + skippedPartitions + " already migrated partitions of " + partitions.get(0).getTable());
+            progress.skipped(tableRowCount * skippedPartitions / partitions.size());
+        }
+
+        if (pendingPartitions.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.getParallelism(),
+            pendingPartitions.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final SchedulePartition partition : pendingPartitions) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        migratePartition(partition, partitionQuery, inserter, progress, config);
+                        metricsIndexAccumulator.drain();
+                        if (checkpoint != null) {
+                            checkpoint.markComplete(partition.getKey());
+                        }
+
+                        if (log.isDebugEnabled()) {
+                            log.debug("Partition " + partition.getKey() + " migrated");
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void migratePartition(SchedulePartition partition, MigrationQuery partitionQuery,
+        BatchInserter inserter, MigrationProgress progress, DataMigratorConfiguration config) throws Exception {
+        String selectQuery = String.format(partitionQuery.toString(), partition.getTable(),
+            partition.getStartScheduleId(), partition.getEndScheduleId());
+
+        ExistingDataSource dataSource = getExistingDataSource(selectQuery, Task.Migrate, config);
+        dataSource.initialize();
+
+        try {
+            List<Object[]> existingData;
+            int lastMigratedRecord = 0;
+            while (true) {
+                existingData = dataSource.getData(lastMigratedRecord,
+                    CallableMigrationWorker.MAX_RECORDS_TO_LOAD_FROM_SQL);
+
+                if (existingData == null || existingData.size() == 0) {
+                    break;
+                }
+
+                lastMigratedRecord += existingData.size();
+                config.getThrottle().acquire(existingData.size());
+
+                int failureCount = 0;
+                while (failureCount < CallableMigrationWorker.MAX_NUMBER_OF_FAILURES) {
+                    try {
+                        inserter.insert(existingData);
+                        break;
+                    } catch (Exception e) {
+                        log.error("Failed to insert data for partition " + partition.getKey()
+                            + ". Attempting to insert the current batch of data one more time");
+                        log.error(e);
+
+                        failureCount++;
+                        if (failureCount == CallableMigrationWorker.MAX_NUMBER_OF_FAILURES) {
+                            throw e;
+                        }
+                    }
+                }
+
+                progress.migrated(existingData.size());
+            }
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    protected interface BatchInserter {
+        void insert(List<Object[]> existingData) throws Exception;
+    }
+
+    /**
+     * Range of schedule ids, start inclusive and end exclusive, of a SQL metric table.
+     */
+    protected static class SchedulePartition {
+        private final String table;
+        private final int startScheduleId;
+        private final int endScheduleId;
+
+        public SchedulePartition(String table, int startScheduleId, int endScheduleId) {
+            this.table = table;
+            this.startScheduleId = startScheduleId;
+            this.endScheduleId = endScheduleId;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public int getStartScheduleId() {
+            return startScheduleId;
+        }
+
+        public int getEndScheduleId() {
+            return endScheduleId;
+        }
+
+        public String getKey() {
+            return table + "." + startScheduleId + "-" + endScheduleId;
+        }
+    }
 }
@@ -53,6 +53,7 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
     private final String selectQuery;
     private final String deleteQuery;
     private final String countQuery;
+    private final String sqlTable;
     private final MigrationTable migrationTable;
     private final MetricsIndexMigrator metricsIndexAccumulator;
 
@@ -70,14 +71,17 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
             this.selectQuery = MigrationQuery.SELECT_1H_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_1H_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_1H_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_1H";
         } else if (MigrationTable.SIX_HOUR.equals(this.migrationTable)) {
             this.selectQuery = MigrationQuery.SELECT_6H_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_6H_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_6H_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_6H";
         } else if (MigrationTable.TWENTY_FOUR_HOUR.equals(this.migrationTable)) {
             this.selectQuery = MigrationQuery.SELECT_1D_DATA.toString();
             this.deleteQuery = MigrationQuery.DELETE_1D_DATA.toString();
             this.countQuery = MigrationQuery.COUNT_1D_DATA.toString();
+            this.sqlTable = "RHQ_MEASUREMENT_DATA_NUM_1D";
         } else {
             throw new Exception("MigrationTable " + migrationTable.toString() + " not supported by this migrator.");
         }
@@ -102,7 +106,11 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
     }
 
     public void migrate() throws Exception {
-        performMigration(Task.Migrate);
+        if (config.isPartitionedMigration()) {
+            performPartitionedMigration();
+        } else {
+            performMigration(Task.Migrate);
+        }
         if (config.isDeleteDataImmediatelyAfterMigration()) {
             deleteTableData();
         }
@@ -202,6 +210,25 @@ public class AggregateDataMigrator extends AbstractMigrationWorker implements Ca
         return telemetry;
     }
 
+    /**
+     * Migrates the table in schedule id partitions, in parallel, skipping the partitions recorded in
+     * the migration checkpoint, if there is one.
+     */
+    private void performPartitionedMigration() throws Exception {
+        long recordCount = this.getRowCount(this.countQuery);
+        final MigrationProgress progress = new MigrationProgress(migrationTable.toString(), recordCount);
+
+        migratePartitions(getSchedulePartitions(sqlTable, config), recordCount,
+            MigrationQuery.SELECT_AGGREGATE_DATA_PARTITION, new BatchInserter() {
+                @Override
+                public void insert(List<Object[]> existingData) throws Exception {
+                    insertDataToCassandra(existingData);
+                }
+            }, metricsIndexAccumulator, progress, config);
+
+        progress.finish();
+    }
+
     private void insertDataToCassandra(List<Object[]> existingData) throws Exception {
         List<ResultSetFuture> resultSetFutures = new ArrayList<ResultSetFuture>();
         Batch batch = QueryBuilder.batch();
@@ -0,0 +1,98 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Durable record of the schedule partitions that have been completely migrated. The record is stored in a
+ * properties file that is rewritten every time a partition completes, so a migration that is interrupted
+ * (or that fails after all its retries) can be resumed without migrating the completed partitions again.
+ */
+public class MigrationCheckpoint {
+    private final Log log = LogFactory.getLog(MigrationCheckpoint.class);
+
+    private final File checkpointFile;
+    private final Properties completedPartitions = new Properties();
+
+    /**
+     * @param checkpointFile file that stores the completed partitions
+     * @param resume true to keep the partitions recorded by a previous run, false to start over
+     * @throws IOException if the checkpoint file cannot be read or written, or is corrupt
+     */
+    public MigrationCheckpoint(File checkpointFile, boolean resume) throws IOException {
+        this.checkpointFile = checkpointFile;
+
+        if (resume && checkpointFile.exists()) {
+            FileInputStream stream = new FileInputStream(checkpointFile);
+            try {
+                completedPartitions.load(stream);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt migration checkpoint file " + checkpointFile
+                    + ", remove it or run without --resume to start the migration over", e);
+            } finally {
+                stream.close();
+            }
+            log.info("Resuming migration, " + completedPartitions.size() + " partitions already migrated according to "
+                + checkpointFile);
+        } else {
+            save();
+        }
+    }
+
+    public synchronized boolean isComplete(String partitionKey) {
+        return completedPartitions.containsKey(partitionKey);
+    }
+
+    public synchronized void markComplete(String partitionKey) throws IOException {
+        completedPartitions.setProperty(partitionKey, String.valueOf(new Date().getTime()));
+        save();
+    }
+
+    /**
+     * Writes to a temporary file first so that a crash while saving never leaves a corrupt checkpoint behind.
+     */
+    private void save() throws IOException {
+        File tempFile = new File(checkpointFile.getAbsolutePath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try {
+            completedPartitions.store(stream, "RHQ metrics data migration - completed schedule partitions");
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            throw new IOException("Unable to replace migration checkpoint file " + checkpointFile);
+        }
+        if (!tempFile.renameTo(checkpointFile)) {
+            throw new IOException("Unable to write migration checkpoint file " + checkpointFile);
+        }
+    }
+}
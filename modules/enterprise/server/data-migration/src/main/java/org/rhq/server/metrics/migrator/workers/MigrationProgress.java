@@ -0,0 +1,84 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import org.apache.commons.lang.time.DurationFormatUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps track of the rows migrated for a table and periodically logs the throughput and the estimated time
+ * left. Partitions skipped because they were migrated by a previous run are removed from the expected row count.
+ */
+public class MigrationProgress {
+    private static final long REPORT_INTERVAL = 30000L;
+
+    private final Log log = LogFactory.getLog(MigrationProgress.class);
+
+    private final String name;
+    private final long startTime;
+
+    private long expectedRows;
+    private long migratedRows;
+    private long lastReportTime;
+
+    public MigrationProgress(String name, long expectedRows) {
+        this.name = name;
+        this.expectedRows = expectedRows;
+        this.startTime = System.currentTimeMillis();
+        this.lastReportTime = startTime;
+    }
+
+    public synchronized void skipped(long rows) {
+        expectedRows = Math.max(0, expectedRows - rows);
+    }
+
+    public synchronized void migrated(int rows) {
+        migratedRows += rows;
+
+        long now = System.currentTimeMillis();
+        if (now - lastReportTime >= REPORT_INTERVAL) {
+            report(now);
+        }
+    }
+
+    public synchronized void finish() {
+        report(System.currentTimeMillis());
+    }
+
+    private void report(long now) {
+        lastReportTime = now;
+
+        long elapsedTime = now - startTime;
+        long rowsPerSecond = elapsedTime > 0 ? (migratedRows * 1000L) / elapsedTime : 0;
+        long remainingRows = Math.max(0, expectedRows - migratedRows);
+
+        String eta = "unknown";
+        if (remainingRows == 0) {
+            eta = "done";
+        } else if (rowsPerSecond > 0) {
+            eta = DurationFormatUtils.formatDuration((remainingRows * 1000L) / rowsPerSecond, "HH:mm:ss");
+        }
+
+        log.info("- " + name + " - " + migratedRows + " of ~" + expectedRows + " rows migrated, " + rowsPerSecond
+            + " rows/sec, ETA " + eta + " -");
+    }
+}
@@ -43,7 +43,11 @@ public enum MigrationQuery {
 
     COUNT_RAW("SELECT COUNT(*) FROM %s"), SELECT_RAW_DATA(
         "SELECT schedule_id, time_stamp, value FROM %s ORDER BY schedule_id, time_stamp"), DELETE_RAW_ALL_DATA(
-        "DELETE FROM %s"), DELETE_RAW_ENTRY("DELETE FROM %s WHERE schedule_id = ?");
+        "DELETE FROM %s"), DELETE_RAW_ENTRY("DELETE FROM %s WHERE schedule_id = ?"),
+
+    SCHEDULE_ID_RANGE("SELECT MIN(schedule_id), MAX(schedule_id) FROM %s"), SELECT_RAW_DATA_PARTITION(
+        "SELECT schedule_id, time_stamp, value FROM %s WHERE schedule_id >= %d AND schedule_id < %d ORDER BY schedule_id, time_stamp"), SELECT_AGGREGATE_DATA_PARTITION(
+        "SELECT  schedule_id, time_stamp, value, minvalue, maxvalue FROM %s WHERE schedule_id >= %d AND schedule_id < %d ORDER BY schedule_id, time_stamp");
 
     public static final int SCHEDULE_INDEX = 0;
     public static final int TIMESTAMP_INDEX = 1;
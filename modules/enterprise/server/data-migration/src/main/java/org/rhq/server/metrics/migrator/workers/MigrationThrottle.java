@@ -0,0 +1,65 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput budget shared by all the migration workers. Each caller reserves a time slot proportional to the
+ * number of rows it is about to write and sleeps until the slot starts, so the combined rate of all the
+ * workers does not exceed the configured number of rows per second.
+ */
+public class MigrationThrottle {
+    private final int maxRowsPerSecond;
+    private long nextSlotNanos = System.nanoTime();
+
+    /**
+     * @param maxRowsPerSecond maximum combined throughput, zero or a negative value disables throttling
+     */
+    public MigrationThrottle(int maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    public int getMaxRowsPerSecond() {
+        return maxRowsPerSecond;
+    }
+
+    public void acquire(int rows) throws InterruptedException {
+        if (maxRowsPerSecond <= 0 || rows <= 0) {
+            return;
+        }
+
+        long slotStart;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextSlotNanos < now) {
+                nextSlotNanos = now;
+            }
+            slotStart = nextSlotNanos;
+            nextSlotNanos += TimeUnit.SECONDS.toNanos(rows) / maxRowsPerSecond;
+        }
+
+        long waitTime = slotStart - System.nanoTime();
+        if (waitTime > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+}
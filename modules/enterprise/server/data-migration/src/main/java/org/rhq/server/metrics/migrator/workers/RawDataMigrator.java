@@ -25,8 +25,10 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 import com.datastax.driver.core.ResultSetFuture;
@@ -80,7 +82,11 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
     }
 
     public void migrate() throws Exception {
-        performMigration(Task.Migrate);
+        if (config.isPartitionedMigration()) {
+            performPartitionedMigration();
+        } else {
+            performMigration(Task.Migrate);
+        }
     }
 
     private long getRowCount(String countQuery) {
@@ -178,6 +184,47 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
         return telemetry;
     }
 
+    /**
+     * Migrates the raw tables in schedule id partitions, in parallel, skipping the partitions recorded in
+     * the migration checkpoint, if there is one. A raw table is deleted only after all of its partitions were
+     * migrated.
+     */
+    private void performPartitionedMigration() throws Exception {
+        Map<String, Long> tableRecordCounts = new HashMap<String, Long>();
+        long recordCount = 0;
+        for (String table : getRawDataTables()) {
+            long tableRecordCount = this.getRowCount(String.format(MigrationQuery.COUNT_RAW.toString(), table));
+            tableRecordCounts.put(table, tableRecordCount);
+            recordCount += tableRecordCount;
+        }
+
+        final MigrationProgress progress = new MigrationProgress(MigrationTable.RAW.toString(), recordCount);
+
+        while (!tablesNotProcessed.isEmpty()) {
+            String table = tablesNotProcessed.peek();
+
+            log.info("Start migrating raw table: " + table);
+
+            migratePartitions(getSchedulePartitions(table, config), tableRecordCounts.get(table),
+                MigrationQuery.SELECT_RAW_DATA_PARTITION, new BatchInserter() {
+                    @Override
+                    public void insert(List<Object[]> existingData) throws Exception {
+                        insertDataToCassandra(existingData);
+                    }
+                }, metricsIndexAccumulator, progress, config);
+
+            log.info("Done migrating raw table" + table + "---------------------");
+
+            if (config.isDeleteDataImmediatelyAfterMigration()) {
+                deleteTableData(table);
+            }
+
+            tablesNotProcessed.poll();
+        }
+
+        progress.finish();
+    }
+
     private void deleteTableData(String table) throws Exception {
         String deleteQuery = String.format(MigrationQuery.DELETE_RAW_ENTRY.toString(), table);
         int failureCount = 0;
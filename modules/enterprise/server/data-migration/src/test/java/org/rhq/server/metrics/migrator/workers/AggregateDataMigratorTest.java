@@ -22,13 +22,16 @@ package org.rhq.server.metrics.migrator.workers;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -193,5 +196,98 @@ public class AggregateDataMigratorTest {
         verifyNoMoreInteractions(mockResultSetFuture);
         verifyNoMoreInteractions(mockMetricsIndexUpdateAccumulator);
     }
-}
 
+    @Test
+    public void testPartitionedMigrateTaskResumesFromCheckpoint() throws Exception {
+        //tell the method story as it happens: mock or create dependencies and configure
+        //those dependencies to get the method under test to completion
+        DatabaseType databaseType = DatabaseType.Oracle;
+        DataMigratorConfiguration mockConfig = mock(DataMigratorConfiguration.class);
+        when(mockConfig.getDatabaseType()).thenReturn(databaseType);
+        when(mockConfig.isPartitionedMigration()).thenReturn(true);
+        when(mockConfig.getParallelism()).thenReturn(2);
+        when(mockConfig.getThrottle()).thenReturn(new MigrationThrottle(0));
+
+        //the first partition of the table was migrated by a previous run
+        File checkpointFile = File.createTempFile("data-migration", ".checkpoint");
+        checkpointFile.deleteOnExit();
+        MigrationCheckpoint previousRun = new MigrationCheckpoint(checkpointFile, false);
+        previousRun.markComplete("RHQ_MEASUREMENT_DATA_NUM_1H.0-1000");
+        when(mockConfig.getCheckpoint()).thenReturn(new MigrationCheckpoint(checkpointFile, true));
+
+        Session mockCassandraSession = mock(Session.class);
+        when(mockConfig.getSession()).thenReturn(mockCassandraSession);
+
+        MetricsIndexMigrator mockMetricsIndexUpdateAccumulator = mock(MetricsIndexMigrator.class);
+        PowerMockito.whenNew(MetricsIndexMigrator.class)
+            .withArguments(eq(MigrationTable.ONE_HOUR), eq(mockConfig))
+            .thenReturn(mockMetricsIndexUpdateAccumulator);
+
+        EntityManager mockEntityManager = mock(EntityManager.class);
+        when(mockConfig.getEntityManager()).thenReturn(mockEntityManager);
+
+        org.hibernate.Session mockHibernateSession = mock(org.hibernate.Session.class);
+        when(mockEntityManager.getDelegate()).thenReturn(mockHibernateSession);
+        SessionFactory mockSessionFactory = mock(SessionFactory.class);
+        when(mockHibernateSession.getSessionFactory()).thenReturn(mockSessionFactory);
+        StatelessSession mockStatelessSession = mock(StatelessSession.class);
+        when(mockSessionFactory.openStatelessSession()).thenReturn(mockStatelessSession);
+
+        org.hibernate.SQLQuery mockQuery = mock(org.hibernate.SQLQuery.class);
+        when(mockStatelessSession.createSQLQuery(any(String.class))).thenReturn(mockQuery);
+
+        when(mockQuery.uniqueResult()).thenReturn("1000");
+
+        //schedule ids from 100 to 1500, that is partitions 0-1000 and 1000-2000
+        org.hibernate.SQLQuery mockRangeQuery = mock(org.hibernate.SQLQuery.class);
+        when(mockStatelessSession.createSQLQuery(startsWith("SELECT MIN(schedule_id)"))).thenReturn(mockRangeQuery);
+
+        when(mockRangeQuery.uniqueResult()).thenReturn(new Object[] { "100", "1500" });
+
+        ScrollableDataSource mockDataSource = mock(ScrollableDataSource.class);
+        PowerMockito.whenNew(ScrollableDataSource.class).withArguments(eq(mockEntityManager), eq(databaseType), any())
+            .thenReturn(mockDataSource);
+
+        List<Object[]> resultList = new ArrayList<Object[]>();
+        resultList.add(new Object[] { 1100, 100, 100, 100, 100 });
+        resultList.add(new Object[] { 1100, System.currentTimeMillis() - 100l, 100, 100, 100 });
+
+        when(mockDataSource.getData(eq(0), anyInt())).thenReturn(resultList);
+        when(mockDataSource.getData(eq(2), anyInt())).thenReturn(new ArrayList<Object[]>());
+
+        ResultSetFuture mockResultSetFuture = mock(ResultSetFuture.class);
+        when(mockCassandraSession.executeAsync(any(Query.class))).thenReturn(mockResultSetFuture);
+
+        //create object to test and inject required dependencies
+        AggregateDataMigrator objectUnderTest = new AggregateDataMigrator(MigrationTable.ONE_HOUR, mockConfig);
+
+        //run code under test
+        objectUnderTest.migrate();
+
+        //verify the results (assert and mock verification)
+        PowerMockito.verifyNew(MetricsIndexMigrator.class).withArguments(eq(MigrationTable.ONE_HOUR),
+            eq(mockConfig));
+        PowerMockito.verifyNew(ScrollableDataSource.class, times(1)).withArguments(eq(mockEntityManager),
+            eq(databaseType), contains("schedule_id >= 1000 AND schedule_id < 2000"));
+
+        verify(mockDataSource, times(1)).initialize();
+        verify(mockDataSource, times(1)).getData(eq(0), anyInt());
+        verify(mockDataSource, times(1)).getData(eq(2), anyInt());
+        verify(mockDataSource, times(1)).close();
+
+        verify(mockMetricsIndexUpdateAccumulator, times(1)).add(eq(1100), anyInt());
+        verify(mockMetricsIndexUpdateAccumulator, times(1)).drain();
+
+        verify(mockCassandraSession, times(1)).executeAsync(any(Query.class));
+        verify(mockResultSetFuture, times(1)).get();
+
+        verifyNoMoreInteractions(mockDataSource);
+        verifyNoMoreInteractions(mockCassandraSession);
+        verifyNoMoreInteractions(mockResultSetFuture);
+        verifyNoMoreInteractions(mockMetricsIndexUpdateAccumulator);
+
+        MigrationCheckpoint checkpoint = new MigrationCheckpoint(checkpointFile, true);
+        Assert.assertTrue(checkpoint.isComplete("RHQ_MEASUREMENT_DATA_NUM_1H.0-1000"));
+        Assert.assertTrue(checkpoint.isComplete("RHQ_MEASUREMENT_DATA_NUM_1H.1000-2000"));
+    }
+}
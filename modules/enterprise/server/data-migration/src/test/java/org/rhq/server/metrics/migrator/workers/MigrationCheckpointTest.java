@@ -0,0 +1,108 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MigrationCheckpointTest {
+
+    private File checkpointFile;
+
+    @BeforeMethod
+    public void createCheckpointFile() throws Exception {
+        checkpointFile = File.createTempFile("data-migration", ".checkpoint");
+        checkpointFile.delete();
+    }
+
+    @AfterMethod
+    public void deleteCheckpointFile() {
+        checkpointFile.delete();
+        new File(checkpointFile.getAbsolutePath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testCompletedPartitionsAreReloadedOnResume() throws Exception {
+        //tell the method story as it happens: mock or create dependencies and configure
+        //those dependencies to get the method under test to completion
+        MigrationCheckpoint previousRun = new MigrationCheckpoint(checkpointFile, false);
+        previousRun.markComplete("RHQ_MEAS_DATA_NUM_R00.0-1000");
+        previousRun.markComplete("RHQ_MEAS_DATA_NUM_R00.1000-2000");
+
+        //run code under test
+        MigrationCheckpoint objectUnderTest = new MigrationCheckpoint(checkpointFile, true);
+
+        //verify the results (assert and mock verification)
+        Assert.assertTrue(checkpointFile.exists());
+        Assert.assertFalse(new File(checkpointFile.getAbsolutePath() + ".tmp").exists());
+
+        Assert.assertTrue(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R00.0-1000"));
+        Assert.assertTrue(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R00.1000-2000"));
+        Assert.assertFalse(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R00.2000-3000"));
+        Assert.assertFalse(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R01.0-1000"));
+    }
+
+    @Test
+    public void testStartOverDiscardsCompletedPartitions() throws Exception {
+        //tell the method story as it happens: mock or create dependencies and configure
+        //those dependencies to get the method under test to completion
+        MigrationCheckpoint previousRun = new MigrationCheckpoint(checkpointFile, false);
+        previousRun.markComplete("RHQ_MEAS_DATA_NUM_R00.0-1000");
+
+        //run code under test
+        MigrationCheckpoint objectUnderTest = new MigrationCheckpoint(checkpointFile, false);
+
+        //verify the results (assert and mock verification)
+        Assert.assertFalse(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R00.0-1000"));
+        Assert.assertFalse(new MigrationCheckpoint(checkpointFile, true).isComplete("RHQ_MEAS_DATA_NUM_R00.0-1000"));
+    }
+
+    @Test
+    public void testResumeWithoutCheckpointFileStartsOver() throws Exception {
+        //run code under test
+        MigrationCheckpoint objectUnderTest = new MigrationCheckpoint(checkpointFile, true);
+
+        //verify the results (assert and mock verification)
+        Assert.assertTrue(checkpointFile.exists());
+        Assert.assertFalse(objectUnderTest.isComplete("RHQ_MEAS_DATA_NUM_R00.0-1000"));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptCheckpointFileIsRejectedOnResume() throws Exception {
+        //tell the method story as it happens: mock or create dependencies and configure
+        //those dependencies to get the method under test to completion
+        FileWriter writer = new FileWriter(checkpointFile);
+        try {
+            writer.write("RHQ_MEAS_DATA_NUM_R00.0-1000=\\uZZZZ\n");
+        } finally {
+            writer.close();
+        }
+
+        //run code under test
+        new MigrationCheckpoint(checkpointFile, true);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright 2014, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.server.metrics.migrator.workers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MigrationThrottleTest {
+
+    @Test
+    public void testDisabledThrottleDoesNotWait() throws Exception {
+        //create object to test and inject required dependencies
+        MigrationThrottle objectUnderTest = new MigrationThrottle(0);
+
+        //run code under test
+        long start = System.nanoTime();
+        for (int index = 0; index < 10; index++) {
+            objectUnderTest.acquire(1000000);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //verify the results (assert and mock verification)
+        Assert.assertTrue(elapsedMillis < 500, "A disabled throttle waited " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testThrottleLimitsRowsPerSecond() throws Exception {
+        //create object to test and inject required dependencies
+        MigrationThrottle objectUnderTest = new MigrationThrottle(10000);
+
+        //run code under test
+        //the batches get the slots starting at 0, 500 and 1000 ms
+        long start = System.nanoTime();
+        for (int index = 0; index < 3; index++) {
+            objectUnderTest.acquire(5000);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //verify the results (assert and mock verification)
+        Assert.assertTrue(elapsedMillis >= 950, "15000 rows at 10000 rows/s acquired in " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testThrottleIsSharedByAllWorkers() throws Exception {
+        //tell the method story as it happens: mock or create dependencies and configure
+        //those dependencies to get the method under test to completion
+        final MigrationThrottle objectUnderTest = new MigrationThrottle(10000);
+
+        Thread[] workers = new Thread[2];
+        final Exception[] failures = new Exception[workers.length];
+        for (int index = 0; index < workers.length; index++) {
+            final int worker = index;
+            workers[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        objectUnderTest.acquire(5000);
+                        objectUnderTest.acquire(5000);
+                    } catch (Exception e) {
+                        failures[worker] = e;
+                    }
+                }
+            });
+        }
+
+        //run code under test
+        //the four batches get the slots starting at 0, 500, 1000 and 1500 ms, whichever worker asks first
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //verify the results (assert and mock verification)
+        for (Exception failure : failures) {
+            Assert.assertNull(failure);
+        }
+        Assert.assertTrue(elapsedMillis >= 1450, "20000 rows at 10000 rows/s acquired in " + elapsedMillis + " ms");
+    }
+}
@@ -21,6 +21,7 @@
 package org.rhq.enterprise.server.measurement.test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -48,8 +49,8 @@ public class AbstractMeasurementScheduleManagerTest extends AbstractEJB3Test {
 
         private long expectedInterval = MeasurementConstants.MINIMUM_COLLECTION_INTERVAL_MILLIS;
         private boolean expectedIsEnabled = false;
-        private boolean isTested = false;
-        private List<String> failures = new ArrayList<String>();
+        private volatile boolean isTested = false;
+        private List<String> failures = Collections.synchronizedList(new ArrayList<String>());
 
         @Override
         public AgentClient getKnownAgentClient(Agent agent) {
@@ -78,6 +79,20 @@ public class AbstractMeasurementScheduleManagerTest extends AbstractEJB3Test {
             return isTested;
         }
 
+        /**
+         * Schedule updates are sent to the agents from a background thread once the transaction commits, so they may
+         * not have arrived yet when the update call returns.
+         *
+         * @return true if the agent got schedule updates within the given time
+         */
+        public boolean waitUntilTested(long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            while (!isTested && System.currentTimeMillis() < end) {
+                Thread.sleep(50L);
+            }
+            return isTested;
+        }
+
         public boolean hasFailures() {
             return !failures.isEmpty();
         }
@@ -94,9 +109,10 @@ public class AbstractMeasurementScheduleManagerTest extends AbstractEJB3Test {
 
             @Override
             public void updateCollection(Set<ResourceMeasurementScheduleRequest> resourceSchedules) {
+                boolean tested = false;
                 for (ResourceMeasurementScheduleRequest rmsr : resourceSchedules) {
                     for (MeasurementScheduleRequest msr : rmsr.getMeasurementSchedules()) {
-                        isTested = true;
+                        tested = true;
 
                         if (msr.getInterval() != expectedInterval) {
                             String msg = "Illegal Schedule Interval, expected " + expectedInterval + ", got: " + msr;
@@ -108,6 +124,10 @@ public class AbstractMeasurementScheduleManagerTest extends AbstractEJB3Test {
                         }
                     }
                 }
+                // only flag it once the failures are recorded, a test waiting for it checks them right away
+                if (tested) {
+                    isTested = true;
+                }
             }
 
         }
@@ -247,7 +247,7 @@ public class MeasurementScheduleManagerTest extends AbstractMeasurementScheduleM
 
             measurementScheduleManager.updateSchedulesForResourceType(overlord, new int[] { definitionCt1.getId() },
                 updatedInterval, true);
-            Assert.assertTrue(testCommService.isTested());
+            Assert.assertTrue(testCommService.waitUntilTested(10000L));
             if (testCommService.hasFailures()) {
                 Assert.fail(testCommService.getFailures().get(0));
             }
@@ -271,7 +271,7 @@ public class MeasurementScheduleManagerTest extends AbstractMeasurementScheduleM
 
             measurementScheduleManager.disableSchedulesForResourceType(overlord, new int[] { definitionCt1.getId() },
                 true);
-            Assert.assertTrue(testCommService.isTested());
+            Assert.assertTrue(testCommService.waitUntilTested(10000L));
 
             resScheds = measurementScheduleManager.findSchedulesForResourceAndItsDescendants(
                 new int[] { resource1.getId() }, false);
@@ -292,7 +292,7 @@ public class MeasurementScheduleManagerTest extends AbstractMeasurementScheduleM
 
             measurementScheduleManager.enableSchedulesForResourceType(overlord, new int[] { definitionCt1.getId() },
                 true);
-            Assert.assertTrue(testCommService.isTested());
+            Assert.assertTrue(testCommService.waitUntilTested(10000L));
 
             resScheds = measurementScheduleManager.findSchedulesForResourceAndItsDescendants(
                 new int[] { resource1.getId() }, false);
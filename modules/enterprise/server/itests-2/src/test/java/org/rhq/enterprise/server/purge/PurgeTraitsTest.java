@@ -0,0 +1,239 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.domain.measurement.DataType.TRAIT;
+import static org.rhq.core.domain.resource.ResourceCategory.SERVER;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ejb.EJB;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.ResourceCriteria;
+import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.test.TransactionCallbackReturnable;
+import org.rhq.enterprise.server.util.Overlord;
+import org.rhq.enterprise.server.util.ResourceTreeHelper;
+
+public class PurgeTraitsTest extends AbstractEJB3Test {
+
+    private final String RESOURCE_TYPE = getClass().getName() + "_TYPE";
+    private final String PLUGIN = getClass().getName() + "_PLUGIN";
+    private final String AGENT_NAME = getClass().getName() + "_AGENT";
+    private final String TRAIT_DEF_NAME = getClass().getName() + "_TRAIT";
+    private final String RESOURCE_KEY = getClass().getName() + "_RESOURCE_KEY";
+    private final String RESOURCE_NAME = getClass().getName() + "_NAME";
+    private final String RESOURCE_UUID = getClass().getSimpleName() + "_UUID";
+
+    private ResourceType resourceType;
+    private Agent agent;
+    private Resource resource;
+    private List<MeasurementDefinition> measurementDefs;
+    private List<MeasurementSchedule> schedules;
+
+    @Inject
+    @Overlord
+    private Subject overlord;
+
+    @EJB
+    private ResourceManagerLocal resourceManager;
+
+    @EJB
+    private PurgeManagerLocal purgeManager;
+
+    @Override
+    protected void beforeMethod() throws Exception {
+        measurementDefs = new ArrayList<MeasurementDefinition>();
+        schedules = new ArrayList<MeasurementSchedule>();
+        createInventory();
+    }
+
+    @Override
+    protected void afterMethod() throws Exception {
+        purgeDB();
+    }
+
+    @Test
+    public void testPurgeKeepsLatestTraitBeforePurgeTime() throws Exception {
+        long oldest = 10000L;
+
+        // values at 6000, 7000, 8000, 9000, 10000 and 11000
+        MeasurementSchedule busy = createSchedule();
+        for (long timestamp = 6000L; timestamp <= 11000L; timestamp += 1000L) {
+            insertTrait(busy, timestamp);
+        }
+        // a single old value, which is still the current one
+        MeasurementSchedule quiet = createSchedule();
+        insertTrait(quiet, 1000L);
+        // nothing before the purge time
+        MeasurementSchedule recent = createSchedule();
+        insertTrait(recent, 12000L);
+        insertTrait(recent, 13000L);
+
+        assertEquals(3, purgeManager.purgeTraits(oldest));
+
+        assertEquals(3, countTraitsFor(busy));
+        assertEquals(0, countTraitsFor(busy, 9000L));
+        assertEquals(1, countTraitsFor(busy, 10000L));
+        assertEquals(1, countTraitsFor(quiet));
+        assertEquals(2, countTraitsFor(recent));
+    }
+
+    private long countTraitsFor(MeasurementSchedule schedule) {
+        return countTraitsFor(schedule, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of trait values of the schedule older than <code>before</code>
+     */
+    private long countTraitsFor(final MeasurementSchedule schedule, final long before) {
+        return executeInTransaction(new TransactionCallbackReturnable<Long>() {
+            @Override
+            public Long execute() throws Exception {
+                String query = "select count(*) from rhq_measurement_data_trait " //
+                    + "where schedule_id = ? and time_stamp < ?";
+                Number count = (Number) getEntityManager().createNativeQuery(query) //
+                    .setParameter(1, schedule.getId()) //
+                    .setParameter(2, before) //
+                    .getSingleResult();
+                return count.longValue();
+            }
+        });
+    }
+
+    private void insertTrait(final MeasurementSchedule schedule, final long timestamp) {
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                String query = "insert into rhq_measurement_data_trait (schedule_id, time_stamp, value) " //
+                    + "values (?, ?, ?)";
+                getEntityManager().createNativeQuery(query) //
+                    .setParameter(1, schedule.getId()) //
+                    .setParameter(2, timestamp) //
+                    .setParameter(3, "value-" + timestamp) //
+                    .executeUpdate();
+            }
+        });
+    }
+
+    private void createInventory() throws Exception {
+        purgeDB();
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+
+                resourceType = new ResourceType(RESOURCE_TYPE, PLUGIN, SERVER, null);
+                em.persist(resourceType);
+
+                agent = new Agent(AGENT_NAME, "localhost", 9999, "", "randomToken");
+                em.persist(agent);
+
+                resource = new Resource(RESOURCE_KEY, RESOURCE_NAME, resourceType);
+                resource.setUuid(RESOURCE_UUID);
+                resource.setAgent(agent);
+
+                em.persist(resource);
+            }
+        });
+    }
+
+    private void purgeDB() {
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                getEntityManager().createNativeQuery("delete from rhq_measurement_data_trait").executeUpdate();
+            }
+        });
+
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                ResourceCriteria c = new ResourceCriteria();
+                c.addFilterInventoryStatus(null);
+                c.addFilterResourceKey(RESOURCE_KEY);
+                c.fetchSchedules(true);
+                List<Resource> r = resourceManager.findResourcesByCriteria(overlord, c);
+
+                // Note that the order of deletes is important due to FK
+                // constraints.
+                if (!r.isEmpty()) {
+                    assertTrue("Should be only 1 resource", r.size() == 1);
+                    Resource doomedResource = r.get(0);
+                    deleteMeasurementSchedules();
+                    ResourceTreeHelper.deleteResource(em, doomedResource);
+                    em.flush();
+                }
+                em.createQuery("delete from Agent where name = :name").setParameter("name", AGENT_NAME)
+                    .executeUpdate();
+                if (!measurementDefs.isEmpty()) {
+                    em.createQuery("delete from MeasurementDefinition d where d in :defs")
+                        .setParameter("defs", measurementDefs).executeUpdate();
+                }
+                em.createQuery("delete from ResourceType where name = :name and plugin = :plugin")
+                    .setParameter("name", RESOURCE_TYPE).setParameter("plugin", PLUGIN).executeUpdate();
+            }
+        });
+    }
+
+    private void deleteMeasurementSchedules() {
+        for (MeasurementSchedule schedule : schedules) {
+            em.createQuery("delete from MeasurementSchedule where id = :id").setParameter("id", schedule.getId())
+                .executeUpdate();
+        }
+        em.flush();
+    }
+
+    private MeasurementSchedule createSchedule() {
+        return executeInTransaction(false, new TransactionCallbackReturnable<MeasurementSchedule>() {
+            @Override
+            public MeasurementSchedule execute() throws Exception {
+                EntityManager em = getEntityManager();
+
+                MeasurementDefinition definition = new MeasurementDefinition(resourceType, TRAIT_DEF_NAME
+                    + measurementDefs.size());
+                definition.setDefaultOn(true);
+                definition.setDataType(TRAIT);
+                em.persist(definition);
+
+                MeasurementSchedule schedule = new MeasurementSchedule(definition, resource);
+                schedule.setEnabled(true);
+                resource.addSchedule(schedule);
+                em.persist(schedule);
+
+                schedules.add(schedule);
+                measurementDefs.add(definition);
+
+                return schedule;
+            }
+        });
+    }
+}
@@ -20,6 +20,7 @@ package org.rhq.enterprise.server.resource.group.definition.framework.test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -266,6 +267,32 @@ public class ExpressionEvaluatorTest extends AbstractEJB3Test {
         }
     }
 
+    @Test(groups = "integration.session")
+    public void testDependencies() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true); // to prevent actual query from happening
+        evaluator.addExpression("resource.type.plugin = JBossAS7");
+        evaluator.addExpression("resource.type.name = Datasource");
+        evaluator.addExpression("groupby resource.trait[jndi-name]");
+
+        assertEquals(EnumSet.of(ExpressionEvaluator.Dependency.INVENTORY, ExpressionEvaluator.Dependency.TRAIT),
+            evaluator.getDependencies());
+        assertEquals("JBossAS7", evaluator.getResourceTypePluginScope());
+        assertEquals("Datasource", evaluator.getResourceTypeNameScope());
+
+        // partial matches and hierarchy expressions do not narrow the resources that can influence the result
+        evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true);
+        evaluator.addExpression("resource.type.name.startswith = Data");
+        evaluator.addExpression("resource.parent.availability = UP");
+        evaluator.addExpression("memberof = foo");
+
+        assertEquals(EnumSet.of(ExpressionEvaluator.Dependency.INVENTORY, ExpressionEvaluator.Dependency.AVAILABILITY,
+            ExpressionEvaluator.Dependency.MEMBERSHIP), evaluator.getDependencies());
+        assertNull(evaluator.getResourceTypePluginScope());
+        assertNull(evaluator.getResourceTypeNameScope());
+    }
+
     private static interface ExpressionGenerator {
         String[] getExpressions();
     }
@@ -170,6 +170,27 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         }
     }
 
+    public void testResourceIdLineage() throws Exception {
+        // given a resource id for the leaf resource in a resource hierarchy
+        int leafResourceId = givenASampleResourceHierarchy();
+
+        // when
+        List<Integer> resourceIdLineage = resourceManager.getResourceIdLineage(leafResourceId);
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+
+        // then the id lineage holds the ancestors, nearest first
+        assertEquals(resourceIdLineage.size(), 3);
+        for (int i = 0; i < resourceIdLineage.size(); ++i) {
+            assertEquals(resourceIdLineage.get(i).intValue(), resourceLineage.get(2 - i).getId());
+        }
+        assertTrue(resourceManager.getResourceIdLineage(resourceLineage.get(0).getId()).isEmpty());
+
+        // cleanup the DB
+        for (int i = resourceLineage.size() - 1; i >= 0; i--) {
+            deleteNewResourceAgentResourceType(resourceLineage.get(i));
+        }
+    }
+
     // Make sure our application exceptions are not wrapped
     public void bz886850Test() {
         try {
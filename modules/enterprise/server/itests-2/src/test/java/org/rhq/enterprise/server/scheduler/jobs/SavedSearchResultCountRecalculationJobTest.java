@@ -170,6 +170,38 @@ public class SavedSearchResultCountRecalculationJobTest extends AbstractEJB3Test
         });
     }
 
+    @Test
+    public void testSavedSearchesWithSamePatternShareResultCount() throws Exception {
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                for (int i = 0; i < 3; i++) {
+                    SavedSearch savedSearch = new SavedSearch(SearchSubsystem.RESOURCE, "duplicate-search-" + i,
+                        " resource-00 ", testData.getSearchesOwner());
+                    savedSearchManager.createSavedSearch(testData.getSearchesOwner(), savedSearch);
+                    testData.getSavedSearches().add(savedSearch);
+                }
+            }
+        });
+        runJobSynchronously();
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                SavedSearchCriteria criteria = new SavedSearchCriteria();
+                criteria.clearPaging();
+                criteria.addFilterSubjectId(testData.getSearchesOwner().getId());
+                PageList<SavedSearch> foundSavedSearches = savedSearchManager.findSavedSearchesByCriteria(
+                    testData.getSearchesOwner(), criteria);
+                assertEquals(testData.getSavedSearches().size(), foundSavedSearches.size());
+                for (SavedSearch savedSearch : foundSavedSearches) {
+                    assertTrue(savedSearch.toString() + " should have been computed",
+                        savedSearch.getLastComputeTime() > 0);
+                    assertEquals(Long.valueOf(1), savedSearch.getResultCount());
+                }
+            }
+        });
+    }
+
     private void runJobSynchronously() throws Exception {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
         final String jobName = SavedSearchResultCountRecalculationJob.class.getSimpleName();
@@ -74,6 +74,11 @@ public class AlertConditionCacheMonitor implements AlertConditionCacheMonitorMBe
     public AtomicLong driftProcessingTime = new AtomicLong();
     public AtomicLong totalProcessingTime = new AtomicLong();
 
+    public AtomicLong cacheInvalidationEventsSent = new AtomicLong();
+    public AtomicLong cacheInvalidationEventsReceived = new AtomicLong();
+    public AtomicLong cacheInvalidationSendFailures = new AtomicLong();
+    public AtomicLong cacheInvalidationPropagationTime = new AtomicLong();
+
     private static MBeanServer mbeanServer;
     private static ObjectName objectName;
 
@@ -299,6 +304,43 @@ public class AlertConditionCacheMonitor implements AlertConditionCacheMonitorMBe
         totalProcessingTime.addAndGet(moreMillis);
     }
 
+    public long getCacheInvalidationEventsSent() {
+        return cacheInvalidationEventsSent.get();
+    }
+
+    public long getCacheInvalidationEventsReceived() {
+        return cacheInvalidationEventsReceived.get();
+    }
+
+    public long getCacheInvalidationSendFailures() {
+        return cacheInvalidationSendFailures.get();
+    }
+
+    public long getCacheInvalidationPropagationTime() {
+        return cacheInvalidationPropagationTime.get();
+    }
+
+    public long getCacheInvalidationAveragePropagationTime() {
+        long received = cacheInvalidationEventsReceived.get();
+        return (received == 0L) ? 0L : (cacheInvalidationPropagationTime.get() / received);
+    }
+
+    public void incrementCacheInvalidationEventsSent(long events) {
+        cacheInvalidationEventsSent.addAndGet(events);
+    }
+
+    public void incrementCacheInvalidationEventsReceived(long events) {
+        cacheInvalidationEventsReceived.addAndGet(events);
+    }
+
+    public void incrementCacheInvalidationSendFailures(long failures) {
+        cacheInvalidationSendFailures.addAndGet(failures);
+    }
+
+    public void incrementCacheInvalidationPropagationTime(long moreMillis) {
+        cacheInvalidationPropagationTime.addAndGet(moreMillis);
+    }
+
     public void reloadCaches() {
         LookupUtil.getAlertConditionCacheManager().reloadAllCaches();
     }
@@ -122,6 +122,31 @@ public interface AlertConditionCacheMonitorMBean {
 
     public void incrementDriftCacheElementMatches(int matches);
 
+    /*
+     * for cache invalidation events pushed between the servers
+     */
+    public long getCacheInvalidationEventsSent();
+
+    public long getCacheInvalidationEventsReceived();
+
+    public long getCacheInvalidationSendFailures();
+
+    /**
+     * @return the total time in milliseconds between the publishing of the received events and the reload of the
+     *         caches they invalidated
+     */
+    public long getCacheInvalidationPropagationTime();
+
+    public long getCacheInvalidationAveragePropagationTime();
+
+    public void incrementCacheInvalidationEventsSent(long events);
+
+    public void incrementCacheInvalidationEventsReceived(long events);
+
+    public void incrementCacheInvalidationSendFailures(long failures);
+
+    public void incrementCacheInvalidationPropagationTime(long moreMillis);
+
     /*
      * cache contents
      */
@@ -0,0 +1,386 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.cloud.AffinityGroup;
+import org.rhq.core.domain.cloud.Server;
+import org.rhq.core.domain.cloud.composite.FailoverListComposite;
+import org.rhq.core.domain.cloud.composite.FailoverListComposite.ServerEntry;
+import org.rhq.core.domain.cloud.composite.FailoverListDetailsComposite;
+import org.rhq.core.domain.resource.Agent;
+
+/**
+ * The distribution algorithm behind {@link FailoverListManagerBean}. It assigns the servers of each agent's failover
+ * list level by level (primary, then secondary, etc), balancing the number of agents per server on every level and
+ * honoring affinity groups. It does not touch the database, the caller supplies the current state.
+ *
+ * <p>If the existing server lists of the agents are {@link #setExistingServerLists(Map) supplied}, every agent prefers
+ * the server it already has on each level. Only the agents whose servers went away, or which must move to restore the
+ * load balance, get a different server on a level. This keeps a refresh after a small topology change from rewriting
+ * most of the server lists.</p>
+ */
+class FailoverListBalancer {
+    private final Log log = LogFactory.getLog(FailoverListBalancer.class);
+
+    /** The variation in load between most loaded and least loaded server that indicates balanced load. */
+    private static final double ACCEPTABLE_DISPARITY = 0.10;
+
+    private final List<Server> servers;
+    private final List<FailoverListDetailsComposite> existingLoads;
+    private Map<Integer, List<Integer>> existingServerLists;
+
+    /**
+     * @param servers the servers to assign to the agents
+     * @param existingLoads the agent counts already assigned to the servers, by ordinal, or null if the balancing
+     * starts from scratch
+     */
+    FailoverListBalancer(List<Server> servers, List<FailoverListDetailsComposite> existingLoads) {
+        this.servers = servers;
+        this.existingLoads = existingLoads;
+    }
+
+    /**
+     * @param existingServerLists the server ids currently in the failover lists, indexed by ordinal and keyed by
+     * agent id. Null entries are allowed for missing ordinals. Agents without an entry have no list yet.
+     */
+    void setExistingServerLists(Map<Integer, List<Integer>> existingServerLists) {
+        this.existingServerLists = existingServerLists;
+    }
+
+    Map<Agent, FailoverListComposite> balance(List<Agent> agents) {
+        Map<Agent, FailoverListComposite> result = new HashMap<Agent, FailoverListComposite>(agents.size());
+
+        // create a bucket for each server to which we will assign agents
+        List<ServerBucket> buckets = new ArrayList<ServerBucket>(servers.size());
+        Map<Integer, ServerBucket> bucketsById = new HashMap<Integer, ServerBucket>(servers.size());
+        Map<String, ServerBucket> bucketsByName = new HashMap<String, ServerBucket>(servers.size());
+        for (Server next : servers) {
+            ServerBucket bucket = new ServerBucket(next);
+            buckets.add(bucket);
+            bucketsById.put(next.getId(), bucket);
+            bucketsByName.put(next.getName(), bucket);
+        }
+
+        // initialize the result map
+        Map<Agent, List<ServerBucket>> agentServerListMap = new HashMap<Agent, List<ServerBucket>>(agents.size());
+        for (Agent next : agents) {
+            agentServerListMap.put(next, new ArrayList<ServerBucket>(servers.size()));
+        }
+
+        // the servers each agent already has, by level
+        Map<Agent, List<ServerBucket>> preferredServerListMap = getPreferredServerLists(agents, bucketsById);
+
+        // assign server lists level by level: primary, then secondary, then tertiary, etc
+        for (int level = 0; (level < servers.size()); ++level) {
+
+            // Initialize the bucket loads for the next round
+            initBuckets(buckets, level);
+
+            // assign a server for this level to each agent, balancing as we go
+
+            // keep track of the how many agents have been assignd on this pass
+            int agentsAssigned = 0;
+            // introduce more list disparity by changing the bucket iteration direction on each level
+            int rotate = (((level % 2) == 0) ? -1 : 1);
+
+            // Place the agents that can stay put first, so that the others are placed knowing the resulting loads.
+            // When assigning primary (i.e. level 0), the current primary is preferred. On the other levels the server
+            // the agent already has on that level, if any, is preferred. This should reduce connection and list
+            // churn by letting most agents stay put (but affects balancing, we'll deal with that below)
+            Map<Agent, ServerBucket> preferredBuckets = new HashMap<Agent, ServerBucket>();
+            List<Agent> orderedAgents = new ArrayList<Agent>(agents.size());
+            List<Agent> otherAgents = new ArrayList<Agent>();
+            for (Agent next : agents) {
+                ServerBucket preferredBucket = getPreferredBucket(next, level, bucketsByName,
+                    agentServerListMap.get(next), preferredServerListMap.get(next));
+                if (null != preferredBucket) {
+                    preferredBuckets.put(next, preferredBucket);
+                    orderedAgents.add(next);
+                } else {
+                    otherAgents.add(next);
+                }
+            }
+            orderedAgents.addAll(otherAgents);
+
+            for (Agent next : orderedAgents) {
+                List<ServerBucket> serverList = agentServerListMap.get(next);
+                ServerBucket preferredBucket = preferredBuckets.get(next);
+
+                ServerBucket bestBucket = ServerBucket.getBestBucket(buckets, serverList, next.getAffinityGroup(),
+                    preferredBucket);
+
+                // Rotate the list on each iteration. This enhances bucket distribution amongst the levels and ensures
+                // that we don't starve buckets at the end of the list.  Also, we alternate the rotation direction on
+                // each level which seems to help.
+                Collections.rotate(buckets, rotate);
+
+                // Reverse the buckets completely each time we have assigned an agent to each server.  This avoids
+                // duplicating failover lists completely by not repeating the same server sequence over and over on the
+                // same level.
+                if ((++agentsAssigned % buckets.size() == 0)) {
+                    Collections.reverse(buckets);
+                }
+
+                if (null == bestBucket) {
+                    // this should never happen but let's defensively check and log
+                    log.error("Unexpected Condition! null bucket in getForAllAgents()");
+                    continue;
+                }
+
+                serverList.add(bestBucket);
+                // note that assigned load takes into consideration compute power of the server
+                bestBucket.assignedLoad += (getAgentLoad(next) / bestBucket.computePower);
+                bestBucket.assignedAgents.add(next);
+            }
+
+            // For debugging logServerList("Level " + level, agentServerListMap);
+
+            // The first pass does a best-effort balancing as it goes but may need further balancing because:
+            // - the assignment of servers tries to retain the current servers of an existing agent.
+            //   This disrupts the load balancing (but reduces churn).
+            // - the algorithm is greedy, assigning servers as they are available, this can overload a server near the
+            //   end of assignments (due to, for example, constraints avoiding server duplication in a server list).
+            // Now, if necessary for load balance, force some agents to new servers.
+            if (balanceLoad(buckets, agentServerListMap)) {
+                // for debugging logServerList("Forced Rebalance!", agentServerListMap);
+            }
+        }
+
+        // generate the result Map
+        for (Agent next : agentServerListMap.keySet()) {
+            List<ServerEntry> serverEntries = new ArrayList<ServerEntry>(servers.size());
+
+            for (ServerBucket bucket : agentServerListMap.get(next)) {
+                serverEntries.add(bucket.serverEntry);
+            }
+
+            result.put(next, new FailoverListComposite(serverEntries));
+        }
+
+        return result;
+    }
+
+    private Map<Agent, List<ServerBucket>> getPreferredServerLists(List<Agent> agents,
+        Map<Integer, ServerBucket> bucketsById) {
+        if ((null == existingServerLists) || existingServerLists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Agent, List<ServerBucket>> result = new HashMap<Agent, List<ServerBucket>>(agents.size());
+        for (Agent next : agents) {
+            List<Integer> serverIds = existingServerLists.get(next.getId());
+            if (null == serverIds) {
+                continue;
+            }
+
+            // keep the servers on their ordinals, a server no longer in the cloud leaves a null entry
+            List<ServerBucket> serverList = new ArrayList<ServerBucket>(serverIds.size());
+            for (Integer serverId : serverIds) {
+                serverList.add((null != serverId) ? bucketsById.get(serverId) : null);
+            }
+            result.put(next, serverList);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the server the agent should keep on the level, or null if there is none or it is not usable anymore
+     */
+    private ServerBucket getPreferredBucket(Agent agent, int level, Map<String, ServerBucket> bucketsByName,
+        List<ServerBucket> serverList, List<ServerBucket> preferredServerList) {
+        ServerBucket result = null;
+
+        if ((0 == level) && (null != agent.getServer())) {
+            result = bucketsByName.get(agent.getServer().getName());
+        }
+        if ((null == result) && (null != preferredServerList) && (level < preferredServerList.size())) {
+            result = preferredServerList.get(level);
+        }
+
+        // the server may have been assigned on an earlier level already, or the agent may prefer a server that breaks
+        // its affinity
+        AffinityGroup affinityGroup = agent.getAffinityGroup();
+        if ((null != result)
+            && (serverList.contains(result) || ((null != affinityGroup) && !affinityGroup.equals(result.server
+                .getAffinityGroup())))) {
+            result = null;
+        }
+
+        return result;
+    }
+
+    private void initBuckets(List<ServerBucket> buckets, int level) {
+        for (ServerBucket bucket : buckets) {
+            bucket.assignedLoad = 0.0;
+            bucket.assignedAgents.clear();
+
+            if (null != existingLoads) {
+                int serverId = bucket.server.getId();
+
+                for (FailoverListDetailsComposite existingLoad : existingLoads) {
+                    if ((existingLoad.ordinal == level) && (existingLoad.serverId == serverId)) {
+                        bucket.assignedLoad = (existingLoad.assignedAgentCount / bucket.computePower);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Force agents to new servers, if possible, to give us better load balance. A perfect balance is not necessarily
+     * produced due to:<pre>
+     * Currently, this algorithm will not break affinity.
+     * An ACCEPTABLE_DISPARITY between the high server load and low server load is achieved
+     * no legal swaps are possible.
+     * <pre>
+     */
+    private boolean balanceLoad(List<ServerBucket> buckets, Map<Agent, List<ServerBucket>> agentServerListMap) {
+        boolean done = false;
+        boolean rebalanced = false;
+
+        // need at least two buckets to balance
+        if (buckets.size() < 2)
+            return false;
+
+        do {
+            // sort buckets from high load to low load
+            Collections.sort(buckets, new Comparator<ServerBucket>() {
+                public int compare(ServerBucket bucket1, ServerBucket bucket2) {
+                    return (bucket2.assignedLoad > bucket1.assignedLoad) ? 1 : -1;
+                }
+            });
+
+            ServerBucket lowBucket = buckets.get(buckets.size() - 1);
+
+            // if the load disparity is acceptable then we're done.
+            if (getLoadDisparity(buckets.get(0).assignedLoad, lowBucket.assignedLoad) < ACCEPTABLE_DISPARITY) {
+                done = true;
+                continue;
+            }
+
+            // find an agent to move by traversing the buckets from high to low (excluding lowest bucket)
+            for (ServerBucket bucket : buckets) {
+
+                // if we've looked in all of the buckets and found nothing to move then we're done
+                if (bucket == lowBucket) {
+                    done = true;
+                    break;
+                }
+
+                AffinityGroup affinityGroup = bucket.server.getAffinityGroup();
+                boolean checkAffinity = ((null != affinityGroup) && !affinityGroup.equals(lowBucket.server
+                    .getAffinityGroup()));
+                int highIndex = -1;
+                double highLoad = 0.0;
+                double load = 0.0;
+
+                for (int i = 0, size = bucket.assignedAgents.size(); (i < size); ++i) {
+                    Agent agent = bucket.assignedAgents.get(i);
+
+                    // we don't move an agent with satisfied affinity to a bucket that breaks affinity
+                    if (checkAffinity && affinityGroup.equals(agent.getAffinityGroup())) {
+                        continue;
+                    }
+
+                    // we don't move an agent that is already assigned to lowBucket
+                    if (agentServerListMap.get(agent).contains(lowBucket)) {
+                        continue;
+                    }
+
+                    load = getAgentLoad(agent);
+
+                    if (load > highLoad) {
+                        // protect against a move that would send too much load to the lowBucket, effectively just
+                        // reversing the problem and allowing this algorithm to thrash. Don't allow a move that
+                        // increases the lowBucket load higher than the current bucket.
+                        if (!((lowBucket.assignedLoad + load) > (bucket.assignedLoad - load))) {
+                            highIndex = i;
+                            highLoad = load;
+                        }
+                    }
+                }
+
+                // If we found an agent to move then make the move, otherwise look in the next bucket
+                if (highIndex > -1) {
+                    Agent agent = bucket.assignedAgents.remove(highIndex);
+                    lowBucket.assignedAgents.add(agent);
+                    agentServerListMap.get(agent).remove(bucket);
+                    agentServerListMap.get(agent).add(lowBucket);
+                    lowBucket.assignedLoad += highLoad;
+                    bucket.assignedLoad -= highLoad;
+                    rebalanced = true;
+                    break;
+                }
+            }
+        } while (!done);
+
+        return rebalanced;
+    }
+
+    private double getLoadDisparity(Double highLoad, Double lowLoad) {
+        return ((highLoad - lowLoad) / highLoad);
+    }
+
+    // TODO (jshaughn) figure out how to measure agent load. It should be relative to all other agents, probably normalized such that the average agent
+    // is load 1.0. All agents must have positive load. If the load needs to be computed here perhaps it should be stored on the AgentServerList
+    // to avoid recalculation, if it is expensive.
+    private double getAgentLoad(Agent agent) {
+        if (null == agent)
+            return 0.0;
+
+        return 1.0;
+    }
+
+    @SuppressWarnings("unused")
+    private void logServerList(String debugTitle, Map<Agent, List<ServerBucket>> agentServerListMap) {
+
+        //if (!log.isInfoEnabled())
+        //    return;
+
+        StringBuilder sb = new StringBuilder("\nServerList (");
+        sb.append(debugTitle);
+        sb.append(") :");
+
+        for (Agent agent : agentServerListMap.keySet()) {
+            sb.append("\n\n Agent: " + agent.getName());
+            for (ServerBucket bucket : agentServerListMap.get(agent)) {
+                sb.append("\n   ");
+                sb.append(bucket.assignedLoad);
+                sb.append(" : ");
+                sb.append(bucket.server.getName());
+            }
+        }
+
+        sb.append("\n\n");
+        System.out.println(sb.toString());
+        log.info(sb.toString());
+    }
+}
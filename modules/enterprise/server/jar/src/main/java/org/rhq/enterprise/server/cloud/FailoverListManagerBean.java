@@ -19,8 +19,6 @@
 package org.rhq.enterprise.server.cloud;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,7 +33,6 @@ import javax.persistence.Query;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.rhq.core.domain.cloud.AffinityGroup;
 import org.rhq.core.domain.cloud.FailoverList;
 import org.rhq.core.domain.cloud.FailoverListDetails;
 import org.rhq.core.domain.cloud.PartitionEvent;
@@ -47,6 +44,7 @@ import org.rhq.core.domain.cloud.composite.FailoverListDetailsComposite;
 import org.rhq.core.domain.resource.Agent;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
+import org.rhq.enterprise.server.util.BatchIterator;
 
 /**
  * This session beans acts as the single interface with which the distribution algorithm
@@ -65,9 +63,6 @@ import org.rhq.enterprise.server.core.AgentManagerLocal;
 public class FailoverListManagerBean implements FailoverListManagerLocal {
     private final Log log = LogFactory.getLog(FailoverListManagerBean.class);
 
-    /** The variation in load between most loaded and least loaded server that indicates balanced load. */
-    private static final double ACCEPTABLE_DISPARITY = 0.10;
-
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -154,285 +149,191 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
         List<Server> servers = topologyManager.getAllCloudServers();
         List<Agent> agents = agentManager.getAllAgents();
 
-        // persist results immediate, which will be the only writes (as opposed to reads) in this transaction
-        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null);
-
-        /* now that the intense in-memory manipulation is complete, let's do the stuff that needs to persist the
-         * results to the database; clear out the existing lists **just** before persisting the new ones to keep 
-         * row lock hold time low
-         */
-        clear(); // clear out the existing server lists because we're going to generate new ones for all agents
-        persistComposites(event, agentServerListMap);
-
-        return agentServerListMap;
+        return refresh(event, servers, agents);
     }
 
     public Map<Agent, FailoverListComposite> refresh(PartitionEvent event, List<Server> servers, List<Agent> agents) {
 
-        // do not persist results immediately, instead return the results and then delete/persist in quick succession
-        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null);
-
-        /* now that the intense in-memory manipulation is complete, let's do the stuff that needs to persist the
-         * results to the database; clear out the existing lists **just** before persisting the new ones to keep 
-         * row lock hold time low
-         */
-        for (Agent next : agents) {
-            // clear out the existing server lists because we're going to generate new ones for all agents
-            deleteServerListsForAgent(next);
-        }
-        persistComposites(event, agentServerListMap);
-
-        return agentServerListMap;
-    }
-
-    /*
-     * NOTE: this method used to persist the agentServerListMap results at the end of processing; however,
-     *       certain callers that performed write operations before calling this method would hold row locks
-     *       too long; so, this method no longer does the persistence, which puts the onus on callers to do so; 
-     *       some callers will immediately persist the results, otherwise may want to perform other updates or
-     *       deletions just prior to persistence - the caller now has that option 
-     */
-    private Map<Agent, FailoverListComposite> getForAgents(PartitionEvent event, List<Server> servers,
-        List<Agent> agents, List<FailoverListDetailsComposite> existingLoads) {
-        Map<Agent, FailoverListComposite> result = new HashMap<Agent, FailoverListComposite>(agents.size());
-
-        // create a bucket for each server to which we will assign agents 
-        List<ServerBucket> buckets = new ArrayList<ServerBucket>(servers.size());
-        for (Server next : servers) {
-            buckets.add(new ServerBucket(next));
-        }
+        // start from the current server lists so that agents keep their servers unless they need to move
+        Map<Integer, Integer> failoverListIds = new HashMap<Integer, Integer>(agents.size());
+        Map<Integer, List<Integer>> existingServerLists = getExistingServerLists(agents, failoverListIds);
 
-        // initialize the result map
-        Map<Agent, List<ServerBucket>> agentServerListMap = new HashMap<Agent, List<ServerBucket>>(agents.size());
-        for (Agent next : agents) {
-            agentServerListMap.put(next, new ArrayList<ServerBucket>(servers.size()));
-        }
-
-        // assign server lists level by level: primary, then secondary, then tertiary, etc        
-        for (int level = 0; (level < servers.size()); ++level) {
-
-            // Initialize the bucket loads for the next round
-            initBuckets(buckets, existingLoads, level);
-
-            // assign a server for this level to each agent, balancing as we go            
-
-            // keep track of the how many agents have been assignd on this pass
-            int agentsAssigned = 0;
-            // introduce more list disparity by changing the bucket iteration direction on each level  
-            int rotate = (((level % 2) == 0) ? -1 : 1);
-
-            for (Agent next : agents) {
-                List<ServerBucket> serverList = agentServerListMap.get(next);
+        // do not persist results immediately, instead return the results and then delete/persist in quick succession
+        FailoverListBalancer balancer = new FailoverListBalancer(servers, null);
+        balancer.setExistingServerLists(existingServerLists);
+        Map<Agent, FailoverListComposite> agentServerListMap = balancer.balance(agents);
+
+        // work out the rows that changed, grouped such that each group can be written with a single statement
+        Map<Integer, Server> serversById = new HashMap<Integer, Server>(servers.size());
+        Map<Agent, FailoverListComposite> newServerLists = new HashMap<Agent, FailoverListComposite>();
+        List<Integer> newAgentIds = new ArrayList<Integer>();
+        List<Integer> existingListIds = new ArrayList<Integer>(failoverListIds.size());
+        Map<Integer, Map<Integer, List<Integer>>> updates = new HashMap<Integer, Map<Integer, List<Integer>>>();
+        Map<Integer, List<Integer>> deletes = new HashMap<Integer, List<Integer>>();
+        List<FailoverListDetails> inserts = new ArrayList<FailoverListDetails>();
 
-                // When assigning primary (i.e. level 0), supply the current primary as the preferred server.
-                // This should reduce connection churn by letting most agents stay put (but affects balancing, we'll 
-                // deal with that below)
-                ServerBucket bestBucket = null;
+        for (Map.Entry<Agent, FailoverListComposite> next : agentServerListMap.entrySet()) {
+            Agent agent = next.getKey();
+            FailoverListComposite composite = next.getValue();
+            List<Integer> existingServerList = existingServerLists.get(agent.getId());
 
-                if ((0 == level) && (null != next.getServer())) {
-                    bestBucket = ServerBucket.getBestBucket(buckets, serverList, next.getAffinityGroup(), next
-                        .getServer().getName());
-                } else {
-                    bestBucket = ServerBucket.getBestBucket(buckets, serverList, next.getAffinityGroup(), null);
-                }
+            if (null == existingServerList) {
+                newServerLists.put(agent, composite);
+                newAgentIds.add(agent.getId());
+                continue;
+            }
 
-                // Rotate the list on each iteration. This enhances bucket distribution amongst the levels and ensures
-                // that we don't starve buckets at the end of the list.  Also, we alternate the rotation direction on
-                // each level which seems to help.
-                Collections.rotate(buckets, rotate);
+            Integer failoverListId = failoverListIds.get(agent.getId());
+            existingListIds.add(failoverListId);
 
-                // Reverse the buckets completely each time we have assigned an agent to each server.  This avoids
-                // duplicating failover lists completely by not repeating the same server sequence over and over on the
-                // same level.
-                if ((++agentsAssigned % buckets.size() == 0)) {
-                    Collections.reverse(buckets);
-                }
+            int size = Math.max(composite.size(), existingServerList.size());
+            for (int ordinal = 0; (ordinal < size); ++ordinal) {
+                Integer existingServerId = (ordinal < existingServerList.size()) ? existingServerList.get(ordinal)
+                    : null;
 
-                if (null == bestBucket) {
-                    // this should never happen but let's defensively check and log
-                    log.error("Unexpected Condition! null bucket in getForAllAgents()");
+                if (ordinal >= composite.size()) {
+                    if (null != existingServerId) {
+                        getGroup(deletes, ordinal).add(failoverListId);
+                    }
                     continue;
                 }
 
-                serverList.add(bestBucket);
-                // note that assigned load takes into consideration compute power of the server
-                bestBucket.assignedLoad += (getAgentLoad(next) / bestBucket.computePower);
-                bestBucket.assignedAgents.add(next);
-            }
-
-            // For debugging logServerList("Level " + level, agentServerListMap);
-
-            // The first pass does a best-effort balancing as it goes but may need further balancing because:
-            // - the assignment of primary servers tries to retain the current primary server of an existing agent.
-            //   This disrupts the load balancing (but reduces churn).
-            // - the algorithm is greedy, assigning servers as they are available, this can overload a server near the
-            //   end of assignments (due to, for example, constraints avoiding server duplication in a server list).
-            // Now, if necessary for load balance, force some agents to new servers.
-            if (balanceLoad(buckets, agentServerListMap)) {
-                // for debugging logServerList("Forced Rebalance!", agentServerListMap);
+                int serverId = composite.get(ordinal).serverId;
+                if (null == existingServerId) {
+                    FailoverList fl = entityManager.getReference(FailoverList.class, failoverListId);
+                    inserts.add(new FailoverListDetails(fl, ordinal, getServer(serversById, serverId)));
+                } else if (existingServerId.intValue() != serverId) {
+                    Map<Integer, List<Integer>> ordinalUpdates = updates.get(ordinal);
+                    if (null == ordinalUpdates) {
+                        ordinalUpdates = new HashMap<Integer, List<Integer>>();
+                        updates.put(ordinal, ordinalUpdates);
+                    }
+                    getGroup(ordinalUpdates, serverId).add(failoverListId);
+                }
             }
         }
 
-        // generate the result Map
-        for (Agent next : agentServerListMap.keySet()) {
-            List<ServerEntry> serverEntries = new ArrayList<ServerEntry>(servers.size());
-
-            for (ServerBucket bucket : agentServerListMap.get(next)) {
-                serverEntries.add(bucket.serverEntry);
+        /* now that the intense in-memory manipulation is complete, let's do the stuff that needs to persist the
+         * results to the database; bulk statements write only the rows that changed, **just** before persisting
+         * the new ones to keep row lock hold time low
+         */
+        int updatedRows = 0;
+        int deletedRows = 0;
+
+        // an agent can be left with an empty list when all of its servers were removed
+        deleteServerListsForAgents(newAgentIds);
+
+        Query query = entityManager
+            .createNamedQuery(FailoverListDetails.QUERY_DELETE_VIA_FAILOVER_LIST_IDS_AND_ORDINAL);
+        for (Map.Entry<Integer, List<Integer>> next : deletes.entrySet()) {
+            query.setParameter("ordinal", next.getKey());
+            for (List<Integer> batch : new BatchIterator<Integer>(next.getValue())) {
+                query.setParameter("failoverListIds", batch);
+                deletedRows += query.executeUpdate();
             }
-
-            result.put(next, new FailoverListComposite(serverEntries));
         }
 
-        return result;
-    }
-
-    private void initBuckets(List<ServerBucket> buckets, List<FailoverListDetailsComposite> existingLoads, int level) {
-        for (ServerBucket bucket : buckets) {
-            bucket.assignedLoad = 0.0;
-            bucket.assignedAgents.clear();
-
-            if (null != existingLoads) {
-                int serverId = bucket.server.getId();
-
-                for (FailoverListDetailsComposite existingLoad : existingLoads) {
-                    if ((existingLoad.ordinal == level) && (existingLoad.serverId == serverId)) {
-                        bucket.assignedLoad = (existingLoad.assignedAgentCount / bucket.computePower);
-                        break;
-                    }
+        query = entityManager.createNamedQuery(
+            FailoverListDetails.QUERY_UPDATE_SERVER_VIA_FAILOVER_LIST_IDS_AND_ORDINAL);
+        for (Map.Entry<Integer, Map<Integer, List<Integer>>> next : updates.entrySet()) {
+            query.setParameter("ordinal", next.getKey());
+            for (Map.Entry<Integer, List<Integer>> ordinalUpdates : next.getValue().entrySet()) {
+                query.setParameter("server", getServer(serversById, ordinalUpdates.getKey()));
+                for (List<Integer> batch : new BatchIterator<Integer>(ordinalUpdates.getValue())) {
+                    query.setParameter("failoverListIds", batch);
+                    updatedRows += query.executeUpdate();
                 }
             }
         }
-    }
 
-    /**
-     * Force agents to new servers, if possible, to give us better load balance. A perfect balance is not necessarily
-     * produced due to:<pre>
-     * Currently, this algorithm will not break affinity.
-     * An ACCEPTABLE_DISPARITY between the high server load and low server load is achieved
-     * no legal swaps are possible.
-     * <pre> 
-     */
-    private boolean balanceLoad(List<ServerBucket> buckets, Map<Agent, List<ServerBucket>> agentServerListMap) {
-        boolean done = false;
-        boolean rebalanced = false;
-
-        // need at least two buckets to balance
-        if (buckets.size() < 2)
-            return false;
-
-        do {
-            // sort buckets from high load to low load
-            Collections.sort(buckets, new Comparator<ServerBucket>() {
-                public int compare(ServerBucket bucket1, ServerBucket bucket2) {
-                    return (bucket2.assignedLoad > bucket1.assignedLoad) ? 1 : -1;
-                }
-            });
+        query = entityManager.createNamedQuery(FailoverList.QUERY_UPDATE_PARTITION_EVENT_VIA_IDS);
+        query.setParameter("partitionEvent", event);
+        for (List<Integer> batch : new BatchIterator<Integer>(existingListIds)) {
+            query.setParameter("failoverListIds", batch);
+            query.executeUpdate();
+        }
 
-            ServerBucket lowBucket = buckets.get(buckets.size() - 1);
+        for (FailoverListDetails next : inserts) {
+            entityManager.persist(next);
+        }
 
-            // if the load disparity is acceptable then we're done.
-            if (getLoadDisparity(buckets.get(0).assignedLoad, lowBucket.assignedLoad) < ACCEPTABLE_DISPARITY) {
-                done = true;
-                continue;
+        // event details only shows the current primary server topology
+        for (Map.Entry<Agent, FailoverListComposite> next : agentServerListMap.entrySet()) {
+            FailoverListComposite composite = next.getValue();
+            if (!newServerLists.containsKey(next.getKey()) && (composite.size() > 0)) {
+                Server server = getServer(serversById, composite.get(0).serverId);
+                entityManager.persist(new PartitionEventDetails(event, next.getKey(), server));
             }
+        }
 
-            // find an agent to move by traversing the buckets from high to low (excluding lowest bucket)
-            for (ServerBucket bucket : buckets) {
-
-                // if we've looked in all of the buckets and found nothing to move then we're done
-                if (bucket == lowBucket) {
-                    done = true;
-                    break;
-                }
+        persistComposites(event, newServerLists, serversById);
 
-                AffinityGroup affinityGroup = bucket.server.getAffinityGroup();
-                boolean checkAffinity = ((null != affinityGroup) && !affinityGroup.equals(lowBucket.server
-                    .getAffinityGroup()));
-                int highIndex = -1;
-                double highLoad = 0.0;
-                double load = 0.0;
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed server lists for [" + agents.size() + "] agents: [" + updatedRows
+                + "] rows updated, [" + inserts.size() + "] rows inserted, [" + deletedRows + "] rows deleted, ["
+                + newServerLists.size() + "] new lists");
+        }
 
-                for (int i = 0, size = bucket.assignedAgents.size(); (i < size); ++i) {
-                    Agent agent = bucket.assignedAgents.get(i);
+        return agentServerListMap;
+    }
 
-                    // we don't move an agent with satisfied affinity to a bucket that breaks affinity
-                    if (checkAffinity && affinityGroup.equals(agent.getAffinityGroup())) {
-                        continue;
-                    }
+    /*
+     * NOTE: this method used to persist the agentServerListMap results at the end of processing; however,
+     *       certain callers that performed write operations before calling this method would hold row locks
+     *       too long; so, this method no longer does the persistence, which puts the onus on callers to do so; 
+     *       some callers will immediately persist the results, otherwise may want to perform other updates or
+     *       deletions just prior to persistence - the caller now has that option 
+     */
+    private Map<Agent, FailoverListComposite> getForAgents(PartitionEvent event, List<Server> servers,
+        List<Agent> agents, List<FailoverListDetailsComposite> existingLoads) {
+        return new FailoverListBalancer(servers, existingLoads).balance(agents);
+    }
 
-                    // we don't move an agent that is already assigned to lowBucket
-                    if (agentServerListMap.get(agent).contains(lowBucket)) {
-                        continue;
-                    }
+    /**
+     * @param failoverListIds filled with the failover list ids, keyed by agent id
+     * @return the server ids of the current server lists, indexed by ordinal and keyed by agent id
+     */
+    private Map<Integer, List<Integer>> getExistingServerLists(List<Agent> agents,
+        Map<Integer, Integer> failoverListIds) {
+        Map<Integer, List<Integer>> result = new HashMap<Integer, List<Integer>>(agents.size());
 
-                    load = getAgentLoad(agent);
+        List<Integer> agentIds = new ArrayList<Integer>(agents.size());
+        for (Agent next : agents) {
+            agentIds.add(next.getId());
+        }
 
-                    if (load > highLoad) {
-                        // protect against a move that would send too much load to the lowBucket, effectively just
-                        // reversing the problem and allowing this algorithm to thrash. Don't allow a move that
-                        // increases the lowBucket load higher than the current bucket.
-                        if (!((lowBucket.assignedLoad + load) > (bucket.assignedLoad - load))) {
-                            highIndex = i;
-                            highLoad = load;
-                        }
-                    }
+        Query query = entityManager.createNamedQuery(FailoverListDetails.QUERY_GET_SERVER_IDS_VIA_AGENT_IDS);
+        for (List<Integer> batch : new BatchIterator<Integer>(agentIds)) {
+            query.setParameter("agentIds", batch);
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = query.getResultList();
+            for (Object[] row : rows) {
+                Integer agentId = (Integer) row[0];
+                List<Integer> serverIds = result.get(agentId);
+                if (null == serverIds) {
+                    serverIds = new ArrayList<Integer>();
+                    result.put(agentId, serverIds);
+                    failoverListIds.put(agentId, (Integer) row[1]);
                 }
-
-                // If we found an agent to move then make the move, otherwise look in the next bucket
-                if (highIndex > -1) {
-                    Agent agent = bucket.assignedAgents.remove(highIndex);
-                    lowBucket.assignedAgents.add(agent);
-                    agentServerListMap.get(agent).remove(bucket);
-                    agentServerListMap.get(agent).add(lowBucket);
-                    lowBucket.assignedLoad += highLoad;
-                    bucket.assignedLoad -= highLoad;
-                    rebalanced = true;
-                    break;
+                // rows are ordered by ordinal, a gap left by a deleted server is kept as a null entry
+                int ordinal = (Integer) row[2];
+                while (serverIds.size() < ordinal) {
+                    serverIds.add(null);
                 }
+                serverIds.add((Integer) row[3]);
             }
-        } while (!done);
-
-        return rebalanced;
-    }
-
-    private double getLoadDisparity(Double highLoad, Double lowLoad) {
-        return ((highLoad - lowLoad) / highLoad);
-    }
-
-    // TODO (jshaughn) figure out how to measure agent load. It should be relative to all other agents, probably normalized such that the average agent
-    // is load 1.0. All agents must have positive load. If the load needs to be computed here perhaps it should be stored on the AgentServerList
-    // to avoid recalculation, if it is expensive.
-    private double getAgentLoad(Agent agent) {
-        if (null == agent)
-            return 0.0;
+        }
 
-        return 1.0;
+        return result;
     }
 
-    @SuppressWarnings("unused")
-    private void logServerList(String debugTitle, Map<Agent, List<ServerBucket>> agentServerListMap) {
-
-        //if (!log.isInfoEnabled())
-        //    return;
-
-        StringBuilder sb = new StringBuilder("\nServerList (");
-        sb.append(debugTitle);
-        sb.append(") :");
-
-        for (Agent agent : agentServerListMap.keySet()) {
-            sb.append("\n\n Agent: " + agent.getName());
-            for (ServerBucket bucket : agentServerListMap.get(agent)) {
-                sb.append("\n   ");
-                sb.append(bucket.assignedLoad);
-                sb.append(" : ");
-                sb.append(bucket.server.getName());
-            }
+    private static <K> List<Integer> getGroup(Map<K, List<Integer>> groups, K key) {
+        List<Integer> result = groups.get(key);
+        if (null == result) {
+            result = new ArrayList<Integer>();
+            groups.put(key, result);
         }
-
-        sb.append("\n\n");
-        System.out.println(sb.toString());
-        log.info(sb.toString());
+        return result;
     }
 
     public void deleteServerListsForAgent(Agent agent) {
@@ -444,20 +345,26 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
         query2.executeUpdate();
     }
 
+    private void deleteServerListsForAgents(List<Integer> agentIds) {
+        Query query = entityManager.createNamedQuery(FailoverList.QUERY_DELETE_VIA_AGENT_IDS);
+        for (List<Integer> batch : new BatchIterator<Integer>(agentIds)) {
+            query.setParameter("agentIds", batch);
+            query.executeUpdate();
+        }
+    }
+
     public void deleteServerListDetailsForServer(int serverId) {
         Query query = entityManager.createNamedQuery(FailoverListDetails.QUERY_DELETE_VIA_SERVER);
         query.setParameter("serverId", serverId);
         query.executeUpdate();
     }
 
-    private void clear() {
-        Query query = entityManager.createNamedQuery(FailoverListDetails.QUERY_TRUNCATE);
-        query.executeUpdate();
-        query = entityManager.createNamedQuery(FailoverList.QUERY_TRUNCATE);
-        query.executeUpdate();
+    private void persistComposites(PartitionEvent event, Map<Agent, FailoverListComposite> agentServerListMap) {
+        persistComposites(event, agentServerListMap, new HashMap<Integer, Server>());
     }
 
-    private void persistComposites(PartitionEvent event, Map<Agent, FailoverListComposite> agentServerListMap) {
+    private void persistComposites(PartitionEvent event, Map<Agent, FailoverListComposite> agentServerListMap,
+        Map<Integer, Server> serversById) {
         FailoverList fl = null;
         FailoverListDetails failoverListDetails = null;
         PartitionEventDetails eventDetails = null;
@@ -473,7 +380,7 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
             boolean first = true;
             for (int i = 0; i < nextComposite.size(); ++i) {
                 ServerEntry serverEntry = nextComposite.get(i);
-                Server server = entityManager.find(Server.class, serverEntry.serverId);
+                Server server = getServer(serversById, serverEntry.serverId);
                 failoverListDetails = new FailoverListDetails(fl, i, server);
                 entityManager.persist(failoverListDetails);
                 // event details only shows the current primary server topology
@@ -485,4 +392,13 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
             }
         }
     }
+
+    private Server getServer(Map<Integer, Server> serversById, int serverId) {
+        Server server = serversById.get(serverId);
+        if (null == server) {
+            server = entityManager.find(Server.class, serverId);
+            serversById.put(serverId, server);
+        }
+        return server;
+    }
 }
@@ -49,14 +49,13 @@ public class ServerBucket {
     }
 
     static ServerBucket getBestBucket(List<ServerBucket> buckets, List<ServerBucket> usedBuckets,
-        AffinityGroup affinityGroup, String preferredServerName) {
+        AffinityGroup affinityGroup, ServerBucket preferredBucket) {
         ServerBucket result = null;
 
         // if the preferred server is available and does not break affinity, use it
-        if ((null != preferredServerName) && (null == ServerBucket.getBucketByName(usedBuckets, preferredServerName))) {
-            result = ServerBucket.getBucketByName(buckets, preferredServerName);
-            if ((null != result) && (null != affinityGroup)
-                && (!affinityGroup.equals(result.server.getAffinityGroup()))) {
+        if ((null != preferredBucket) && !usedBuckets.contains(preferredBucket)) {
+            result = preferredBucket;
+            if ((null != affinityGroup) && (!affinityGroup.equals(result.server.getAffinityGroup()))) {
                 result = null;
             }
         }
@@ -66,7 +65,7 @@ public class ServerBucket {
 
         for (ServerBucket next : buckets) {
 
-            if (null == ServerBucket.getBucketByName(usedBuckets, next.server.getName())) {
+            if (!usedBuckets.contains(next)) {
                 if (null == result) {
                     // start with the first available candidate                        
                     result = next;
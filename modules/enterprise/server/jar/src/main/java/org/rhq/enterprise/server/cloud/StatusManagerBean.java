@@ -20,6 +20,7 @@ package org.rhq.enterprise.server.cloud;
 
 import java.util.List;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -27,6 +28,9 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +43,8 @@ import org.rhq.core.domain.resource.Agent;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.AlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerBean;
+import org.rhq.enterprise.server.cloud.instance.CacheInvalidationBus;
+import org.rhq.enterprise.server.cloud.instance.CacheInvalidationEvent;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -53,6 +59,9 @@ import org.rhq.enterprise.server.util.LookupUtil;
  * as a simple bit field; this way the logic for setting the field simplifies to a simple boolean check
  * instead of a more complex bit
  * 
+ * Once the status fields are committed, each change is also pushed to the servers through the
+ * {@link CacheInvalidationBus}, if it is enabled, so they don't have to wait for their next periodic check.
+ * 
  * @author Joseph Marques
  */
 /*
@@ -70,6 +79,9 @@ public class StatusManagerBean implements StatusManagerLocal {
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     AgentManagerLocal agentManager;
 
@@ -135,6 +147,7 @@ public class StatusManagerBean implements StatusManagerLocal {
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_BY_RESOURCE);
         updateAgentQuery.setParameter("resourceId", resourceId);
         int agentsUpdated = updateAgentQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.RESOURCE, resourceId);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -168,6 +181,7 @@ public class StatusManagerBean implements StatusManagerLocal {
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_BY_ALERT_DEFINITION);
         updateAgentQuery.setParameter("alertDefinitionId", alertDefinitionId);
         int agentsUpdated = updateAgentQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.ALERT_DEFINITION, alertDefinitionId);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -187,6 +201,7 @@ public class StatusManagerBean implements StatusManagerLocal {
     public void markGlobalCache() {
         Query updateServerQuery = entityManager.createNamedQuery(Server.QUERY_UPDATE_STATUS_BY_NAME);
         int serversUpdated = updateServerQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.GLOBAL, 0);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -206,6 +221,7 @@ public class StatusManagerBean implements StatusManagerLocal {
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_BY_MEASUREMENT_BASELINE);
         updateAgentQuery.setParameter("baselineId", baselineId);
         updateAgentQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.MEASUREMENT_BASELINE, baselineId);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -235,6 +251,7 @@ public class StatusManagerBean implements StatusManagerLocal {
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_BY_AGENT);
         updateAgentQuery.setParameter("agentId", agentId);
         updateAgentQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.AGENT, agentId);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -251,6 +268,7 @@ public class StatusManagerBean implements StatusManagerLocal {
         // baselines refer to measurement-based alert conditions, thus only agent statuses need to be set
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_FOR_ALL);
         updateAgentQuery.executeUpdate();
+        publishAfterCommit(CacheInvalidationEvent.Type.ALL_AGENTS, 0);
 
         /*
          * this is informational debugging only - do NOT change the status bits here
@@ -263,4 +281,27 @@ public class StatusManagerBean implements StatusManagerLocal {
             }
         }
     }
+
+    /**
+     * Pushes the change to the servers once the status fields set by the current transaction are committed; the
+     * servers check the status fields when they receive it, so it must not arrive any earlier.
+     */
+    private void publishAfterCommit(CacheInvalidationEvent.Type type, int id) {
+        final CacheInvalidationBus bus = CacheInvalidationBus.getSingleton();
+        if (!bus.isEnabled()) {
+            return;
+        }
+
+        final CacheInvalidationEvent event = new CacheInvalidationEvent(type, id, serverManager.getIdentity());
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    bus.publish(event);
+                }
+            }
+        });
+    }
 }
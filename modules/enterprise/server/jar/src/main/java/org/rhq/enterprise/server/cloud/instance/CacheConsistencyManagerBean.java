@@ -41,6 +41,9 @@ import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
  * Each server has partitioned alerts condition cache data.  This session bean exists
  * to check whether or not the something has changed in the system that would require
  * the cache to asynchronously reload itself.
+ *
+ * When the {@link CacheInvalidationBus} is enabled, changes are pushed to every server as they happen and the periodic
+ * check only reconciles the events that got lost, so it runs much less often.
  * 
  * @author Joseph Marques
  */
@@ -49,6 +52,23 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
 
     private final Log log = LogFactory.getLog(CacheConsistencyManagerBean.class);
 
+    private static final long CHECK_INTERVAL = 30000L;
+
+    private static final long RECONCILE_INTERVAL;
+
+    static {
+        long reconcileInterval = 120000L;
+        try {
+            reconcileInterval = Long.parseLong(System.getProperty(
+                "rhq.server.cache-invalidation.reconcile-interval", "120000"));
+        } catch (Throwable t) {
+            LogFactory.getLog(CacheConsistencyManagerBean.class).warn(
+                "Invalid value for rhq.server.cache-invalidation.reconcile-interval, using default of "
+                    + reconcileInterval);
+        }
+        RECONCILE_INTERVAL = reconcileInterval;
+    }
+
     @Resource
     TimerService timerService;
 
@@ -76,7 +96,12 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
             }
         }
 
-        timerService.createIntervalTimer(30000L, 30000L, new TimerConfig(null, false));
+        long interval = CHECK_INTERVAL;
+        if (CacheInvalidationBus.getSingleton().isEnabled()) {
+            CacheInvalidationBus.getSingleton().start();
+            interval = Math.max(CHECK_INTERVAL, RECONCILE_INTERVAL);
+        }
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
     }
 
     @Override
@@ -92,9 +117,19 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void reloadServerCacheIfNeededNSTx() {
+        reloadServerCacheIfNeededNSTx(true, true);
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reloadServerCacheIfNeededNSTx(boolean global, boolean agents) {
         // try reload the global cache separate from the agent caches for purposes of isolated failures
-        reloadGlobalCacheIfNeeded();
-        reloadAgentCachesAsNeeded();
+        if (global) {
+            reloadGlobalCacheIfNeeded();
+        }
+        if (agents) {
+            reloadAgentCachesAsNeeded();
+        }
     }
 
     private void reloadGlobalCacheIfNeeded() {
@@ -32,4 +32,13 @@ public interface CacheConsistencyManagerLocal {
     void handleHeartbeatTimer(Timer timer);
 
     void reloadServerCacheIfNeededNSTx();
+
+    /**
+     * Like {@link #reloadServerCacheIfNeededNSTx()}, but only checks the caches affected by pushed
+     * {@link CacheInvalidationEvent}s.
+     *
+     * @param global if true, reload the global cache if its status flag is set
+     * @param agents if true, reload the caches of the agents whose status flags are set
+     */
+    void reloadServerCacheIfNeededNSTx(boolean global, boolean agents);
 }
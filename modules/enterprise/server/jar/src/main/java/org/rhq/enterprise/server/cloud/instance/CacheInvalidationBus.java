@@ -0,0 +1,377 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud.instance;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.cloud.Server;
+import org.rhq.enterprise.communications.command.Command;
+import org.rhq.enterprise.communications.command.CommandResponse;
+import org.rhq.enterprise.communications.command.client.ClientCommandSender;
+import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
+import org.rhq.enterprise.communications.command.client.ClientRemotePojoFactory;
+import org.rhq.enterprise.communications.command.client.SendCallback;
+import org.rhq.enterprise.server.alert.engine.mbean.AlertConditionCacheMonitor;
+import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceMBean;
+import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Pushes {@link CacheInvalidationEvent}s to every server in the cloud, this one included, so that alert condition
+ * caches are reloaded as soon as the data behind them changes instead of on the next periodic
+ * {@link CacheConsistencyManagerBean} check.
+ *
+ * <p>The events travel over the same communications layer the agents use, as remote pojo invocations of
+ * {@link CacheInvalidationService}. They are only hints: a server receiving them checks the status flags in the
+ * database, exactly like the periodic check does, which therefore still reconciles any event that got lost.</p>
+ *
+ * <p>The bus is enabled by setting the {@link #TOKEN_PROPERTY} system property to the same secret on every server.
+ * Invocations that do not carry that secret are rejected.</p>
+ */
+public class CacheInvalidationBus {
+
+    private static final Log LOG = LogFactory.getLog(CacheInvalidationBus.class);
+
+    public static final String TOKEN_PROPERTY = "rhq.server.cache-invalidation.token";
+
+    /**
+     * The name of the command configuration property carrying the token of the sending server.
+     */
+    public static final String CMDCONFIG_PROP_SERVER_TOKEN = "rhq.server-token";
+
+    private static final int MAX_QUEUED_EVENTS = 10000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long PEER_REFRESH_INTERVAL = 60000L;
+    private static final long SEND_TIMEOUT = 5000L;
+
+    private static final CacheInvalidationBus SINGLETON = new CacheInvalidationBus(System.getProperty(TOKEN_PROPERTY));
+
+    private final String token;
+    private final LinkedBlockingQueue<CacheInvalidationEvent> outgoing;
+    private final LinkedBlockingQueue<CacheInvalidationEvent> incoming;
+
+    // only accessed by the publisher thread
+    private final Map<String, Peer> peers = new HashMap<String, Peer>();
+    private long peersRefreshTime;
+
+    private Thread publisher;
+    private Thread receiver;
+    private volatile boolean running;
+
+    CacheInvalidationBus(String token) {
+        this.token = (token == null || token.trim().length() == 0) ? null : token.trim();
+        this.outgoing = new LinkedBlockingQueue<CacheInvalidationEvent>(MAX_QUEUED_EVENTS);
+        this.incoming = new LinkedBlockingQueue<CacheInvalidationEvent>(MAX_QUEUED_EVENTS);
+    }
+
+    public static CacheInvalidationBus getSingleton() {
+        return SINGLETON;
+    }
+
+    /**
+     * @return true if the {@link #TOKEN_PROPERTY} is set; if not, caches are only reloaded by the periodic check
+     */
+    public boolean isEnabled() {
+        return token != null;
+    }
+
+    /**
+     * @return true if the token sent along with an invocation of the {@link CacheInvalidationService} is this cloud's
+     */
+    public boolean isAuthentic(String serverToken) {
+        if (token == null || serverToken == null) {
+            return false;
+        }
+        try {
+            // constant time comparison, so the token cannot be guessed by timing the rejections
+            return MessageDigest.isEqual(token.getBytes("UTF-8"), serverToken.getBytes("UTF-8"));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues the event for delivery to every server. Only publish once the transaction that set the matching status
+     * flags has committed. Never blocks; if the queue is full the event is dropped and the periodic check picks up the
+     * change.
+     */
+    public void publish(CacheInvalidationEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        start();
+        if (!outgoing.offer(event) && LOG.isDebugEnabled()) {
+            LOG.debug("Cache invalidation queue is full, dropping " + event);
+        }
+    }
+
+    /**
+     * Queues events pushed by a server for processing.
+     */
+    public void receive(List<CacheInvalidationEvent> events) {
+        if (!isEnabled()) {
+            return;
+        }
+        start();
+        enqueue(incoming, events);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        publisher = new Thread(new Runnable() {
+            public void run() {
+                publishLoop();
+            }
+        }, "CacheInvalidationPublisher");
+        publisher.setDaemon(true);
+        publisher.start();
+
+        receiver = new Thread(new Runnable() {
+            public void run() {
+                receiveLoop();
+            }
+        }, "CacheInvalidationReceiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        LOG.info("Cache invalidation events will be pushed to the other servers in the cloud");
+    }
+
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        publisher.interrupt();
+        receiver.interrupt();
+        publisher = null;
+        receiver = null;
+    }
+
+    private void publishLoop() {
+        try {
+            while (running) {
+                List<CacheInvalidationEvent> batch = takeBatch(outgoing);
+                if (batch == null) {
+                    continue;
+                }
+
+                // this server's caches are just as stale as the others'
+                enqueue(incoming, batch);
+
+                for (Peer peer : getPeers()) {
+                    try {
+                        peer.service.invalidate(batch);
+                        AlertConditionCacheMonitor.getMBean().incrementCacheInvalidationEventsSent(batch.size());
+                    } catch (Throwable t) {
+                        AlertConditionCacheMonitor.getMBean().incrementCacheInvalidationSendFailures(1);
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Failed to push cache invalidation events to server [" + peer.name
+                                + "], it will pick them up on its next periodic check", t);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutting down
+        } finally {
+            for (Peer peer : peers.values()) {
+                peer.sender.stopSending(false);
+            }
+            peers.clear();
+        }
+    }
+
+    private void receiveLoop() {
+        try {
+            while (running) {
+                List<CacheInvalidationEvent> batch = takeBatch(incoming);
+                if (batch == null) {
+                    continue;
+                }
+
+                boolean global = false;
+                boolean agents = false;
+                for (CacheInvalidationEvent event : batch) {
+                    global |= event.getType().isGlobalCacheAffected();
+                    agents |= event.getType().isAgentCacheAffected();
+                }
+
+                try {
+                    LookupUtil.getCacheConsistencyManager().reloadServerCacheIfNeededNSTx(global, agents);
+                } catch (Throwable t) {
+                    LOG.error("Failed to reload server cache for pushed cache invalidation events - "
+                        + "the periodic check will try again. Cause: " + t);
+                    continue;
+                }
+
+                long now = System.currentTimeMillis();
+                long maxLatency = 0L;
+                for (CacheInvalidationEvent event : batch) {
+                    // the servers' clocks are expected to be in sync, like they are for the server heartbeats
+                    long latency = Math.max(0L, now - event.getTimestamp());
+                    AlertConditionCacheMonitor.getMBean().incrementCacheInvalidationPropagationTime(latency);
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+                AlertConditionCacheMonitor.getMBean().incrementCacheInvalidationEventsReceived(batch.size());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Processed [" + batch.size() + "] cache invalidation events, max propagation latency ["
+                        + maxLatency + "]ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutting down
+        }
+    }
+
+    private static void enqueue(LinkedBlockingQueue<CacheInvalidationEvent> queue,
+        List<CacheInvalidationEvent> events) {
+        for (CacheInvalidationEvent event : events) {
+            if (!queue.offer(event)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Cache invalidation queue is full, dropping " + event);
+                }
+                return;
+            }
+        }
+    }
+
+    private static List<CacheInvalidationEvent> takeBatch(LinkedBlockingQueue<CacheInvalidationEvent> queue)
+        throws InterruptedException {
+        CacheInvalidationEvent first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+            return null;
+        }
+        List<CacheInvalidationEvent> batch = new ArrayList<CacheInvalidationEvent>();
+        batch.add(first);
+        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+        return batch;
+    }
+
+    /**
+     * @return the other servers of the cloud that are up, refreshed from the database once in a while
+     */
+    private Iterable<Peer> getPeers() {
+        long now = System.currentTimeMillis();
+        if (now - peersRefreshTime < PEER_REFRESH_INTERVAL) {
+            return peers.values();
+        }
+        peersRefreshTime = now;
+
+        try {
+            ServerCommunicationsServiceMBean commService = ServerCommunicationsServiceUtil.getService();
+            String localEndpoint = commService.getStartedServerEndpoint();
+            if (localEndpoint == null) {
+                return peers.values(); // comm services are not up yet
+            }
+            String identity = LookupUtil.getServerManager().getIdentity();
+            boolean secure = localEndpoint.startsWith("ssl");
+
+            Set<String> current = new HashSet<String>();
+            for (Server server : LookupUtil.getTopologyManager().getAllCloudServers()) {
+                if (server.getName().equals(identity) || server.getOperationMode() == Server.OperationMode.DOWN) {
+                    continue;
+                }
+                // the other servers listen the same way as this one, only on their own address and port
+                String endpoint = localEndpoint.replaceFirst("://[^/]*", "://" + server.getAddress() + ":"
+                    + (secure ? server.getSecurePort() : server.getPort()));
+                current.add(endpoint);
+                if (!peers.containsKey(endpoint)) {
+                    peers.put(endpoint, createPeer(commService, server.getName(), endpoint));
+                }
+            }
+
+            for (Iterator<Map.Entry<String, Peer>> i = peers.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<String, Peer> entry = i.next();
+                if (!current.contains(entry.getKey())) {
+                    entry.getValue().sender.stopSending(false);
+                    i.remove();
+                }
+            }
+        } catch (Throwable t) {
+            LOG.warn("Failed to refresh the servers to push cache invalidation events to. Cause: " + t);
+        }
+
+        return peers.values();
+    }
+
+    private Peer createPeer(ServerCommunicationsServiceMBean commService, String name, String endpoint) {
+        ClientCommandSenderConfiguration config = commService.getConfiguration()
+            .getClientCommandSenderConfiguration();
+
+        // events that cannot be delivered right away are reconciled by the periodic check, don't keep them around
+        config.commandSpoolFileName = null;
+        config.enableQueueThrottling = false;
+        config.enableSendThrottling = false;
+        config.serverPollingIntervalMillis = -1;
+
+        ClientCommandSender sender = commService.getServiceContainer().createClientCommandSender(endpoint, config);
+        sender.setSendCallbacks(new SendCallback[] { new ServerTokenSendCallback(token) });
+        sender.startSending();
+
+        ClientRemotePojoFactory factory = sender.getClientRemotePojoFactory();
+        factory.setTimeout(SEND_TIMEOUT);
+        factory.setDeliveryGuaranteed(ClientRemotePojoFactory.GuaranteedDelivery.DISABLED);
+        return new Peer(name, sender, factory.getRemotePojo(CacheInvalidationService.class));
+    }
+
+    private static class Peer {
+        private final String name;
+        private final ClientCommandSender sender;
+        private final CacheInvalidationService service;
+
+        private Peer(String name, ClientCommandSender sender, CacheInvalidationService service) {
+            this.name = name;
+            this.sender = sender;
+            this.service = service;
+        }
+    }
+
+    private static class ServerTokenSendCallback implements SendCallback {
+        private final String token;
+
+        private ServerTokenSendCallback(String token) {
+            this.token = token;
+        }
+
+        public void sending(Command command) {
+            command.getConfiguration().setProperty(CMDCONFIG_PROP_SERVER_TOKEN, token);
+        }
+
+        public CommandResponse sent(Command command, CommandResponse response) {
+            return response;
+        }
+    }
+}
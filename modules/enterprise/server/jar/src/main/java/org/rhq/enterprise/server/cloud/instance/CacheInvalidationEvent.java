@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud.instance;
+
+import java.io.Serializable;
+
+/**
+ * Tells a server that some of its alert condition cache data may be stale. These events are pushed between the servers
+ * by the {@link CacheInvalidationBus}. They are only hints; the status flags set in the database by the
+ * {@link org.rhq.enterprise.server.cloud.StatusManagerLocal} remain the authority on what needs to be reloaded.
+ */
+public class CacheInvalidationEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /** the global cache of every server is stale, the id is not used */
+        GLOBAL(true, false),
+        /** the caches of the agent with the given id are stale */
+        AGENT(false, true),
+        /** the caches of every agent are stale, the id is not used */
+        ALL_AGENTS(false, true),
+        /** the global cache and the caches of the agent managing the resource with the given id are stale */
+        RESOURCE(true, true),
+        /** the global cache and the caches of the agent managing the alert definition with the given id are stale */
+        ALERT_DEFINITION(true, true),
+        /** the caches of the agent managing the measurement baseline with the given id are stale */
+        MEASUREMENT_BASELINE(false, true);
+
+        private final boolean global;
+        private final boolean agent;
+
+        private Type(boolean global, boolean agent) {
+            this.global = global;
+            this.agent = agent;
+        }
+
+        public boolean isGlobalCacheAffected() {
+            return global;
+        }
+
+        public boolean isAgentCacheAffected() {
+            return agent;
+        }
+    }
+
+    private final Type type;
+    private final int id;
+    private final String originServer;
+    private final long timestamp;
+
+    public CacheInvalidationEvent(Type type, int id, String originServer) {
+        this(type, id, originServer, System.currentTimeMillis());
+    }
+
+    public CacheInvalidationEvent(Type type, int id, String originServer, long timestamp) {
+        this.type = type;
+        this.id = id;
+        this.originServer = originServer;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getOriginServer() {
+        return originServer;
+    }
+
+    /**
+     * @return the time the event was published on the origin server
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidationEvent[type=" + type + ", id=" + id + ", originServer=" + originServer
+            + ", timestamp=" + timestamp + "]";
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud.instance;
+
+import java.util.List;
+
+/**
+ * The remote interface through which a server pushes {@link CacheInvalidationEvent}s to the other servers in the cloud.
+ * Invocations are only accepted from servers that know the cloud's
+ * {@link CacheInvalidationBus#TOKEN_PROPERTY cache invalidation token}.
+ */
+public interface CacheInvalidationService {
+
+    /**
+     * Queues the events for processing and returns right away.
+     *
+     * @param events the events published on the calling server
+     */
+    void invalidate(List<CacheInvalidationEvent> events);
+}
@@ -0,0 +1,32 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud.instance;
+
+import java.util.List;
+
+/**
+ * Receives the {@link CacheInvalidationEvent}s pushed by the other servers in the cloud.
+ */
+public class CacheInvalidationServiceImpl implements CacheInvalidationService {
+
+    @Override
+    public void invalidate(List<CacheInvalidationEvent> events) {
+        CacheInvalidationBus.getSingleton().receive(events);
+    }
+}
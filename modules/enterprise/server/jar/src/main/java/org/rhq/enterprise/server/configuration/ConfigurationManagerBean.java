@@ -124,6 +124,8 @@ import org.rhq.enterprise.server.resource.ResourceNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupUpdateException;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.rest.BadArgumentException;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.util.CriteriaQuery;
@@ -152,6 +154,8 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
     @EJB
     private AuthorizationManagerLocal authorizationManager;
     @EJB
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+    @EJB
     private ResourceGroupManagerLocal resourceGroupManager;
     @EJB
     private ResourceManagerLocal resourceManager;
@@ -380,6 +384,8 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
         } else {
             resource.setResourceConfiguration(configuration.deepCopyWithoutProxies());
         }
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.RESOURCE_CONFIGURATION, resource
+            .getResourceType().getId());
     }
 
     private void setOrUpdatePluginConfiguration(Resource resource, Configuration configuration) {
@@ -389,6 +395,8 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
         } else {
             resource.setPluginConfiguration(configuration.deepCopyWithoutProxies());
         }
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.PLUGIN_CONFIGURATION, resource
+            .getResourceType().getId());
     }
     // Use new transaction because this only works if the resource in question has not
     // yet been loaded by Hibernate.  We want the query to return a non-proxied configuration,
@@ -685,6 +685,137 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
         deleteBitsQuery.executeUpdate();
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NEVER)
+    public void migratePackageBitsToStore() {
+        PackageBitsStore bitsStore = PackageBitsStore.getConfiguredStore();
+        if (bitsStore == null) {
+            return;
+        }
+
+        // If/When H2 handles blob update we can migrate its bits as well
+        if (!DatabaseTypeFactory.isH2(DatabaseTypeFactory.getDefaultDatabaseType())) {
+            // usually everything has been moved by an earlier run, don't open a transaction per package bits then
+            List<Integer> bitsIds = contentManager.findPackageBitsIdsToMigrateToStore();
+            int migrated = 0;
+            int failed = 0;
+            for (Integer bitsId : bitsIds) {
+                try {
+                    if (contentManager.migratePackageBitsToStore(bitsId)) {
+                        ++migrated;
+                    }
+                } catch (Exception e) {
+                    ++failed;
+                    LOG.warn("Failed to move package bits [" + bitsId + "] to the bits store: " + e.getMessage());
+                }
+            }
+            if (migrated > 0 || failed > 0) {
+                LOG.info("Moved [" + migrated + "] package bits from the database to the bits store at ["
+                    + bitsStore.getStoreDir() + "], [" + failed + "] failed");
+            }
+        }
+
+        // an hour is plenty for an upload to commit the reference to its bits
+        int purged = bitsStore.purgeUnreferenced(contentManager.getPackageBitsStoreReferences(), 1000L * 60 * 60);
+        if (purged > 0) {
+            LOG.info("Deleted [" + purged + "] unreferenced package bits from the bits store");
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @TransactionTimeout(45 * 60)
+    public boolean migratePackageBitsToStore(int packageBitsId) {
+        PackageBitsStore bitsStore = PackageBitsStore.getRequiredStore();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        PreparedStatement ps2 = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("SELECT BITS FROM " + PackageBits.TABLE_NAME + " WHERE ID = ? FOR UPDATE");
+            ps.setInt(1, packageBitsId);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                return false;
+            }
+            Blob blob = rs.getBlob(1);
+            if (blob == null || blob.length() <= PackageBits.EMPTY_BLOB.length()
+                || PackageBitsStore.getReference(blob) != null) {
+                return false; // nothing to move or already moved
+            }
+
+            byte[] reference = PackageBitsStore.createReference(bitsStore.store(blob.getBinaryStream(), null));
+            blob.setBytes(1, reference);
+            blob.truncate(reference.length);
+            if (!DatabaseTypeFactory.isPostgres(DatabaseTypeFactory.getDefaultDatabaseType())) {
+                ps2 = conn.prepareStatement("UPDATE " + PackageBits.TABLE_NAME + " SET bits = ? where id = ?");
+                ps2.setBlob(1, blob);
+                ps2.setInt(2, packageBitsId);
+                ps2.execute();
+            }
+            return true;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to move package bits [" + packageBitsId + "] to the bits store", e);
+        } finally {
+            JDBCUtil.safeClose(ps2);
+            JDBCUtil.safeClose(conn, ps, rs);
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public List<Integer> findPackageBitsIdsToMigrateToStore() {
+        List<Integer> bitsIds = new ArrayList<Integer>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("SELECT ID, BITS FROM " + PackageBits.TABLE_NAME + " WHERE BITS IS NOT NULL");
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                // only the length of the blobs which are not references is read
+                Blob blob = rs.getBlob(2);
+                if (blob != null && blob.length() > PackageBits.EMPTY_BLOB.length()
+                    && PackageBitsStore.getReference(blob) == null) {
+                    bitsIds.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find the package bits to move to the bits store", e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, rs);
+        }
+        return bitsIds;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public Set<String> getPackageBitsStoreReferences() {
+        Set<String> references = new HashSet<String>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("SELECT BITS FROM " + PackageBits.TABLE_NAME);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                // only the length of the blobs which are not references is read
+                String sha256 = PackageBitsStore.getReference(rs.getBlob(1));
+                if (sha256 != null) {
+                    references.add(sha256);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load the package bits store references", e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, rs);
+        }
+        return references;
+    }
+
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void unlinkBlob(Integer bitsId) {
@@ -1014,7 +1145,9 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
 
             }
 
-            return bits.getBlob().getBits();
+            byte[] bytes = bits.getBlob().getBits();
+            String sha256 = PackageBitsStore.getReference(bytes);
+            return (sha256 != null) ? PackageBitsStore.getRequiredStore().getBytes(sha256) : bytes;
         } catch (Exception e) {
             throw new RuntimeException("Unable to retrieve package bits for resource: " + resourceId + " and package: "
                 + installedPackageId + ".", e);
@@ -2045,7 +2178,17 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
         // so create and persist that first, getting the ID
         blob = new PackageBitsBlob();
         // just set the blob now, no streaming. The assumption is that H2 (demo) will not be using large blobs
-        byte[] bytes = StreamUtil.slurp(packageBitStream);
+        byte[] bytes;
+        PackageBitsStore bitsStore = PackageBitsStore.getConfiguredStore();
+        if (bitsStore != null) {
+            try {
+                bytes = PackageBitsStore.createReference(bitsStore.store(packageBitStream, contentDetails));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to store package bits: ", e);
+            }
+        } else {
+            bytes = StreamUtil.slurp(packageBitStream);
+        }
         blob.setBits(bytes);
         entityManager.persist(blob);
         entityManager.flush();
@@ -2066,8 +2209,8 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
             entityManager.flush();
         }
 
-        // update contentDetails in needed
-        if (null != contentDetails) {
+        // update contentDetails in needed, the bits store has done so already
+        if (null != contentDetails && null == bitsStore) {
             contentDetails.put(UPLOAD_FILE_SIZE, String.valueOf(bytes.length));
             try {
                 contentDetails.put(UPLOAD_SHA256,
@@ -2132,6 +2275,18 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
             return; // no stream content to update.
         }
 
+        // with a bits store the bits go to the filesystem (once per digest) and the blob only gets a reference
+        PackageBitsStore bitsStore = PackageBitsStore.getConfiguredStore();
+        if (bitsStore != null) {
+            try {
+                String sha256 = bitsStore.store(stream, contentDetails);
+                stream = new ByteArrayInputStream(PackageBitsStore.createReference(sha256));
+                contentDetails = null; // already populated by the store
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to store package bits: ", e);
+            }
+        }
+
         bits = initializePackageBits(bits);
 
         //locate the existing PackageBitsBlob instance
@@ -2315,8 +2470,16 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
             if (results.next()) {
                 //retrieve the Blob
                 Blob blob = results.getBlob(1);
-                //now copy the contents to the stream passed in
-                StreamUtil.copy(blob.getBinaryStream(), stream, closeStreams);
+                String sha256 = PackageBitsStore.getReference(blob);
+                if (sha256 != null) {
+                    PackageBitsStore.getRequiredStore().copy(sha256, stream, 0L, -1L);
+                    if (closeStreams) {
+                        stream.close();
+                    }
+                } else {
+                    //now copy the contents to the stream passed in
+                    StreamUtil.copy(blob.getBinaryStream(), stream, closeStreams);
+                }
             }
         } catch (Exception ex) {
             LOG.error("An error occurred while writing Blob contents out to stream :" + ex.getMessage());
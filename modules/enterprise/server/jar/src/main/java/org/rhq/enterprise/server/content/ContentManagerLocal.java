@@ -378,4 +378,19 @@ public interface ContentManagerLocal extends ContentManagerRemote {
     void removeOrphanedPackageBits();
 
     void removeHistoryDeploymentsBits();
+
+    /**
+     * Moves the bits of all package bits still kept in the database into the {@link PackageBitsStore bits store} and
+     * deletes the stored bits which are not referenced anymore. Does nothing if no bits store is configured.
+     */
+    void migratePackageBitsToStore();
+
+    // used solely for Tx demarcation
+    boolean migratePackageBitsToStore(int packageBitsId);
+
+    // used solely for Tx demarcation
+    List<Integer> findPackageBitsIdsToMigrateToStore();
+
+    // used solely for Tx demarcation
+    Set<String> getPackageBitsStoreReferences();
 }
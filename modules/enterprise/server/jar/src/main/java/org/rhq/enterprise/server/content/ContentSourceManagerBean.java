@@ -100,6 +100,7 @@ import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.domain.util.PasswordObfuscationUtility;
 import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
@@ -1976,15 +1977,13 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
         return digestString;
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    @TransactionTimeout(45 * 60)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long outputPackageVersionBitsGivenResource(int resourceId, PackageDetailsKey packageDetailsKey,
         OutputStream outputStream) {
         return outputPackageVersionBitsRangeGivenResource(resourceId, packageDetailsKey, outputStream, 0, -1);
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    @TransactionTimeout(45 * 60)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long outputPackageBitsForChildResource(int parentResourceId, String resourceTypeName,
         PackageDetailsKey packageDetailsKey, OutputStream outputStream) {
         Resource parentResource = entityManager.find(Resource.class, parentResourceId);
@@ -2008,8 +2007,7 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
             packageVersion.getId());
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    @TransactionTimeout(45 * 60)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long outputPackageVersionBitsRangeGivenResource(int resourceId, PackageDetailsKey packageDetailsKey,
         OutputStream outputStream, long startByte, long endByte) {
         if (startByte < 0L) {
@@ -2033,8 +2031,7 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
             packageVersionId);
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    @TransactionTimeout(45 * 60)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long outputPackageVersionBits(PackageVersion packageVersion, OutputStream outputStream) {
         // Used by export of content through http
 
@@ -2049,8 +2046,7 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
             .getId());
     }
 
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    @TransactionTimeout(45 * 60)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long outputPackageVersionBits(PackageVersion packageVersion, OutputStream outputStream, long startByte,
         long endByte) {
         // Used by export of content through http
@@ -2145,10 +2141,64 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
         return true;
     }
 
-    @SuppressWarnings("unchecked")
     private long outputPackageVersionBitsRangeHelper(int resourceId, PackageDetailsKey packageDetailsKey,
         OutputStream outputStream, long startByte, long endByte, int packageVersionId) {
 
+        // Bits kept in the bits store are streamed without a transaction, so a slow download does not keep a
+        // database connection enlisted for its whole duration. Only the lookup of the store reference is transacted.
+        String sha256 = contentSourceManager.getPackageBitsStoreReference(packageVersionId);
+        if (sha256 != null) {
+            try {
+                long bytesRetrieved = PackageBitsStore.getRequiredStore().copy(sha256, outputStream, startByte,
+                    endByte);
+                log.debug("Retrieved and sent [" + bytesRetrieved + "] bytes for [" + packageDetailsKey
+                    + "] from the bits store");
+                return bytesRetrieved;
+            } catch (IOException e) {
+                log.error("An error occurred while streaming package bits from the bits store.", e);
+                throw new RuntimeException("Could not stream package bits for [" + packageDetailsKey + "]", e);
+            }
+        }
+
+        return contentSourceManager.outputPackageVersionBitsRangeInNewTransaction(resourceId, packageDetailsKey,
+            outputStream, startByte, endByte, packageVersionId);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public String getPackageBitsStoreReference(int packageVersionId) {
+        Query query = entityManager.createNamedQuery(PackageBits.QUERY_PACKAGE_BITS_LOADED_STATUS_PACKAGE_VERSION_ID);
+        query.setParameter("id", packageVersionId);
+        LoadedPackageBitsComposite composite = (LoadedPackageBitsComposite) query.getSingleResult();
+        if (!composite.isPackageBitsAvailable() || !composite.isPackageBitsInDatabase()) {
+            return null;
+        }
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet results = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("SELECT BITS FROM " + PackageBits.TABLE_NAME + " WHERE ID = ?");
+            ps.setInt(1, composite.getPackageBitsId());
+            results = ps.executeQuery();
+            if (!results.next()) {
+                return null;
+            }
+            return PackageBitsStore.getReference(results.getBlob(1));
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not read the package bits of package version [" + packageVersionId
+                + "]", e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, results);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @TransactionTimeout(45 * 60)
+    public long outputPackageVersionBitsRangeInNewTransaction(int resourceId, PackageDetailsKey packageDetailsKey,
+        OutputStream outputStream, long startByte, long endByte, int packageVersionId) {
+
         // TODO: Should we make sure the resource is subscribed/allowed to receive the the package version?
         //       Or should we not bother to perform this check?  if the caller knows the PV ID, it
         //       probably already got it through its repos
@@ -2252,6 +2302,23 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                     results.next();
                     Blob blob = results.getBlob(1);
 
+                    String sha256 = PackageBitsStore.getReference(blob);
+                    if (sha256 != null) {
+                        // the bits were only just put into the store, e.g. by the download above - release the
+                        // connection before streaming
+                        results.close();
+                        results = null;
+                        ps.close();
+                        ps = null;
+                        conn.close();
+                        conn = null;
+                        long bytesRetrieved = PackageBitsStore.getRequiredStore().copy(sha256, outputStream,
+                            startByte, endByte);
+                        log.debug("Retrieved and sent [" + bytesRetrieved + "] bytes for [" + packageDetailsKey
+                            + "] from the bits store");
+                        return bytesRetrieved;
+                    }
+
                     long bytesRetrieved = 0L;
                     if (endByte < 0L) {
                         if (startByte == 0L) {
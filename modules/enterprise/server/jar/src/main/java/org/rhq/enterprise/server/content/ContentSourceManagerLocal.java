@@ -607,6 +607,34 @@ public interface ContentSourceManagerLocal {
      */
     long outputPackageVersionBits(PackageVersion packageVersion, OutputStream outputStream, long startByte, long endByte);
 
+    /**
+     * This is for internal use only. Looks up whether the bits of a package version are kept in the
+     * {@link PackageBitsStore}, in a short transaction of its own, so that they can then be streamed without holding
+     * a database connection.
+     *
+     * @param  packageVersionId identifies the package version
+     *
+     * @return the SHA-256 of the bits in the store, or <code>null</code> if the bits are not (yet) kept there
+     */
+    String getPackageBitsStoreReference(int packageVersionId);
+
+    /**
+     * This is for internal use only. Streams a range of the bits of a package version from within a new, long
+     * running, transaction, downloading them first if they have not been loaded yet. The public output methods
+     * only call this for bits that are not kept in the {@link PackageBitsStore}.
+     *
+     * @param  resourceId        identifies the resource making the request
+     * @param  packageDetailsKey identifies the {@link PackageVersion} whose {@link PackageBits} are to be streamed
+     * @param  outputStream      a stream that the caller prepared where this method will write the actual content
+     * @param  startByte         the first byte (inclusive) of the byte range to output
+     * @param  endByte           the last byte (inclusive) of the byte range to output (-1 means up to EOF)
+     * @param  packageVersionId  the id of the package version identified by <code>packageDetailsKey</code>
+     *
+     * @return the number of bytes written to the output stream
+     */
+    long outputPackageVersionBitsRangeInNewTransaction(int resourceId, PackageDetailsKey packageDetailsKey,
+        OutputStream outputStream, long startByte, long endByte, int packageVersionId);
+
     /**
      * Requests the bits of a distribution file be streamed down to the caller over the given output stream.
      * This method will <b>not</b> take care of closing the stream when it is finished;
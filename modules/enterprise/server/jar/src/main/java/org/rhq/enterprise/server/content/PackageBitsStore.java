@@ -0,0 +1,351 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.jboss.util.StringPropertyReplacer;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.stream.StreamUtil;
+
+/**
+ * A content-addressed store for package bits on the server filesystem. Bits are stored once per distinct SHA-256 digest,
+ * no matter how many package versions, repos or bundles refer to them. When the store is in use, the
+ * {@link org.rhq.core.domain.content.PackageBits} blob does not hold the bits themselves but only a small
+ * {@link #createReference(String) reference} to the stored file.
+ *
+ * <p>The store is enabled by pointing the {@link #BITS_STORE_PROPERTY} system property to a directory. In an HA
+ * environment all servers must share that directory.</p>
+ */
+public class PackageBitsStore {
+
+    private static final Log LOG = LogFactory.getLog(PackageBitsStore.class);
+
+    public static final String BITS_STORE_PROPERTY = "rhq.server.content.bits-store";
+
+    private static final String REFERENCE_PREFIX = "rhq-bits-store:sha256:";
+    private static final int SHA256_HEX_LENGTH = 64;
+    private static final int REFERENCE_LENGTH = REFERENCE_PREFIX.length() + SHA256_HEX_LENGTH;
+    private static final String TMP_DIR_NAME = "tmp";
+    private static final String PURGED_SUFFIX = ".purged";
+    private static final int BUFFER_SIZE = 32768;
+
+    private final File storeDir;
+
+    public PackageBitsStore(File storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * @return the store configured with {@link #BITS_STORE_PROPERTY}, or <code>null</code> if package bits are to be
+     * kept in the database
+     */
+    public static PackageBitsStore getConfiguredStore() {
+        String dir = System.getProperty(BITS_STORE_PROPERTY);
+        if (dir == null || dir.trim().length() == 0) {
+            return null;
+        }
+        // allow the configuration to use ${} system property replacement strings
+        return new PackageBitsStore(new File(StringPropertyReplacer.replaceProperties(dir.trim())));
+    }
+
+    /**
+     * @return the configured store, for use when package bits are known to be kept in it
+     * @throws IllegalStateException if no store is configured
+     */
+    public static PackageBitsStore getRequiredStore() {
+        PackageBitsStore store = getConfiguredStore();
+        if (store == null) {
+            throw new IllegalStateException("Server is misconfigured - missing system property '"
+                + BITS_STORE_PROPERTY + "'. Don't know where package bits are stored.");
+        }
+        return store;
+    }
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    /**
+     * Copies the stream into the store, unless bits with the same digest are already stored. The stream is always
+     * closed.
+     *
+     * @param stream the bits
+     * @param contentDetails if not null, the size and SHA-256 of the bits are put in the map
+     * @return the SHA-256 hex digest the bits are stored under
+     * @throws IOException
+     */
+    public String store(InputStream stream, Map<String, String> contentDetails) throws IOException {
+        File tmpDir = new File(storeDir, TMP_DIR_NAME);
+        mkdirs(tmpDir);
+        File tmpFile = File.createTempFile("bits", ".tmp", tmpDir);
+        try {
+            MessageDigestGenerator digestGenerator = new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+            long size = 0L;
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                    out.write(buffer, 0, read);
+                    digestGenerator.add(buffer, 0, read);
+                    size += read;
+                }
+            } finally {
+                StreamUtil.safeClose(out);
+                StreamUtil.safeClose(stream);
+            }
+
+            String sha256 = digestGenerator.getDigestString();
+            File file = getFile(sha256);
+            // Already stored bits get a fresh time stamp: they may be unreferenced and old, and the purge must not
+            // delete them before the reference of this upload is committed. If the purge got to them first anyway,
+            // setLastModified fails and the bits are stored again.
+            if (file.setLastModified(System.currentTimeMillis()) && file.exists()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Package bits [" + sha256 + "] are already stored, discarding the duplicate");
+                }
+            } else {
+                mkdirs(file.getParentFile());
+                if (!tmpFile.renameTo(file) && !file.exists()) {
+                    throw new IOException("Failed to move package bits to [" + file + "]");
+                }
+            }
+
+            if (contentDetails != null) {
+                contentDetails.put(ContentManagerLocal.UPLOAD_FILE_SIZE, String.valueOf(size));
+                contentDetails.put(ContentManagerLocal.UPLOAD_SHA256, sha256);
+            }
+            return sha256;
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                LOG.warn("Failed to delete temporary package bits file [" + tmpFile + "]");
+            }
+        }
+    }
+
+    /**
+     * Writes the stored bits, or the requested range of them, to the stream. The stream is not closed.
+     *
+     * @param sha256 the digest of the bits
+     * @param outputStream where to write the bits to
+     * @param startByte the first byte to write
+     * @param endByte the last byte to write (inclusive), or a negative value to write up to the end of the bits
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long copy(String sha256, OutputStream outputStream, long startByte, long endByte) throws IOException {
+        File file = getFile(sha256);
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new IOException("Package bits [" + sha256 + "] are missing from the store at [" + file + "]", e);
+        }
+        try {
+            FileChannel channel = in.getChannel();
+            long position = Math.max(0L, startByte);
+            long last = channel.size() - 1;
+            if (endByte >= 0L && endByte < last) {
+                last = endByte;
+            }
+            long count = last - position + 1;
+            if (count <= 0L) {
+                return 0L;
+            }
+
+            // transferTo lets the OS move the data without copying it through the heap when the target permits
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long transferred = 0L;
+            while (transferred < count) {
+                long n = channel.transferTo(position + transferred, count - transferred, target);
+                if (n <= 0L) {
+                    break;
+                }
+                transferred += n;
+            }
+            outputStream.flush();
+            return transferred;
+        } finally {
+            StreamUtil.safeClose(in);
+        }
+    }
+
+    public byte[] getBytes(String sha256) throws IOException {
+        return StreamUtil.slurp(new FileInputStream(getFile(sha256)));
+    }
+
+    public File getFile(String sha256) {
+        if (sha256 == null || sha256.length() != SHA256_HEX_LENGTH) {
+            throw new IllegalArgumentException("Invalid SHA-256 digest [" + sha256 + "]");
+        }
+        // two levels of directories keep the number of files per directory small
+        File dir = new File(new File(storeDir, sha256.substring(0, 2)), sha256.substring(2, 4));
+        return new File(dir, sha256);
+    }
+
+    /**
+     * Deletes stored files which are not referenced anymore. Files stored or deduplicated onto within the grace period
+     * are kept, they may belong to uploads whose references are not committed yet.
+     *
+     * <p>An unreferenced file is first moved out of the store, and only deleted if it still has not been deduplicated
+     * onto then. A concurrent {@link #store(InputStream, Map)} of the same bits either refreshed the time stamp before
+     * the move, and the file is put back, or does not find the file anymore and stores the bits again. A reference
+     * committed after the referenced digests were loaded always comes with such a store.</p>
+     *
+     * @param referenced the digests of all the bits still referenced from the database
+     * @param gracePeriod in milliseconds
+     * @return the number of deleted files
+     */
+    public int purgeUnreferenced(Set<String> referenced, long gracePeriod) {
+        File[] level1 = storeDir.listFiles();
+        if (level1 == null) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - gracePeriod;
+        File tmpDir = new File(storeDir, TMP_DIR_NAME);
+        deleteStalePurgedFiles(tmpDir, cutoff);
+
+        int deleted = 0;
+        for (File dir1 : level1) {
+            if (!dir1.isDirectory() || TMP_DIR_NAME.equals(dir1.getName())) {
+                continue;
+            }
+            File[] level2 = dir1.listFiles();
+            if (level2 == null) {
+                continue;
+            }
+            for (File dir2 : level2) {
+                File[] files = dir2.listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file : files) {
+                    if (referenced.contains(file.getName()) || file.lastModified() >= cutoff) {
+                        continue;
+                    }
+
+                    File purged = new File(tmpDir, file.getName() + PURGED_SUFFIX);
+                    if (!moveToPurged(file, purged)) {
+                        // unless another server purged it first
+                        if (file.exists()) {
+                            LOG.warn("Failed to move unreferenced package bits [" + file + "] out of the store");
+                        }
+                        continue;
+                    }
+                    if (purged.lastModified() >= cutoff) {
+                        // deduplicated onto while being purged; if it has been stored again meanwhile, that's the same
+                        if (!purged.renameTo(file) && !purged.delete()) {
+                            LOG.warn("Failed to put back package bits [" + file + "]");
+                        }
+                    } else if (purged.delete()) {
+                        deleted++;
+                    } else {
+                        LOG.warn("Failed to delete unreferenced package bits [" + purged + "]");
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Moves an unreferenced file out of the store, before it is deleted.
+     */
+    boolean moveToPurged(File file, File purged) {
+        File dir = purged.getParentFile();
+        return (dir.isDirectory() || dir.mkdirs()) && file.renameTo(purged);
+    }
+
+    /**
+     * Deletes the files left behind by a purge that did not finish.
+     */
+    private static void deleteStalePurgedFiles(File tmpDir, long cutoff) {
+        File[] files = tmpDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(PURGED_SUFFIX) && file.lastModified() < cutoff && !file.delete()) {
+                LOG.warn("Failed to delete unreferenced package bits [" + file + "]");
+            }
+        }
+    }
+
+    /**
+     * @return the content to store in the package bits blob in place of the bits stored under the given digest
+     */
+    public static byte[] createReference(String sha256) {
+        try {
+            return (REFERENCE_PREFIX + sha256).getBytes("US-ASCII");
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // US-ASCII is always supported
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest if the bits are a reference to the store, otherwise <code>null</code>
+     */
+    public static String getReference(byte[] bits) {
+        if (bits == null || bits.length != REFERENCE_LENGTH) {
+            return null;
+        }
+        String s;
+        try {
+            s = new String(bits, "US-ASCII");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return s.startsWith(REFERENCE_PREFIX) ? s.substring(REFERENCE_PREFIX.length()) : null;
+    }
+
+    /**
+     * Reads only as much of the blob as needed to tell whether it is a reference to the store.
+     *
+     * @return the SHA-256 digest if the blob is a reference to the store, otherwise <code>null</code>
+     */
+    public static String getReference(Blob blob) throws SQLException {
+        if (blob == null || blob.length() != REFERENCE_LENGTH) {
+            return null;
+        }
+        return getReference(blob.getBytes(1, REFERENCE_LENGTH));
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create package bits store directory [" + dir + "]");
+        }
+    }
+}
@@ -24,7 +24,9 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -74,6 +76,7 @@ import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceMBean;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
 import org.rhq.enterprise.server.measurement.AvailabilityManagerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -606,6 +609,25 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
         return agentId;
     }
 
+    @ExcludeDefaultInterceptors
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Integer> getAgentIdsByResourceIds(List<Integer> resourceIds) {
+        Map<Integer, Integer> agentIds = new HashMap<Integer, Integer>(resourceIds.size());
+        if (resourceIds.isEmpty()) {
+            return agentIds;
+        }
+
+        Query query = entityManager.createNamedQuery(Agent.QUERY_FIND_AGENT_IDS_BY_RESOURCE_IDS);
+        for (List<Integer> batch : new BatchIterator<Integer>(resourceIds)) {
+            query.setParameter("resourceIds", batch);
+            for (Object[] row : (List<Object[]>) query.getResultList()) {
+                agentIds.put((Integer) row[0], (Integer) row[1]);
+            }
+        }
+
+        return agentIds;
+    }
+
     @ExcludeDefaultInterceptors
     public Integer getAgentIdByName(String agentName) {
         Integer agentId;
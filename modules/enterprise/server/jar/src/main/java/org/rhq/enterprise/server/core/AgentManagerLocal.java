@@ -20,6 +20,7 @@ package org.rhq.enterprise.server.core;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.ejb.Local;
@@ -223,6 +224,16 @@ public interface AgentManagerLocal extends AgentManagerRemote {
      */
     Integer getAgentIdByResourceId(int resourceId);
 
+    /**
+     * Given a set of resource IDs, this will return the ids of the agents responsible for servicing those resources.
+     * Resources that are unknown or have no agent are not in the returned map.
+     *
+     * @param  resourceIds
+     *
+     * @return map of resource id to the id of the agent that services it
+     */
+    Map<Integer, Integer> getAgentIdsByResourceIds(List<Integer> resourceIds);
+
     /**
      * Given an agent name, this will return the agent id.
      *
@@ -40,7 +40,9 @@ import org.rhq.core.util.file.FileUtil;
 import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.cloud.TopologyManagerLocal;
+import org.rhq.enterprise.server.cloud.instance.CacheInvalidationBus;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
+import org.rhq.enterprise.server.measurement.ScheduleUpdateDispatcher;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 
@@ -95,6 +97,8 @@ public class ShutdownListener {
         log.info("Shutdown listener has been told we are shutting down - starting to clean up now...");
         logShutdownTime();
         stopScheduler();
+        CacheInvalidationBus.getSingleton().shutdown();
+        ScheduleUpdateDispatcher.shutdown();
         updateServerOperationMode();
         stopEmbeddedDatabase();
         log.info("Shutdown listener completed its shutdown tasks. It is safe to shutdown now.");
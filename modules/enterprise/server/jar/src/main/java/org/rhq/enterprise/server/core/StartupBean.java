@@ -89,6 +89,7 @@ import org.rhq.enterprise.server.scheduler.jobs.CloudManagerJob;
 import org.rhq.enterprise.server.scheduler.jobs.DataCalcJob;
 import org.rhq.enterprise.server.scheduler.jobs.DataPurgeJob;
 import org.rhq.enterprise.server.scheduler.jobs.DynaGroupAutoRecalculationJob;
+import org.rhq.enterprise.server.scheduler.jobs.PackageBitsStoreMigrationJob;
 import org.rhq.enterprise.server.scheduler.jobs.PurgePluginsJob;
 import org.rhq.enterprise.server.scheduler.jobs.PurgeResourceTypesJob;
 import org.rhq.enterprise.server.scheduler.jobs.ReplicationFactorCheckJob;
@@ -769,6 +770,16 @@ public class StartupBean implements StartupLocal {
             log.error("Cannot schedule check-for-timed-out-artifact-requests job.", e);
         }
 
+        // Package Bits Store Migration Job
+        try {
+            final long initialDelay = 1000L * 60 * 10; // 10 mins
+            final long interval = 1000L * 60 * 60; // 60 mins
+            schedulerBean.scheduleSimpleRepeatingJob(PackageBitsStoreMigrationJob.class, true, false, initialDelay,
+                interval);
+        } catch (Exception e) {
+            log.error("Cannot schedule package bits store migration job.", e);
+        }
+
         // Data Purge Job
         try {
             // TODO [mazz]: make the data purge job's cron string configurable via SystemManagerBean
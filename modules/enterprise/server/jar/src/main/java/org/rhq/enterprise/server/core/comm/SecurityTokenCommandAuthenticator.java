@@ -27,6 +27,8 @@ import org.rhq.enterprise.communications.ServiceContainer;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 import org.rhq.enterprise.communications.command.server.CommandAuthenticator;
+import org.rhq.enterprise.server.cloud.instance.CacheInvalidationBus;
+import org.rhq.enterprise.server.cloud.instance.CacheInvalidationService;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 
@@ -68,6 +70,11 @@ public class SecurityTokenCommandAuthenticator implements CommandAuthenticator {
      */
     private static final String REGISTER_COMMAND_TYPE_NAME = RemotePojoInvocationCommand.COMMAND_TYPE.getName();
 
+    /**
+     * This is the server service interface through which servers push cache invalidation events to each other.
+     */
+    private static final String CACHE_INVALIDATION_SERVICE_INTERFACE = CacheInvalidationService.class.getName();
+
     /**
      * EJB that is to be used to authenticate security tokens.
      */
@@ -78,6 +85,13 @@ public class SecurityTokenCommandAuthenticator implements CommandAuthenticator {
      */
     @Override
     public boolean isAuthenticated(Command command) {
+        // servers pushing cache invalidation events do not have an agent token, they must know the cloud's token
+        if (isCacheInvalidationCommand(command)) {
+            String server_token = command.getConfiguration().getProperty(
+                CacheInvalidationBus.CMDCONFIG_PROP_SERVER_TOKEN);
+            return CacheInvalidationBus.getSingleton().isAuthentic(server_token);
+        }
+
         String security_token = command.getConfiguration().getProperty(CMDCONFIG_PROP_SECURITY_TOKEN);
 
         // if no security token is in the command, reject it unless this command is asking for a token.
@@ -145,6 +159,14 @@ public class SecurityTokenCommandAuthenticator implements CommandAuthenticator {
         return false;
     }
 
+    private boolean isCacheInvalidationCommand(Command command) {
+        if (REGISTER_COMMAND_TYPE_NAME.equals(command.getCommandType().getName())) {
+            RemotePojoInvocationCommand remote_cmd = (RemotePojoInvocationCommand) command;
+            return CACHE_INVALIDATION_SERVICE_INTERFACE.equals(remote_cmd.getTargetInterfaceName());
+        }
+        return false;
+    }
+
     private boolean isGetPublicAgentUpdateEndpointAddressCommand(Command command) {
         if (REGISTER_COMMAND_TYPE_NAME.equals(command.getCommandType().getName())) {
             RemotePojoInvocationCommand remote_cmd = (RemotePojoInvocationCommand) command;
@@ -555,7 +555,16 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
             maxConcurrency = Integer.valueOf(-1);
         }
 
-        setConcurrencyLimit(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME, maxConcurrency, false);
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        limits.put(GlobalConcurrencyLimitCommandListener.CONCURRENCY_LIMIT_NAME, maxConcurrency);
+
+        // the priority pools are sized as a share of the global limit, so they need to follow it
+        GlobalConcurrencyLimitCommandListener listener = getServiceContainer().getGlobalConcurrencyLimitListener();
+        if (listener != null) {
+            limits.putAll(listener.getPriorityConcurrencyLimits(maxConcurrency));
+        }
+
+        setConcurrencyLimits(limits, false);
         persistServerProperty(ServiceContainerConfigurationConstants.GLOBAL_CONCURRENCY_LIMIT, String
             .valueOf(maxConcurrency));
         getServiceContainer().getConfiguration().getPreferences().putInt(
@@ -1037,17 +1046,28 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
             maxConcurrency = Integer.valueOf(-1);
         }
 
+        Map<String, Integer> newLimits = new HashMap<String, Integer>();
+        newLimits.put(limitName, maxConcurrency);
+        setConcurrencyLimits(newLimits, persist);
+    }
+
+    private void setConcurrencyLimits(Map<String, Integer> newLimits, boolean persist) {
         if (persist) {
-            persistServerProperty(limitName, String.valueOf(maxConcurrency));
+            for (Map.Entry<String, Integer> newLimit : newLimits.entrySet()) {
+                persistServerProperty(newLimit.getKey(), String.valueOf(newLimit.getValue()));
+            }
         }
 
+        // swap in a single new manager so all the new limits take effect together
         ConcurrencyManager concurrencyManager = getServiceContainer().getConcurrencyManager();
         Map<String, Integer> limits = concurrencyManager.getAllConfiguredNumberOfPermitsAllowed();
-        limits.put(limitName, maxConcurrency);
+        limits.putAll(newLimits);
 
         getServiceContainer().setConcurrencyManager(new ConcurrencyManager(limits));
 
-        LOG.info(ServerI18NResourceKeys.NEW_CONCURRENCY_LIMIT, limitName, maxConcurrency);
+        for (Map.Entry<String, Integer> newLimit : newLimits.entrySet()) {
+            LOG.info(ServerI18NResourceKeys.NEW_CONCURRENCY_LIMIT, newLimit.getKey(), newLimit.getValue());
+        }
     }
 
     private String replaceProperties(String str) {
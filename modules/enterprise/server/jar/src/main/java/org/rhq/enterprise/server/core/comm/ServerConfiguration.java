@@ -458,6 +458,42 @@ public class ServerConfiguration {
         return ret_throttling_params;
     }
 
+    /**
+     * Returns the number of bytes remote streams transfer per request (0 or less if they are accessed call by call).
+     *
+     * @return remote stream chunk size
+     */
+    public int getClientSenderRemoteStreamChunkSize() {
+        int value = m_preferences.getInt(ServerConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE,
+            ServerConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE);
+
+        return value;
+    }
+
+    /**
+     * Returns the maximum number of chunk requests a remote input stream has in flight.
+     *
+     * @return remote stream window
+     */
+    public int getClientSenderRemoteStreamWindow() {
+        int value = m_preferences.getInt(ServerConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_WINDOW,
+            ServerConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_WINDOW);
+
+        return value;
+    }
+
+    /**
+     * Returns the flag that, if true, indicates remote input stream chunks are compressed before being sent.
+     *
+     * @return <code>true</code> if remote stream chunks are compressed
+     */
+    public boolean isClientSenderRemoteStreamCompressed() {
+        boolean flag = m_preferences.getBoolean(ServerConfigurationConstants.CLIENT_SENDER_REMOTE_STREAM_COMPRESSED,
+            ServerConfigurationConstants.DEFAULT_CLIENT_SENDER_REMOTE_STREAM_COMPRESSED);
+
+        return flag;
+    }
+
     /**
      * This is a convienence method that returns the full client sender configuration. It combines all the
      * getClientSenderXXX methods and puts all the data in the returned data object.
@@ -473,6 +509,9 @@ public class ServerConfiguration {
         config.dataDirectory = getDataDirectory();
         config.serverPollingIntervalMillis = -1;
         config.commandSpoolFileCompressData = isClientSenderCommandSpoolFileCompressed();
+        config.remoteStreamChunkSize = getClientSenderRemoteStreamChunkSize();
+        config.remoteStreamWindow = getClientSenderRemoteStreamWindow();
+        config.remoteStreamCompress = isClientSenderRemoteStreamCompressed();
         config.retryInterval = getClientSenderRetryInterval();
         config.maxRetries = getClientSenderMaxRetries();
         config.commandSpoolFileName = getClientSenderCommandSpoolFileName();
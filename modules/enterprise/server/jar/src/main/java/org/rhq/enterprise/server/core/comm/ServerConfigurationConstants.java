@@ -143,6 +143,37 @@ public interface ServerConfigurationConstants {
      */
     boolean DEFAULT_CLIENT_SENDER_COMMAND_SPOOL_FILE_COMPRESSED = false;
 
+    /**
+     * Property that defines the number of bytes remote streams transfer per request. If 0 or less, remote streams are
+     * accessed call by call.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE = PROPERTY_NAME_PREFIX + "client.remote-stream.chunk-size";
+
+    /**
+     * If the remote stream chunk size is not specified, this is the default.
+     */
+    int DEFAULT_CLIENT_SENDER_REMOTE_STREAM_CHUNK_SIZE = 65536;
+
+    /**
+     * Property that defines the maximum number of chunk requests a remote input stream has in flight.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_WINDOW = PROPERTY_NAME_PREFIX + "client.remote-stream.window";
+
+    /**
+     * If the remote stream window is not specified, this is the default.
+     */
+    int DEFAULT_CLIENT_SENDER_REMOTE_STREAM_WINDOW = 4;
+
+    /**
+     * Property that indicates if remote input stream chunks are compressed before being sent.
+     */
+    String CLIENT_SENDER_REMOTE_STREAM_COMPRESSED = PROPERTY_NAME_PREFIX + "client.remote-stream.compressed";
+
+    /**
+     * If the remote stream compress flag is not specified, this is the default.
+     */
+    boolean DEFAULT_CLIENT_SENDER_REMOTE_STREAM_COMPRESSED = false;
+
     /**
      * Property that provides the amount of time, in milliseconds, that the sender will pause before attempting to retry
      * a failed command whose delivery is to be guaranteed.
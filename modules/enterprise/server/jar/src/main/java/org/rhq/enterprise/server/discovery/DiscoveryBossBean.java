@@ -65,6 +65,7 @@ import org.rhq.core.clientapi.agent.upgrade.ResourceUpgradeRequest;
 import org.rhq.core.clientapi.agent.upgrade.ResourceUpgradeResponse;
 import org.rhq.core.clientapi.server.discovery.InvalidInventoryReportException;
 import org.rhq.core.clientapi.server.discovery.InventoryReport;
+import org.rhq.core.clientapi.server.discovery.ResourceSyncHash;
 import org.rhq.core.clientapi.server.discovery.StaleTypeException;
 import org.rhq.core.db.DatabaseType;
 import org.rhq.core.db.DatabaseTypeFactory;
@@ -112,8 +113,11 @@ import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.resource.metadata.PluginManagerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
@@ -127,6 +131,8 @@ import org.rhq.enterprise.server.util.LookupUtil;
 public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemote {
     private static final Log LOG = LogFactory.getLog(DiscoveryBossBean.class.getName());
 
+    private static final TopLevelServerSyncHashCache SYNC_HASH_CACHE = new TopLevelServerSyncHashCache();
+
     static private final int MERGE_BATCH_SIZE;
 
     static {
@@ -152,6 +158,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
     @EJB
     private ResourceGroupManagerLocal groupManager;
     @EJB
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+    @EJB
     private ResourceManagerLocal resourceManager;
     @EJB
     private ResourceAvailabilityManagerLocal resourceAvailabilityManager;
@@ -298,7 +306,105 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
         ResourceSyncInfo platformSyncInfo = ResourceSyncInfo.buildResourceSyncInfo(platform);
         Set<ResourceSyncInfo> topLevelServiceSyncInfo = getToplevelServiceSyncInfo(toplevelServices);
-        PlatformSyncInfo result = new PlatformSyncInfo(platformSyncInfo, topLevelServiceSyncInfo, topLevelServerIds);
+        Map<Integer, String> topLevelServerHashes = getTopLevelServerSyncHashes(knownAgent.getId(), topLevelServerIds);
+        PlatformSyncInfo result = new PlatformSyncInfo(platformSyncInfo, topLevelServiceSyncInfo, topLevelServerIds,
+            topLevelServerHashes);
+
+        return result;
+    }
+
+    /**
+     * Hashes the sync info of each top level server hierarchy, so that the agent only needs to call back for the
+     * hierarchies it does not have an up to date copy of. Where supported, the sync info of all the hierarchies is
+     * read with a single recursive query, instead of one query per top level server. The hashes are cached until the
+     * {@link #getSyncFingerprint(int) fingerprint} of the agent's resources changes.
+     *
+     * @param agentId
+     * @param topLevelServerIds
+     * @return the {@link ResourceSyncHash} of each top level server hierarchy, keyed by top level server id
+     */
+    private Map<Integer, String> getTopLevelServerSyncHashes(int agentId, Set<Integer> topLevelServerIds) {
+        if (topLevelServerIds.isEmpty()) {
+            return new HashMap<Integer, String>();
+        }
+
+        String fingerprint = getSyncFingerprint(agentId);
+        Map<Integer, String> result = SYNC_HASH_CACHE.get(agentId, fingerprint, topLevelServerIds);
+        if (null == result) {
+            result = computeTopLevelServerSyncHashes(topLevelServerIds);
+            SYNC_HASH_CACHE.put(agentId, fingerprint, topLevelServerIds, result);
+        }
+        return result;
+    }
+
+    /**
+     * The fingerprint changes whenever a resource of the agent is added or removed, changes its inventory status, or
+     * gets its mtime updated, since mtimes are set to the current time. Changes that move a resource to another
+     * parent without touching its mtime are not seen until one of these happens.
+     *
+     * @param agentId
+     * @return the number of resources of the agent and their latest mtime, for each inventory status
+     */
+    @SuppressWarnings("unchecked")
+    private String getSyncFingerprint(int agentId) {
+        Query query = entityManager.createQuery("" //
+            + "SELECT r.inventoryStatus, COUNT(r.id), MAX(r.mtime) " //
+            + "  FROM Resource r " //
+            + " WHERE r.agent.id = :agentId " //
+            + " GROUP BY r.inventoryStatus " //
+            + " ORDER BY r.inventoryStatus");
+        query.setParameter("agentId", agentId);
+        StringBuilder fingerprint = new StringBuilder();
+        for (Object[] row : (List<Object[]>) query.getResultList()) {
+            fingerprint.append(row[0]).append(':').append(row[1]).append(':').append(row[2]).append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Integer, String> computeTopLevelServerSyncHashes(Set<Integer> topLevelServerIds) {
+        Map<Integer, String> result = new HashMap<Integer, String>(topLevelServerIds.size());
+
+        Query query = null;
+        DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
+        if (DatabaseTypeFactory.isOracle(dbType)) {
+            query = entityManager.createNativeQuery(ResourceSyncInfo.QUERY_NATIVE_QUERY_TOP_LEVEL_SERVERS_ORACLE);
+        } else if (DatabaseTypeFactory.isPostgres(dbType)) {
+            query = entityManager.createNativeQuery(ResourceSyncInfo.QUERY_NATIVE_QUERY_TOP_LEVEL_SERVERS_POSTGRES);
+        }
+
+        if (null == query) {
+            for (Integer topLevelServerId : topLevelServerIds) {
+                result.put(topLevelServerId, ResourceSyncHash.compute(getResourceSyncInfo(topLevelServerId)));
+            }
+            return result;
+        }
+
+        Map<Integer, List<ResourceSyncInfo>> syncInfosByServer = new HashMap<Integer, List<ResourceSyncInfo>>(
+            topLevelServerIds.size());
+        // Oracle limits IN lists to 1000 elements
+        for (List<Integer> batch : new BatchIterator<Integer>(new ArrayList<Integer>(topLevelServerIds))) {
+            query.setParameter("resourceIds", batch);
+            List<Object[]> rows = query.getResultList();
+            for (Object[] row : rows) {
+                int id = dbType.getInteger(row[0]);
+                String uuid = (String) row[1];
+                long mtime = dbType.getLong(row[2]);
+                InventoryStatus status = InventoryStatus.valueOf((String) row[3]);
+                Integer topLevelServerId = dbType.getInteger(row[4]);
+
+                List<ResourceSyncInfo> syncInfos = syncInfosByServer.get(topLevelServerId);
+                if (null == syncInfos) {
+                    syncInfos = new ArrayList<ResourceSyncInfo>();
+                    syncInfosByServer.put(topLevelServerId, syncInfos);
+                }
+                syncInfos.add(new ResourceSyncInfo(id, uuid, mtime, status));
+            }
+        }
+
+        for (Map.Entry<Integer, List<ResourceSyncInfo>> entry : syncInfosByServer.entrySet()) {
+            result.put(entry.getKey(), ResourceSyncHash.compute(entry.getValue()));
+        }
 
         return result;
     }
@@ -796,6 +902,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                     productVersion = productVersionManager.addProductVersion(resource.getResourceType(), newVersion);
                 }
                 resource.setProductVersion(productVersion);
+                recordInventoryChange(resource);
             }
         }
         return versionChanged;
@@ -855,6 +962,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 ret.setUpgradedResourceVersion(resource.getVersion());
             }
 
+            recordInventoryChange(resource);
+
             // If provided, assume the new plugin config should replace the old plugin config in its entirety.
             // Use a deep copy without ids as the updgardeRequest config may contain entity config props.
             // Note: we explicitly do not call configurationManager.updatePluginConfiguration() because the
@@ -1240,6 +1349,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 } else {
                     existingResource.setParentResource(Resource.ROOT);
                 }
+                recordInventoryChange(existingResource);
 
             } else {
                 if (LOG.isDebugEnabled()) {
@@ -1257,6 +1367,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                     + updatedResource.getDescription() + "' (as reported by agent)...");
             }
             existingResource.setDescription(updatedResource.getDescription());
+            recordInventoryChange(existingResource);
         }
 
         // Log a warning if the agent says the Resource key has changed (should rarely happen).
@@ -1396,6 +1507,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         resource.setModifiedBy(overlord.getName());
 
         setInventoryStatus(parentResource, resource, postMergeActions);
+        recordInventoryChange(resource);
 
         // Extend implicit (recursive) group membership of the parent to the new child
         if (null != parentResource) {
@@ -1403,6 +1515,14 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         }
     }
 
+    /**
+     * Lets the DynaGroups depending on the inventory of this resource's type be recalculated.
+     */
+    private void recordInventoryChange(Resource resource) {
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.INVENTORY, resource
+            .getResourceType().getId());
+    }
+
     private CreateResourceHistory findMatchingCreateResourceHistory(Integer parentId, String resourceKey) {
         Query query = PersistenceUtility.createQueryWithOrderBy(entityManager,
             CreateResourceHistory.QUERY_FIND_BY_CHILD_RESOURCE_KEY, new PageControl(0, 1, new OrderingField("mtime",
@@ -1454,6 +1574,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
             if (!isParentCommitted) {
                 parentResource.setInventoryStatus(InventoryStatus.COMMITTED);
+                recordInventoryChange(parentResource);
             }
 
             addPostMergeAction(postMergeActions, resource, PostMergeAction.LINK_STORAGE_NODE);
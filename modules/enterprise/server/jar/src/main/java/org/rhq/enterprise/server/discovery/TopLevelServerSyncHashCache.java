@@ -0,0 +1,72 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.discovery;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the top level server sync hashes last computed for each agent, so that agents syncing an unchanged inventory
+ * do not make the server read and hash their whole inventory every time.
+ * <p/>
+ * The hashes are made of the mtime and inventory status of every resource. A cached entry is therefore tied to a
+ * fingerprint of the agent's resources - how many resources there are in each inventory status, and their latest
+ * mtime - and is only served while the fingerprint is unchanged. The fingerprint is read from the database, so
+ * changes made through any server of the cloud invalidate the entry.
+ */
+class TopLevelServerSyncHashCache {
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+    /**
+     * @param agentId           the agent the hashes are for
+     * @param fingerprint       the current fingerprint of the agent's resources
+     * @param topLevelServerIds the top level servers the hashes are needed for
+     *
+     * @return a copy of the cached hashes, or null if there are none for this fingerprint and these servers
+     */
+    Map<Integer, String> get(int agentId, String fingerprint, Set<Integer> topLevelServerIds) {
+        Entry entry = entries.get(agentId);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)
+            || !entry.topLevelServerIds.equals(topLevelServerIds)) {
+            return null;
+        }
+        return new HashMap<Integer, String>(entry.hashes);
+    }
+
+    void put(int agentId, String fingerprint, Set<Integer> topLevelServerIds, Map<Integer, String> hashes) {
+        entries.put(agentId, new Entry(fingerprint, topLevelServerIds, hashes));
+    }
+
+    private static class Entry {
+        final String fingerprint;
+        final Set<Integer> topLevelServerIds;
+        final Map<Integer, String> hashes;
+
+        Entry(String fingerprint, Set<Integer> topLevelServerIds, Map<Integer, String> hashes) {
+            this.fingerprint = fingerprint;
+            this.topLevelServerIds = new HashSet<Integer>(topLevelServerIds);
+            this.hashes = new HashMap<Integer, String>(hashes);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * The baseline bounds of all schedules, held in primitive arrays sorted by schedule id. A million baselines take
+ * about 20 MB and no objects besides the three arrays, so the OOB computation can load them once per run and look
+ * them up without going back to the database or boxing anything.
+ */
+class BaselineIndex {
+
+    private static final String QUERY_LOAD = "" //
+        + "SELECT schedule_id, bl_min, bl_max FROM rhq_measurement_bline ORDER BY schedule_id";
+
+    private int size;
+    private int[] scheduleIds;
+    private double[] mins;
+    private double[] maxs;
+
+    BaselineIndex(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        scheduleIds = new int[capacity];
+        mins = new double[capacity];
+        maxs = new double[capacity];
+    }
+
+    /**
+     * Reads all baselines from the database.
+     */
+    static BaselineIndex load(DataSource dataSource) throws SQLException {
+        BaselineIndex index = new BaselineIndex(1024);
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(QUERY_LOAD);
+            stmt.setFetchSize(10000);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                index.add(rs.getInt(1), rs.getDouble(2), rs.getDouble(3));
+            }
+        } finally {
+            JDBCUtil.safeClose(conn, stmt, rs);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a baseline. Baselines must be added in ascending schedule id order.
+     */
+    void add(int scheduleId, double min, double max) {
+        if (size > 0 && scheduleId <= scheduleIds[size - 1]) {
+            throw new IllegalArgumentException("Schedule id " + scheduleId + " is not greater than "
+                + scheduleIds[size - 1]);
+        }
+        if (size == scheduleIds.length) {
+            int capacity = size * 2;
+            scheduleIds = Arrays.copyOf(scheduleIds, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+        }
+        scheduleIds[size] = scheduleId;
+        mins[size] = min;
+        maxs[size] = max;
+        size++;
+    }
+
+    /**
+     * @return the position of the baseline of the schedule, or a negative value if the schedule has no baseline
+     */
+    int indexOf(int scheduleId) {
+        return Arrays.binarySearch(scheduleIds, 0, size, scheduleId);
+    }
+
+    double getMin(int index) {
+        return mins[index];
+    }
+
+    double getMax(int index) {
+        return maxs[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
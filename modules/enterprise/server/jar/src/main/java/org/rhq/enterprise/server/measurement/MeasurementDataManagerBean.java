@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -35,7 +36,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -102,6 +102,7 @@ import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.measurement.util.MeasurementDataManagerUtility;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.rest.ResourceHandlerBean;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
@@ -137,6 +138,20 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
 
     private static final int TRAIT_VALUE_SIZE_IN_DB = 4000;
 
+    // Note, this ordering is tested by MeasurementDataTest.testComparator() through sortBySchedule().
+    private static final Comparator<MeasurementData> SCHEDULE_COMPARATOR = new Comparator<MeasurementData>() {
+        @Override
+        public int compare(MeasurementData d1, MeasurementData d2) {
+            if (d1.getScheduleId() != d2.getScheduleId()) {
+                return (d1.getScheduleId() < d2.getScheduleId()) ? -1 : 1;
+            }
+            if (d1.getTimestamp() != d2.getTimestamp()) {
+                return (d1.getTimestamp() < d2.getTimestamp()) ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
     private final Log log = LogFactory.getLog(MeasurementDataManagerBean.class);
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -158,6 +173,8 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
     @EJB
     private ResourceGroupManagerLocal resourceGroupManager;
     @EJB
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+    @EJB
     private CallTimeDataManagerLocal callTimeDataManager;
     @EJB
     private MeasurementDataManagerLocal measurementDataManager;
@@ -223,22 +240,7 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
 
             @Override
             public void onSuccess(@Nullable Void result) {
-                Set<MeasurementData> insertedData = new TreeSet<MeasurementData>(new Comparator<MeasurementData>() {
-                    // Note, if the logic in this comparator is updated please ensure that you also
-                    // update MeasurementDataTest.testComparator(), where this logic is tested.
-                    @Override
-                    public int compare(MeasurementData d1, MeasurementData d2) {
-                        int c = Integer.valueOf(d1.getScheduleId()).compareTo(d2.getScheduleId());
-                        if (c != 0) {
-                            return c;
-                        }
-                        return Long.valueOf(d1.getTimestamp()).compareTo(d2.getTimestamp());
-                    }
-                });
-
-                insertedData.addAll(data);
-                measurementDataManager.updateAlertConditionCache("mergeMeasurementReport",
-                        insertedData.toArray(new MeasurementData[insertedData.size()]));
+                measurementDataManager.updateAlertConditionCache("mergeMeasurementReport", sortBySchedule(data));
             }
 
             @Override
@@ -249,6 +251,29 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
         });
     }
 
+    /**
+     * Orders the data by schedule id and then by timestamp, keeping only the first of several data points with the
+     * same schedule id and timestamp. This sorts a plain array rather than building a sorted set, so it does not
+     * allocate anything per data point.
+     *
+     * @param data the data to sort
+     *
+     * @return the sorted data
+     */
+    static MeasurementData[] sortBySchedule(Collection<? extends MeasurementData> data) {
+        MeasurementData[] sorted = data.toArray(new MeasurementData[data.size()]);
+        // a stable sort, so the first of several duplicates stays first
+        Arrays.sort(sorted, SCHEDULE_COMPARATOR);
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            if (size == 0 || SCHEDULE_COMPARATOR.compare(sorted[size - 1], sorted[i]) != 0) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return (size == sorted.length) ? sorted : Arrays.copyOf(sorted, size);
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void addTraitData(Set<MeasurementDataTrait> data) {
@@ -291,6 +316,17 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
                 // It is expected that some of these batch updates didn't update anything as the previous value was the same
             }
 
+            // only changed values were inserted, DynaGroups on those need to be recalculated
+            List<Integer> changedScheduleIds = new ArrayList<Integer>();
+            int i = 0;
+            for (MeasurementDataTrait aData : data) {
+                if (res[i] > 0 || res[i] == Statement.SUCCESS_NO_INFO) {
+                    changedScheduleIds.add(aData.getScheduleId());
+                }
+                ++i;
+            }
+            groupDefinitionManager.recordTraitChanges(changedScheduleIds);
+
             notifyAlertConditionCacheManager("mergeMeasurementReport", data.toArray(new MeasurementData[data.size()]));
         } catch (SQLException e) {
             log.warn("Failure saving measurement trait data:\n" + ThrowableUtil.getAllMessages(e));
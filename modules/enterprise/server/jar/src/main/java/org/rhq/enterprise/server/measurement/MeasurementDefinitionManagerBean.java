@@ -18,6 +18,7 @@
  */
 package org.rhq.enterprise.server.measurement;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -76,6 +77,12 @@ public class MeasurementDefinitionManagerBean implements MeasurementDefinitionMa
     public void removeMeasurementDefinition(MeasurementDefinition def) {
         // First remove the schedules and associated OOBs.
         List<MeasurementSchedule> schedules = def.getSchedules();
+        List<Integer> scheduleIds = new ArrayList<Integer>(schedules.size());
+        for (MeasurementSchedule sched : schedules) {
+            scheduleIds.add(sched.getId());
+        }
+        oobManager.removeOOBsForSchedules(subjectManager.getOverlord(), scheduleIds);
+
         Iterator<MeasurementSchedule> schedIter = schedules.iterator();
         while (schedIter.hasNext()) {
             MeasurementSchedule sched = schedIter.next();
@@ -83,7 +90,6 @@ public class MeasurementDefinitionManagerBean implements MeasurementDefinitionMa
                 entityManager.remove(sched.getBaseline());
                 sched.setBaseline(null);
             }
-            oobManager.removeOOBsForSchedule(subjectManager.getOverlord(), sched);
             sched.getResource().setAgentSynchronizationNeeded();
             entityManager.remove(sched);
             schedIter.remove();
@@ -23,9 +23,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -81,6 +81,17 @@ import org.rhq.server.metrics.domain.Bucket;
 public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
 
     private static final int BATCH_SIZE = 500;
+    private static final int OOB_BATCH_SIZE = 5000;
+
+    /**
+     * Returned by {@link #computeOOBFactor} when there is no OOB. Actual factors are never negative.
+     */
+    static final int NO_OOB = -1;
+
+    private static final String QUERY_DELETE_OOB = "DELETE FROM rhq_measurement_oob WHERE schedule_id = ?";
+    private static final String QUERY_INSERT_OOB = "" //
+        + "INSERT INTO rhq_measurement_oob (schedule_id, time_stamp, oob_factor) VALUES (?, ?, ?)";
+
     private final Log log = LogFactory.getLog(MeasurementOOBManagerBean.class);
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -208,7 +219,6 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
     public void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics) {
         log.info("Computing OOBs");
@@ -216,44 +226,46 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         long startTime = System.currentTimeMillis();
 
         try {
-            Iterator<AggregateNumericMetric> iterator = metrics.iterator();
-            while (iterator.hasNext()) {
-
-                List<Integer> scheduleIds = new ArrayList<Integer>(BATCH_SIZE);
-                List<AggregateNumericMetric> metricList = new ArrayList<AggregateNumericMetric>(BATCH_SIZE);
-
-                int i = 0;
-                do {
-                    AggregateNumericMetric aggregate = iterator.next();
-                    scheduleIds.add(aggregate.getScheduleId());
-                    metricList.add(aggregate);
-                    i++;
-                } while (i < BATCH_SIZE && iterator.hasNext());
-
-                Query q  = entityManager.createNamedQuery(MeasurementBaseline.QUERY_BY_SCHEDULE_IDS);
-                q.setParameter("scheduleIds",scheduleIds);
-                List<MeasurementBaseline> tmpList = q.getResultList();
-
-                // put the result in a HashMap to speed up query later
-                Map<Integer,MeasurementBaseline> baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
-                for (MeasurementBaseline baseline : tmpList) {
-                    baselineMap.put(baseline.getScheduleId(),baseline);
+            long loadStartTime = System.currentTimeMillis();
+            BaselineIndex baselines;
+            try {
+                baselines = BaselineIndex.load(rhqDs);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not load the measurement baselines", e);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded " + baselines.size() + " baselines in " + (System.currentTimeMillis() - loadStartTime)
+                    + " ms");
+            }
+
+            // only the OOBs themselves are turned into objects, most metrics are within bounds
+            List<MeasurementOOB> oobs = new ArrayList<MeasurementOOB>(OOB_BATCH_SIZE);
+            for (AggregateNumericMetric metric : metrics) {
+                int index = baselines.indexOf(metric.getScheduleId());
+                if (index < 0) {
+                    continue;
                 }
 
-                for (AggregateNumericMetric metric : metricList) {
-                    MeasurementBaseline baseline = baselineMap.get(metric.getScheduleId());
-                    if (baseline==null)
-                        continue;
+                int oobFactor = computeOOBFactor(metric.getAvg(), metric.getMin(), metric.getMax(),
+                    baselines.getMin(index), baselines.getMax(index));
+                if (oobFactor == NO_OOB) {
+                    continue;
+                }
 
-                    try {
-                        count += oobManager.calculateOOB(metric,baseline);
-                    } catch (Exception e) {
-                        log.error("An error occurred while calculating OOBs for " + metric, e);
-                        throw new RuntimeException(e);
-                    }
+                MeasurementOOB oob = new MeasurementOOB();
+                oob.setScheduleId(metric.getScheduleId());
+                oob.setTimestamp(metric.getTimestamp());
+                oob.setOobFactor(oobFactor);
+                oobs.add(oob);
 
+                if (oobs.size() == OOB_BATCH_SIZE) {
+                    count += saveOOBs(oobs);
+                    oobs.clear();
                 }
             }
+            if (!oobs.isEmpty()) {
+                count += saveOOBs(oobs);
+            }
         } finally {
             long endTime = System.currentTimeMillis();
             if (log.isInfoEnabled()) {
@@ -262,69 +274,106 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         }
     }
 
+    private int saveOOBs(List<MeasurementOOB> oobs) {
+        try {
+            return oobManager.upsertOOBs(oobs);
+        } catch (Exception e) {
+            log.error("An error occurred while saving " + oobs.size() + " OOBs", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
     public int calculateOOB(AggregateNumericMetric metric,MeasurementBaseline baseline) {
         if (baseline==null) {
             return 0;
         }
 
-        Long upperDelta = null;
-        Long lowerDelta = null;
-
-        if (isPastUpperBound(baseline, metric)) {
-            upperDelta =
-                Math.round(((metric.getMax() - baseline.getMax()) / (baseline.getMax() - baseline.getMin())) * 100);
+        MeasurementOOB oob = computeOOB(metric, baseline);
+        if (oob != null) {
+            entityManager.merge(oob);
+            return 1;
         }
 
-        if (isPastLowerBound(baseline, metric)) {
-            lowerDelta =
-                Math.round(((baseline.getMin() - metric.getMin()) / (baseline.getMax() - baseline.getMin())) * 100);
-        }
+        return 0;
+    }
 
-        Integer oobFactor;
-        if (upperDelta != null && lowerDelta == null) {
-            oobFactor = upperDelta.intValue();
-        } else if (upperDelta == null && lowerDelta != null) {
-            oobFactor = lowerDelta.intValue();
-        } else if (upperDelta != null && lowerDelta != null) {
-            if (upperDelta > lowerDelta) {
-                oobFactor = upperDelta.intValue();
-            } else {
-                oobFactor = lowerDelta.intValue();
+    @Override
+    @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
+    public int upsertOOBs(Collection<MeasurementOOB> oobs) {
+        Connection conn = null;
+        PreparedStatement deleteStmt = null;
+        PreparedStatement insertStmt = null;
+        try {
+            conn = rhqDs.getConnection();
+
+            // an OOB row per schedule: drop the previous ones, then write the new ones
+            deleteStmt = conn.prepareStatement(QUERY_DELETE_OOB);
+            insertStmt = conn.prepareStatement(QUERY_INSERT_OOB);
+            for (MeasurementOOB oob : oobs) {
+                deleteStmt.setInt(1, oob.getScheduleId());
+                deleteStmt.addBatch();
+
+                insertStmt.setInt(1, oob.getScheduleId());
+                insertStmt.setLong(2, oob.getTimestamp());
+                insertStmt.setInt(3, oob.getOobFactor());
+                insertStmt.addBatch();
             }
-        } else { // both are null
-            oobFactor = null;
+            deleteStmt.executeBatch();
+            insertStmt.executeBatch();
+
+            return oobs.size();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save " + oobs.size() + " OOBs", e);
+        } finally {
+            JDBCUtil.safeClose(deleteStmt);
+            JDBCUtil.safeClose(conn, insertStmt, null);
         }
+    }
 
-        if (oobFactor != null) {
-            MeasurementOOB oob = new MeasurementOOB();
-            oob.setScheduleId(metric.getScheduleId());
-            oob.setTimestamp(metric.getTimestamp());
-            oob.setOobFactor(oobFactor);
+    /**
+     * @return the OOB of the 1 hr metric with respect to the baseline, or null if the metric is within bounds
+     */
+    private MeasurementOOB computeOOB(AggregateNumericMetric metric, MeasurementBaseline baseline) {
+        int oobFactor = computeOOBFactor(metric.getAvg(), metric.getMin(), metric.getMax(), baseline.getMin(),
+            baseline.getMax());
+        if (oobFactor == NO_OOB) {
+            return null;
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Generated OOB " + oob + " for 1 hr metric " + metric + " with baseline " + baseline);
-            }
+        MeasurementOOB oob = new MeasurementOOB();
+        oob.setScheduleId(metric.getScheduleId());
+        oob.setTimestamp(metric.getTimestamp());
+        oob.setOobFactor(oobFactor);
 
-            entityManager.merge(oob);
-            return 1;
+        if (log.isDebugEnabled()) {
+            log.debug("Generated OOB " + oob + " for 1 hr metric " + metric + " with baseline " + baseline);
         }
 
-        return 0;
+        return oob;
     }
 
-    private boolean isPastUpperBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() > baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (metric.getMax() - baseline.getMax() > 0);
-    }
+    /**
+     * Computes how far, in percent of the baseline range, the 1 hr aggregate went past the baseline. Baselines
+     * narrower than 0.1 never produce OOBs.
+     *
+     * @return the OOB factor, or {@link #NO_OOB} if the aggregate stayed within the baseline
+     */
+    static int computeOOBFactor(double avg, double min, double max, double baselineMin, double baselineMax) {
+        double range = baselineMax - baselineMin;
+        if (!(range > 0.1)) {
+            return NO_OOB;
+        }
 
-    private boolean isPastLowerBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() < baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (baseline.getMin() - metric.getMin()) > 0;
+        long oobFactor = NO_OOB;
+        if (avg > baselineMax && max - baselineMax > 0) {
+            oobFactor = Math.round(((max - baselineMax) / range) * 100);
+        }
+        if (avg < baselineMax && baselineMin - min > 0) {
+            oobFactor = Math.max(oobFactor, Math.round(((baselineMin - min) / range) * 100));
+        }
+        return (int) oobFactor;
     }
 
     /**
@@ -370,6 +419,17 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         q.executeUpdate();
     }
 
+    @Override
+    public void removeOOBsForSchedules(Subject subject, List<Integer> scheduleIds) {
+        // some databases bail out with more than 1000 parameters in IN () clauses
+        for (int fromIndex = 0; fromIndex < scheduleIds.size(); fromIndex += BATCH_SIZE) {
+            int toIndex = Math.min(fromIndex + BATCH_SIZE, scheduleIds.size());
+            Query q = entityManager.createNamedQuery(MeasurementOOB.DELETE_FOR_SCHEDULES);
+            q.setParameter("ids", scheduleIds.subList(fromIndex, toIndex));
+            q.executeUpdate();
+        }
+    }
+
     @Override
     public void removeOOBsForGroupAndDefinition(Subject subject, int resourceGroupId, int measurementDefinitionId) {
         Query query = entityManager.createNamedQuery(MeasurementOOB.DELETE_FOR_GROUP_AND_DEFINITION);
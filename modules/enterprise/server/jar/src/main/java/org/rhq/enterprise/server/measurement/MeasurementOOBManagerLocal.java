@@ -19,10 +19,14 @@
 
 package org.rhq.enterprise.server.measurement;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.measurement.MeasurementBaseline;
+import org.rhq.core.domain.measurement.MeasurementOOB;
 import org.rhq.core.domain.measurement.MeasurementSchedule;
 import org.rhq.core.domain.measurement.composite.MeasurementOOBComposite;
 import org.rhq.core.domain.util.PageControl;
@@ -70,6 +74,17 @@ public interface MeasurementOOBManagerLocal {
      */
     int calculateOOB(AggregateNumericMetric metric, MeasurementBaseline baseline);
 
+    /**
+     * Saves the passed OOBs, replacing the OOBs already stored for their schedules. All OOBs are written with JDBC
+     * batches in a single transaction.
+     * <br/><br/>
+     * <strong>Note</strong> This method exists only for transaction demarcation.
+     *
+     * @param oobs the OOBs to save, at most one per schedule
+     * @return the number of saved OOBs
+     */
+    int upsertOOBs(Collection<MeasurementOOB> oobs);
+
     /**
      * Return OOB Composites that contain all information about the OOBs in a given time as aggregates.
      * @param subject The caller
@@ -96,6 +111,13 @@ public interface MeasurementOOBManagerLocal {
      */
     void removeOOBsForSchedule(Subject subject, MeasurementSchedule sched);
 
+    /**
+     * Remove all OOB data for the passed schedules
+     * @param subject Caller
+     * @param scheduleIds the ids of the schedules for which we want to clean out the data
+     */
+    void removeOOBsForSchedules(Subject subject, List<Integer> scheduleIds);
+
     void removeOOBsForGroupAndDefinition(Subject subject, int resourceGroupId, int measurementDefinitionId);
 
     /**
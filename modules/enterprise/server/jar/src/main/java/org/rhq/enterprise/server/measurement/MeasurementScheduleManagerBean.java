@@ -42,6 +42,9 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -60,6 +63,7 @@ import org.rhq.core.db.SQLServerDatabaseType;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.common.EntityContext;
+import org.rhq.core.domain.criteria.AgentCriteria;
 import org.rhq.core.domain.criteria.MeasurementDefinitionCriteria;
 import org.rhq.core.domain.criteria.MeasurementScheduleCriteria;
 import org.rhq.core.domain.criteria.ResourceCriteria;
@@ -93,6 +97,7 @@ import org.rhq.enterprise.server.common.PerformanceMonitorInterceptor;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -132,8 +137,60 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
     @EJB
     private SubjectManagerLocal subjectManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     private final Log log = LogFactory.getLog(MeasurementScheduleManagerBean.class);
 
+    /**
+     * The resources to mark for a schedule sync while schedule updates are sent to their agents, along with the
+     * mtimes to restore once the updates reached the agents.
+     */
+    private static class ScheduleSyncMarks {
+        private final long mark = System.currentTimeMillis();
+        private final Map<Integer, Map<Long, List<Integer>>> resourceIdsByAgent = //
+            new HashMap<Integer, Map<Long, List<Integer>>>();
+        private final List<Integer> resourceIds = new ArrayList<Integer>();
+
+        void add(int agentId, int resourceId, long mtime) {
+            Map<Long, List<Integer>> resourceIdsByMtime = resourceIdsByAgent.get(agentId);
+            if (resourceIdsByMtime == null) {
+                resourceIdsByMtime = new HashMap<Long, List<Integer>>();
+                resourceIdsByAgent.put(agentId, resourceIdsByMtime);
+            }
+            List<Integer> mtimeResourceIds = resourceIdsByMtime.get(mtime);
+            if (mtimeResourceIds == null) {
+                mtimeResourceIds = new ArrayList<Integer>();
+                resourceIdsByMtime.put(mtime, mtimeResourceIds);
+            }
+            mtimeResourceIds.add(resourceId);
+            resourceIds.add(resourceId);
+        }
+
+        List<Integer> getResourceIds() {
+            return resourceIds;
+        }
+
+        Map<Long, List<Integer>> getPreviousMtimes(Set<Integer> agentIds) {
+            Map<Long, List<Integer>> previousMtimes = new HashMap<Long, List<Integer>>();
+            for (int agentId : agentIds) {
+                Map<Long, List<Integer>> resourceIdsByMtime = resourceIdsByAgent.get(agentId);
+                if (resourceIdsByMtime == null) {
+                    continue;
+                }
+                for (Map.Entry<Long, List<Integer>> entry : resourceIdsByMtime.entrySet()) {
+                    List<Integer> mtimeResourceIds = previousMtimes.get(entry.getKey());
+                    if (mtimeResourceIds == null) {
+                        mtimeResourceIds = new ArrayList<Integer>();
+                        previousMtimes.put(entry.getKey(), mtimeResourceIds);
+                    }
+                    mtimeResourceIds.addAll(entry.getValue());
+                }
+            }
+            return previousMtimes;
+        }
+    }
+
     public Set<ResourceMeasurementScheduleRequest> findSchedulesForResourceAndItsDescendants(int[] resourceIds,
         boolean getDescendents) {
         Set<ResourceMeasurementScheduleRequest> allSchedules = new HashSet<ResourceMeasurementScheduleRequest>();
@@ -465,7 +522,6 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
             defUpdateStmt.executeUpdate();
 
             if (updateExistingSchedules) {
-                Map<Integer, ResourceMeasurementScheduleRequest> reqMap = new HashMap<Integer, ResourceMeasurementScheduleRequest>();
                 List<Integer> idsAsList = ArrayUtils.wrapInList(measurementDefinitionIds);
 
                 // update the schedules associated with the measurement definitions (i.e. the current inventory)
@@ -495,27 +551,37 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
                 // query must not return domain entities as they would be placed in the Hibernate cache.
                 // Return only the data necessary to construct minimal objects ourselves. Using JPQL
                 // is ok, it just lets Hibernate do the heavy lifting for query generation.
+                // Return the agent of each schedule too, so all the agents can be updated without looking them up
+                // resource by resource. The implicit join on the agent skips resources that are not actually associated
+                // with an agent, for example those with an UNINVENTORIED status.
                 queryString = "" //
-                    + "SELECT ms.id, ms.interval, ms.resource.id, ms.definition.name, ms.definition.dataType, ms.definition.rawNumericType" //
+                    + "SELECT ms.resource.agent.id, ms.id, ms.interval, ms.resource.id, ms.definition.name, ms.definition.dataType, ms.definition.rawNumericType, ms.resource.mtime" //
                     + " FROM  MeasurementSchedule ms" //
                     + " WHERE ms.definition.id IN ( :definitionIds )";
                 Query query = entityManager.createQuery(queryString);
                 query.setParameter("definitionIds", idsAsList);
                 List<Object[]> rs = query.getResultList();
 
+                Map<Integer, ResourceMeasurementScheduleRequest> reqMap = new HashMap<Integer, ResourceMeasurementScheduleRequest>();
+                ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("MeasurementDefinitionUpdate");
+                ScheduleSyncMarks syncMarks = new ScheduleSyncMarks();
                 for (Object[] row : rs) {
                     i = 0;
+                    int agentId = (Integer) row[i++];
                     int schedId = (Integer) row[i++];
                     long existingInterval = (Long) row[i++];
                     int resourceId = (Integer) row[i++];
                     String name = (String) row[i++];
                     DataType dataType = (DataType) row[i++];
                     NumericType numericType = (NumericType) row[i++];
+                    long mtime = (Long) row[i++];
 
                     ResourceMeasurementScheduleRequest req = reqMap.get(resourceId);
                     if (null == req) {
                         req = new ResourceMeasurementScheduleRequest(resourceId);
                         reqMap.put(resourceId, req);
+                        dispatcher.add(agentId, req);
+                        syncMarks.add(agentId, resourceId, mtime);
                     }
                     MeasurementScheduleRequest msr = new MeasurementScheduleRequest(schedId, name,
                         ((collectionInterval > 0) ? collectionInterval : existingInterval), enable, dataType,
@@ -523,47 +589,8 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
                     req.addMeasurementScheduleRequest(msr);
                 }
 
-                Map<Agent, Set<ResourceMeasurementScheduleRequest>> agentUpdates = null;
-                agentUpdates = new HashMap<Agent, Set<ResourceMeasurementScheduleRequest>>();
-
-                // The number of Agents is manageable, so we can work with entities here
-                for (Integer resourceId : reqMap.keySet()) {
-                    Agent agent = agentManager.getAgentByResourceId(subjectManager.getOverlord(), resourceId);
-
-                    // Ignore resources that are not actually associated with an agent. For example,
-                    // those with an UNINVENTORIED status.
-                    if (null == agent) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Ignoring measurement schedule change for non-agent-related resource ["
-                                + resourceId + "]. It is probably waiting to be uninventoried.");
-                        }
-
-                        continue;
-                    }
-
-                    Set<ResourceMeasurementScheduleRequest> agentUpdate = agentUpdates.get(agent);
-                    if (agentUpdate == null) {
-                        agentUpdate = new HashSet<ResourceMeasurementScheduleRequest>();
-                        agentUpdates.put(agent, agentUpdate);
-                    }
-
-                    agentUpdate.add(reqMap.get(resourceId));
-                }
-
-                // convert the int[] to Integer[], in case we need to set
                 // send schedule updates to agents
-                for (Map.Entry<Agent, Set<ResourceMeasurementScheduleRequest>> agentEntry : agentUpdates.entrySet()) {
-                    boolean synced = sendUpdatedSchedulesToAgent(agentEntry.getKey(), agentEntry.getValue());
-                    if (!synced) {
-                        /*
-                         * only sync resources that are affected by this set of definitions that were updated, and only
-                         * for the agent that couldn't be contacted (under the assumption that 9 times out of 10 the agent
-                         * will be up; so, we don't want to unnecessarily mark more resources as needing syncing that don't
-                         */
-                        int agentId = agentEntry.getKey().getId();
-                        setAgentSynchronizationNeededByDefinitionsForAgent(agentId, idsAsList);
-                    }
-                }
+                sendScheduleUpdatesAfterCommit(dispatcher, syncMarks);
             }
         } catch (Exception e) {
             String errorMessage = "Error updating measurement definitions";
@@ -727,129 +754,169 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
     @Override
     @SuppressWarnings("unchecked")
     public void notifyAgentsOfScheduleUpdates(EntityContext entityContext, String scheduleSubQuery) {
-        List<Integer> agentIds = new ArrayList<Integer>();
-        try {
-            String agentsQueryString = "" //
-                + "SELECT DISTINCT ms.resource.agent.id " //
-                + "  FROM MeasurementSchedule ms " //
-                + " WHERE ms.id IN ( " + scheduleSubQuery + " ) ";
-            if (log.isDebugEnabled()) {
-                log.debug("agentsQueryString: " + agentsQueryString);
-            }
-            Query agentsQuery = entityManager.createQuery(agentsQueryString);
-            agentIds = agentsQuery.getResultList();
-        } catch (Throwable t) {
-            log.error("Could not notify agents of updates", t);
-        }
-
-        // use composite query -- won't load managed entities, requires minimal wire transfer
+        // use composite query -- won't load managed entities, requires minimal wire transfer. The requests for all of
+        // the affected agents are gathered at once, rather than running one query per agent.
         String scheduleRequestQueryString = "" //
-            + "SELECT ms.resource.id, " //
+            + "SELECT ms.resource.agent.id, " //
+            + "       ms.resource.id, " //
             + "       ms.id, " //
             + "       ms.definition.name, " //
             + "       ms.interval, " //
             + "       ms.enabled, " //
             + "       ms.definition.dataType, " //
-            + "       ms.definition.rawNumericType " //
+            + "       ms.definition.rawNumericType, " //
+            + "       ms.resource.mtime " //
             + "  FROM MeasurementSchedule ms " //
-            + " WHERE ms.id IN ( " + scheduleSubQuery + " ) " //
-            + "   AND ms.resource.agent.id = :agentId";
+            + " WHERE ms.id IN ( " + scheduleSubQuery + " ) ";
         if (log.isDebugEnabled()) {
             log.debug("scheduleRequestQueryString: " + scheduleRequestQueryString);
         }
-        Query scheduleRequestQuery = entityManager.createQuery(scheduleRequestQueryString);
-
-        Map<Integer, ResourceMeasurementScheduleRequest> agentRequests = new HashMap<Integer, ResourceMeasurementScheduleRequest>();
-        for (int nextAgentId : agentIds) {
-            scheduleRequestQuery.setParameter("agentId", nextAgentId);
-            List<Object[]> scheduleRequests = scheduleRequestQuery.getResultList();
-            for (Object[] nextScheduleDataSet : scheduleRequests) {
-                int resourceId = (Integer) nextScheduleDataSet[0];
-                ResourceMeasurementScheduleRequest resourceRequest = agentRequests.get(resourceId);
-                if (resourceRequest == null) {
-                    resourceRequest = new ResourceMeasurementScheduleRequest(resourceId);
-                    agentRequests.put(resourceId, resourceRequest);
-                }
 
-                MeasurementScheduleRequest requestData = new MeasurementScheduleRequest( //
-                    (Integer) nextScheduleDataSet[1], // scheduleId
-                    (String) nextScheduleDataSet[2], // definitionName,
-                    (Long) nextScheduleDataSet[3], // interval,
-                    (Boolean) nextScheduleDataSet[4], // enabled,
-                    (DataType) nextScheduleDataSet[5], // dataType,
-                    (NumericType) nextScheduleDataSet[6]); // rawNumericType
-                resourceRequest.addMeasurementScheduleRequest(requestData);
-            }
+        List<Object[]> scheduleRequests;
+        try {
+            Query scheduleRequestQuery = entityManager.createQuery(scheduleRequestQueryString);
+            scheduleRequests = scheduleRequestQuery.getResultList();
+        } catch (Throwable t) {
+            log.error("Could not notify agents of updates", t);
+            return;
+        }
 
-            boolean markResources = false;
-            try {
-                Agent nextAgent = agentManager.getAgentByID(nextAgentId);
-                AgentClient agentClient = agentManager.getAgentClient(nextAgent);
-
-                boolean couldPing = agentClient.pingService(2000); // see if agent is up for sending
-                if (couldPing) {
-                    Set<ResourceMeasurementScheduleRequest> requestsToSend = new HashSet<ResourceMeasurementScheduleRequest>(
-                        agentRequests.values());
-                    agentClient.getMeasurementAgentService().updateCollection(requestsToSend);
-                } else {
-                    log.error("Could not send measurement schedule updates to agent[id=" + nextAgentId
-                        + "], marking resources for update; agent ping failed");
-                    markResources = true;
-                }
-            } catch (Throwable t) {
-                log.error("Could not send measurement schedule updates to agent[id=" + nextAgentId
-                    + "], marking resources for update", t);
-                markResources = true;
+        Map<Integer, ResourceMeasurementScheduleRequest> resourceRequests = new HashMap<Integer, ResourceMeasurementScheduleRequest>();
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("MeasurementScheduleUpdate");
+        ScheduleSyncMarks syncMarks = new ScheduleSyncMarks();
+        for (Object[] nextScheduleDataSet : scheduleRequests) {
+            int agentId = (Integer) nextScheduleDataSet[0];
+            int resourceId = (Integer) nextScheduleDataSet[1];
+            ResourceMeasurementScheduleRequest resourceRequest = resourceRequests.get(resourceId);
+            if (resourceRequest == null) {
+                resourceRequest = new ResourceMeasurementScheduleRequest(resourceId);
+                resourceRequests.put(resourceId, resourceRequest);
+                dispatcher.add(agentId, resourceRequest);
+                syncMarks.add(agentId, resourceId, (Long) nextScheduleDataSet[8]);
             }
 
-            if (markResources) {
-                markResources(entityContext, nextAgentId);
-            }
+            MeasurementScheduleRequest requestData = new MeasurementScheduleRequest( //
+                (Integer) nextScheduleDataSet[2], // scheduleId
+                (String) nextScheduleDataSet[3], // definitionName,
+                (Long) nextScheduleDataSet[4], // interval,
+                (Boolean) nextScheduleDataSet[5], // enabled,
+                (DataType) nextScheduleDataSet[6], // dataType,
+                (NumericType) nextScheduleDataSet[7]); // rawNumericType
+            resourceRequest.addMeasurementScheduleRequest(requestData);
         }
+
+        sendScheduleUpdatesAfterCommit(dispatcher, syncMarks);
     }
 
     /**
-     * The mtime on the Resources will tell the Agent it needs to pull down the
-     * latest schedules next time it performs an Agent-Server sync.
+     * Sends the schedule updates queued on the dispatcher to their agents, several agents at a time, once the current
+     * transaction has committed. The updates are sent from a background thread, so neither the agent calls nor the
+     * retries of agents that are down hold the transaction. Nothing is sent if the transaction rolls back.
+     * <p/>
+     * The updated resources are marked for a schedule sync in the current transaction, so their agents pull the
+     * schedules on their next sync should the updates never reach them, be it because the agents are down or because
+     * the server goes down first. The marks of the agents that got the updates are cleared again in a transaction of
+     * their own.
      *
-     * @param context the entity context
-     * @param agentId the agent id
+     * @param dispatcher the schedule updates
+     * @param syncMarks  the resources to mark, along with their current mtimes
      */
-    private void markResources(EntityContext context, int agentId) {
-        ResourceCriteria criteria = new ResourceCriteria();
-        criteria.clearPaging(); //important to avoid setting the ordering in the generated query
-        if (context.type == EntityContext.Type.Resource) {
-            criteria.addFilterId(context.resourceId);
-        } else if (context.type == EntityContext.Type.ResourceGroup) {
-            criteria.addFilterImplicitGroupIds(context.groupId);
-        } else if (context.type == EntityContext.Type.AutoGroup) {
-            criteria.addFilterParentResourceId(context.parentResourceId);
-            criteria.addFilterResourceTypeId(context.resourceTypeId);
+    private void sendScheduleUpdatesAfterCommit(final ScheduleUpdateDispatcher dispatcher,
+        final ScheduleSyncMarks syncMarks) {
+        if (dispatcher.getAgentIds().isEmpty()) {
+            return;
         }
-        criteria.addFilterAgentId(agentId);
 
-        try {
-            CriteriaQueryGenerator generator = new CriteriaQueryGenerator(criteria);
+        for (List<Integer> resourceIdBatch : new BatchIterator<Integer>(syncMarks.getResourceIds())) {
+            Query markQuery = entityManager.createQuery("" //
+                + "UPDATE Resource res " //
+                + "   SET res.mtime = :mark " //
+                + " WHERE res.id IN ( :resourceIds ) ");
+            markQuery.setParameter("mark", syncMarks.mark);
+            markQuery.setParameter("resourceIds", resourceIdBatch);
+            markQuery.executeUpdate();
+        }
 
-            generator.alterProjection("resource.id");
-            String resourceSubQuery = generator.getParameterReplacedQuery(false);
+        final MeasurementScheduleManagerLocal scheduleManager = measurementScheduleManager;
+        final ScheduleUpdateDispatcher.SuccessHandler successHandler = new ScheduleUpdateDispatcher.SuccessHandler() {
+            public void updated(Set<Integer> agentIds) {
+                scheduleManager.clearAgentSynchronizationNeeded(syncMarks.mark, syncMarks.getPreviousMtimes(agentIds));
+            }
+        };
 
-            String markResourceQueryString = "" //
-                + "UPDATE Resource res " //
-                + "   SET res.mtime = :now " //
-                + " WHERE res.id IN ( " + resourceSubQuery + " ) ";
-            if (log.isDebugEnabled()) {
-                log.debug("markResourceQueryString: " + markResourceQueryString);
+        final ScheduleUpdateDispatcher.Sender sender = createScheduleUpdateSender(dispatcher.getAgentIds());
+        if (transactionSynchronizationRegistry.getTransactionKey() == null) {
+            dispatcher.dispatchInBackground(sender, successHandler);
+            return;
+        }
+
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            public void beforeCompletion() {
             }
 
-            Query markResourceQuery = entityManager.createQuery(markResourceQueryString);
-            markResourceQuery.setParameter("now", System.currentTimeMillis());
-            int affectedRows = markResourceQuery.executeUpdate();
-            if (log.isDebugEnabled()) {
-                log.debug("Marked " + affectedRows + " for future measurement schedule update");
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    dispatcher.dispatchInBackground(sender, successHandler);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param agentIds the agents to send schedule updates to
+     *
+     * @return the sender of the schedule updates to the given agents
+     */
+    private ScheduleUpdateDispatcher.Sender createScheduleUpdateSender(Set<Integer> agentIds) {
+
+        // look up the agents in batches rather than one by one
+        final Map<Integer, AgentClient> agentClients = new HashMap<Integer, AgentClient>();
+        for (List<Integer> agentIdBatch : new BatchIterator<Integer>(new ArrayList<Integer>(agentIds))) {
+            AgentCriteria criteria = new AgentCriteria();
+            criteria.addFilterIds(agentIdBatch.toArray(new Integer[agentIdBatch.size()]));
+            criteria.clearPaging(); //disable paging as the code assumes all the results will be returned.
+            for (Agent agent : agentManager.findAgentsByCriteria(subjectManager.getOverlord(), criteria)) {
+                agentClients.put(agent.getId(), agentManager.getAgentClient(agent));
             }
-        } catch (Throwable t) {
-            log.error("Could not notify agents of updates", t);
+        }
+
+        return new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) {
+                AgentClient agentClient = agentClients.get(agentId);
+                if (agentClient == null) {
+                    throw new IllegalStateException("No client for agent[id=" + agentId + "]");
+                }
+                if (!agentClient.pingService(2000)) { // see if agent is up for sending
+                    if (log.isDebugEnabled()) {
+                        log.debug("Won't send measurement schedule updates to offline agent[id=" + agentId + "]");
+                    }
+                    return false;
+                }
+                agentClient.getMeasurementAgentService().updateCollection(requests);
+                return true;
+            }
+        };
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void clearAgentSynchronizationNeeded(long mark, Map<Long, List<Integer>> previousMtimes) {
+        int cleared = 0;
+        for (Map.Entry<Long, List<Integer>> entry : previousMtimes.entrySet()) {
+            for (List<Integer> resourceIdBatch : new BatchIterator<Integer>(entry.getValue())) {
+                // leave the resources alone that were changed again since they were marked
+                Query clearQuery = entityManager.createQuery("" //
+                    + "UPDATE Resource res " //
+                    + "   SET res.mtime = :mtime " //
+                    + " WHERE res.id IN ( :resourceIds ) " //
+                    + "   AND res.mtime = :mark ");
+                clearQuery.setParameter("mtime", entry.getKey());
+                clearQuery.setParameter("resourceIds", resourceIdBatch);
+                clearQuery.setParameter("mark", mark);
+                cleared += clearQuery.executeUpdate();
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared the measurement schedule sync mark of " + cleared + " resources");
         }
     }
 
@@ -894,26 +961,6 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
         return measurementScheduleSubQuery;
     }
 
-    private void setAgentSynchronizationNeededByDefinitionsForAgent(int agentId, List<Integer> measurementDefinitionIds) {
-        String updateSQL = "" //
-            + "UPDATE Resource res " //
-            + "   SET res.mtime = :now " //
-            + " WHERE res.agent.id = :agentId AND " //
-            + "       res.resourceType.id IN ( SELECT md.resourceType.id " //
-            + "                                  FROM MeasurementDefinition md " //
-            + "                                 WHERE md.id IN ( :definitionIds ) )";
-        Query updateQuery = entityManager.createQuery(updateSQL);
-        updateQuery.setParameter("now", System.currentTimeMillis());
-        updateQuery.setParameter("agentId", agentId);
-        updateQuery.setParameter("definitionIds", measurementDefinitionIds);
-        int updateCount = updateQuery.executeUpdate();
-
-        if (log.isDebugEnabled()) {
-            log.debug("" + updateCount
-                + " resources mtime fields were updated as a result of this metric template update");
-        }
-    }
-
     /**
      * @deprecated used for portal war
      */
@@ -966,24 +1013,6 @@ public class MeasurementScheduleManagerBean implements MeasurementScheduleManage
         return results;
     }
 
-    private boolean sendUpdatedSchedulesToAgent(Agent agent,
-        Set<ResourceMeasurementScheduleRequest> resourceMeasurementScheduleRequest) {
-        try {
-            AgentClient agentClient = LookupUtil.getAgentManager().getAgentClient(agent);
-            if (agentClient == null || !agentClient.pingService(2000)) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Won't send MeasurementSchedules to offline Agent[id=" + agent.getId() + "]");
-                }
-                return false;
-            }
-            agentClient.getMeasurementAgentService().updateCollection(resourceMeasurementScheduleRequest);
-            return true; // successfully sync'ed schedules down to the agent
-        } catch (Throwable t) {
-            log.error("Error updating MeasurementSchedules for Agent[id=" + agent.getId() + "]: ", t);
-        }
-        return false; // catch all and presume the live sync failed
-    }
-
     /**
      * Return a list of MeasurementSchedules for the given definition ids and resource id.
      *
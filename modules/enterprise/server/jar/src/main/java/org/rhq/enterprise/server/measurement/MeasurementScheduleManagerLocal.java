@@ -19,6 +19,7 @@
 package org.rhq.enterprise.server.measurement;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ejb.Local;
@@ -302,4 +303,14 @@ public interface MeasurementScheduleManagerLocal extends MeasurementScheduleMana
      */
     void notifyAgentsOfScheduleUpdates(EntityContext entityContext, String scheduleSubQuery);
 
-}
\ No newline at end of file
+    /**
+     * This is for internal use only. Clears the schedule sync mark of resources whose agents were sent their schedule
+     * updates, restoring the mtimes they had before they were marked. Resources changed again since they were marked
+     * are left alone.
+     *
+     * @param mark           the mtime the resources were marked with
+     * @param previousMtimes the ids of the resources to clear, keyed by the mtime to restore
+     */
+    void clearAgentSynchronizationNeeded(long mark, Map<Long, List<Integer>> previousMtimes);
+
+}
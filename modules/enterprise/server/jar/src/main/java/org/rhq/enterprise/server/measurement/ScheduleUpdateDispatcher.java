@@ -0,0 +1,353 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
+import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitorMBean;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
+
+/**
+ * Sends measurement schedule updates to many agents concurrently. No more than <code>maxConcurrent</code> agents are
+ * contacted at the same time. An agent that cannot be reached is queued again and retried after
+ * <code>retryDelay</code>, up to <code>maxAttempts</code> attempts in total. The progress of the updates is published
+ * on the {@link MeasurementMonitorMBean}.
+ * <p/>
+ * Updates can be {@link #dispatchInBackground(Sender, SuccessHandler) dispatched in the background}, so that neither
+ * the agent calls nor the retries keep the transaction that changed the schedules open. Background dispatches run one
+ * after another, in the order they were handed in, so an agent never gets an older update after a newer one. The
+ * background dispatches are not persistent: callers mark the resources for a sync before handing the updates over, and
+ * clear the marks of the agents that got them. The background thread is stopped by {@link #shutdown()} when the server
+ * shuts down.
+ */
+public class ScheduleUpdateDispatcher {
+
+    private static final Log LOG = LogFactory.getLog(ScheduleUpdateDispatcher.class);
+
+    /**
+     * The maximum number of agents that are sent schedule updates concurrently.
+     */
+    private static final int MAX_CONCURRENT_DISPATCH;
+
+    /**
+     * The maximum number of attempts to reach an agent that is down.
+     */
+    private static final int MAX_ATTEMPTS;
+
+    /**
+     * The time in milliseconds to wait before trying to reach an agent that is down again.
+     */
+    private static final long RETRY_DELAY;
+
+    static {
+        int maxConcurrent = 10;
+        try {
+            maxConcurrent = Integer.parseInt(System.getProperty(
+                "rhq.server.measurement.schedule-update.max-concurrent-dispatch", "10"));
+        } catch (Throwable t) {
+            LOG.warn("Invalid value for rhq.server.measurement.schedule-update.max-concurrent-dispatch, using default of "
+                + maxConcurrent);
+        }
+        MAX_CONCURRENT_DISPATCH = maxConcurrent;
+
+        int maxAttempts = 3;
+        try {
+            maxAttempts = Integer.parseInt(System.getProperty("rhq.server.measurement.schedule-update.max-attempts",
+                "3"));
+        } catch (Throwable t) {
+            LOG.warn("Invalid value for rhq.server.measurement.schedule-update.max-attempts, using default of "
+                + maxAttempts);
+        }
+        MAX_ATTEMPTS = maxAttempts;
+
+        long retryDelay = 10000L;
+        try {
+            retryDelay = Long.parseLong(System.getProperty("rhq.server.measurement.schedule-update.retry-delay",
+                "10000"));
+        } catch (Throwable t) {
+            LOG.warn("Invalid value for rhq.server.measurement.schedule-update.retry-delay, using default of "
+                + retryDelay);
+        }
+        RETRY_DELAY = retryDelay;
+    }
+
+    /**
+     * Performs the actual update of a single agent.
+     */
+    interface Sender {
+        /**
+         * @return true if the agent was updated, false if it could not be reached and should be retried later
+         * @throws Exception if the update failed, the agent is not retried
+         */
+        boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) throws Exception;
+    }
+
+    /**
+     * Runs the background dispatches, one at a time. Created on first use, <code>null</code> until then.
+     */
+    private static ExecutorService backgroundDispatcher;
+
+    /**
+     * Set once the server shuts down, no background dispatches are started after that.
+     */
+    private static boolean shutdown;
+
+    /**
+     * Takes care of the agents that were updated by a background dispatch.
+     */
+    interface SuccessHandler {
+        /**
+         * @param agentIds the ids of the agents that were updated, never empty
+         */
+        void updated(Set<Integer> agentIds);
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final Map<Integer, Set<ResourceMeasurementScheduleRequest>> agentRequests = new LinkedHashMap<Integer, Set<ResourceMeasurementScheduleRequest>>();
+
+    /**
+     * Creates a dispatcher configured by the <code>rhq.server.measurement.schedule-update.*</code> system properties.
+     *
+     * @param name used to name the dispatch threads
+     */
+    ScheduleUpdateDispatcher(String name) {
+        this(name, MAX_CONCURRENT_DISPATCH, MAX_ATTEMPTS, RETRY_DELAY);
+    }
+
+    /**
+     * @param name          used to name the dispatch threads
+     * @param maxConcurrent the maximum number of agents updated at the same time
+     * @param maxAttempts   the maximum number of attempts to reach an agent
+     * @param retryDelay    the time in milliseconds to wait before trying to reach an agent again
+     */
+    ScheduleUpdateDispatcher(String name, int maxConcurrent, int maxAttempts, long retryDelay) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelay = Math.max(0L, retryDelay);
+    }
+
+    /**
+     * Queues a schedule update for an agent.
+     */
+    void add(int agentId, ResourceMeasurementScheduleRequest request) {
+        Set<ResourceMeasurementScheduleRequest> requests = agentRequests.get(agentId);
+        if (requests == null) {
+            requests = new HashSet<ResourceMeasurementScheduleRequest>();
+            agentRequests.put(agentId, requests);
+        }
+        requests.add(request);
+    }
+
+    /**
+     * @return the ids of the agents updates have been queued for
+     */
+    Set<Integer> getAgentIds() {
+        return agentRequests.keySet();
+    }
+
+    /**
+     * Sends the queued updates and waits until every agent has been updated or given up on.
+     *
+     * @param  sender performs the updates
+     *
+     * @return the ids of the agents that could not be updated, these need to pull their schedules on their next sync
+     */
+    Set<Integer> dispatch(final Sender sender) {
+        final Set<Integer> updated = new HashSet<Integer>();
+        if (agentRequests.isEmpty()) {
+            return new HashSet<Integer>();
+        }
+
+        final MeasurementMonitorMBean monitor = MeasurementMonitor.getMBean();
+        final long start = System.currentTimeMillis();
+        final DelayQueue<Attempt> queue = new DelayQueue<Attempt>();
+        final AtomicInteger outstanding = new AtomicInteger(agentRequests.size());
+        final AtomicInteger retries = new AtomicInteger();
+        for (Integer agentId : agentRequests.keySet()) {
+            queue.add(new Attempt(agentId, 1, 0L));
+        }
+        monitor.incrementScheduleUpdateAgentsPending(agentRequests.size());
+
+        Runnable worker = new Runnable() {
+            public void run() {
+                while (outstanding.get() > 0) {
+                    Attempt attempt;
+                    try {
+                        attempt = queue.poll(100L, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (attempt == null) {
+                        continue; // a retry is not due yet, or other workers are finishing the last agents
+                    }
+
+                    boolean sent = false;
+                    try {
+                        sent = sender.send(attempt.agentId, agentRequests.get(attempt.agentId));
+                    } catch (Exception e) {
+                        LOG.error("Could not send measurement schedule updates to agent[id=" + attempt.agentId
+                            + "]", e);
+                        attempt.number = maxAttempts; // don't retry errors other than the agent being down
+                    }
+
+                    if (sent) {
+                        synchronized (updated) {
+                            updated.add(attempt.agentId);
+                        }
+                        monitor.incrementScheduleUpdateAgentsUpdated(1L);
+                        monitor.incrementScheduleUpdateAgentsPending(-1L);
+                        outstanding.decrementAndGet();
+                    } else if (attempt.number < maxAttempts) {
+                        retries.incrementAndGet();
+                        monitor.incrementScheduleUpdateRetries(1L);
+                        queue.add(new Attempt(attempt.agentId, attempt.number + 1, retryDelay));
+                    } else {
+                        monitor.incrementScheduleUpdateAgentsFailed(1L);
+                        monitor.incrementScheduleUpdateAgentsPending(-1L);
+                        outstanding.decrementAndGet();
+                    }
+                }
+            }
+        };
+
+        int threads = Math.min(maxConcurrent, agentRequests.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new LoggingThreadFactory(name, true));
+        try {
+            for (int i = 0; i < threads; ++i) {
+                executor.execute(worker);
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // agent calls time out on their own, just keep waiting for them
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            // whatever is still outstanding is given up on
+            monitor.incrementScheduleUpdateAgentsPending(-outstanding.getAndSet(0));
+        }
+
+        Set<Integer> failed = new HashSet<Integer>(agentRequests.keySet());
+        synchronized (updated) {
+            failed.removeAll(updated);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        monitor.incrementScheduleUpdateTime(elapsed);
+        LOG.info("Sent measurement schedule updates to [" + (agentRequests.size() - failed.size()) + "] of ["
+            + agentRequests.size() + "] agents in [" + elapsed + "]ms with [" + retries.get() + "] retries; ["
+            + failed.size() + "] agents will get the updates on their next sync");
+
+        return failed;
+    }
+
+    /**
+     * Sends the queued updates from a background thread and returns right away. The agents that were updated are then
+     * handed to the success handler. Once the server is shutting down, nothing is sent.
+     *
+     * @param sender         performs the updates
+     * @param successHandler takes care of the agents that were updated
+     */
+    void dispatchInBackground(final Sender sender, final SuccessHandler successHandler) {
+        Runnable backgroundDispatch = new Runnable() {
+            public void run() {
+                Set<Integer> updated = new HashSet<Integer>(agentRequests.keySet());
+                updated.removeAll(dispatch(sender));
+                if (!updated.isEmpty()) {
+                    try {
+                        successHandler.updated(updated);
+                    } catch (Exception e) {
+                        LOG.error("Could not clear the measurement schedule sync marks of the resources of agents "
+                            + updated, e);
+                    }
+                }
+            }
+        };
+
+        try {
+            getBackgroundDispatcher().execute(backgroundDispatch);
+        } catch (RejectedExecutionException e) {
+            LOG.info("Not sending measurement schedule updates to agents " + agentRequests.keySet()
+                + ", the server is shutting down; the agents will get the updates on their next sync");
+        }
+    }
+
+    private static synchronized ExecutorService getBackgroundDispatcher() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Shut down");
+        }
+        if (backgroundDispatcher == null) {
+            backgroundDispatcher = Executors.newSingleThreadExecutor(new LoggingThreadFactory(
+                "ScheduleUpdateDispatcher", true));
+        }
+        return backgroundDispatcher;
+    }
+
+    /**
+     * Stops the background dispatches. The dispatch under way is interrupted and the queued ones are dropped; their
+     * agents get the updates on their next sync.
+     */
+    public static synchronized void shutdown() {
+        shutdown = true;
+        if (backgroundDispatcher != null) {
+            backgroundDispatcher.shutdownNow();
+            backgroundDispatcher = null;
+        }
+    }
+
+    private static class Attempt implements Delayed {
+        private final int agentId;
+        private int number;
+        private final long dueTime;
+
+        Attempt(int agentId, int number, long delay) {
+            this.agentId = agentId;
+            this.number = number;
+            this.dueTime = System.currentTimeMillis() + delay;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+            return (diff < 0L) ? -1 : ((diff > 0L) ? 1 : 0);
+        }
+    }
+}
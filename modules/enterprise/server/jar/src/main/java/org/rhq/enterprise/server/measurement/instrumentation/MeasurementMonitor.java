@@ -90,6 +90,24 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
 
     private AtomicLong purgedMeasurementTraits = new AtomicLong();
 
+    // the scheduleUpdateXYZ attributes track the propagation of measurement schedule changes to the agents
+
+    private AtomicLong scheduleUpdateAgentsPending = new AtomicLong();
+
+    private AtomicLong scheduleUpdateAgentsUpdated = new AtomicLong();
+
+    private AtomicLong scheduleUpdateAgentsFailed = new AtomicLong();
+
+    private AtomicLong scheduleUpdateRetries = new AtomicLong();
+
+    private AtomicLong scheduleUpdateTime = new AtomicLong();
+
+    // the groupOperationXYZ attributes track how long it takes to send group operation member invocations to the agents
+
+    private AtomicLong groupOperationDispatches = new AtomicLong();
+
+    private AtomicLong groupOperationDispatchTime = new AtomicLong();
+
     private static MBeanServer mbeanServer;
     private static ObjectName objectName;
 
@@ -257,6 +275,62 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
         this.purgedMeasurementTraits.set(delta);
     }
 
+    public long getScheduleUpdateAgentsPending() {
+        return this.scheduleUpdateAgentsPending.get();
+    }
+
+    public void incrementScheduleUpdateAgentsPending(long delta) {
+        this.scheduleUpdateAgentsPending.addAndGet(delta);
+    }
+
+    public long getScheduleUpdateAgentsUpdated() {
+        return this.scheduleUpdateAgentsUpdated.get();
+    }
+
+    public void incrementScheduleUpdateAgentsUpdated(long delta) {
+        this.scheduleUpdateAgentsUpdated.addAndGet(delta);
+    }
+
+    public long getScheduleUpdateAgentsFailed() {
+        return this.scheduleUpdateAgentsFailed.get();
+    }
+
+    public void incrementScheduleUpdateAgentsFailed(long delta) {
+        this.scheduleUpdateAgentsFailed.addAndGet(delta);
+    }
+
+    public long getScheduleUpdateRetries() {
+        return this.scheduleUpdateRetries.get();
+    }
+
+    public void incrementScheduleUpdateRetries(long delta) {
+        this.scheduleUpdateRetries.addAndGet(delta);
+    }
+
+    public long getScheduleUpdateTime() {
+        return this.scheduleUpdateTime.get();
+    }
+
+    public void incrementScheduleUpdateTime(long delta) {
+        this.scheduleUpdateTime.addAndGet(delta);
+    }
+
+    public long getGroupOperationDispatches() {
+        return this.groupOperationDispatches.get();
+    }
+
+    public void incrementGroupOperationDispatches(long delta) {
+        this.groupOperationDispatches.addAndGet(delta);
+    }
+
+    public long getGroupOperationDispatchTime() {
+        return this.groupOperationDispatchTime.get();
+    }
+
+    public void incrementGroupOperationDispatchTime(long delta) {
+        this.groupOperationDispatchTime.addAndGet(delta);
+    }
+
     @Override
     public int getAggregationBatchSize() {
         return storageClientManager.getAggregationBatchSize();
@@ -95,6 +95,34 @@ public interface MeasurementMonitorMBean {
 
     void setPurgedMeasurementTraits(long delta);
 
+    long getScheduleUpdateAgentsPending();
+
+    void incrementScheduleUpdateAgentsPending(long delta);
+
+    long getScheduleUpdateAgentsUpdated();
+
+    void incrementScheduleUpdateAgentsUpdated(long delta);
+
+    long getScheduleUpdateAgentsFailed();
+
+    void incrementScheduleUpdateAgentsFailed(long delta);
+
+    long getScheduleUpdateRetries();
+
+    void incrementScheduleUpdateRetries(long delta);
+
+    long getScheduleUpdateTime();
+
+    void incrementScheduleUpdateTime(long delta);
+
+    long getGroupOperationDispatches();
+
+    void incrementGroupOperationDispatches(long delta);
+
+    long getGroupOperationDispatchTime();
+
+    void incrementGroupOperationDispatchTime(long delta);
+
     int getAggregationBatchSize();
 
     void setAggregationBatchSize(int size);
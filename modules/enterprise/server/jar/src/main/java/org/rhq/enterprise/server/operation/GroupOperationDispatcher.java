@@ -0,0 +1,300 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the member invocations of a group operation to their agents concurrently. Invocations are queued per agent;
+ * no more than <code>maxConcurrentPerAgent</code> invocations are in flight for a single agent and no more than
+ * <code>maxConcurrent</code> overall. Invocations for the same agent are started in the order they were added.
+ *
+ * <p>The dispatcher does not run the invocations itself. The {@link Invoker} starts each one asynchronously, e.g.
+ * through an asynchronous EJB method, and the calling thread only tracks their completion.</p>
+ *
+ * @param <T> the type of the items being dispatched
+ */
+class GroupOperationDispatcher<T> {
+
+    /**
+     * How long to wait in milliseconds for the oldest invocation in flight before checking the others again.
+     */
+    private static final long POLL_INTERVAL = 10L;
+
+    /**
+     * Starts the actual invocation of a single item.
+     */
+    interface Invoker<T> {
+        /**
+         * @return completes when the item has been invoked; a failed invocation completes with an execution exception
+         *         whose cause is the failure
+         */
+        Future<?> invoke(T item) throws Exception;
+    }
+
+    private final int maxConcurrent;
+    private final int maxConcurrentPerAgent;
+    private final Map<Integer, Queue<T>> agentQueues = new LinkedHashMap<Integer, Queue<T>>();
+    private final List<T> items = new ArrayList<T>();
+
+    /**
+     * @param maxConcurrent         the maximum number of invocations in flight overall
+     * @param maxConcurrentPerAgent the maximum number of invocations in flight for a single agent
+     */
+    GroupOperationDispatcher(int maxConcurrent, int maxConcurrentPerAgent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxConcurrentPerAgent = Math.max(1, maxConcurrentPerAgent);
+    }
+
+    /**
+     * Queues an item for dispatch.
+     *
+     * @param agentId the agent the item will be sent to, <code>null</code> if unknown
+     * @param item    the item to dispatch
+     */
+    void add(Integer agentId, T item) {
+        Queue<T> queue = agentQueues.get(agentId);
+        if (queue == null) {
+            queue = new LinkedList<T>();
+            agentQueues.put(agentId, queue);
+        }
+        queue.add(item);
+        items.add(item);
+    }
+
+    /**
+     * @return the number of distinct agents items have been queued for
+     */
+    int getAgentCount() {
+        return agentQueues.size();
+    }
+
+    /**
+     * Invokes all queued items and waits until every invocation has completed. If <code>haltOnFailure</code> is
+     * <code>true</code>, or an invocation fails with {@link CancelJobException}, no new invocations are started after
+     * the first failure; invocations already in flight are allowed to finish.
+     *
+     * @param  invoker       starts the invocations
+     * @param  haltOnFailure whether to stop dispatching after the first failure
+     *
+     * @return the outcome of the dispatch
+     *
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the invocations
+     */
+    DispatchResult<T> dispatch(Invoker<T> invoker, boolean haltOnFailure) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        DispatchResult<T> result = new DispatchResult<T>();
+        Map<Integer, Integer> agentInFlight = new HashMap<Integer, Integer>();
+        List<Invocation> inFlight = new LinkedList<Invocation>();
+
+        try {
+            while (true) {
+                // start as many invocations as the limits allow, taking one per agent and pass so that all agents
+                // get served from the start
+                boolean started = true;
+                while (started && result.haltCause == null && inFlight.size() < maxConcurrent) {
+                    started = false;
+                    for (Map.Entry<Integer, Queue<T>> entry : agentQueues.entrySet()) {
+                        Integer agentId = entry.getKey();
+                        if (result.haltCause != null || inFlight.size() >= maxConcurrent) {
+                            break;
+                        }
+                        if (entry.getValue().isEmpty() || getCount(agentInFlight, agentId) >= maxConcurrentPerAgent) {
+                            continue;
+                        }
+
+                        T item = entry.getValue().poll();
+                        long invocationStart = System.currentTimeMillis();
+                        started = true;
+                        try {
+                            inFlight.add(new Invocation(agentId, item, invoker.invoke(item), invocationStart));
+                            agentInFlight.put(agentId, getCount(agentInFlight, agentId) + 1);
+                        } catch (Exception e) {
+                            result.invoked(item, System.currentTimeMillis() - invocationStart, e, haltOnFailure);
+                        }
+                    }
+                }
+
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                // wait a moment for the oldest invocation, then collect every invocation that has completed
+                try {
+                    inFlight.get(0).future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // nothing completed yet
+                } catch (ExecutionException e) {
+                    // collected below
+                } catch (CancellationException e) {
+                    // collected below
+                }
+
+                for (Iterator<Invocation> i = inFlight.iterator(); i.hasNext();) {
+                    Invocation invocation = i.next();
+                    if (invocation.future.isDone()) {
+                        i.remove();
+                        agentInFlight.put(invocation.agentId, getCount(agentInFlight, invocation.agentId) - 1);
+                        result.invoked(invocation.item, System.currentTimeMillis() - invocation.start,
+                            getFailure(invocation.future), haltOnFailure);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // do not start the invocations that are still waiting to be run
+            for (Invocation invocation : inFlight) {
+                invocation.future.cancel(false);
+            }
+            throw e;
+        }
+
+        for (T item : items) {
+            if (!result.isInvoked(item)) {
+                result.skipped.add(item);
+            }
+        }
+        result.elapsedTime = System.currentTimeMillis() - start;
+
+        return result;
+    }
+
+    private static int getCount(Map<Integer, Integer> counts, Integer agentId) {
+        Integer count = counts.get(agentId);
+        return (count != null) ? count : 0;
+    }
+
+    private static Exception getFailure(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return (cause instanceof Exception) ? (Exception) cause : e;
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    private class Invocation {
+        private final Integer agentId;
+        private final T item;
+        private final Future<?> future;
+        private final long start;
+
+        Invocation(Integer agentId, T item, Future<?> future, long start) {
+            this.agentId = agentId;
+            this.item = item;
+            this.future = future;
+            this.start = start;
+        }
+    }
+
+    /**
+     * The outcome of {@link GroupOperationDispatcher#dispatch(Invoker, boolean)}.
+     */
+    static class DispatchResult<T> {
+        private final Map<T, Long> latencies = new LinkedHashMap<T, Long>();
+        private final Map<T, Exception> failures = new LinkedHashMap<T, Exception>();
+        private final List<T> skipped = new ArrayList<T>();
+        private Exception haltCause;
+        private long elapsedTime;
+
+        private void invoked(T item, long latency, Exception failure, boolean haltOnFailure) {
+            latencies.put(item, latency);
+            if (failure != null) {
+                failures.put(item, failure);
+                if (haltCause == null && (haltOnFailure || failure instanceof CancelJobException)) {
+                    haltCause = failure;
+                }
+            }
+        }
+
+        private boolean isInvoked(T item) {
+            return latencies.containsKey(item);
+        }
+
+        /**
+         * @return the time in milliseconds each invoked item took to be dispatched, in completion order
+         */
+        Map<T, Long> getLatencies() {
+            return Collections.unmodifiableMap(latencies);
+        }
+
+        /**
+         * @return the failed items and their errors, in the order the failures occurred
+         */
+        Map<T, Exception> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * @return the failure that halted dispatching, <code>null</code> if all items were invoked
+         */
+        Exception getHaltCause() {
+            return haltCause;
+        }
+
+        /**
+         * @return the items that were never invoked because dispatching was halted
+         */
+        List<T> getSkipped() {
+            return Collections.unmodifiableList(skipped);
+        }
+
+        /**
+         * @return the time in milliseconds the whole dispatch took
+         */
+        long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        long getTotalLatency() {
+            long total = 0L;
+            for (Long latency : latencies.values()) {
+                total += latency;
+            }
+            return total;
+        }
+
+        long getMaxLatency() {
+            long max = 0L;
+            for (Long latency : latencies.values()) {
+                max = Math.max(max, latency);
+            }
+            return max;
+        }
+
+        long getAverageLatency() {
+            return latencies.isEmpty() ? 0L : getTotalLatency() / latencies.size();
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.rhq.enterprise.server.operation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +43,8 @@ import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
+import org.rhq.enterprise.server.operation.GroupOperationDispatcher.DispatchResult;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 
@@ -57,6 +61,39 @@ public class GroupOperationJob extends OperationJob {
     public static final String DATAMAP_BOOL_HALT_ON_FAILURE = "haltOnFailure";
     public static final int BREAK_VALUE = 1000 * 60 * 60 * 24;
 
+    /**
+     * The maximum number of member invocations of a parallel group operation that are sent concurrently.
+     */
+    private static final int MAX_CONCURRENT_DISPATCH;
+
+    /**
+     * The maximum number of member invocations of a parallel group operation that are sent concurrently to the same
+     * agent.
+     */
+    private static final int MAX_CONCURRENT_DISPATCH_PER_AGENT;
+
+    static {
+        int maxConcurrent = 20;
+        try {
+            maxConcurrent = Integer.parseInt(System.getProperty("rhq.server.operation.group.max-concurrent-dispatch",
+                "20"));
+        } catch (Throwable t) {
+            log.warn("Invalid value for rhq.server.operation.group.max-concurrent-dispatch, using default of "
+                + maxConcurrent);
+        }
+        MAX_CONCURRENT_DISPATCH = maxConcurrent;
+
+        int maxConcurrentPerAgent = 4;
+        try {
+            maxConcurrentPerAgent = Integer.parseInt(System.getProperty(
+                "rhq.server.operation.group.max-concurrent-dispatch-per-agent", "4"));
+        } catch (Throwable t) {
+            log.warn("Invalid value for rhq.server.operation.group.max-concurrent-dispatch-per-agent, using default of "
+                + maxConcurrentPerAgent);
+        }
+        MAX_CONCURRENT_DISPATCH_PER_AGENT = maxConcurrentPerAgent;
+    }
+
     class ResourceOperationDetailsComposite {
         Resource resource;
         ResourceOperationHistory history;
@@ -153,10 +190,18 @@ public class GroupOperationJob extends OperationJob {
             // now tell the agents to invoke the operation for all resources
             if (schedule.getExecutionOrder() != null) {
                 boolean hadFailure = false;
+                CancelJobException cancelled = null;
 
                 // synchronously execute, waiting for each operation to finish before going to the next
                 for (ResourceOperationDetailsComposite composite : resourceComposites) {
                     try {
+                        if (cancelled != null) {
+                            composite.history.setErrorMessage(getJobCancelledMessage(cancelled));
+                            composite.history.setStatus(OperationRequestStatus.CANCELED);
+                            composite.history = (ResourceOperationHistory) operationManager.updateOperationHistory(
+                                getUserWithSession(user, true), composite.history);
+                            continue;
+                        }
                         if (hadFailure) {
                             // there was a failure during execution of this group operation;
                             // thus, mark all remaining operation histories as cancelled
@@ -171,7 +216,15 @@ public class GroupOperationJob extends OperationJob {
                             continue;
                         }
 
+                        long dispatchStart = System.currentTimeMillis();
                         invokeOperationOnResource(composite, operationManager);
+                        long dispatchTime = System.currentTimeMillis() - dispatchStart;
+                        MeasurementMonitor.getMBean().incrementGroupOperationDispatches(1);
+                        MeasurementMonitor.getMBean().incrementGroupOperationDispatchTime(dispatchTime);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Dispatched operation [" + schedule.getOperationName() + "] to resource ["
+                                + composite.resource.getId() + "] in [" + dispatchTime + "]ms");
+                        }
 
                         int resourceHistoryId = composite.history.getId();
                         OperationHistory updatedOperationHistory = null;
@@ -217,35 +270,24 @@ public class GroupOperationJob extends OperationJob {
                         groupHistory = (GroupOperationHistory) operationManager.updateOperationHistory(
                             getUserWithSession(user, true), groupHistory);
 
-                        if (schedule.isHaltOnFailure()) {
+                        // a cancelled job stops the group operation, just like it does for parallel execution
+                        if (e instanceof CancelJobException) {
+                            cancelled = (CancelJobException) e;
+                        } else if (schedule.isHaltOnFailure()) {
                             hadFailure = true;
                         }
                     }
                 }
-            } else {
-                // send the invocation requests without waiting for each to return
-                for (ResourceOperationDetailsComposite composite : resourceComposites) {
-                    try {
-                        invokeOperationOnResource(composite, operationManager);
-                    } catch (Exception e) {
-                        if (e instanceof CancelJobException) {
-                            throw e;
-                        }
-
-                        // failed to even send to the agent, immediately mark the job as failed
-                        groupHistory.setErrorMessage(ThrowableUtil.getStackAsString(e));
-                        groupHistory = (GroupOperationHistory) operationManager.updateOperationHistory(
-                            getUserWithSession(user, true), groupHistory);
 
-                        // Note: in actuality - I don't think users have a way in the user interface to turn on halt-on-failure for parallel execution.
-                        // So this isHaltOnFailure will probably always be false. But in case we want to support this, leave this here.
-                        // What will happen is we will stop sending requests to the agents to invoke more resource operations. Any previous
-                        // resource operations invoked, however, will still be running and allowed to finish on their respective agents.
-                        if (schedule.isHaltOnFailure()) {
-                            throw e;
-                        }
-                    }
+                if (cancelled != null) {
+                    throw cancelled;
                 }
+            } else {
+                // send the invocation requests without waiting for each to return; the requests are fanned out
+                // concurrently, bounded per agent and globally
+                getUserWithSession(user, true); // refresh our session so the member invocations can share it
+                dispatchToAgents(group, resourceComposites, groupHistory, user, schedule.isHaltOnFailure(),
+                    operationManager);
             }
         } catch (Exception e) {
             if (e instanceof CancelJobException) {
@@ -292,6 +334,92 @@ public class GroupOperationJob extends OperationJob {
         return resourceSchedule;
     }
 
+    /**
+     * Sends the invocation requests of a parallel group operation to the agents, grouped by agent and fanned out
+     * concurrently. This returns once all requests have been sent; completion is tracked as the agents report back.
+     */
+    private void dispatchToAgents(ResourceGroup group, List<ResourceOperationDetailsComposite> resourceComposites,
+        GroupOperationHistory groupHistory, Subject user, boolean haltOnFailure,
+        final OperationManagerLocal operationManager) throws Exception {
+
+        List<Integer> resourceIds = new ArrayList<Integer>(resourceComposites.size());
+        for (ResourceOperationDetailsComposite composite : resourceComposites) {
+            resourceIds.add(composite.resource.getId());
+        }
+        Map<Integer, Integer> agentIds = LookupUtil.getAgentManager().getAgentIdsByResourceIds(resourceIds);
+
+        GroupOperationDispatcher<ResourceOperationDetailsComposite> dispatcher = new GroupOperationDispatcher<ResourceOperationDetailsComposite>(
+            MAX_CONCURRENT_DISPATCH, MAX_CONCURRENT_DISPATCH_PER_AGENT);
+        for (ResourceOperationDetailsComposite composite : resourceComposites) {
+            dispatcher.add(agentIds.get(composite.resource.getId()), composite);
+        }
+
+        DispatchResult<ResourceOperationDetailsComposite> result = dispatcher.dispatch(
+            new GroupOperationDispatcher.Invoker<ResourceOperationDetailsComposite>() {
+                public Future<?> invoke(ResourceOperationDetailsComposite composite) throws Exception {
+                    // the invocation runs on a container managed thread, see the asynchronous EJB method
+                    return operationManager.invokeResourceOperationAsync(composite.schedule, composite.history);
+                }
+            }, haltOnFailure);
+
+        if (log.isDebugEnabled()) {
+            for (Map.Entry<ResourceOperationDetailsComposite, Long> entry : result.getLatencies().entrySet()) {
+                log.debug("Dispatched operation [" + entry.getKey().schedule.getOperationName() + "] to resource ["
+                    + entry.getKey().resource.getId() + "] in [" + entry.getValue() + "]ms");
+            }
+        }
+        log.info("Dispatched [" + result.getLatencies().size() + "] of [" + resourceComposites.size()
+            + "] resource operations of group [" + group.getId() + "] to [" + dispatcher.getAgentCount()
+            + "] agents in [" + result.getElapsedTime() + "]ms (average dispatch latency ["
+            + result.getAverageLatency() + "]ms, max [" + result.getMaxLatency() + "]ms)");
+        MeasurementMonitor.getMBean().incrementGroupOperationDispatches(result.getLatencies().size());
+        MeasurementMonitor.getMBean().incrementGroupOperationDispatchTime(result.getTotalLatency());
+
+        // the remaining members were never sent to their agents, so mark them as cancelled
+        String skippedMessage;
+        if (result.getHaltCause() instanceof CancelJobException) {
+            skippedMessage = getJobCancelledMessage(result.getHaltCause());
+        } else {
+            skippedMessage = "This has been cancelled due to halt-on-error "
+                + "being set on the parent group operation schedule. "
+                + "Another resource operation of this group operation failed to be sent "
+                + "to its agent, thus causing this resource operation to be cancelled.";
+        }
+        for (ResourceOperationDetailsComposite composite : result.getSkipped()) {
+            composite.history.setErrorMessage(skippedMessage);
+            composite.history.setStatus(OperationRequestStatus.CANCELED);
+            composite.history = (ResourceOperationHistory) operationManager.updateOperationHistory(
+                getUserWithSession(user, true), composite.history);
+        }
+
+        if (result.getFailures().isEmpty()) {
+            return;
+        }
+
+        if (result.getHaltCause() instanceof CancelJobException) {
+            throw result.getHaltCause();
+        }
+
+        // failed to even send to the agent, immediately mark the job as failed
+        Exception failure = result.getFailures().values().iterator().next();
+
+        // failed to even send to the agent, immediately mark the job as failed
+        groupHistory.setErrorMessage(ThrowableUtil.getStackAsString(failure));
+        operationManager.updateOperationHistory(getUserWithSession(user, true), groupHistory);
+
+        // Note: in actuality - I don't think users have a way in the user interface to turn on halt-on-failure for
+        // parallel execution. But in case we want to support this, leave this here. Any resource operations already
+        // sent will still be running and allowed to finish on their respective agents.
+        if (haltOnFailure) {
+            throw failure;
+        }
+    }
+
+    private static String getJobCancelledMessage(Exception cause) {
+        return "This has been cancelled because the parent group operation job was cancelled while another "
+            + "resource operation of this group operation was being sent to its agent: " + cause.getMessage();
+    }
+
     private void invokeOperationOnResource(ResourceOperationDetailsComposite composite,
         OperationManagerLocal operationManager) throws Exception {
         new ResourceOperationJob().invokeOperationOnResource(composite.schedule, composite.history, operationManager);
@@ -28,7 +28,10 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -1015,6 +1018,15 @@ public class OperationManagerBean implements OperationManagerLocal, OperationMan
         return pageList;
     }
 
+    @Override
+    @Asynchronous
+    @TransactionAttribute(NEVER)
+    public Future<Void> invokeResourceOperationAsync(ResourceOperationSchedule schedule,
+        ResourceOperationHistory history) throws Exception {
+        new ResourceOperationJob().invokeOperationOnResource(schedule, history, operationManager);
+        return new AsyncResult<Void>(null);
+    }
+
     @Override
     public OperationHistory updateOperationHistory(Subject subject, OperationHistory history) {
         /*
@@ -20,7 +20,9 @@ package org.rhq.enterprise.server.operation;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Future;
 
+import javax.ejb.Asynchronous;
 import javax.ejb.Local;
 
 import org.jetbrains.annotations.Nullable;
@@ -283,6 +285,24 @@ public interface OperationManagerLocal extends OperationManagerRemote {
      */
     OperationHistory updateOperationHistory(Subject subject, OperationHistory history);
 
+    /**
+     * Asks the agent to invoke a group member's resource operation. This is how the group operation job sends its
+     * parallel member invocations, so that they run on container managed threads rather than the job's own.
+     *
+     * <p>This is for internal use only.</p>
+     *
+     * @param  schedule the non-quartz schedule of the member resource operation
+     * @param  history  the history of the member resource operation
+     *
+     * @return completes once the request has been sent to the agent; a failure to send it, including a
+     *         {@link CancelJobException}, is reported as the cause of the future's execution exception
+     *
+     * @throws Exception if the request could not be sent
+     */
+    @Asynchronous
+    Future<Void> invokeResourceOperationAsync(ResourceOperationSchedule schedule, ResourceOperationHistory history)
+        throws Exception;
+
     /**
      * This is, for all intents and purposes, and internal method.  It should be called just after updating any
      * OperationHistory element.  To date, this includes two places:
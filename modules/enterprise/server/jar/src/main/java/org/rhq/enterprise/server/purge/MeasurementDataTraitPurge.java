@@ -23,47 +23,45 @@ import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
 import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import javax.sql.DataSource;
-import javax.transaction.UserTransaction;
 
 import org.rhq.core.db.DatabaseType;
-import org.rhq.core.domain.measurement.MeasurementDataPK;
 
 /**
+ * Deletes every trait value older than the most recent one recorded before the purge time. The rows of a schedule are
+ * ranked by time stamp with a window function, so each schedule id range is purged in a single statement.
+ *
  * @author Thomas Segismont
  */
-class MeasurementDataTraitPurge extends PurgeTemplate<MeasurementDataPK> {
+class MeasurementDataTraitPurge extends ScheduleRangePurge {
     private static final String ENTITY_NAME = "MeasurementDataTrait";
 
+    private static final String QUERY_SCHEDULE_ID_BOUNDS = "" //
+        + "SELECT min(schedule_id), max(schedule_id) FROM rhq_measurement_data_trait";
+
     /*
      * NOTE: Avoid using the AS keyword in the FROM clauses in this query, because Oracle barfs on it
      *       (see http://download.oracle.com/docs/cd/B19306_01/server.102/b14200/ap_standard_sql003.htm, subfeature id
      *       E051-08).
      */
-    private static final String QUERY_SELECT_KEYS_FOR_PURGE = "" //
-        + "SELECT schedule_id, time_stamp FROM rhq_measurement_data_trait " // SQL Server doesn't like aliases, use full table name
-        + "WHERE EXISTS " // rewritten as exists because H2 doesn't support multi-column conditions
-        + "  (SELECT t2.schedule_id, t2.time_stamp " //
-        + "   FROM rhq_measurement_data_trait t2, " //
-        + "     (SELECT max(t4.time_stamp) as mx, t4.schedule_id as schedule_id " //
-        + "      FROM rhq_measurement_data_trait t4 " //
-        + "      WHERE t4.time_stamp < ? " //
-        + "      GROUP BY t4.schedule_id) t3 " //
-        + "   WHERE t2.schedule_id = t3.schedule_id " //
-        + "   AND t2.time_stamp < t3.mx " //
-        + "   AND rhq_measurement_data_trait.time_stamp = t2.time_stamp " // rewrote multi-column conditions as additional
-        + "   AND rhq_measurement_data_trait.schedule_id = t2.schedule_id) "; // correlated restrictions to the delete table;
-
-    private static final String QUERY_PURGE_BY_KEY = "" //
-        + "DELETE FROM rhq_measurement_data_trait WHERE schedule_id = ? AND time_stamp = ?";
+    private static final String QUERY_PURGE_RANGE = "" //
+        + "DELETE FROM rhq_measurement_data_trait " //
+        + "WHERE (schedule_id, time_stamp) IN " //
+        + "  (SELECT ranked.schedule_id, ranked.time_stamp " //
+        + "   FROM " //
+        + "     (SELECT t.schedule_id, t.time_stamp, " //
+        + "        row_number() OVER (PARTITION BY t.schedule_id ORDER BY t.time_stamp DESC) rn " //
+        + "      FROM rhq_measurement_data_trait t " //
+        + "      WHERE t.schedule_id >= ? AND t.schedule_id < ? " //
+        + "      AND t.time_stamp < ?) ranked " //
+        + "   WHERE ranked.rn > 1)"; // keep the latest value before the purge time
 
     private final long oldest;
 
-    MeasurementDataTraitPurge(DataSource dataSource, UserTransaction userTransaction, long oldest) {
-        super(dataSource, userTransaction);
+    MeasurementDataTraitPurge(DataSource dataSource, long oldest) {
+        super(dataSource);
         this.oldest = oldest;
     }
 
@@ -73,35 +71,23 @@ class MeasurementDataTraitPurge extends PurgeTemplate<MeasurementDataPK> {
     }
 
     @Override
-    protected String getFindRowKeysQuery(DatabaseType databaseType) {
-        if (isPostgres(databaseType) || isOracle(databaseType)) {
-            return QUERY_SELECT_KEYS_FOR_PURGE;
-        }
-        throw new UnsupportedOperationException(databaseType.getName());
-    }
-
-    @Override
-    protected void setFindRowKeysQueryParams(PreparedStatement preparedStatement) throws SQLException {
-        preparedStatement.setLong(1, oldest);
-    }
-
-    @Override
-    protected MeasurementDataPK getKeyFromResultSet(ResultSet resultSet) throws SQLException {
-        return new MeasurementDataPK(resultSet.getLong(2), resultSet.getInt(1));
+    protected String getScheduleIdBoundsQuery(DatabaseType databaseType) {
+        return QUERY_SCHEDULE_ID_BOUNDS;
     }
 
     @Override
-    protected String getDeleteRowByKeyQuery(DatabaseType databaseType) {
+    protected String getRangeDeleteQuery(DatabaseType databaseType) {
         if (isPostgres(databaseType) || isOracle(databaseType)) {
-            return QUERY_PURGE_BY_KEY;
+            return QUERY_PURGE_RANGE;
         }
         throw new UnsupportedOperationException(databaseType.getName());
     }
 
     @Override
-    protected void setDeleteRowByKeyQueryParams(PreparedStatement preparedStatement, MeasurementDataPK key)
-        throws SQLException {
-        preparedStatement.setInt(1, key.getScheduleId());
-        preparedStatement.setLong(2, key.getTimestamp());
+    protected void setRangeDeleteQueryParams(PreparedStatement preparedStatement, long fromScheduleId,
+        long toScheduleId) throws SQLException {
+        preparedStatement.setLong(1, fromScheduleId);
+        preparedStatement.setLong(2, toScheduleId);
+        preparedStatement.setLong(3, oldest);
     }
 }
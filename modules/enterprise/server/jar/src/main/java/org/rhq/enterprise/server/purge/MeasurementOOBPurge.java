@@ -23,29 +23,35 @@ import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
 import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import javax.sql.DataSource;
-import javax.transaction.UserTransaction;
 
 import org.rhq.core.db.DatabaseType;
 
 /**
+ * Deletes the OOBs of the schedules whose baseline was computed after the cutoff time.
+ *
  * @author Thomas Segismont
  */
-class MeasurementOOBPurge extends PurgeTemplate<Integer> {
+class MeasurementOOBPurge extends ScheduleRangePurge {
     private static final String ENTITY_NAME = "MeasurementOOB";
 
-    private static final String QUERY_SELECT_KEYS_FOR_PURGE = "" //
-        + "SELECT SCHEDULE_ID FROM RHQ_MEASUREMENT_BLINE WHERE BL_COMPUTE_TIME > ?";
+    private static final String QUERY_SCHEDULE_ID_BOUNDS = "" //
+        + "SELECT min(schedule_id), max(schedule_id) FROM rhq_measurement_oob";
 
-    private static final String QUERY_PURGE_BY_KEY = "DELETE FROM RHQ_MEASUREMENT_OOB WHERE SCHEDULE_ID = ?";
+    private static final String QUERY_PURGE_RANGE = "" //
+        + "DELETE FROM rhq_measurement_oob " //
+        + "WHERE schedule_id >= ? AND schedule_id < ? " //
+        + "AND schedule_id IN " //
+        + "  (SELECT b.schedule_id FROM rhq_measurement_bline b " //
+        + "   WHERE b.schedule_id >= ? AND b.schedule_id < ? " //
+        + "   AND b.bl_compute_time > ?)";
 
     private final long cutoffTime;
 
-    MeasurementOOBPurge(DataSource dataSource, UserTransaction userTransaction, long cutoffTime) {
-        super(dataSource, userTransaction);
+    MeasurementOOBPurge(DataSource dataSource, long cutoffTime) {
+        super(dataSource);
         this.cutoffTime = cutoffTime;
     }
 
@@ -55,33 +61,25 @@ class MeasurementOOBPurge extends PurgeTemplate<Integer> {
     }
 
     @Override
-    protected String getFindRowKeysQuery(DatabaseType databaseType) {
-        if (isPostgres(databaseType) || isOracle(databaseType)) {
-            return QUERY_SELECT_KEYS_FOR_PURGE;
-        }
-        throw new UnsupportedOperationException(databaseType.getName());
-    }
-
-    @Override
-    protected void setFindRowKeysQueryParams(PreparedStatement preparedStatement) throws SQLException {
-        preparedStatement.setLong(1, cutoffTime);
-    }
-
-    @Override
-    protected Integer getKeyFromResultSet(ResultSet resultSet) throws SQLException {
-        return resultSet.getInt(1);
+    protected String getScheduleIdBoundsQuery(DatabaseType databaseType) {
+        return QUERY_SCHEDULE_ID_BOUNDS;
     }
 
     @Override
-    protected String getDeleteRowByKeyQuery(DatabaseType databaseType) {
+    protected String getRangeDeleteQuery(DatabaseType databaseType) {
         if (isPostgres(databaseType) || isOracle(databaseType)) {
-            return QUERY_PURGE_BY_KEY;
+            return QUERY_PURGE_RANGE;
         }
         throw new UnsupportedOperationException(databaseType.getName());
     }
 
     @Override
-    protected void setDeleteRowByKeyQueryParams(PreparedStatement preparedStatement, Integer key) throws SQLException {
-        preparedStatement.setInt(1, key);
+    protected void setRangeDeleteQueryParams(PreparedStatement preparedStatement, long fromScheduleId,
+        long toScheduleId) throws SQLException {
+        preparedStatement.setLong(1, fromScheduleId);
+        preparedStatement.setLong(2, toScheduleId);
+        preparedStatement.setLong(3, fromScheduleId);
+        preparedStatement.setLong(4, toScheduleId);
+        preparedStatement.setLong(5, cutoffTime);
     }
 }
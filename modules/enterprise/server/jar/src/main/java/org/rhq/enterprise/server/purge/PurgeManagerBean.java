@@ -64,7 +64,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
 
     @Override
     public int purgeTraits(long oldest) {
-        MeasurementDataTraitPurge traitPurge = new MeasurementDataTraitPurge(dataSource, userTransaction, oldest);
+        MeasurementDataTraitPurge traitPurge = new MeasurementDataTraitPurge(dataSource, oldest);
         long startTime = System.currentTimeMillis();
         int deleted = traitPurge.execute();
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
@@ -158,7 +158,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
 
     @Override
     public void removeOutdatedOOBs(long cutoffTime) {
-        MeasurementOOBPurge measurementOOBPurge = new MeasurementOOBPurge(dataSource, userTransaction, cutoffTime);
+        MeasurementOOBPurge measurementOOBPurge = new MeasurementOOBPurge(dataSource, cutoffTime);
         int count = measurementOOBPurge.execute();
         LOG.info("Removed [" + count + "] outdated OOBs");
     }
@@ -0,0 +1,214 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
+
+/**
+ * A template for purging schedule data tables with set-based deletes.<br>
+ * <br>
+ * When the {@link #execute()} method is called, the schedule id bounds of the table are read and split into ranges.
+ * Each range is then purged by a single delete statement, several ranges at a time. Unlike {@link PurgeTemplate}, no
+ * row keys travel between the database and the server: the database decides which rows go.<br>
+ * <br>
+ * Every range is deleted on its own connection, outside of any transaction, so a failing range neither holds back
+ * nor rolls back the others. It is simply left for the next purge.
+ */
+abstract class ScheduleRangePurge {
+    private static final Log LOG = LogFactory.getLog(ScheduleRangePurge.class);
+
+    private static final String RANGE_SIZE_SYSTEM_PROPERTY = //
+        "org.rhq.enterprise.server.purge.ScheduleRangePurge.RANGE_SIZE";
+    private static final int RANGE_SIZE = Math.max(1, Integer.getInteger(RANGE_SIZE_SYSTEM_PROPERTY, 10000));
+    private static final String THREADS_SYSTEM_PROPERTY = "org.rhq.enterprise.server.purge.ScheduleRangePurge.THREADS";
+    private static final int THREADS = Integer.getInteger(THREADS_SYSTEM_PROPERTY, 4);
+    static {
+        LOG.info(RANGE_SIZE_SYSTEM_PROPERTY + " = " + RANGE_SIZE);
+        LOG.info(THREADS_SYSTEM_PROPERTY + " = " + THREADS);
+    }
+
+    protected final DataSource dataSource;
+    protected final DatabaseType databaseType;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     */
+    public ScheduleRangePurge(DataSource dataSource) {
+        this.dataSource = dataSource;
+        databaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+    }
+
+    /**
+     * @return the name of the data being purged, used for logging purpose
+     */
+    protected abstract String getEntityName();
+
+    /**
+     * @return the query selecting the lowest and the highest schedule id which may have rows to purge, in this order
+     */
+    protected abstract String getScheduleIdBoundsQuery(DatabaseType databaseType);
+
+    /**
+     * @return the query deleting the rows to purge in a schedule id range
+     */
+    protected abstract String getRangeDeleteQuery(DatabaseType databaseType);
+
+    /**
+     * Set the range deletion query parameters.
+     *
+     * @param preparedStatement the prepared statement created for the range deletion query
+     * @param fromScheduleId the lowest schedule id of the range
+     * @param toScheduleId the schedule id following the range (exclusive)
+     *
+     * @throws SQLException
+     */
+    protected abstract void setRangeDeleteQueryParams(PreparedStatement preparedStatement, long fromScheduleId,
+        long toScheduleId) throws SQLException;
+
+    public int execute() {
+        long[] bounds;
+        try {
+            bounds = loadScheduleIdBounds();
+        } catch (Exception e) {
+            LOG.error(getEntityName() + ": could not read the schedule id bounds", e);
+            return 0;
+        }
+        if (bounds == null) {
+            return 0;
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (long from = bounds[0]; from <= bounds[1]; from += RANGE_SIZE) {
+            ranges.add(new long[] { from, Math.min(from + RANGE_SIZE, bounds[1] + 1) });
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Purging " + getEntityName() + " in " + ranges.size() + " schedule id range(s) from "
+                + bounds[0] + " to " + bounds[1]);
+        }
+
+        int threads = Math.min(THREADS, ranges.size());
+        if (threads <= 1) {
+            int deleted = 0;
+            for (long[] range : ranges) {
+                try {
+                    deleted += deleteRange(range[0], range[1]);
+                } catch (Exception e) {
+                    logRangeFailure(range, e);
+                }
+            }
+            return deleted;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new LoggingThreadFactory(getClass()
+            .getSimpleName(), true));
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>(ranges.size());
+            for (final long[] range : ranges) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return deleteRange(range[0], range[1]);
+                    }
+                }));
+            }
+
+            int deleted = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    deleted += futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logRangeFailure(ranges.get(i), e.getCause());
+                }
+            }
+            return deleted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn(getEntityName() + ": purge interrupted");
+            return 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[] loadScheduleIdBounds() throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(getScheduleIdBoundsQuery(databaseType));
+            resultSet = preparedStatement.executeQuery();
+
+            if (!resultSet.next()) {
+                return null;
+            }
+            long min = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                // empty table
+                return null;
+            }
+            return new long[] { min, resultSet.getLong(2) };
+
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+        }
+    }
+
+    private int deleteRange(long fromScheduleId, long toScheduleId) throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        try {
+
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(getRangeDeleteQuery(databaseType));
+            setRangeDeleteQueryParams(preparedStatement, fromScheduleId, toScheduleId);
+            return preparedStatement.executeUpdate();
+
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, null);
+        }
+    }
+
+    private void logRangeFailure(long[] range, Throwable t) {
+        LOG.error(getEntityName() + ": could not purge schedule id range [" + range[0] + ", " + range[1]
+            + "), it will be purged next time", t);
+    }
+}
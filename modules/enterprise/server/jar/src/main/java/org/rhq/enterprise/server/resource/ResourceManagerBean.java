@@ -148,6 +148,8 @@ import org.rhq.enterprise.server.resource.disambiguation.DisambiguationUpdateStr
 import org.rhq.enterprise.server.resource.disambiguation.Disambiguator;
 import org.rhq.enterprise.server.resource.group.ResourceGroupDeleteException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.rest.ResourceHandlerBean;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
@@ -182,6 +184,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     @EJB
     private ResourceGroupManagerLocal groupManager;
     @EJB
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+    @EJB
     private SubjectManagerLocal subjectManager;
     @EJB
     private ResourceManagerLocal resourceManager; // ourself, for xactional semantic consistency
@@ -230,6 +234,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         entityManager.persist(resource);
         LOG.debug("********* resource persisted ************");
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.INVENTORY, resource
+            .getResourceType().getId());
         // Execute sub-methods as overlord to bypass additional security checks.
         Subject overlord = this.subjectManager.getOverlord();
         updateImplicitMembership(overlord, resource);
@@ -279,6 +285,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         persistedResource.setAgentSynchronizationNeeded();
         persistedResource.setModifiedBy(user.getName());
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.INVENTORY, persistedResource
+            .getResourceType().getId());
 
         return entityManager.merge(persistedResource);
     }
@@ -479,6 +487,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                 markDeletedQuery.setParameter("resourceIds", idsToDelete);
                 markDeletedQuery.setParameter("status", InventoryStatus.UNINVENTORIED);
                 resourcesDeleted += markDeletedQuery.executeUpdate();
+                groupDefinitionManager.recordDependencyChanges(ExpressionEvaluator.Dependency.INVENTORY, idsToDelete);
                 i = j;
             }
 
@@ -1005,6 +1014,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         resource.setInventoryStatus(newStatus);
         resource.setItime(now);
         resource.setAgentSynchronizationNeeded();
+        groupDefinitionManager.recordDependencyChange(ExpressionEvaluator.Dependency.INVENTORY, resource
+            .getResourceType().getId());
     }
 
     @Override
@@ -1111,9 +1122,28 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     @Override
+    @SuppressWarnings("unchecked")
     public List<Integer> getResourceIdLineage(int resourceId) {
-        List<Integer> lineage = new ArrayList<Integer>();
+        // The ancestry column is a materialized path of the resource's ancestors (nearest first), maintained by
+        // Resource.setParentResource() whenever discovery merges or imports a resource. In the common case the whole
+        // lineage can be decoded from it, so try that before walking up the tree one query per level.
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_PARENT_ID_AND_ANCESTRY);
+        query.setParameter("id", resourceId);
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty() || null == rows.get(0)[0]) {
+            // no parent means this is a platform (or the resource no longer exists)
+            return new ArrayList<Integer>();
+        }
+
+        Integer parentId = (Integer) rows.get(0)[0];
+        String ancestry = (String) rows.get(0)[1];
+        List<Integer> lineage = getAncestryIdLineage(parentId, ancestry);
+        if (null != lineage) {
+            return lineage;
+        }
 
+        // the ancestry is not set (e.g. it was too long to store) or is out of date, so fall back to the tree walk
+        lineage = new ArrayList<Integer>();
         Integer child = resourceId;
         Integer parent;
         while ((parent = getParentResourceId(child)) != null) {
@@ -1124,8 +1154,62 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         return lineage;
     }
 
+    /**
+     * Decode the resource ids stored in an ancestry string and verify, with a single query, that they really form
+     * the parent chain up to a platform. This protects against names containing the ancestry delimiters and against
+     * stale ancestry values.
+     *
+     * @return the ancestor ids, nearest first, or null if the ancestry can not be used
+     */
+    @SuppressWarnings("unchecked")
+    private List<Integer> getAncestryIdLineage(Integer parentId, String ancestry) {
+        if (null == ancestry) {
+            return null;
+        }
+
+        String[] ancestryEntries = ancestry.split(Resource.ANCESTRY_DELIM);
+        List<Integer> lineage = new ArrayList<Integer>(ancestryEntries.length);
+        for (String ancestryEntry : ancestryEntries) {
+            String[] entryTokens = ancestryEntry.split(Resource.ANCESTRY_ENTRY_DELIM);
+            if (entryTokens.length < 2) {
+                return null;
+            }
+            try {
+                lineage.add(Integer.valueOf(entryTokens[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        if (!parentId.equals(lineage.get(0))) {
+            return null;
+        }
+
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_PARENT_IDS_BY_IDS);
+        query.setParameter("ids", lineage);
+        List<Object[]> rows = query.getResultList();
+        if (rows.size() != lineage.size()) {
+            return null;
+        }
+
+        Map<Integer, Integer> parentIds = new HashMap<Integer, Integer>(rows.size());
+        for (Object[] row : rows) {
+            parentIds.put((Integer) row[0], (Integer) row[1]);
+        }
+        for (int i = 0, size = lineage.size(); i < size; ++i) {
+            Integer expectedParentId = (i < size - 1) ? lineage.get(i + 1) : null;
+            Integer actualParentId = parentIds.get(lineage.get(i));
+            if ((null == expectedParentId) ? (null != actualParentId) : !expectedParentId.equals(actualParentId)) {
+                return null;
+            }
+        }
+
+        return lineage;
+    }
+
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     @Override
+    @SuppressWarnings("unchecked")
     public List<Resource> getResourceLineage(int resourceId) {
         LinkedList<Resource> resourceLineage = new LinkedList<Resource>();
         Resource resource = entityManager.find(Resource.class, resourceId);
@@ -1134,11 +1218,27 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         }
 
         resourceLineage.add(resource);
-        int childResourceId = resourceId;
-        Resource parent;
-        while ((parent = getParentResource(childResourceId)) != null) {
-            resourceLineage.addFirst(parent);
-            childResourceId = parent.getId(); // This also ensures Hibernate actually populates parent's fields.
+        List<Integer> ancestorIds = getResourceIdLineage(resourceId);
+        if (ancestorIds.isEmpty()) {
+            return resourceLineage;
+        }
+
+        // load all of the ancestors at once rather than one parent at a time
+        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_IDS_ADMIN);
+        query.setParameter("ids", ancestorIds);
+        List<Resource> ancestors = query.getResultList();
+        Map<Integer, Resource> ancestorsById = new HashMap<Integer, Resource>(ancestors.size());
+        for (Resource ancestor : ancestors) {
+            ancestorsById.put(ancestor.getId(), ancestor);
+        }
+
+        for (Integer ancestorId : ancestorIds) {
+            Resource ancestor = ancestorsById.get(ancestorId);
+            if (null == ancestor) {
+                // an ancestor was removed concurrently, this is unusual
+                throw new ResourceNotFoundException(ancestorId);
+            }
+            resourceLineage.addFirst(ancestor);
         }
 
         return resourceLineage;
@@ -153,6 +153,14 @@ public interface ResourceManagerLocal extends ResourceManagerRemote {
     @Nullable
     Resource getParentResource(int resourceId);
 
+    /**
+     * Returns the ids of the ancestors of the Resource with the specified id, starting with its parent and ending
+     * with the root of its ancestry (i.e. a platform). The list is empty if the Resource does not have a parent.
+     *
+     * @param  resourceId the id of a {@link Resource} in inventory
+     *
+     * @return the ids of the ancestors of the Resource with the specified id, nearest first
+     */
     List<Integer> getResourceIdLineage(int resourceId);
 
     /**
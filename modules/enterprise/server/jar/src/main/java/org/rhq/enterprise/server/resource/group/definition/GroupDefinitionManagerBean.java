@@ -26,6 +26,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -35,6 +37,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -71,6 +74,7 @@ import org.rhq.enterprise.server.resource.group.definition.exception.GroupDefini
 import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.resource.group.definition.mbean.GroupDefinitionRecalculationThreadMonitor;
 import org.rhq.enterprise.server.resource.group.definition.mbean.GroupDefinitionRecalculationThreadMonitorMBean;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 
@@ -78,9 +82,69 @@ import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal, GroupDefinitionManagerRemote {
     private final Log log = LogFactory.getLog(GroupDefinitionManagerBean.class);
 
+    /*
+     * when incremental recalculation is enabled, a scheduled recalculation is skipped if no change of the data the
+     * definition's expression depends on has been committed since its last calculation; a full recalculation is still
+     * forced once the last calculation is older than the full recalculation period
+     */
+    static private final boolean INCREMENTAL_RECALCULATION;
+    static private final long FULL_RECALCULATION_PERIOD;
+
+    static {
+        boolean incrementalRecalculation = false;
+        long fullRecalculationPeriodMins = 24L * 60L;
+        try {
+            incrementalRecalculation = Boolean.parseBoolean(System.getProperty(
+                "rhq.server.dynagroup.incremental-recalculation", "false"));
+            fullRecalculationPeriodMins = Long.parseLong(System.getProperty(
+                "rhq.server.dynagroup.full-recalculation-period-mins", "1440"));
+        } catch (Throwable t) {
+            //
+        }
+        INCREMENTAL_RECALCULATION = incrementalRecalculation;
+        FULL_RECALCULATION_PERIOD = fullRecalculationPeriodMins * 60L * 1000L;
+    }
+
+    /*
+     * changes are recorded in the transaction that makes them, with the time of the recording, so a change can become
+     * visible long after its change time. Change rows younger than this window are counted before every calculation,
+     * and the definition is only skipped while that count stays the same. The window must be longer than any
+     * transaction that records a change can run.
+     */
+    static private final long UNCOMMITTED_CHANGE_WINDOW = 60L * 60L * 1000L;
+
+    static private final String CHANGE_TX_RESOURCE_KEY = GroupDefinitionManagerBean.class.getName() + ".changes";
+
+    /*
+     * state of the last successful calculation, keyed by group definition id; this is local to this server, so a
+     * recalculation that runs on another HA server just starts with a full calculation. Skipped checks are only
+     * recorded here, the persisted lastCalculationTime always is the time of the last real calculation.
+     */
+    static private final ConcurrentMap<Integer, CalculationState> calculationStates = //
+        new ConcurrentHashMap<Integer, CalculationState>();
+
+    static private final class CalculationState {
+        private final String expression;
+        private final boolean recursive;
+        private final long calculationTime;
+        private final long changeCount;
+        private volatile long checkTime;
+
+        private CalculationState(String expression, boolean recursive, long calculationTime, long changeCount) {
+            this.expression = expression;
+            this.recursive = recursive;
+            this.calculationTime = calculationTime;
+            this.changeCount = changeCount;
+            this.checkTime = calculationTime;
+        }
+    }
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private GroupDefinitionManagerLocal groupDefinitionManager; // self, for xactional purposes
 
@@ -111,7 +175,46 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
         GroupDefinitionRecalculationThreadMonitorMBean monitor = GroupDefinitionRecalculationThreadMonitor.getMBean();
 
         long totalStart = System.currentTimeMillis();
+        if (INCREMENTAL_RECALCULATION) {
+            try {
+                removeExpiredDependencyChanges(totalStart);
+            } catch (Throwable t) {
+                log.warn("Could not remove expired DynaGroup dependency changes: " + t);
+            }
+        }
+
         for (Integer groupDefinitionId : groupDefinitionIdsToRecalculate) {
+            long changeCount = -1L;
+            long changeCountTime = 0L;
+            if (INCREMENTAL_RECALCULATION) {
+                try {
+                    GroupDefinition groupDefinition = getById(groupDefinitionId);
+                    CalculationState last = calculationStates.get(groupDefinitionId);
+                    long now = System.currentTimeMillis();
+                    if (null != last && last.expression.equals(groupDefinition.getExpression())
+                        && last.recursive == groupDefinition.isRecursive()
+                        && (now - last.calculationTime) <= FULL_RECALCULATION_PERIOD) {
+                        if ((now - last.checkTime) < groupDefinition.getRecalculationInterval()) {
+                            // checked recently, and lastCalculationTime is not moved by a skip, so it's still due
+                            continue;
+                        }
+                        changeCount = getDependencyChangeCount(groupDefinition, last.calculationTime);
+                        if (changeCount == last.changeCount) {
+                            last.checkTime = now;
+                            monitor.updateSkippedStatistic(groupDefinition.getName());
+                            continue;
+                        }
+                    }
+                    // counted relative to the same time that is kept as the calculation time, see below
+                    changeCountTime = now;
+                    changeCount = getDependencyChangeCount(groupDefinition, changeCountTime);
+                } catch (Throwable t) {
+                    log.warn("Could not determine inventory changes for GroupDefinition[id=" + groupDefinitionId
+                        + "], it will be fully recalculated: " + t);
+                    changeCount = -1L;
+                }
+            }
+
             long singleStart = System.currentTimeMillis();
             boolean success = false;
             try {
@@ -128,17 +231,144 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
 
             try {
                 GroupDefinition groupDefinition = getById(groupDefinitionId);
+                if (success && changeCount >= 0L) {
+                    calculationStates.put(groupDefinitionId, new CalculationState(groupDefinition.getExpression(),
+                        groupDefinition.isRecursive(), changeCountTime, changeCount));
+                } else {
+                    calculationStates.remove(groupDefinitionId);
+                }
+
                 int size = getManagedResourceGroupSizeForGroupDefinition(groupDefinitionId);
                 monitor.updateStatistic(groupDefinition.getName(), size, success, singleEnd - singleStart);
             } catch (Throwable t) {
+                calculationStates.remove(groupDefinitionId);
                 log.error("Error updating DynaGroup statistics GroupDefinition[id=" + groupDefinitionId + "]", t);
                 // ignore error during statistic update
             }
         }
+
         long totalEnd = System.currentTimeMillis();
         monitor.updateAutoRecalculationThreadTime(totalEnd - totalStart);
     }
 
+    /**
+     * Counts the recorded changes that the group definition's expression depends on, and that are younger than the
+     * uncommitted change window before the calculation time. The count is taken before a calculation, so any change
+     * committed after that, even one recorded earlier, shows up as a different count next time around.
+     *
+     * @return the number of changes, or -1 if the definition must be fully recalculated
+     */
+    private long getDependencyChangeCount(GroupDefinition groupDefinition, long calculationTime)
+        throws InvalidExpressionException {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        for (String expression : groupDefinition.getExpressionAsList()) {
+            evaluator.addExpression(expression);
+        }
+
+        Set<ExpressionEvaluator.Dependency> dependencies = evaluator.getDependencies();
+        if (dependencies.contains(ExpressionEvaluator.Dependency.AVAILABILITY)
+            || dependencies.contains(ExpressionEvaluator.Dependency.MEMBERSHIP)) {
+            // availability and group membership change too often to be worth tracking, always recalculate
+            return -1L;
+        }
+
+        // members of recursive groups are of any type, so only non-recursive definitions are scoped to their type
+        String plugin = groupDefinition.isRecursive() ? null : evaluator.getResourceTypePluginScope();
+        String typeName = groupDefinition.isRecursive() ? null : evaluator.getResourceTypeNameScope();
+
+        List<String> dependencyNames = new ArrayList<String>(dependencies.size());
+        for (ExpressionEvaluator.Dependency dependency : dependencies) {
+            dependencyNames.add(dependency.name());
+        }
+
+        String queryString = "SELECT COUNT(*) FROM RHQ_GROUP_DEF_CHANGE c";
+        if (null != plugin || null != typeName) {
+            queryString += " JOIN RHQ_RESOURCE_TYPE rt ON rt.ID = c.RESOURCE_TYPE_ID";
+        }
+        queryString += " WHERE c.CHANGE_TIME >= :since AND c.DEPENDENCY IN ( :dependencies )";
+        if (null != plugin) {
+            queryString += " AND rt.PLUGIN = :plugin";
+        }
+        if (null != typeName) {
+            queryString += " AND rt.NAME = :typeName";
+        }
+
+        Query query = entityManager.createNativeQuery(queryString);
+        query.setParameter("since", calculationTime - UNCOMMITTED_CHANGE_WINDOW);
+        query.setParameter("dependencies", dependencyNames);
+        if (null != plugin) {
+            query.setParameter("plugin", plugin);
+        }
+        if (null != typeName) {
+            query.setParameter("typeName", typeName);
+        }
+
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * Changes only need to be kept for as long as a calculation can be skipped due to them.
+     */
+    private void removeExpiredDependencyChanges(long now) {
+        Query query = entityManager.createNativeQuery("DELETE FROM RHQ_GROUP_DEF_CHANGE WHERE CHANGE_TIME < :expired");
+        query.setParameter("expired", now - FULL_RECALCULATION_PERIOD - UNCOMMITTED_CHANGE_WINDOW);
+        query.executeUpdate();
+    }
+
+    public void recordDependencyChange(ExpressionEvaluator.Dependency dependency, int resourceTypeId) {
+        // a transaction touching many resources of the same type records the change only once
+        String change = dependency.name() + ':' + resourceTypeId;
+        @SuppressWarnings("unchecked")
+        Set<String> recordedChanges = (Set<String>) transactionSynchronizationRegistry
+            .getResource(CHANGE_TX_RESOURCE_KEY);
+        if (null == recordedChanges) {
+            recordedChanges = new HashSet<String>();
+            transactionSynchronizationRegistry.putResource(CHANGE_TX_RESOURCE_KEY, recordedChanges);
+        }
+        if (!recordedChanges.add(change)) {
+            return;
+        }
+
+        Query query = entityManager.createNativeQuery("INSERT INTO RHQ_GROUP_DEF_CHANGE "
+            + "(RESOURCE_TYPE_ID, DEPENDENCY, CHANGE_TIME) VALUES (:resourceTypeId, :dependency, :changeTime)");
+        query.setParameter("resourceTypeId", resourceTypeId);
+        query.setParameter("dependency", dependency.name());
+        query.setParameter("changeTime", System.currentTimeMillis());
+        query.executeUpdate();
+    }
+
+    public void recordDependencyChanges(ExpressionEvaluator.Dependency dependency, List<Integer> resourceIds) {
+        recordDependencyChanges(dependency, "SELECT DISTINCT r.RESOURCE_TYPE_ID FROM RHQ_RESOURCE r "
+            + "WHERE r.ID IN ( :ids )", resourceIds);
+    }
+
+    public void recordTraitChanges(List<Integer> scheduleIds) {
+        recordDependencyChanges(ExpressionEvaluator.Dependency.TRAIT, "SELECT DISTINCT d.RESOURCE_TYPE_ID "
+            + "FROM RHQ_MEASUREMENT_SCHED s JOIN RHQ_MEASUREMENT_DEF d ON d.ID = s.DEFINITION WHERE s.ID IN ( :ids )",
+            scheduleIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordDependencyChanges(ExpressionEvaluator.Dependency dependency, String typeIdQueryString,
+        List<Integer> ids) {
+        if (null == ids || ids.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> resourceTypeIds = new HashSet<Integer>();
+        Query query = entityManager.createNativeQuery(typeIdQueryString);
+        for (List<Integer> batch : new BatchIterator<Integer>(ids)) {
+            query.setParameter("ids", batch);
+            for (Object resourceTypeId : query.getResultList()) {
+                resourceTypeIds.add(((Number) resourceTypeId).intValue());
+            }
+        }
+
+        for (Integer resourceTypeId : resourceTypeIds) {
+            recordDependencyChange(dependency, resourceTypeId);
+        }
+    }
+
     public GroupDefinition getById(int groupDefinitionId) throws GroupDefinitionNotFoundException {
         GroupDefinition groupDefinition = entityManager.find(GroupDefinition.class, groupDefinitionId);
         if (groupDefinition == null) {
@@ -542,6 +772,7 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
         }
 
         GroupDefinition groupDefinition = getById(groupDefinitionId);
+        calculationStates.remove(groupDefinitionId);
         try {
             entityManager.remove(groupDefinition);
         } catch (Exception e) {
@@ -55,4 +55,22 @@ public interface GroupDefinitionManagerLocal extends GroupDefinitionManagerRemot
 
     void updateGroupsByCannedExpressions(String plugin, List<CannedGroupExpression> expressions);
 
+    /**
+     * Records, in the caller's transaction, that data of the given kind changed for a resource of the given type, so
+     * that the DynaGroups depending on it are recalculated. This is for internal use only.
+     */
+    void recordDependencyChange(ExpressionEvaluator.Dependency dependency, int resourceTypeId);
+
+    /**
+     * Like {@link #recordDependencyChange(ExpressionEvaluator.Dependency, int)}, for the types of the given resources.
+     * This is for internal use only.
+     */
+    void recordDependencyChanges(ExpressionEvaluator.Dependency dependency, List<Integer> resourceIds);
+
+    /**
+     * Records trait changes for the types of the resources of the given measurement schedules. This is for internal
+     * use only.
+     */
+    void recordTraitChanges(List<Integer> scheduleIds);
+
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ package org.rhq.enterprise.server.resource.group.definition.framework;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -99,6 +100,24 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
 
     private Map<String, String> resourceExpressions = new TreeMap<String, String>();
 
+    /**
+     * The kinds of inventory data that the added expressions read. A recalculation can be skipped when none of the
+     * data an expression set depends on has changed since the last time it was calculated.
+     */
+    public enum Dependency {
+        INVENTORY, // committed resources and their basic fields, every expression set depends on this
+        AVAILABILITY, //
+        TRAIT, //
+        PLUGIN_CONFIGURATION, //
+        RESOURCE_CONFIGURATION, //
+        MEMBERSHIP; // 'memberof' expressions
+    }
+
+    private Set<Dependency> dependencies = EnumSet.of(Dependency.INVENTORY);
+    private boolean isHierarchical = false;
+    private String resourceTypePluginScope = null;
+    private String resourceTypeNameScope = null;
+
     public ExpressionEvaluator() {
         /*
          * used LinkedHashMap for whereConditions on purpose so that the iterator will return them in the same order
@@ -291,6 +310,29 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         return computedJPQLGroupStatement;
     }
 
+    /**
+     * @return the kinds of inventory data the added expressions depend on
+     */
+    public Set<Dependency> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    /**
+     * @return the plugin of the resource type every matched resource must have, or null if resources of any plugin
+     *         (or any other resource in their hierarchy) can influence the result
+     */
+    public String getResourceTypePluginScope() {
+        return isHierarchical ? null : resourceTypePluginScope;
+    }
+
+    /**
+     * @return the name of the resource type every matched resource must have, or null if resources of any type (or
+     *         any other resource in their hierarchy) can influence the result
+     */
+    public String getResourceTypeNameScope() {
+        return isHierarchical ? null : resourceTypeNameScope;
+    }
+
     private enum ParseContext {
         BEGIN(false), //
         Modifier(false), // includes 'empty', 'not', and 'pivot'
@@ -455,6 +497,10 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         deepestResourceContext = null;
         expressionType = String.class;
 
+        // exact resource type filters on the resource itself narrow which resources can affect the result
+        String typePluginScope = null;
+        String typeNameScope = null;
+
         for (; parseIndex < tokens.length; parseIndex++) {
             String nextToken = tokens[parseIndex];
 
@@ -473,6 +519,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
 
                     validateSubExpressionAgainstPreviouslySeen(groupName, false, true);
                     isMemberOf = true;
+                    dependencies.add(Dependency.MEMBERSHIP);
                     populatePredicateCollections(null, groupName);
 
                 } else if (nextToken.equals("groupby")) {
@@ -547,18 +594,23 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                 if (nextToken.equals("parent")) {
                     context = ParseContext.ResourceParent;
                     deepestResourceContext = context;
+                    isHierarchical = true;
                 } else if (nextToken.equals("grandparent")) {
                     context = ParseContext.ResourceGrandParent;
                     deepestResourceContext = context;
+                    isHierarchical = true;
                 } else if (nextToken.equals("greatgrandparent")) {
                     context = ParseContext.ResourceGreatGrandParent;
                     deepestResourceContext = context;
+                    isHierarchical = true;
                 } else if (nextToken.equals("greatgreatgrandparent")) {
                     context = ParseContext.ResourceGreatGreatGrandParent;
                     deepestResourceContext = context;
+                    isHierarchical = true;
                 } else if (nextToken.equals("child")) {
                     context = ParseContext.ResourceChild;
                     deepestResourceContext = context;
+                    isHierarchical = true;
                 } else {
                     parseExpression_resourceContext(value, tokens, nextToken);
                 }
@@ -568,6 +620,15 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                 // since a parent or child *is* a resource, support the exact same processing
                 parseExpression_resourceContext(value, tokens, nextToken);
             } else if (context == ParseContext.ResourceType) {
+                boolean isTypeScope = (deepestResourceContext == ParseContext.Resource)
+                    && (comparisonType == ComparisonType.EQUALS) && !isGroupBy && (value != null)
+                    && !value.contains("%");
+                if (isTypeScope && nextToken.equals("plugin")) {
+                    typePluginScope = value;
+                } else if (isTypeScope && nextToken.equals("name")) {
+                    typeNameScope = value;
+                }
+
                 if (nextToken.equals("plugin")) {
                     populatePredicateCollections(getResourceRelativeContextToken() + ".resourceType.plugin", value);
                 } else if (nextToken.equals("name")) {
@@ -597,6 +658,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                             + "only 'UP''DOWN''DISABLED''UNKNOWN' are valid values");
                     }
                 }
+                dependencies.add(Dependency.AVAILABILITY);
                 addJoinCondition(JoinCondition.AVAILABILITY);
                 populatePredicateCollections(JoinCondition.AVAILABILITY.alias + ".availabilityType", type);
             } else if (context == ParseContext.Trait) {
@@ -604,6 +666,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                 // WHERE def.name = :arg1 AND trait.value = :arg2 AND trait.schedule = sched AND trait.id.timestamp =
                 // (SELECT max(mdt.id.timestamp) FROM MeasurementDataTrait mdt WHERE sched.id = mdt.schedule.id)
                 String traitName = parseTraitName(originalTokens);
+                dependencies.add(Dependency.TRAIT);
                 addJoinCondition(JoinCondition.SCHEDULES);
                 populatePredicateCollections(METRIC_DEF_ALIAS + ".name", "%" + traitName + "%", false, false);
                 populatePredicateCollections(TRAIT_ALIAS + ".value", value);
@@ -618,10 +681,12 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
 
                 if (subcontext == ParseSubContext.PluginConfiguration) {
                     prefix = "pluginconfiguration";
+                    dependencies.add(Dependency.PLUGIN_CONFIGURATION);
                     joinCondition = JoinCondition.PLUGIN_CONFIGURATION;
                     definitionJoinCondition = JoinCondition.PLUGIN_CONFIGURATION_DEFINITION;
                 } else if (subcontext == ParseSubContext.ResourceConfiguration) {
                     prefix = "resourceconfiguration";
+                    dependencies.add(Dependency.RESOURCE_CONFIGURATION);
                     joinCondition = JoinCondition.RESOURCE_CONFIGURATION;
                     definitionJoinCondition = JoinCondition.RESOURCE_CONFIGURATION_DEFINITION;
                 } else {
@@ -661,6 +726,10 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                 String lastArgumentName = getLastArgumentName();
                 String argumentValue = (String) whereReplacements.get(lastArgumentName);
 
+                // a partial match is not an exact resource type filter
+                typePluginScope = null;
+                typeNameScope = null;
+
                 if (nextToken.equals("startswith")) {
                     argumentValue = QueryUtility.escapeSearchParameter(argumentValue) + "%";
                 } else if (nextToken.equals("endswith")) {
@@ -686,6 +755,13 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         if (context.isExpressionTerminator() == false) {
             throw new InvalidExpressionException("Unexpected termination of expression");
         }
+
+        if (null != typePluginScope) {
+            resourceTypePluginScope = typePluginScope;
+        }
+        if (null != typeNameScope) {
+            resourceTypeNameScope = typeNameScope;
+        }
     }
 
     private enum ResourceRelativeContext {
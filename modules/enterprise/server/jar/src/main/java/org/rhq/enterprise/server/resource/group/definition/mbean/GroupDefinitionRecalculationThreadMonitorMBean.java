@@ -102,4 +102,12 @@ public interface GroupDefinitionRecalculationThreadMonitorMBean {
      */
     void updateStatistic(String groupDefinitionName, int newDynaGroupCount, boolean success, long executionTime);
 
+    /**
+     * Records that a scheduled recalculation of the {@link GroupDefinition} with the given name was skipped because
+     * none of the inventory data its expression depends on changed since it was last calculated.
+     *
+     * @param groupDefinitionName the name of the {@link GroupDefinition} whose internal statistics will be updated
+     */
+    void updateSkippedStatistic(String groupDefinitionName);
+
 }
\ No newline at end of file
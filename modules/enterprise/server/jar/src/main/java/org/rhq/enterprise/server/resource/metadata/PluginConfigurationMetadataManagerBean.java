@@ -27,6 +27,8 @@ import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.configuration.metadata.ConfigurationDefinitionUpdateReport;
 import org.rhq.enterprise.server.configuration.metadata.ConfigurationMetadataManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.util.BatchIterator;
 
 @Stateless
@@ -49,6 +51,9 @@ public class PluginConfigurationMetadataManagerBean implements PluginConfigurati
     @EJB
     private ResourceManagerLocal resourceMgr;
 
+    @EJB
+    private GroupDefinitionManagerLocal groupDefinitionMgr;
+
     @Override
     public void updatePluginConfigurationDefinition(ResourceType existingType, ResourceType newType) {
         if (log.isDebugEnabled()) {
@@ -149,6 +154,8 @@ public class PluginConfigurationMetadataManagerBean implements PluginConfigurati
 
             if (modified) {
                 resource.setAgentSynchronizationNeeded();
+                groupDefinitionMgr.recordDependencyChange(ExpressionEvaluator.Dependency.PLUGIN_CONFIGURATION,
+                    resource.getResourceType().getId());
             }
         }
     }
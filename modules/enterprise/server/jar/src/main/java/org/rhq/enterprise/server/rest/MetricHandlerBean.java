@@ -18,11 +18,14 @@
  */
 package org.rhq.enterprise.server.rest;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -67,8 +70,12 @@ import com.wordnik.swagger.annotations.ApiErrors;
 import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
 import org.jboss.resteasy.annotations.GZIP;
 
+import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.common.EntityContext;
 import org.rhq.core.domain.criteria.MeasurementScheduleCriteria;
 import org.rhq.core.domain.measurement.DataType;
@@ -107,7 +114,10 @@ import org.rhq.enterprise.server.rest.domain.NumericDataPoint;
 import org.rhq.enterprise.server.rest.domain.RHQErrorWrapper;
 import org.rhq.enterprise.server.rest.domain.StringValue;
 import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.server.metrics.MetricsConfiguration;
 import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 
 /**
@@ -148,11 +158,19 @@ public class MetricHandlerBean  extends AbstractRestBean  {
 
 
     private static final long EIGHT_HOURS = 8 * 3600L * 1000L;
+    private static final long ONE_DAY = 86400L * 1000L;
     private static final long SEVEN_DAYS = 7L*86400*1000;
+    private static final long THIRTY_DAYS = 30L * ONE_DAY;
+
+    private static final String TEXT_CSV = "text/csv";
+    private static final MediaType TEXT_CSV_TYPE = MediaType.valueOf(TEXT_CSV);
+    // streamed output is written through a buffer of this size, no matter how much data is exported
+    private static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+
     @GZIP
     @GET
     @Path("data/{scheduleId}")
-    @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML,MediaType.TEXT_HTML})
+    @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML,MediaType.TEXT_HTML,TEXT_CSV})
     @ApiOperation(value = "Get the bucketized metric values for the schedule.")
     @ApiError(code = 404, reason = NO_SCHEDULE_FOR_ID)
     public Response getMetricData(
@@ -201,6 +219,8 @@ public class MetricHandlerBean  extends AbstractRestBean  {
             String htmlString = renderTemplate("metricData", res);
             builder = Response.ok(htmlString,mediaType);
         }
+        else if (mediaType.equals(TEXT_CSV_TYPE))
+            builder = Response.ok(new MetricAggregateStreamingOutput(res), mediaType);
         else
             builder= Response.ok(res,mediaType);
         builder.cacheControl(cc);
@@ -211,7 +231,7 @@ public class MetricHandlerBean  extends AbstractRestBean  {
     @GET
     @Path("data/group/{groupId}/{definitionId}")
     @ApiOperation(value = "Get the bucketized metric values for the metric definition of the group ")
-    @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML,MediaType.TEXT_HTML})
+    @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML,MediaType.TEXT_HTML,TEXT_CSV})
     public Response getMetricDataForGroupAndDefinition(
             @ApiParam("Id of the group to query") @PathParam("groupId") int groupId,
             @ApiParam("Id of the metric definition to retrieve") @PathParam("definitionId") int definitionId,
@@ -267,6 +287,8 @@ public class MetricHandlerBean  extends AbstractRestBean  {
             String htmlString = renderTemplate("metricData", res);
             builder = Response.ok(htmlString,mediaType);
         }
+        else if (mediaType.equals(TEXT_CSV_TYPE))
+            builder = Response.ok(new MetricAggregateStreamingOutput(res), mediaType);
         else
             builder= Response.ok(res,mediaType);
         builder.cacheControl(cc);
@@ -349,11 +371,36 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         return v;
     }
 
+    private Integer[] parseScheduleIds(String schedules) {
+        if (schedules==null) {
+            throw new ParameterMissingException("sid");
+        }
+        String[] tmp = schedules.split(",");
+        Integer[] scheduleIds = new Integer[tmp.length];
+        try {
+            for (int i = 0; i < tmp.length ; i++)
+                scheduleIds[i] = Integer.parseInt(tmp[i].trim());
+        }
+        catch (NumberFormatException nfe) {
+            throw new BadArgumentException("Sid" , nfe.getMessage());
+        }
+        return scheduleIds;
+    }
+
+    /**
+     * JSON and CSV output is written by us while the data is read, everything else is marshalled by JAX-RS from
+     * complete lists.
+     */
+    private boolean isStreamable(MediaType mediaType) {
+        return mediaType.equals(MediaType.APPLICATION_JSON_TYPE) || mediaType.equals(TEXT_CSV_TYPE);
+    }
+
     @GZIP
     @GET
     @Path("data")
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_HTML})
-    @ApiOperation(value = "Return bucketized metric data (60 points) for the passed schedules")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_HTML, TEXT_CSV})
+    @ApiOperation(value = "Return bucketized metric data (60 points) for the passed schedules. JSON and CSV are streamed"
+        + " one schedule at a time.")
     @ApiErrors({
         @ApiError(code = 404, reason = NO_SCHEDULE_FOR_ID),
         @ApiError(code = 406, reason = "No schedules requested"),
@@ -381,17 +428,17 @@ public class MetricHandlerBean  extends AbstractRestBean  {
             startTime = endTime - EIGHT_HOURS;
         }
 
-        if (schedules==null) {
-            throw new ParameterMissingException("sid");
-        }
-        String[] tmp = schedules.split(",");
-        Integer[] scheduleIds = new Integer[tmp.length];
-        try {
-            for (int i = 0; i < tmp.length ; i++)
-                scheduleIds[i] = Integer.parseInt(tmp[i]);
-        }
-        catch (NumberFormatException nfe) {
-            throw new BadArgumentException("Sid" , nfe.getMessage());
+        Integer[] scheduleIds = parseScheduleIds(schedules);
+
+        if (isStreamable(mediaType)) {
+            // Look up the schedules first, so that unknown ids still fail the request before anything is written.
+            // The data itself is only fetched while streaming, one schedule at a time.
+            List<MeasurementSchedule> scheduleList = new ArrayList<MeasurementSchedule>(scheduleIds.length);
+            for (Integer scheduleId : scheduleIds) {
+                scheduleList.add(obtainSchedule(scheduleId, false, DataType.MEASUREMENT));
+            }
+            return Response.ok(new MetricAggregateStreamingOutput(caller, scheduleList, startTime, endTime, true,
+                dataPoints, hideEmpty, mediaType), mediaType).build();
         }
 
         List<MetricAggregate> resList = new ArrayList<MetricAggregate>(scheduleIds.length);
@@ -538,9 +585,11 @@ public class MetricHandlerBean  extends AbstractRestBean  {
     @GZIP
     @GET
     @Path("data/resource/{resourceId}")
-    @ApiOperation("Retrieve a list of high/low/average/data aggregates for the resource")
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_HTML, TEXT_CSV})
+    @ApiOperation(value = "Retrieve a list of high/low/average/data aggregates for the resource. JSON and CSV are"
+        + " streamed one schedule at a time.", responseClass = "MetricAggregate", multiValueResponse = true)
     @ApiError(code = 404, reason = NO_RESOURCE_FOR_ID)
-    public List<MetricAggregate> getAggregatesForResource(
+    public Response getAggregatesForResource(
         @ApiParam("Id of the resource to query") @PathParam("resourceId") int resourceId,
         @ApiParam(value = "Start time since epoch.", defaultValue = "End time - 8h") @QueryParam(
             "startTime") long startTime,
@@ -548,7 +597,8 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         @ApiParam(value = "Include data points") @DefaultValue("false") @QueryParam("includeDataPoints") boolean includeDataPoints,
         @ApiParam("Number of buckets (if include data points))") @QueryParam("dataPoints") @DefaultValue( "60") int dataPoints,
         @ApiParam(value = "Hide rows that are NaN only", defaultValue = "false") @QueryParam(
-            "hideEmpty") boolean hideEmpty)
+            "hideEmpty") boolean hideEmpty,
+        @Context HttpHeaders headers)
     {
 
         long now = System.currentTimeMillis();
@@ -565,6 +615,13 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         for (MeasurementSchedule sched: schedules) {
             putToCache(sched.getId(),MeasurementSchedule.class,sched);
         }
+
+        MediaType mediaType = headers.getAcceptableMediaTypes().get(0);
+        if (isStreamable(mediaType)) {
+            return Response.ok(new MetricAggregateStreamingOutput(caller, schedules, startTime, endTime,
+                includeDataPoints, dataPoints, hideEmpty, mediaType), mediaType).build();
+        }
+
         List<MetricAggregate> ret = new ArrayList<MetricAggregate>(schedules.size());
 
         for (MeasurementSchedule schedule: schedules) {
@@ -584,7 +641,8 @@ public class MetricHandlerBean  extends AbstractRestBean  {
 
             ret.add(res);
         }
-        return ret;
+        GenericEntity<List<MetricAggregate>> entity = new GenericEntity<List<MetricAggregate>>(ret) {};
+        return Response.ok(entity, mediaType).build();
 
     }
 
@@ -758,6 +816,113 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         return so;
     }
 
+    @GZIP
+    @GET
+    @Path("data/export")
+    @Produces({MediaType.APPLICATION_JSON, TEXT_CSV})
+    @ApiOperation(value = "Export the raw or aggregated metrics of many schedules. The data is streamed, one slice of "
+        + "one schedule at a time, so there is no limit on the time range.")
+    @ApiErrors({
+        @ApiError(code = 404, reason = NO_SCHEDULE_FOR_ID),
+        @ApiError(code = 406, reason = "No schedules requested"),
+        @ApiError(code = 406, reason = "Schedule Ids are not numeric")
+    })
+    public StreamingOutput exportMetricData(
+        @ApiParam(value = "A comma separated list of schedule ids", required = true) @QueryParam("sid") String schedules,
+        @ApiParam(value = "Start time since epoch", defaultValue = "Now - 8h") @QueryParam("startTime") long startTime,
+        @ApiParam(value = "End time since epoch", defaultValue = "Now") @QueryParam("endTime") long endTime,
+        @ApiParam(value = "The data to export, one of raw, 1h, 6h and 24h. By default the finest data still kept for "
+            + "the start time is exported.") @QueryParam("bucket") String bucket,
+        @Context HttpHeaders headers) {
+
+        return exportMetricData(Arrays.asList(parseScheduleIds(schedules)), startTime, endTime, bucket,
+            headers.getAcceptableMediaTypes().get(0));
+    }
+
+    @GZIP
+    @POST
+    @Path("data/export")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, TEXT_CSV})
+    @ApiOperation(value = "Export the raw or aggregated metrics of the schedules whose ids are posted as a list. This "
+        + "is the same as the GET variant, for lists of schedules that are too long for a URL.")
+    @ApiErrors({
+        @ApiError(code = 404, reason = NO_SCHEDULE_FOR_ID),
+        @ApiError(code = 406, reason = "No schedules requested")
+    })
+    public StreamingOutput exportMetricDataForSchedules(
+        @ApiParam(value = "The ids of the schedules to export", required = true) List<Integer> scheduleIds,
+        @ApiParam(value = "Start time since epoch", defaultValue = "Now - 8h") @QueryParam("startTime") long startTime,
+        @ApiParam(value = "End time since epoch", defaultValue = "Now") @QueryParam("endTime") long endTime,
+        @ApiParam(value = "The data to export, one of raw, 1h, 6h and 24h. By default the finest data still kept for "
+            + "the start time is exported.") @QueryParam("bucket") String bucket,
+        @Context HttpHeaders headers) {
+
+        if (scheduleIds == null || scheduleIds.isEmpty()) {
+            throw new ParameterMissingException("scheduleIds");
+        }
+        return exportMetricData(scheduleIds, startTime, endTime, bucket, headers.getAcceptableMediaTypes().get(0));
+    }
+
+    private StreamingOutput exportMetricData(List<Integer> scheduleIds, long startTime, long endTime, String bucket,
+        MediaType mediaType) {
+
+        long now = System.currentTimeMillis();
+        if (endTime==0)
+            endTime = now;
+        if (startTime==0)
+            startTime = endTime - EIGHT_HOURS;
+        if (startTime >= endTime)
+            throw new BadArgumentException("startTime", "must be before endTime");
+
+        // one query for all schedules, that also makes sure the caller may see them
+        MeasurementScheduleCriteria criteria = new MeasurementScheduleCriteria();
+        criteria.addFilterIds(scheduleIds.toArray(new Integer[scheduleIds.size()]));
+        criteria.fetchDefinition(true);
+        criteria.clearPaging();
+        PageList<MeasurementSchedule> schedules = scheduleManager.findSchedulesByCriteria(caller, criteria);
+        Set<Integer> found = new HashSet<Integer>(schedules.size());
+        for (MeasurementSchedule schedule : schedules) {
+            if (schedule.getDefinition().getDataType() != DataType.MEASUREMENT) {
+                throw new BadArgumentException("Schedule [" + schedule.getId() + "]",
+                    "is not a numeric metric");
+            }
+            found.add(schedule.getId());
+        }
+        for (Integer scheduleId : scheduleIds) {
+            if (!found.contains(scheduleId)) {
+                throw new StuffNotFoundException("Schedule with id " + scheduleId);
+            }
+        }
+
+        MetricsConfiguration configuration = sessionManager.getMetricsConfiguration();
+        Bucket aggregateBucket;
+        if (bucket == null || bucket.isEmpty()) {
+            // the finest data that is still kept for the start time
+            long age = now - startTime;
+            if (age <= configuration.getRawTTL() * 1000L)
+                aggregateBucket = null;
+            else if (age <= configuration.getOneHourTTL() * 1000L)
+                aggregateBucket = Bucket.ONE_HOUR;
+            else if (age <= configuration.getSixHourTTL() * 1000L)
+                aggregateBucket = Bucket.SIX_HOUR;
+            else
+                aggregateBucket = Bucket.TWENTY_FOUR_HOUR;
+        } else if (bucket.equals("raw")) {
+            aggregateBucket = null;
+        } else if (bucket.equals("1h")) {
+            aggregateBucket = Bucket.ONE_HOUR;
+        } else if (bucket.equals("6h")) {
+            aggregateBucket = Bucket.SIX_HOUR;
+        } else if (bucket.equals("24h")) {
+            aggregateBucket = Bucket.TWENTY_FOUR_HOUR;
+        } else {
+            throw new BadArgumentException("bucket", "must be one of raw, 1h, 6h or 24h");
+        }
+
+        return new MetricExportStreamingOutput(scheduleIds, aggregateBucket, startTime, endTime, mediaType);
+    }
+
     @GET
     @ApiOperation("Expose callTime data for given scheduleId")
     @ApiErrors({
@@ -1229,7 +1394,8 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         @Override
         public void write(OutputStream outputStream) throws IOException, WebApplicationException {
             MetricsDAO metricsDAO = sessionManager.getMetricsDAO();
-            Iterable<RawNumericMetric> resultSet = metricsDAO.findRawMetrics(scheduleId, startTime, endTime);
+            Iterable<RawNumericMetric> resultSet = metricsDAO.findRawMetricsPaged(Arrays.asList(scheduleId),
+                startTime, endTime, ONE_DAY);
 
             PrintWriter pw = new PrintWriter(outputStream);
 
@@ -1277,4 +1443,227 @@ public class MetricHandlerBean  extends AbstractRestBean  {
             pw.close();
         }
     }
+
+    /**
+     * Writes metric aggregates as JSON or CSV. For lists of schedules, the aggregate of each schedule is only
+     * computed when it is written and then dropped, so the memory needed does not grow with the number of schedules.
+     */
+    private class MetricAggregateStreamingOutput implements StreamingOutput {
+
+        private final MetricAggregate single;
+        private final Subject subject;
+        private final List<MeasurementSchedule> schedules;
+        private final long startTime;
+        private final long endTime;
+        private final boolean includeDataPoints;
+        private final int dataPoints;
+        private final boolean hideEmpty;
+        private final MediaType mediaType;
+
+        MetricAggregateStreamingOutput(MetricAggregate single) {
+            this.single = single;
+            this.subject = null;
+            this.schedules = null;
+            this.startTime = 0;
+            this.endTime = 0;
+            this.includeDataPoints = true;
+            this.dataPoints = 0;
+            this.hideEmpty = false;
+            this.mediaType = TEXT_CSV_TYPE;
+        }
+
+        /**
+         * The subject is passed in as the data is only read once JAX-RS writes the response, which may happen
+         * outside of the call to this bean.
+         */
+        MetricAggregateStreamingOutput(Subject subject, List<MeasurementSchedule> schedules, long startTime,
+            long endTime, boolean includeDataPoints, int dataPoints, boolean hideEmpty, MediaType mediaType) {
+            this.single = null;
+            this.subject = subject;
+            this.schedules = schedules;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.includeDataPoints = includeDataPoints;
+            this.dataPoints = dataPoints;
+            this.hideEmpty = hideEmpty;
+            this.mediaType = mediaType;
+        }
+
+        private MetricAggregate computeAggregate(MeasurementSchedule schedule) {
+            int scheduleId = schedule.getId();
+            MeasurementAggregate aggr = dataManager.getMeasurementAggregate(subject, scheduleId, startTime, endTime);
+            MetricAggregate res = new MetricAggregate(scheduleId, aggr.getMin(), aggr.getAvg(), aggr.getMax());
+
+            if (includeDataPoints) {
+                int definitionId = schedule.getDefinition().getId();
+                List<List<MeasurementDataNumericHighLowComposite>> listList = dataManager.findDataForResource(subject,
+                    schedule.getResource().getId(), new int[] { definitionId }, startTime, endTime, dataPoints);
+                if (!listList.isEmpty()) {
+                    fillInDatapoints(res, listList.get(0), scheduleId, hideEmpty, false);
+                }
+            }
+            return res;
+        }
+
+        private void csvOutput(BufferedWriter writer, MetricAggregate res) throws IOException {
+            if (includeDataPoints) {
+                for (MetricAggregate.DataPoint dp : res.getDataPoints()) {
+                    writer.write(String.valueOf(res.getScheduleId()));
+                    writer.write(',');
+                    writer.write(String.valueOf(dp.getTimeStamp()));
+                    writer.write(',');
+                    writer.write(String.valueOf(dp.getValue()));
+                    writer.write(',');
+                    writer.write(String.valueOf(dp.getHigh()));
+                    writer.write(',');
+                    writer.write(String.valueOf(dp.getLow()));
+                    writer.newLine();
+                }
+            } else {
+                writer.write(String.valueOf(res.getScheduleId()));
+                writer.write(',');
+                writer.write(String.valueOf(res.getMin()));
+                writer.write(',');
+                writer.write(String.valueOf(res.getAvg()));
+                writer.write(',');
+                writer.write(String.valueOf(res.getMax()));
+                writer.newLine();
+            }
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"),
+                STREAMING_BUFFER_SIZE);
+
+            if (mediaType.equals(TEXT_CSV_TYPE)) {
+                writer.write(includeDataPoints ? "#schedule,timestamp,value,high,low" : "#schedule,min,avg,max");
+                writer.newLine();
+                if (single != null) {
+                    csvOutput(writer, single);
+                } else {
+                    for (MeasurementSchedule schedule : schedules) {
+                        csvOutput(writer, computeAggregate(schedule));
+                        writer.flush();
+                    }
+                }
+                writer.flush();
+            } else {
+                ObjectMapper mapper = new ObjectMapper();
+                JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(writer);
+                generator.writeStartArray();
+                for (MeasurementSchedule schedule : schedules) {
+                    mapper.writeValue(generator, computeAggregate(schedule));
+                    generator.flush();
+                }
+                generator.writeEndArray();
+                generator.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the raw or aggregate data of a list of schedules as JSON or CSV while it is read from storage. Only one
+     * page of data and the write buffer are held in memory at any time.
+     */
+    private class MetricExportStreamingOutput implements StreamingOutput {
+
+        private final List<Integer> scheduleIds;
+        private final Bucket bucket;
+        private final long startTime;
+        private final long endTime;
+        private final MediaType mediaType;
+
+        /**
+         * @param bucket the aggregates to export, or <code>null</code> to export the raw data
+         */
+        MetricExportStreamingOutput(List<Integer> scheduleIds, Bucket bucket, long startTime, long endTime,
+            MediaType mediaType) {
+            this.scheduleIds = scheduleIds;
+            this.bucket = bucket;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+            MetricsDAO metricsDAO = sessionManager.getMetricsDAO();
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"),
+                STREAMING_BUFFER_SIZE);
+            boolean csv = mediaType.equals(TEXT_CSV_TYPE);
+
+            if (bucket == null) {
+                // raw data is kept for a few days only, one day per query keeps the pages small
+                Iterable<RawNumericMetric> resultSet = metricsDAO.findRawMetricsPaged(scheduleIds, startTime, endTime,
+                    ONE_DAY);
+                if (csv) {
+                    writer.write("#schedule,timestamp,value");
+                    writer.newLine();
+                    for (RawNumericMetric metric : resultSet) {
+                        writer.write(String.valueOf(metric.getScheduleId()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getTimestamp()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getValue()));
+                        writer.newLine();
+                    }
+                } else {
+                    JsonGenerator generator = new ObjectMapper().getJsonFactory().createJsonGenerator(writer);
+                    generator.writeStartArray();
+                    for (RawNumericMetric metric : resultSet) {
+                        generator.writeStartObject();
+                        generator.writeNumberField("scheduleId", metric.getScheduleId());
+                        generator.writeNumberField("timeStamp", metric.getTimestamp());
+                        writeNumberOrNull(generator, "value", metric.getValue());
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndArray();
+                    generator.flush();
+                }
+            } else {
+                Iterable<AggregateNumericMetric> resultSet = metricsDAO.findAggregateMetricsPaged(scheduleIds, bucket,
+                    startTime, endTime, THIRTY_DAYS);
+                if (csv) {
+                    writer.write("#schedule,timestamp,avg,min,max");
+                    writer.newLine();
+                    for (AggregateNumericMetric metric : resultSet) {
+                        writer.write(String.valueOf(metric.getScheduleId()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getTimestamp()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getAvg()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getMin()));
+                        writer.write(',');
+                        writer.write(String.valueOf(metric.getMax()));
+                        writer.newLine();
+                    }
+                } else {
+                    JsonGenerator generator = new ObjectMapper().getJsonFactory().createJsonGenerator(writer);
+                    generator.writeStartArray();
+                    for (AggregateNumericMetric metric : resultSet) {
+                        generator.writeStartObject();
+                        generator.writeNumberField("scheduleId", metric.getScheduleId());
+                        generator.writeNumberField("timeStamp", metric.getTimestamp());
+                        writeNumberOrNull(generator, "avg", metric.getAvg());
+                        writeNumberOrNull(generator, "min", metric.getMin());
+                        writeNumberOrNull(generator, "max", metric.getMax());
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndArray();
+                    generator.flush();
+                }
+            }
+            writer.flush();
+        }
+
+        private void writeNumberOrNull(JsonGenerator generator, String name, Double value) throws IOException {
+            if (value == null || Double.isNaN(value)) {
+                generator.writeNullField(name);
+            } else {
+                generator.writeNumberField(name, value);
+            }
+        }
+    }
 }
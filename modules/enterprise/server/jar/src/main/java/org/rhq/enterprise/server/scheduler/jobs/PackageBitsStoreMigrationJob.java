@@ -0,0 +1,36 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.scheduler.jobs;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import org.rhq.enterprise.server.content.PackageBitsStore;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Moves package bits still kept in the database into the {@link PackageBitsStore} and deletes stored bits which are no
+ * longer referenced. Does nothing unless a bits store is configured.
+ */
+public class PackageBitsStoreMigrationJob extends AbstractStatefulJob {
+    @Override
+    public void executeJobCode(JobExecutionContext context) throws JobExecutionException {
+        LookupUtil.getContentManager().migratePackageBitsToStore();
+    }
+}
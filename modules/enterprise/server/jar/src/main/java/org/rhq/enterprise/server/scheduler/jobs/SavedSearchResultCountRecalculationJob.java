@@ -18,7 +18,10 @@
  */
 package org.rhq.enterprise.server.scheduler.jobs;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,65 +60,83 @@ public class SavedSearchResultCountRecalculationJob extends AbstractStatefulJob
     public void executeJobCode(JobExecutionContext context) throws JobExecutionException {
         List<SavedSearch> staleSavedSearches = getSavedSearchesNeedingRecomputation();
 
-        int errors = 0;
-        int updated = 0;
-        long totalMillis = 0;
+        // counts are computed as the overlord, so every saved search with the same pattern in the same subsystem
+        // yields the same count; evaluate each distinct pattern only once and share the result
+        Map<String, List<SavedSearch>> savedSearchesByPattern = new LinkedHashMap<String, List<SavedSearch>>();
         for (SavedSearch next : staleSavedSearches) {
             if (next.isGlobal()) {
                 continue;
             }
+            String key = next.getSearchSubsystem() + ":" + next.getPattern().trim();
+            List<SavedSearch> savedSearches = savedSearchesByPattern.get(key);
+            if (savedSearches == null) {
+                savedSearches = new ArrayList<SavedSearch>();
+                savedSearchesByPattern.put(key, savedSearches);
+            }
+            savedSearches.add(next);
+        }
+
+        int errors = 0;
+        int updated = 0;
+        long totalMillis = 0;
+        for (List<SavedSearch> savedSearches : savedSearchesByPattern.values()) {
+            SavedSearch first = savedSearches.get(0);
             try {
 
                 PageList<?> results = null;
 
-                if (next.getSearchSubsystem() == SearchSubsystem.RESOURCE) {
+                if (first.getSearchSubsystem() == SearchSubsystem.RESOURCE) {
                     ResourceCriteria criteria = new ResourceCriteria();
                     criteria.setRestriction(Restriction.COUNT_ONLY);
-                    criteria.setSearchExpression(next.getPattern());
+                    criteria.setSearchExpression(first.getPattern());
 
                     totalMillis -= System.currentTimeMillis();
                     results = resourceManager.findResourcesByCriteria(overlord, criteria);
                     totalMillis += System.currentTimeMillis();
 
-                } else if (next.getSearchSubsystem() == SearchSubsystem.GROUP) {
+                } else if (first.getSearchSubsystem() == SearchSubsystem.GROUP) {
                     ResourceGroupCriteria criteria = new ResourceGroupCriteria();
                     criteria.setRestriction(Restriction.COUNT_ONLY);
-                    criteria.setSearchExpression(next.getPattern());
+                    criteria.setSearchExpression(first.getPattern());
 
                     totalMillis -= System.currentTimeMillis();
                     results = resourceGroupManager.findResourceGroupsByCriteria(overlord, criteria);
                     totalMillis += System.currentTimeMillis();
                 }
 
-                if (results != null && processResults(next, results.getTotalSize())) {
-                    updated++;
+                if (results != null) {
+                    updated += processResults(savedSearches, results.getTotalSize());
                 }
             } catch (Throwable t) {
                 // TODO: mark this saved search as "broken" so that future computation is suppressed for it
-                errors++;
-                LOG.error("Could not calculate result count for SavedSearch[name=" + next.getName() + ", pattern='"
-                    + next.getPattern() + "']: " + t.getMessage());
+                errors += savedSearches.size();
+                LOG.error("Could not calculate result count for " + savedSearches.size() + " SavedSearch(es) [name="
+                    + first.getName() + ", pattern='" + first.getPattern() + "']: " + t.getMessage());
                 LOG.debug(t);
             }
         }
         if (updated > 0) {
             // only print non-zero stats
-            LOG.debug("Statistics: updated " + updated + " in " + totalMillis + " ms (" + errors + " errors)");
+            LOG.debug("Statistics: updated " + updated + " in " + totalMillis + " ms (" + errors + " errors, "
+                + savedSearchesByPattern.size() + " distinct patterns)");
         }
     }
 
-    private boolean processResults(SavedSearch next, long calculatedSize) {
-        boolean countChanged = false;
+    private int processResults(List<SavedSearch> savedSearches, long calculatedSize) {
+        int countChanged = 0;
 
-        if (next.getResultCount() == null || calculatedSize != next.getResultCount()) {
-            LOG.trace("Updated " + next + ", new result count is [" + calculatedSize + "]");
-            next.setResultCount(calculatedSize);
-            countChanged = true;
+        List<Integer> savedSearchIds = new ArrayList<Integer>(savedSearches.size());
+        for (SavedSearch next : savedSearches) {
+            if (next.getResultCount() == null || calculatedSize != next.getResultCount()) {
+                LOG.trace("Updated " + next + ", new result count is [" + calculatedSize + "]");
+                countChanged++;
+            }
+            savedSearchIds.add(next.getId());
         }
 
-        // always set lastComputeTime so we don't check this until the recomputation time period elapses
-        next.setLastComputeTime(System.currentTimeMillis());
-        savedSearchManager.updateSavedSearch(overlord, next);
+        // always set lastComputeTime so we don't check these until the recomputation time period elapses
+        savedSearchManager.updateSavedSearchResultCounts(overlord, savedSearchIds, calculatedSize,
+            System.currentTimeMillis());
 
         return countChanged;
     }
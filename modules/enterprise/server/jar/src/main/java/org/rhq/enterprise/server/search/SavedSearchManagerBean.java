@@ -18,10 +18,13 @@
  */
 package org.rhq.enterprise.server.search;
 
+import java.util.List;
+
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.criteria.SavedSearchCriteria;
@@ -30,6 +33,7 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 
@@ -71,6 +75,26 @@ public class SavedSearchManagerBean implements SavedSearchManagerLocal /* local
         }
     }
 
+    public int updateSavedSearchResultCounts(Subject subject, List<Integer> savedSearchIds, long resultCount,
+        long computeTime) {
+        if (!authorizationManager.isInventoryManager(subject)) {
+            throw new PermissionException("Only inventory managers can update the result counts of saved searches");
+        }
+        if (savedSearchIds == null || savedSearchIds.isEmpty()) {
+            return 0;
+        }
+
+        int updated = 0;
+        Query query = entityManager.createNamedQuery(SavedSearch.QUERY_UPDATE_RESULT_COUNT);
+        query.setParameter("resultCount", resultCount);
+        query.setParameter("lastComputeTime", computeTime);
+        for (List<Integer> batch : new BatchIterator<Integer>(savedSearchIds)) {
+            query.setParameter("savedSearchIds", batch);
+            updated += query.executeUpdate();
+        }
+        return updated;
+    }
+
     /**
      * @see SavedSearchManagerRemote#deleteSavedSearch(Subject, int)
      */
@@ -18,8 +18,12 @@
  */
 package org.rhq.enterprise.server.search;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
+import org.rhq.core.domain.auth.Subject;
+
 /**
  * The local interface to the SavedSearchManager.
  * 
@@ -27,5 +31,18 @@ import javax.ejb.Local;
  */
 @Local
 public interface SavedSearchManagerLocal extends SavedSearchManagerRemote {
-    // there are currently no methods in the local interface that do not exist in the remote interface
+
+    /**
+     * Sets the result count and last compute time of all given saved searches in a single statement. Used by the
+     * periodic recalculation job, which evaluates each distinct pattern only once and then stores the count for every
+     * saved search sharing that pattern.
+     *
+     * @param subject        must be an inventory manager
+     * @param savedSearchIds the saved searches to update
+     * @param resultCount    the freshly computed result count
+     * @param computeTime    the time the count was computed
+     *
+     * @return the number of saved searches that were updated
+     */
+    int updateSavedSearchResultCounts(Subject subject, List<Integer> savedSearchIds, long resultCount, long computeTime);
 }
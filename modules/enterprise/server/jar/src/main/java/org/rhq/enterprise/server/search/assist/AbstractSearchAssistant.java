@@ -23,6 +23,7 @@ import static org.rhq.enterprise.server.search.common.SearchQueryGenerationUtili
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -40,6 +41,36 @@ import org.rhq.enterprise.server.util.LookupUtil;
  */
 public abstract class AbstractSearchAssistant implements SearchAssistant {
 
+    private static final Log LOG = LogFactory.getLog(AbstractSearchAssistant.class);
+
+    /**
+     * The search bars request suggestions on (almost) every keystroke, and many users tend to type the same prefixes,
+     * so the results of the suggestion queries are kept for a short time. The generated JPQL embeds everything the
+     * results depend on (filter, tab, authorization fragment with the subject id), so it serves as the cache key.
+     */
+    private static final long SUGGESTION_CACHE_TTL;
+    private static final int SUGGESTION_CACHE_SIZE = 500;
+
+    static {
+        long cacheTtl = 30000L;
+        try {
+            cacheTtl = Long.parseLong(System.getProperty("rhq.server.search.suggestion-cache-ttl", "30000"));
+        } catch (Throwable t) {
+            LOG.warn("Invalid value for rhq.server.search.suggestion-cache-ttl, using default of " + cacheTtl);
+        }
+        SUGGESTION_CACHE_TTL = cacheTtl;
+    }
+
+    private static final Map<String, CachedSuggestions> SUGGESTION_CACHE = new LinkedHashMap<String, CachedSuggestions>(
+        16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSuggestions> eldest) {
+            return size() > SUGGESTION_CACHE_SIZE;
+        }
+    };
+
     private final Log log = LogFactory.getLog(SearchAssistant.class);
 
     private int subjectId;
@@ -101,10 +132,31 @@ public abstract class AbstractSearchAssistant implements SearchAssistant {
 
     @SuppressWarnings("unchecked")
     protected final List<String> execute(String jpql) {
+        String cacheKey = maxResultCount + ":" + jpql;
+        long now = System.currentTimeMillis();
+        if (SUGGESTION_CACHE_TTL > 0) {
+            synchronized (SUGGESTION_CACHE) {
+                CachedSuggestions cached = SUGGESTION_CACHE.get(cacheKey);
+                if (cached != null) {
+                    if (cached.expiration > now) {
+                        log.debug("Using cached results for JPQL: " + jpql);
+                        return cached.results;
+                    }
+                    SUGGESTION_CACHE.remove(cacheKey);
+                }
+            }
+        }
+
         log.debug("Executing JPQL: " + jpql);
         Query query = LookupUtil.getEntityManager().createQuery(jpql);
         query.setMaxResults(maxResultCount);
-        List<String> results = query.getResultList();
+        List<String> results = Collections.unmodifiableList(new ArrayList<String>(query.getResultList()));
+
+        if (SUGGESTION_CACHE_TTL > 0) {
+            synchronized (SUGGESTION_CACHE) {
+                SUGGESTION_CACHE.put(cacheKey, new CachedSuggestions(results, now + SUGGESTION_CACHE_TTL));
+            }
+        }
         return results;
     }
 
@@ -224,4 +276,14 @@ public abstract class AbstractSearchAssistant implements SearchAssistant {
         }
         return data;
     }
+
+    private static class CachedSuggestions {
+        private final List<String> results;
+        private final long expiration;
+
+        private CachedSuggestions(List<String> results, long expiration) {
+            this.results = results;
+            this.expiration = expiration;
+        }
+    }
 }
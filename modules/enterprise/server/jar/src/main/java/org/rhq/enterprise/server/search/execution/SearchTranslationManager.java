@@ -20,7 +20,10 @@ package org.rhq.enterprise.server.search.execution;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonTokenStream;
@@ -35,6 +38,7 @@ import org.rhq.enterprise.server.search.RHQLParser;
 import org.rhq.enterprise.server.search.antlr.RHQLNodeAdaptor;
 import org.rhq.enterprise.server.search.assist.SearchAssistant;
 import org.rhq.enterprise.server.search.assist.SearchAssistantFactory;
+import org.rhq.enterprise.server.search.translation.AbstractSearchTranslator;
 import org.rhq.enterprise.server.search.translation.SearchTranslator;
 import org.rhq.enterprise.server.search.translation.SearchTranslatorFactory;
 import org.rhq.enterprise.server.search.translation.antlr.RHQLAdvancedTerm;
@@ -51,6 +55,33 @@ public class SearchTranslationManager {
     
     private static final Log LOG = LogFactory.getLog(SearchTranslationManager.class);
 
+    /**
+     * Maximum number of translated where-fragments kept in memory. Saved searches, the result count recalculation job
+     * and the search bars in the portal translate the same handful of expressions over and over again, so the parsed
+     * and translated JPQL is kept around and shared between callers whose translation would be identical.
+     */
+    private static final int TRANSLATION_CACHE_SIZE;
+
+    static {
+        int cacheSize = 1000;
+        try {
+            cacheSize = Integer.parseInt(System.getProperty("rhq.server.search.translation-cache-size", "1000"));
+        } catch (Throwable t) {
+            LOG.warn("Invalid value for rhq.server.search.translation-cache-size, using default of " + cacheSize);
+        }
+        TRANSLATION_CACHE_SIZE = cacheSize;
+    }
+
+    private static final Map<String, String> TRANSLATION_CACHE = Collections
+        .synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > TRANSLATION_CACHE_SIZE;
+            }
+        });
+
     private SearchSubsystem context;
     private String expression;
     private SearchTranslator translator;
@@ -65,6 +96,8 @@ public class SearchTranslationManager {
 
     private Subject subject;
 
+    private boolean cacheable;
+
     public SearchTranslationManager(String alias, Subject subject, SearchSubsystem context) {
         this.subject = subject;
         this.context = context;
@@ -82,7 +115,9 @@ public class SearchTranslationManager {
 
         this.translator = SearchTranslatorFactory.getTranslator(subject, this.context);
         this.assistant = SearchAssistantFactory.getAssistant(subject, this.context);
+    }
 
+    private void createParser() {
         ANTLRStringStream input = new ANTLRStringStream(this.expression); // Create an input character stream from standard in
         this.lexer = new RHQLLexer(input); // Create an echoLexer that feeds from that stream
 
@@ -103,6 +138,18 @@ public class SearchTranslationManager {
     }
 
     public String getJPQLWhereFragment() throws Exception {
+        String cacheKey = getCacheKey();
+        if (TRANSLATION_CACHE_SIZE > 0) {
+            String cached = TRANSLATION_CACHE.get(cacheKey);
+            if (cached != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Using cached translation for search: " + expression);
+                }
+                return cached;
+            }
+        }
+
+        createParser();
         RHQLParser.searchExpression_return searchAST = parser.searchExpression();
         CommonTree searchExpressionTree = searchAST.getTree();
         if (LOG.isDebugEnabled()) {
@@ -111,10 +158,27 @@ public class SearchTranslationManager {
             LOG.debug("Tree was:");
             PrintUtils.print(searchExpressionTree, "");
         }
+        cacheable = true;
         String fragment = generateJPQL(searchExpressionTree);
+        if (fragment != null && cacheable && TRANSLATION_CACHE_SIZE > 0) {
+            TRANSLATION_CACHE.put(cacheKey, fragment);
+        }
         return fragment;
     }
 
+    /**
+     * Translations only differ by user when the translator has to add an authorization fragment; everyone who can see
+     * the entire inventory shares the same entry.
+     */
+    private String getCacheKey() {
+        String authzKey = String.valueOf(subject.getId());
+        if (translator instanceof AbstractSearchTranslator
+            && ((AbstractSearchTranslator) translator).requiresAuthorizationFragment() == false) {
+            authzKey = "*";
+        }
+        return context.name() + ":" + alias + ":" + authzKey + ":" + expression;
+    }
+
     private String generateJPQL(CommonTree tree) {
         StringBuilder builder = new StringBuilder();
         builder.append(" ( ");
@@ -153,6 +217,9 @@ public class SearchTranslationManager {
                 }
 
                 SearchFragment searchFragment = translator.getSearchFragment(alias, advancedTerm);
+                if (searchFragment.isCacheable() == false) {
+                    cacheable = false;
+                }
                 String jpqlFragment = searchFragment.getJPQLFragment();
                 if (searchFragment.getType() == SearchFragment.Type.PRIMARY_KEY_SUBQUERY) {
                     jpqlFragment = " " + alias + ".id IN (" + jpqlFragment + ")";
@@ -84,7 +84,7 @@ public class ResourceSearchTranslator extends AbstractSearchTranslator {
                     + (filter.equalsIgnoreCase("any") ? "" : "   and "
                         + getJPQLForEnum("alertDef.priority", op, filter, AlertPriority.class, false)) //
                     + " GROUP BY res.id " //
-                    + "HAVING COUNT(alert) > 0 ");
+                    + "HAVING COUNT(alert) > 0 ", false); // relative to the current time, never reuse
 
         } else if (path.equals("trait")) {
             return new SearchFragment( //
@@ -62,10 +62,20 @@ public class SearchFragment {
 
     private final Type type;
     private final String jpqlFragment;
+    private final boolean cacheable;
 
     public SearchFragment(Type type, String jpqlFragment) {
+        this(type, jpqlFragment, true);
+    }
+
+    /**
+     * @param cacheable false if the fragment depends on something other than the parsed search term (e.g. the current
+     *                  time), in which case the translation of the enclosing expression must not be reused
+     */
+    public SearchFragment(Type type, String jpqlFragment, boolean cacheable) {
         this.type = type;
         this.jpqlFragment = jpqlFragment;
+        this.cacheable = cacheable;
     }
 
     public Type getType() {
@@ -75,4 +85,8 @@ public class SearchFragment {
     public String getJPQLFragment() {
         return jpqlFragment;
     }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.cloud.AffinityGroup;
+import org.rhq.core.domain.cloud.Server;
+import org.rhq.core.domain.cloud.composite.FailoverListComposite;
+import org.rhq.core.domain.resource.Agent;
+
+/**
+ * Simulates failover list refreshes for different cloud sizes without a database. The existing server lists fed to
+ * the balancer are the results of the previous run, as {@link FailoverListManagerBean} would read them back.
+ */
+@Test
+public class FailoverListBalancerTest {
+
+    public void testBalanceFromScratch() {
+        List<Server> servers = createServers(0, 8);
+        List<Agent> agents = createAgents(2000);
+
+        Map<Agent, FailoverListComposite> result = new FailoverListBalancer(servers, null).balance(agents);
+
+        validateBasic(result, servers.size());
+        validateBalance(result, servers.size(), 0, 0);
+        validateBalance(result, servers.size(), 1, 0);
+        validateBalance(result, servers.size(), 2, 0);
+    }
+
+    public void testUnchangedTopologyKeepsAllServerLists() {
+        List<Server> servers = createServers(0, 8);
+        List<Agent> agents = createAgents(2000);
+
+        Map<Agent, FailoverListComposite> first = new FailoverListBalancer(servers, null).balance(agents);
+        Map<Agent, FailoverListComposite> second = rebalance(servers, agents, first);
+
+        assertEquals(countChangedRows(first, second), 0);
+    }
+
+    public void testRemovedServerMovesOnlyItsAgents() {
+        List<Server> servers = createServers(0, 8);
+        List<Agent> agents = createAgents(2000);
+
+        Map<Agent, FailoverListComposite> first = new FailoverListBalancer(servers, null).balance(agents);
+        Server removed = servers.remove(3);
+        Map<Agent, FailoverListComposite> second = rebalance(servers, agents, first);
+
+        validateBasic(second, servers.size());
+        validateBalance(second, servers.size(), 0, 0);
+
+        int orphans = 0;
+        for (Agent agent : agents) {
+            int firstPrimary = first.get(agent).get(0).serverId;
+            if (firstPrimary == removed.getId()) {
+                ++orphans;
+            } else {
+                assertEquals(second.get(agent).get(0).serverId, firstPrimary, "Primary of " + agent.getName());
+            }
+        }
+        assertEquals(orphans, 250);
+    }
+
+    public void testAddedServerMovesFewAgents() {
+        List<Server> servers = createServers(0, 8);
+        List<Agent> agents = createAgents(2000);
+
+        Map<Agent, FailoverListComposite> first = new FailoverListBalancer(servers, null).balance(agents);
+        servers.addAll(createServers(8, 1));
+        Map<Agent, FailoverListComposite> second = rebalance(servers, agents, first);
+
+        validateBasic(second, servers.size());
+        // the acceptable disparity of the balancer stops moving agents before a perfect balance is reached
+        validateBalance(second, servers.size(), 0, 23);
+
+        int movedPrimaries = 0;
+        for (Agent agent : agents) {
+            if (first.get(agent).get(0).serverId != second.get(agent).get(0).serverId) {
+                ++movedPrimaries;
+            }
+        }
+        assertTrue(movedPrimaries <= (agents.size() / servers.size()) + 1, "Moved primaries: " + movedPrimaries);
+
+        // every agent needs a row for the new server, but most of the existing rows stay as they are
+        int changedRows = countChangedRows(first, second);
+        assertTrue(changedRows < (agents.size() * servers.size()) / 3, "Changed rows: " + changedRows);
+    }
+
+    public void testRebalanceKeepsAffinity() {
+        AffinityGroup affinityGroup = new AffinityGroup("AG-flb");
+        List<Server> servers = createServers(0, 4);
+        servers.get(0).setAffinityGroup(affinityGroup);
+        servers.get(1).setAffinityGroup(affinityGroup);
+        List<Agent> agents = createAgents(200);
+        for (int i = 0; (i < 100); ++i) {
+            agents.get(i).setAffinityGroup(affinityGroup);
+        }
+
+        Map<Agent, FailoverListComposite> first = new FailoverListBalancer(servers, null).balance(agents);
+        servers.addAll(createServers(4, 1));
+        Map<Agent, FailoverListComposite> second = rebalance(servers, agents, first);
+
+        validateBasic(second, servers.size());
+        for (int i = 0; (i < 100); ++i) {
+            FailoverListComposite serverList = second.get(agents.get(i));
+            for (int level = 0; (level < 2); ++level) {
+                assertTrue(serverList.get(level).serverId < 2, "Affinity broken for " + agents.get(i).getName());
+            }
+        }
+    }
+
+    public void testSimulation() {
+        // servers, agents, and the share of the rows a balance from scratch changes that a rebalance may change,
+        // in percent; with few agents every agent needs a new or removed row anyway, so there is little to save
+        int[][] sizes = { { 2, 100, 100 }, { 8, 1000, 50 }, { 8, 10000, 50 } };
+
+        for (int[] size : sizes) {
+            int numServers = size[0];
+            int numAgents = size[1];
+            int maxPercent = size[2];
+            List<Server> servers = createServers(0, numServers);
+            List<Agent> agents = createAgents(numAgents);
+
+            Map<Agent, FailoverListComposite> first = new FailoverListBalancer(servers, null).balance(agents);
+
+            servers.addAll(createServers(numServers, 1));
+            Map<Agent, FailoverListComposite> second = rebalance(servers, agents, first);
+            int changedOnAdd = countChangedRows(first, second);
+            int changedOnAddFromScratch = countChangedRows(first,
+                new FailoverListBalancer(servers, null).balance(agents));
+
+            servers.remove(0);
+            Map<Agent, FailoverListComposite> third = rebalance(servers, agents, second);
+            int changedOnRemove = countChangedRows(second, third);
+            int changedOnRemoveFromScratch = countChangedRows(second,
+                new FailoverListBalancer(servers, null).balance(agents));
+
+            validateBasic(third, servers.size());
+            String simulation = numServers + " servers, " + numAgents + " agents: ";
+            assertTrue(changedOnAdd * 100L <= changedOnAddFromScratch * (long) maxPercent, simulation + changedOnAdd
+                + " rows changed on add, " + changedOnAddFromScratch + " from scratch");
+            assertTrue(changedOnRemove * 100L <= changedOnRemoveFromScratch * (long) maxPercent, simulation
+                + changedOnRemove + " rows changed on remove, " + changedOnRemoveFromScratch + " from scratch");
+        }
+    }
+
+    private Map<Agent, FailoverListComposite> rebalance(List<Server> servers, List<Agent> agents,
+        Map<Agent, FailoverListComposite> previous) {
+        Map<Integer, List<Integer>> existingServerLists = new HashMap<Integer, List<Integer>>();
+        for (Map.Entry<Agent, FailoverListComposite> entry : previous.entrySet()) {
+            List<Integer> serverIds = new ArrayList<Integer>();
+            for (int i = 0; (i < entry.getValue().size()); ++i) {
+                serverIds.add(entry.getValue().get(i).serverId);
+            }
+            existingServerLists.put(entry.getKey().getId(), serverIds);
+        }
+
+        FailoverListBalancer balancer = new FailoverListBalancer(servers, null);
+        balancer.setExistingServerLists(existingServerLists);
+        return balancer.balance(agents);
+    }
+
+    /**
+     * @return the number of server list rows to update, insert or delete to go from one result to the other
+     */
+    private int countChangedRows(Map<Agent, FailoverListComposite> before, Map<Agent, FailoverListComposite> after) {
+        int changed = 0;
+        for (Agent agent : before.keySet()) {
+            FailoverListComposite beforeList = before.get(agent);
+            FailoverListComposite afterList = after.get(agent);
+            for (int i = 0, size = Math.max(beforeList.size(), afterList.size()); (i < size); ++i) {
+                if ((i >= beforeList.size()) || (i >= afterList.size())
+                    || (beforeList.get(i).serverId != afterList.get(i).serverId)) {
+                    ++changed;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void validateBasic(Map<Agent, FailoverListComposite> result, int numServers) {
+        for (FailoverListComposite serverList : result.values()) {
+            assertEquals(serverList.size(), numServers);
+            Set<Integer> serverIds = new HashSet<Integer>(numServers);
+            for (int i = 0; (i < numServers); ++i) {
+                assertTrue(serverIds.add(serverList.get(i).serverId), "Duplicate server in " + serverList);
+            }
+        }
+    }
+
+    private void validateBalance(Map<Agent, FailoverListComposite> result, int numServers, int level, int skew) {
+        Map<Integer, Integer> distributionMap = new HashMap<Integer, Integer>(numServers);
+        for (FailoverListComposite serverList : result.values()) {
+            int serverId = serverList.get(level).serverId;
+            Integer count = distributionMap.get(serverId);
+            distributionMap.put(serverId, (null == count) ? 1 : ++count);
+        }
+
+        double div = (double) result.size() / (double) numServers;
+        int ceil = (int) Math.ceil(div) + skew;
+        int floor = (int) Math.floor(div) - skew;
+        assertEquals(distributionMap.size(), numServers);
+        for (Integer agentsOnServer : distributionMap.values()) {
+            assertTrue(agentsOnServer <= ceil, "AgentsOnServer [" + agentsOnServer + "] > ceiling [" + ceil
+                + "] (level " + level + ")");
+            assertTrue(agentsOnServer >= floor, "AgentsOnServer [" + agentsOnServer + "] < floor [" + floor
+                + "] (level " + level + ")");
+        }
+    }
+
+    private List<Server> createServers(int firstId, int count) {
+        List<Server> servers = new ArrayList<Server>(count);
+        for (int i = firstId; (i < firstId + count); ++i) {
+            Server server = new Server();
+            server.setId(i);
+            server.setName("Server-flb-" + i);
+            server.setAddress("" + i);
+            server.setPort(i);
+            server.setSecurePort(i);
+            servers.add(server);
+        }
+        return servers;
+    }
+
+    private List<Agent> createAgents(int count) {
+        List<Agent> agents = new ArrayList<Agent>(count);
+        for (int i = 0; (i < count); ++i) {
+            Agent agent = new Agent("Agent-flb-" + i, "" + i, 1, "endpoint", "token" + i);
+            agent.setId(i);
+            agents.add(agent);
+        }
+        return agents;
+    }
+}
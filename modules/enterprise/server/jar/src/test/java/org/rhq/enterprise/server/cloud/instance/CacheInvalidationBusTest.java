@@ -0,0 +1,55 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.cloud.instance;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class CacheInvalidationBusTest {
+
+    public void testDisabledWithoutToken() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(null);
+        assertFalse(bus.isEnabled());
+        assertFalse(bus.isAuthentic(null));
+        assertFalse(bus.isAuthentic(""));
+
+        assertFalse(new CacheInvalidationBus("  ").isEnabled());
+    }
+
+    public void testOnlyTheCloudTokenIsAuthentic() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(" secret ");
+        assertTrue(bus.isEnabled());
+        assertTrue(bus.isAuthentic("secret"));
+        assertFalse(bus.isAuthentic("secret2"));
+        assertFalse(bus.isAuthentic("Secret"));
+        assertFalse(bus.isAuthentic(null));
+    }
+
+    public void testEventTypesAffectTheRightCaches() {
+        assertTrue(CacheInvalidationEvent.Type.GLOBAL.isGlobalCacheAffected());
+        assertFalse(CacheInvalidationEvent.Type.GLOBAL.isAgentCacheAffected());
+        assertFalse(CacheInvalidationEvent.Type.AGENT.isGlobalCacheAffected());
+        assertTrue(CacheInvalidationEvent.Type.AGENT.isAgentCacheAffected());
+        assertTrue(CacheInvalidationEvent.Type.ALERT_DEFINITION.isGlobalCacheAffected());
+        assertTrue(CacheInvalidationEvent.Type.ALERT_DEFINITION.isAgentCacheAffected());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.content;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+
+@Test
+public class PackageBitsStoreTest {
+
+    private File storeDir;
+    private PackageBitsStore store;
+
+    @BeforeMethod
+    public void createStore() throws Exception {
+        storeDir = FileUtil.createTempDirectory("bits-store", null, null);
+        store = new PackageBitsStore(storeDir);
+    }
+
+    @AfterMethod
+    public void deleteStore() {
+        FileUtil.purge(storeDir, true);
+    }
+
+    public void testStoreIsContentAddressed() throws Exception {
+        byte[] bits = "the package bits".getBytes();
+        String expected = new MessageDigestGenerator(MessageDigestGenerator.SHA_256).calcDigestString(bits);
+
+        Map<String, String> contentDetails = new HashMap<String, String>();
+        String sha256 = store.store(new ByteArrayInputStream(bits), contentDetails);
+        assertEquals(sha256, expected);
+        assertEquals(contentDetails.get(ContentManagerLocal.UPLOAD_SHA256), expected);
+        assertEquals(contentDetails.get(ContentManagerLocal.UPLOAD_FILE_SIZE), String.valueOf(bits.length));
+
+        // storing the same bits again must not create another file
+        assertEquals(store.store(new ByteArrayInputStream(bits), null), sha256);
+        assertEquals(countFiles(storeDir), 1);
+        assertEquals(store.getBytes(sha256), bits);
+    }
+
+    public void testCopyRanges() throws Exception {
+        byte[] bits = "0123456789".getBytes();
+        String sha256 = store.store(new ByteArrayInputStream(bits), null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(store.copy(sha256, out, 0L, -1L), 10L);
+        assertEquals(out.toString(), "0123456789");
+
+        out = new ByteArrayOutputStream();
+        assertEquals(store.copy(sha256, out, 2L, 5L), 4L);
+        assertEquals(out.toString(), "2345");
+
+        out = new ByteArrayOutputStream();
+        assertEquals(store.copy(sha256, out, 7L, -1L), 3L);
+        assertEquals(out.toString(), "789");
+
+        out = new ByteArrayOutputStream();
+        assertEquals(store.copy(sha256, out, 8L, 100L), 2L);
+        assertEquals(out.toString(), "89");
+    }
+
+    public void testReferences() throws Exception {
+        String sha256 = store.store(new ByteArrayInputStream("bits".getBytes()), null);
+        byte[] reference = PackageBitsStore.createReference(sha256);
+        assertEquals(PackageBitsStore.getReference(reference), sha256);
+
+        assertNull(PackageBitsStore.getReference("bits".getBytes()));
+        assertNull(PackageBitsStore.getReference(new byte[reference.length]));
+        assertNull(PackageBitsStore.getReference((byte[]) null));
+    }
+
+    public void testPurgeUnreferenced() throws Exception {
+        String kept = store.store(new ByteArrayInputStream("kept".getBytes()), null);
+        String doomed = store.store(new ByteArrayInputStream("doomed".getBytes()), null);
+
+        // within the grace period nothing is deleted
+        assertEquals(store.purgeUnreferenced(Collections.singleton(kept), 1000L * 60), 0);
+        assertTrue(store.getFile(doomed).exists());
+
+        assertEquals(store.purgeUnreferenced(Collections.singleton(kept), -1000L), 1);
+        assertTrue(store.getFile(kept).exists());
+        assertFalse(store.getFile(doomed).exists());
+    }
+
+    public void testDuplicateUploadProtectsBitsFromPurge() throws Exception {
+        byte[] bits = "orphan".getBytes();
+        String sha256 = store.store(new ByteArrayInputStream(bits), null);
+        File file = store.getFile(sha256);
+        // an old orphan, e.g. left behind by a deleted package version
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 1000L * 60 * 60 * 24));
+
+        // a new upload of the same bits, its reference is not committed yet
+        assertEquals(store.store(new ByteArrayInputStream(bits), null), sha256);
+        assertEquals(store.purgeUnreferenced(Collections.<String> emptySet(), 1000L * 60 * 60), 0);
+        assertTrue(file.exists());
+    }
+
+    public void testDuplicateOfPurgedBitsIsStoredAgain() throws Exception {
+        byte[] bits = "purged".getBytes();
+        String sha256 = store.store(new ByteArrayInputStream(bits), null);
+        assertEquals(store.purgeUnreferenced(Collections.<String> emptySet(), -1000L), 1);
+
+        assertEquals(store.store(new ByteArrayInputStream(bits), null), sha256);
+        assertEquals(store.getBytes(sha256), bits);
+    }
+
+    public void testDuplicateUploadRacingPurgeKeepsBits() throws Exception {
+        final byte[] bits = "racing".getBytes();
+        PackageBitsStore racingStore = new PackageBitsStore(storeDir) {
+            @Override
+            boolean moveToPurged(File file, File purged) {
+                // the duplicate is stored after the purge found the file unreferenced, but before it is moved
+                storeQuietly(this, bits);
+                return super.moveToPurged(file, purged);
+            }
+        };
+        String sha256 = racingStore.store(new ByteArrayInputStream(bits), null);
+        File file = racingStore.getFile(sha256);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 1000L * 60 * 60 * 24));
+
+        assertEquals(racingStore.purgeUnreferenced(Collections.<String> emptySet(), 1000L * 60 * 60), 0);
+        assertTrue(file.exists());
+        assertEquals(racingStore.getBytes(sha256), bits);
+        assertEquals(countFiles(storeDir), 1);
+    }
+
+    public void testDuplicateUploadAfterPurgeMovedBitsStoresThemAgain() throws Exception {
+        final byte[] bits = "moved".getBytes();
+        PackageBitsStore racingStore = new PackageBitsStore(storeDir) {
+            @Override
+            boolean moveToPurged(File file, File purged) {
+                boolean moved = super.moveToPurged(file, purged);
+                storeQuietly(this, bits);
+                return moved;
+            }
+        };
+        String sha256 = racingStore.store(new ByteArrayInputStream(bits), null);
+        File file = racingStore.getFile(sha256);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 1000L * 60 * 60 * 24));
+
+        // the old file is deleted, the bits of the new upload are kept
+        assertEquals(racingStore.purgeUnreferenced(Collections.<String> emptySet(), 1000L * 60 * 60), 1);
+        assertTrue(file.exists());
+        assertEquals(racingStore.getBytes(sha256), bits);
+        assertEquals(countFiles(storeDir), 1);
+    }
+
+    private static void storeQuietly(PackageBitsStore store, byte[] bits) {
+        try {
+            store.store(new ByteArrayInputStream(bits), null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int countFiles(File dir) {
+        int count = 0;
+        for (File file : dir.listFiles()) {
+            count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+}
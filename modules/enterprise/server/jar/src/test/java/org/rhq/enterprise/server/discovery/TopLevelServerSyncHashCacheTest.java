@@ -0,0 +1,69 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.discovery;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+@Test
+public class TopLevelServerSyncHashCacheTest {
+
+    public void testHashesAreServedWhileTheFingerprintHolds() {
+        TopLevelServerSyncHashCache cache = new TopLevelServerSyncHashCache();
+        Set<Integer> serverIds = new HashSet<Integer>(Arrays.asList(10, 20));
+        Map<Integer, String> hashes = new HashMap<Integer, String>();
+        hashes.put(10, "a");
+        hashes.put(20, "b");
+
+        assertNull(cache.get(1, "COMMITTED:3:1000;", serverIds));
+        cache.put(1, "COMMITTED:3:1000;", serverIds, hashes);
+        assertEquals(cache.get(1, "COMMITTED:3:1000;", serverIds), hashes);
+
+        // changing the returned copy does not change the cache
+        cache.get(1, "COMMITTED:3:1000;", serverIds).clear();
+        assertEquals(cache.get(1, "COMMITTED:3:1000;", serverIds), hashes);
+
+        // other agents are not served
+        assertNull(cache.get(2, "COMMITTED:3:1000;", serverIds));
+    }
+
+    public void testChangesInvalidateTheHashes() {
+        TopLevelServerSyncHashCache cache = new TopLevelServerSyncHashCache();
+        Set<Integer> serverIds = new HashSet<Integer>(Arrays.asList(10, 20));
+        Map<Integer, String> hashes = new HashMap<Integer, String>();
+        hashes.put(10, "a");
+        hashes.put(20, "b");
+        cache.put(1, "COMMITTED:3:1000;", serverIds, hashes);
+
+        // a newer mtime, or a resource changing its status
+        assertNull(cache.get(1, "COMMITTED:3:2000;", serverIds));
+        assertNull(cache.get(1, "COMMITTED:2:1000;UNINVENTORIED:1:1000;", serverIds));
+        // a different set of top level servers
+        assertNull(cache.get(1, "COMMITTED:3:1000;", new HashSet<Integer>(Arrays.asList(10))));
+    }
+}
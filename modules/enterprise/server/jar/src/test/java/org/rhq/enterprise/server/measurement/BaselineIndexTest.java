@@ -0,0 +1,59 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class BaselineIndexTest {
+
+    public void testLookup() {
+        BaselineIndex index = new BaselineIndex(0);
+        // sparse ids, enough of them to grow the arrays a few times
+        for (int i = 0; i < 1000; ++i) {
+            index.add(10001 + i * 7, i, i + 0.5);
+        }
+        assertEquals(index.size(), 1000);
+
+        int position = index.indexOf(10001 + 500 * 7);
+        assertTrue(position >= 0);
+        assertEquals(index.getMin(position), 500.0);
+        assertEquals(index.getMax(position), 500.5);
+
+        assertTrue(index.indexOf(10001) >= 0);
+        assertTrue(index.indexOf(10001 + 999 * 7) >= 0);
+        assertTrue(index.indexOf(10002) < 0);
+        assertTrue(index.indexOf(1) < 0);
+        assertTrue(index.indexOf(Integer.MAX_VALUE) < 0);
+    }
+
+    public void testEmpty() {
+        assertTrue(new BaselineIndex(0).indexOf(10001) < 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIdsMustAscend() {
+        BaselineIndex index = new BaselineIndex(0);
+        index.add(10002, 1.0, 2.0);
+        index.add(10001, 1.0, 2.0);
+    }
+}
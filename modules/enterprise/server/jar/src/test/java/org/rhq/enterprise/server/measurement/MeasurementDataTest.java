@@ -20,10 +20,8 @@
 package org.rhq.enterprise.server.measurement;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -51,19 +49,9 @@ public class MeasurementDataTest {
         data.add(m5);
         data.add(m6);
         data.add(m7);
-        Set<MeasurementData> insertedData = new TreeSet<MeasurementData>(new Comparator<MeasurementData>() {
-            @Override
-            public int compare(MeasurementData d1, MeasurementData d2) {
-                int c = Integer.compare(d1.getScheduleId(), d2.getScheduleId());
-                if (c != 0) {
-                    return c;
-                }
-                return Long.compare(d1.getTimestamp(), d2.getTimestamp());
-            }
-        });
-        insertedData.addAll(data);
-        Assert.assertEquals(insertedData.size(), 6, data.toString());
-        Iterator<MeasurementData> i = insertedData.iterator();
+        MeasurementData[] insertedData = MeasurementDataManagerBean.sortBySchedule(data);
+        Assert.assertEquals(insertedData.length, 6, data.toString());
+        Iterator<MeasurementData> i = Arrays.asList(insertedData).iterator();
         MeasurementData d1 = i.next();
         MeasurementData d2 = i.next();
         MeasurementData d3 = i.next();
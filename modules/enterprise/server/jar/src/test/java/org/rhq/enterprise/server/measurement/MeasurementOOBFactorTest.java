@@ -0,0 +1,64 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.rhq.enterprise.server.measurement.MeasurementOOBManagerBean.NO_OOB;
+import static org.rhq.enterprise.server.measurement.MeasurementOOBManagerBean.computeOOBFactor;
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+@Test
+public class MeasurementOOBFactorTest {
+
+    public void testWithinBaseline() {
+        assertEquals(computeOOBFactor(15.0, 11.0, 19.0, 10.0, 20.0), NO_OOB);
+        assertEquals(computeOOBFactor(15.0, 10.0, 20.0, 10.0, 20.0), NO_OOB);
+    }
+
+    public void testPastUpperBound() {
+        assertEquals(computeOOBFactor(25.0, 15.0, 30.0, 10.0, 20.0), 100);
+        // barely past the bound still is an OOB
+        assertEquals(computeOOBFactor(20.02, 15.0, 20.04, 10.0, 20.0), 0);
+    }
+
+    public void testPastLowerBound() {
+        assertEquals(computeOOBFactor(12.0, 5.0, 18.0, 10.0, 20.0), 50);
+    }
+
+    public void testPastBothBounds() {
+        // the side the average is on wins
+        assertEquals(computeOOBFactor(15.0, 5.0, 40.0, 10.0, 20.0), 50);
+        assertEquals(computeOOBFactor(25.0, 5.0, 40.0, 10.0, 20.0), 200);
+    }
+
+    public void testNarrowBaseline() {
+        assertEquals(computeOOBFactor(20.0, 5.0, 30.0, 10.0, 10.0), NO_OOB);
+        assertEquals(computeOOBFactor(20.0, 5.0, 30.0, 10.0, 10.05), NO_OOB);
+        assertEquals(computeOOBFactor(20.0, 5.0, 30.0, 10.0, 10.0 - 1.0), NO_OOB);
+    }
+
+    public void testNaN() {
+        assertEquals(computeOOBFactor(Double.NaN, 5.0, 30.0, 10.0, 20.0), NO_OOB);
+        assertEquals(computeOOBFactor(25.0, 15.0, Double.NaN, 10.0, 20.0), NO_OOB);
+        assertEquals(computeOOBFactor(12.0, Double.NaN, 18.0, 10.0, 20.0), NO_OOB);
+        assertEquals(computeOOBFactor(25.0, 5.0, 30.0, Double.NaN, 20.0), NO_OOB);
+        assertEquals(computeOOBFactor(25.0, 5.0, 30.0, 10.0, Double.NaN), NO_OOB);
+    }
+}
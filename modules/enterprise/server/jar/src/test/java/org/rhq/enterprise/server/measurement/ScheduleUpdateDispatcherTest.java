@@ -0,0 +1,159 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.ResourceMeasurementScheduleRequest;
+
+@Test
+public class ScheduleUpdateDispatcherTest {
+
+    public void testConcurrencyIsBounded() throws Exception {
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("test", 4, 1, 0L);
+        for (int i = 0; i < 60; ++i) {
+            dispatcher.add(i % 20, new ResourceMeasurementScheduleRequest(i));
+        }
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Map<Integer, Integer> sent = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+
+        Set<Integer> failed = dispatcher.dispatch(new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) throws Exception {
+                int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                Thread.sleep(10);
+                sent.put(agentId, requests.size());
+                inFlight.decrementAndGet();
+                return true;
+            }
+        });
+
+        assertTrue(failed.isEmpty());
+        assertEquals(sent.size(), 20);
+        for (Integer size : sent.values()) {
+            assertEquals(size.intValue(), 3, "all the requests of an agent should be sent at once");
+        }
+        assertTrue(maxInFlight.get() <= 4, "too many concurrent updates: " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "updates were not sent concurrently");
+    }
+
+    public void testAgentsThatAreDownAreRetried() throws Exception {
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("test", 2, 3, 20L);
+        dispatcher.add(1, new ResourceMeasurementScheduleRequest(10));
+        dispatcher.add(2, new ResourceMeasurementScheduleRequest(20));
+        dispatcher.add(3, new ResourceMeasurementScheduleRequest(30));
+
+        final Map<Integer, AtomicInteger> attempts = new HashMap<Integer, AtomicInteger>();
+        for (int agentId = 1; agentId <= 3; ++agentId) {
+            attempts.put(agentId, new AtomicInteger());
+        }
+
+        Set<Integer> failed = dispatcher.dispatch(new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) {
+                int attempt = attempts.get(agentId).incrementAndGet();
+                switch (agentId) {
+                case 1:
+                    return true; // up
+                case 2:
+                    return attempt == 2; // comes back up in time
+                default:
+                    return false; // stays down
+                }
+            }
+        });
+
+        assertEquals(failed, new HashSet<Integer>(Collections.singleton(3)));
+        assertEquals(attempts.get(1).get(), 1);
+        assertEquals(attempts.get(2).get(), 2);
+        assertEquals(attempts.get(3).get(), 3);
+    }
+
+    public void testErrorsAreNotRetried() throws Exception {
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("test", 2, 3, 0L);
+        dispatcher.add(1, new ResourceMeasurementScheduleRequest(10));
+        dispatcher.add(2, new ResourceMeasurementScheduleRequest(20));
+
+        final AtomicInteger attempts = new AtomicInteger();
+        Set<Integer> failed = dispatcher.dispatch(new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) {
+                if (agentId == 2) {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("boom");
+                }
+                return true;
+            }
+        });
+
+        assertEquals(failed, new HashSet<Integer>(Collections.singleton(2)));
+        assertEquals(attempts.get(), 1);
+    }
+
+    public void testBackgroundDispatchReportsUpdatedAgents() throws Exception {
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("test", 2, 1, 0L);
+        dispatcher.add(1, new ResourceMeasurementScheduleRequest(10));
+        dispatcher.add(2, new ResourceMeasurementScheduleRequest(20));
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch handled = new CountDownLatch(1);
+        final Set<Integer> updated = Collections.synchronizedSet(new HashSet<Integer>());
+        dispatcher.dispatchInBackground(new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) throws Exception {
+                release.await(10, TimeUnit.SECONDS);
+                return agentId == 1;
+            }
+        }, new ScheduleUpdateDispatcher.SuccessHandler() {
+            public void updated(Set<Integer> agentIds) {
+                updated.addAll(agentIds);
+                handled.countDown();
+            }
+        });
+
+        // the caller does not wait for the agents
+        assertTrue(updated.isEmpty());
+        release.countDown();
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        assertEquals(updated, new HashSet<Integer>(Collections.singleton(1)));
+    }
+
+    public void testNothingToDispatch() throws Exception {
+        ScheduleUpdateDispatcher dispatcher = new ScheduleUpdateDispatcher("test", 2, 3, 0L);
+        Set<Integer> failed = dispatcher.dispatch(new ScheduleUpdateDispatcher.Sender() {
+            public boolean send(int agentId, Set<ResourceMeasurementScheduleRequest> requests) {
+                throw new AssertionError("no agent should be contacted");
+            }
+        });
+        assertTrue(failed.isEmpty());
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.operation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.enterprise.server.operation.GroupOperationDispatcher.DispatchResult;
+
+@Test
+public class GroupOperationDispatcherTest {
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testConcurrencyIsBoundedPerAgentAndGlobally() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(6, 2);
+        for (int i = 0; i < 40; ++i) {
+            dispatcher.add(i % 5, i);
+        }
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Map<Integer, AtomicInteger> agentInFlight = new HashMap<Integer, AtomicInteger>();
+        final Map<Integer, Integer> agentMaxInFlight = Collections.synchronizedMap(new HashMap<Integer, Integer>());
+        for (int agent = 0; agent < 5; ++agent) {
+            agentInFlight.put(agent, new AtomicInteger());
+            agentMaxInFlight.put(agent, 0);
+        }
+
+        DispatchResult<Integer> result = dispatcher.dispatch(new AsyncInvoker() {
+            void run(Integer item) throws Exception {
+                int agent = item % 5;
+                int global = inFlight.incrementAndGet();
+                int perAgent = agentInFlight.get(agent).incrementAndGet();
+                synchronized (agentMaxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), global));
+                    agentMaxInFlight.put(agent, Math.max(agentMaxInFlight.get(agent), perAgent));
+                }
+                Thread.sleep(10);
+                agentInFlight.get(agent).decrementAndGet();
+                inFlight.decrementAndGet();
+            }
+        }, false);
+
+        assertEquals(result.getLatencies().size(), 40);
+        assertTrue(result.getFailures().isEmpty());
+        assertTrue(result.getSkipped().isEmpty());
+        assertEquals(dispatcher.getAgentCount(), 5);
+        assertTrue(maxInFlight.get() <= 6, "too many concurrent invocations: " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "invocations were not sent concurrently");
+        for (Integer max : agentMaxInFlight.values()) {
+            assertTrue(max <= 2, "too many concurrent invocations for one agent: " + max);
+        }
+    }
+
+    public void testInvocationsForAnAgentKeepTheirOrder() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(4, 1);
+        for (int i = 0; i < 20; ++i) {
+            dispatcher.add(i % 2 == 0 ? Integer.valueOf(1) : null, i);
+        }
+
+        final List<Integer> even = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> odd = Collections.synchronizedList(new ArrayList<Integer>());
+        dispatcher.dispatch(new AsyncInvoker() {
+            void run(Integer item) throws Exception {
+                (item % 2 == 0 ? even : odd).add(item);
+            }
+        }, false);
+
+        for (int i = 1; i < 10; ++i) {
+            assertTrue(even.get(i - 1) < even.get(i), "out of order: " + even);
+            assertTrue(odd.get(i - 1) < odd.get(i), "out of order: " + odd);
+        }
+    }
+
+    public void testHaltOnFailureSkipsRemainingInvocations() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(1, 1);
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.add(1, i);
+        }
+
+        DispatchResult<Integer> result = dispatcher.dispatch(new AsyncInvoker() {
+            void run(Integer item) throws Exception {
+                if (item == 3) {
+                    throw new Exception("failed to send");
+                }
+            }
+        }, true);
+
+        assertEquals(result.getLatencies().size(), 4);
+        assertEquals(result.getFailures().keySet().iterator().next(), Integer.valueOf(3));
+        assertEquals(result.getHaltCause().getMessage(), "failed to send");
+        assertEquals(result.getSkipped(), Arrays.asList(4, 5, 6, 7, 8, 9));
+    }
+
+    public void testCancelJobExceptionHaltsWithoutHaltOnFailure() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(1, 1);
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.add(1, i);
+        }
+
+        DispatchResult<Integer> result = dispatcher.dispatch(new AsyncInvoker() {
+            void run(Integer item) throws Exception {
+                if (item == 1) {
+                    throw new Exception("failed to send");
+                }
+                if (item == 5) {
+                    throw new CancelJobException("resource is gone");
+                }
+            }
+        }, false);
+
+        assertEquals(result.getLatencies().size(), 6);
+        assertEquals(result.getFailures().size(), 2);
+        assertTrue(result.getHaltCause() instanceof CancelJobException, "wrong halt cause: " + result.getHaltCause());
+        assertEquals(result.getSkipped(), Arrays.asList(6, 7, 8, 9));
+    }
+
+    public void testFailureToStartAnInvocationIsRecorded() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(2, 1);
+        for (int i = 0; i < 4; ++i) {
+            dispatcher.add(i % 2, i);
+        }
+
+        DispatchResult<Integer> result = dispatcher.dispatch(new GroupOperationDispatcher.Invoker<Integer>() {
+            public Future<?> invoke(Integer item) throws Exception {
+                if (item == 2) {
+                    throw new Exception("could not start");
+                }
+                return executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        return null;
+                    }
+                });
+            }
+        }, false);
+
+        assertEquals(result.getLatencies().size(), 4);
+        assertEquals(result.getFailures().keySet(), Collections.singleton(2));
+        assertTrue(result.getSkipped().isEmpty());
+        assertNull(result.getHaltCause());
+    }
+
+    public void testFailureWithoutHaltKeepsDispatching() throws Exception {
+        GroupOperationDispatcher<Integer> dispatcher = new GroupOperationDispatcher<Integer>(2, 1);
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.add(i % 2, i);
+        }
+
+        DispatchResult<Integer> result = dispatcher.dispatch(new AsyncInvoker() {
+            void run(Integer item) throws Exception {
+                if (item == 3) {
+                    throw new Exception("failed to send");
+                }
+            }
+        }, false);
+
+        assertEquals(result.getLatencies().size(), 10);
+        assertEquals(result.getFailures().size(), 1);
+        assertTrue(result.getSkipped().isEmpty());
+    }
+
+    /**
+     * Runs the invocations on a thread pool, the way the container runs the asynchronous EJB invocations.
+     */
+    private abstract class AsyncInvoker implements GroupOperationDispatcher.Invoker<Integer> {
+        public Future<?> invoke(final Integer item) {
+            return executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    run(item);
+                    return null;
+                }
+            });
+        }
+
+        abstract void run(Integer item) throws Exception;
+    }
+}
@@ -48,6 +48,7 @@ import org.rhq.server.metrics.domain.ListPagedResult;
 import org.rhq.server.metrics.domain.MetricsTable;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 import org.rhq.server.metrics.domain.RawNumericMetricMapper;
+import org.rhq.server.metrics.domain.TimeSlicedPagedResult;
 
 
 /**
@@ -218,6 +219,37 @@ public class MetricsDAO {
             new RawNumericMetricMapper(), storageSession);
     }
 
+    /**
+     * Finds the raw data of the schedules, one time slice of one schedule at a time. Use this instead of
+     * {@link #findRawMetrics(int, long, long)} when the results may be too big to hold in memory at once.
+     *
+     * @param scheduleIds the schedules, the results are ordered by schedule in this order and then by time
+     * @param startTime start of the time range (inclusive)
+     * @param endTime end of the time range (exclusive)
+     * @param sliceDuration how much of the time range is queried at once, in milliseconds
+     */
+    public Iterable<RawNumericMetric> findRawMetricsPaged(List<Integer> scheduleIds, long startTime, long endTime,
+        long sliceDuration) {
+        return new TimeSlicedPagedResult<RawNumericMetric>(rawMetricsQuery, null, scheduleIds, startTime, endTime,
+            sliceDuration, new RawNumericMetricMapper(), storageSession);
+    }
+
+    /**
+     * Finds the aggregate data of the schedules, one time slice of one schedule at a time. Use this instead of
+     * {@link #findAggregateMetrics(int, Bucket, long, long)} when the results may be too big to hold in memory at once.
+     *
+     * @param scheduleIds the schedules, the results are ordered by schedule in this order and then by time
+     * @param bucket the aggregate bucket
+     * @param startTime start of the time range (inclusive)
+     * @param endTime end of the time range (exclusive)
+     * @param sliceDuration how much of the time range is queried at once, in milliseconds
+     */
+    public Iterable<AggregateNumericMetric> findAggregateMetricsPaged(List<Integer> scheduleIds, Bucket bucket,
+        long startTime, long endTime, long sliceDuration) {
+        return new TimeSlicedPagedResult<AggregateNumericMetric>(findAggregateMetricsByDateRange, bucket, scheduleIds,
+            startTime, endTime, sliceDuration, new AggregateNumericMetricMapper(), storageSession);
+    }
+
     public List<AggregateNumericMetric> findAggregateMetrics(int scheduleId, Bucket bucket, long startTime,
         long endTime) {
         BoundStatement statement = findAggregateMetricsByDateRange.bind(scheduleId, bucket.toString(),
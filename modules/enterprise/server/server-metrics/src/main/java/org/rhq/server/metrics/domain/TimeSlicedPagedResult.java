@@ -0,0 +1,133 @@
+/*
+ *
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ */
+
+package org.rhq.server.metrics.domain;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+
+import org.rhq.server.metrics.CQLException;
+import org.rhq.server.metrics.StorageSession;
+
+/**
+ * This class helps paginate Cassandra results over long time ranges. Instead of running a single big query per
+ * schedule, this class splits the time range into slices and runs one query for every slice of every schedule in the
+ * list, so that at most one slice of results is held in memory at a time.
+ *
+ * <p>The prepared statement must take the schedule id, optionally the bucket, and the start (inclusive) and end
+ * (exclusive) of the slice as its bound values, in that order.</p>
+ */
+public class TimeSlicedPagedResult<T extends NumericMetric> implements Iterable<T> {
+
+    private final List<Integer> scheduleIds;
+    private final String bucket;
+    private final long startTime;
+    private final long endTime;
+    private final long sliceDuration;
+    private final ResultSetMapper<T> mapper;
+    private final StorageSession session;
+
+    private final PreparedStatement preparedStatement;
+
+    /**
+     * @param preparedStatement the query for one slice of one schedule
+     * @param bucket the bucket to bind after the schedule id, or <code>null</code> if the query takes no bucket
+     * @param scheduleIds the schedules to query, in order
+     * @param startTime start of the time range (inclusive)
+     * @param endTime end of the time range (exclusive)
+     * @param sliceDuration the duration of each slice in milliseconds
+     * @param mapper result set mapper
+     * @param session Cassandra session
+     */
+    public TimeSlicedPagedResult(PreparedStatement preparedStatement, Bucket bucket, List<Integer> scheduleIds,
+        long startTime, long endTime, long sliceDuration, ResultSetMapper<T> mapper, StorageSession session) {
+        if (sliceDuration <= 0) {
+            throw new IllegalArgumentException("sliceDuration must be > 0");
+        }
+        this.preparedStatement = preparedStatement;
+        this.bucket = (bucket != null) ? bucket.toString() : null;
+        this.scheduleIds = new LinkedList<Integer>(scheduleIds);
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.sliceDuration = sliceDuration;
+        this.mapper = mapper;
+        this.session = session;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final List<Integer> ids = new LinkedList<Integer>(scheduleIds);
+            private Integer scheduleId = null;
+            private long sliceStart = endTime;
+            private ResultSet resultSet = null;
+
+            public boolean hasNext() {
+                try {
+                    while (resultSet == null || resultSet.isExhausted()) {
+                        if (sliceStart >= endTime) {
+                            if (ids.isEmpty()) {
+                                return false;
+                            }
+                            scheduleId = ids.remove(0);
+                            sliceStart = startTime;
+                        }
+                        long sliceEnd = Math.min(endTime, sliceStart + sliceDuration);
+                        resultSet = session.execute(bind(scheduleId, sliceStart, sliceEnd));
+                        sliceStart = sliceEnd;
+                    }
+                } catch (NoHostAvailableException e) {
+                    throw new CQLException(e);
+                }
+                return true;
+            }
+
+            public T next() {
+                return mapper.mapOne(resultSet);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private BoundStatement bind(Integer scheduleId, long sliceStart, long sliceEnd) {
+        if (bucket == null) {
+            return preparedStatement.bind(scheduleId, new Date(sliceStart), new Date(sliceEnd));
+        }
+        return preparedStatement.bind(scheduleId, bucket, new Date(sliceStart), new Date(sliceEnd));
+    }
+}
@@ -212,6 +212,66 @@ public class MetricsDAOTest extends CassandraIntegrationTest {
         assertEquals(actualMetrics, expectedMetrics, "Failed to find raw metrics for multiple schedules");
     }
 
+    @Test(enabled = ENABLED)
+    public void findRawMetricsPagedForMultipleSchedules() throws Exception {
+        DateTime currentTime = hour0().plusHours(4).plusMinutes(44);
+        DateTime currentHour = currentTime.hourOfDay().roundFloorCopy();
+        DateTime threeMinutesAgo = currentTime.minusMinutes(3);
+        DateTime twoMinutesAgo = currentTime.minusMinutes(2);
+        DateTime oneMinuteAgo = currentTime.minusMinutes(1);
+
+        int scheduleId1 = 1;
+        int scheduleId2 = 2;
+
+        Set<MeasurementDataNumeric> data = new HashSet<MeasurementDataNumeric>();
+        data.add(new MeasurementDataNumeric(threeMinutesAgo.getMillis(), scheduleId1, 1.1));
+        data.add(new MeasurementDataNumeric(threeMinutesAgo.getMillis(), scheduleId2, 1.2));
+        data.add(new MeasurementDataNumeric(twoMinutesAgo.getMillis(), scheduleId1, 2.1));
+        data.add(new MeasurementDataNumeric(oneMinuteAgo.getMillis(), scheduleId1, 3.1));
+        data.add(new MeasurementDataNumeric(oneMinuteAgo.getMillis(), scheduleId2, 3.2));
+
+        WaitForWrite waitForWrite = new WaitForWrite(data.size());
+
+        for (MeasurementDataNumeric raw : data) {
+            StorageResultSetFuture resultSetFuture = dao.insertRawData(raw);
+            Futures.addCallback(resultSetFuture, waitForWrite);
+        }
+        waitForWrite.await("Failed to insert raw data");
+
+        // one minute slices, most of which are empty
+        List<RawNumericMetric> actualMetrics = Lists.newArrayList(dao.findRawMetricsPaged(
+            asList(scheduleId1, scheduleId2), currentHour.getMillis(), currentHour.plusHours(1).getMillis(), 60000L));
+        List<RawNumericMetric> expectedMetrics = asList(
+            new RawNumericMetric(scheduleId1, threeMinutesAgo.getMillis(), 1.1),
+            new RawNumericMetric(scheduleId1, twoMinutesAgo.getMillis(), 2.1),
+            new RawNumericMetric(scheduleId1, oneMinuteAgo.getMillis(), 3.1),
+            new RawNumericMetric(scheduleId2, threeMinutesAgo.getMillis(), 1.2),
+            new RawNumericMetric(scheduleId2, oneMinuteAgo.getMillis(), 3.2)
+        );
+        assertEquals(actualMetrics, expectedMetrics, "Failed to find paged raw metrics for multiple schedules");
+    }
+
+    @Test(enabled = ENABLED)
+    public void findAggregateMetricsPaged() {
+        int scheduleId = 100;
+        AggregateNumericMetric metric1 = new AggregateNumericMetric(scheduleId, Bucket.SIX_HOUR, 3.0, 3.0, 3.0,
+            hour(0).getMillis());
+        AggregateNumericMetric metric2 = new AggregateNumericMetric(scheduleId, Bucket.SIX_HOUR, 4.0, 4.0, 4.0,
+            hour(6).getMillis());
+        AggregateNumericMetric metric3 = new AggregateNumericMetric(scheduleId, Bucket.SIX_HOUR, 5.0, 5.0, 5.0,
+            hour(12).getMillis());
+
+        dao.insert6HourData(metric1).get();
+        dao.insert6HourData(metric2).get();
+        dao.insert6HourData(metric3).get();
+
+        List<AggregateNumericMetric> expected = asList(metric2, metric3);
+        List<AggregateNumericMetric> actual = Lists.newArrayList(dao.findAggregateMetricsPaged(asList(scheduleId),
+            Bucket.SIX_HOUR, hour(6).getMillis(), hour(18).getMillis(), hour(6).getMillis() - hour(0).getMillis()));
+
+        assertEquals(actual, expected, "Failed to find paged 6 hour metrics");
+    }
+
     @Test(enabled = ENABLED)
     public void insertAndFind1HourMetrics() {
         int scheduleId = 100;
@@ -0,0 +1,451 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Hours;
+
+import org.rhq.cassandra.CassandraClusterManager;
+import org.rhq.cassandra.DeploymentOptions;
+import org.rhq.cassandra.DeploymentOptionsFactory;
+import org.rhq.cassandra.schema.SchemaManager;
+import org.rhq.cassandra.util.ClusterBuilder;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.metrics.simulator.plan.BenchmarkPlan;
+import org.rhq.server.metrics.MetricsConfiguration;
+import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.StorageSession;
+import org.rhq.server.metrics.domain.IndexBucket;
+
+/**
+ * Runs one of the standard storage benchmark workloads and writes the results to a JSON file with
+ * {@link BenchmarkReporter}. Unlike the simulations, benchmarks always run against simulated time, between the fixed
+ * start and end times of the plan, and draw the raw values and the queries from random generators seeded from the
+ * plan. The same plan therefore stores and reads exactly the same data on every run, which makes results comparable
+ * across server releases and storage tuning changes.
+ */
+public class Benchmark {
+
+    private final Log log = LogFactory.getLog(Benchmark.class);
+
+    private static final int NUM_GRAPH_BUCKETS = 60;
+
+    private final Map<String, Timer> timers = new LinkedHashMap<String, Timer>();
+
+    private final List<BenchmarkReporter.Phase> phases = new ArrayList<BenchmarkReporter.Phase>();
+
+    private final AtomicLong rowsRead = new AtomicLong();
+
+    private final SimulatedDateTimeService dateTimeService = new SimulatedDateTimeService();
+
+    private final MetricsConfiguration configuration = new MetricsConfiguration();
+
+    private CassandraClusterManager ccm;
+
+    private Session session;
+
+    private MetricsDAO metricsDAO;
+
+    private MetricsServer metricsServer;
+
+    public void run(BenchmarkPlan plan) throws Exception {
+        long startTime = System.currentTimeMillis();
+        try {
+            if (plan.isDeployCluster()) {
+                deployCluster(plan);
+            }
+            initializeMetricsServer(plan);
+
+            switch (plan.getWorkload()) {
+            case INGEST:
+                ingest(plan, false);
+                break;
+            case AGGREGATION_CATCH_UP:
+                ingest(plan, false);
+                aggregate("aggregation");
+                break;
+            case DASHBOARD_READS:
+                ingest(plan, true);
+                read(plan, new DashboardQueries(plan));
+                break;
+            default: // GROUP_QUERIES
+                ingest(plan, true);
+                read(plan, new GroupQueries(plan));
+            }
+
+            BenchmarkReporter reporter = new BenchmarkReporter(plan, startTime, System.currentTimeMillis() - startTime,
+                phases, timers);
+            File resultsFile = new File(plan.getResultsFile());
+            reporter.write(resultsFile);
+            log.info("Benchmark " + plan.getName() + " has completed. The results were written to " +
+                resultsFile.getAbsolutePath());
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void deployCluster(BenchmarkPlan plan) {
+        DeploymentOptions deploymentOptions = new DeploymentOptionsFactory().newDeploymentOptions();
+        deploymentOptions.setClusterDir(plan.getClusterDir());
+        deploymentOptions.setNumNodes(1);
+        deploymentOptions.setUsername("rhqadmin");
+        deploymentOptions.setPassword("rhqadmin");
+        deploymentOptions.setStartRpc(true);
+        deploymentOptions.setCqlPort(plan.getCqlPort());
+        deploymentOptions.setHeapSize(plan.getHeapSize());
+        deploymentOptions.setHeapNewSize(plan.getHeapNewSize());
+
+        log.info("Deploying single node storage cluster to " + plan.getClusterDir());
+        ccm = new CassandraClusterManager(deploymentOptions);
+        ccm.createCluster();
+        ccm.startCluster(true);
+
+        plan.setNodes(ccm.getNodes());
+        plan.setCqlPort(ccm.getCqlPort());
+    }
+
+    private void initializeMetricsServer(BenchmarkPlan plan) {
+        SchemaManager schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc",
+            plan.getNodes(), plan.getCqlPort());
+        try {
+            log.info("Creating schema");
+            schemaManager.install();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to start benchmark. An error occurred during schema creation.", e);
+        } finally {
+            schemaManager.shutdown();
+        }
+
+        Cluster cluster = new ClusterBuilder().addContactPoints(plan.getNodes()).withPort(plan.getCqlPort())
+            .withCredentials("rhqadmin", "rhqadmin").build();
+        session = cluster.connect("rhq");
+
+        dateTimeService.setConfiguration(configuration);
+        metricsDAO = new MetricsDAO(new StorageSession(session), configuration);
+
+        metricsServer = new MetricsServer();
+        metricsServer.setDAO(metricsDAO);
+        metricsServer.setConfiguration(configuration);
+        metricsServer.setDateTimeService(dateTimeService);
+        metricsServer.init();
+    }
+
+    /**
+     * Stores raw data for every schedule from {@link BenchmarkPlan#getStartTime()} to
+     * {@link BenchmarkPlan#getEndTime()}. The inserts are done with the same statements the server uses for incoming
+     * measurement reports, a batch at a time, and each batch is timed until all of its writes are acknowledged.
+     */
+    private void ingest(BenchmarkPlan plan, boolean aggregateHourly) throws Exception {
+        Timer insertTimer = timer("insert");
+        Random random = new Random(plan.getSeed());
+
+        DateTime end = new DateTime(plan.getEndTime());
+        DateTime time = new DateTime(plan.getStartTime());
+        int lastHour = time.getHourOfDay();
+
+        long ingestTime = 0;
+        long numInserts = 0;
+
+        log.info("Storing " + plan.getHours() + " hours of raw data for " + plan.getNumSchedules() + " schedules");
+
+        for (; time.isBefore(end); time = time.plusSeconds(plan.getCollectionInterval())) {
+            dateTimeService.setNow(time);
+
+            if (aggregateHourly && time.getHourOfDay() != lastHour) {
+                lastHour = time.getHourOfDay();
+                aggregate("hourlyAggregation");
+            }
+
+            long collectionTimeSlice = dateTimeService.getTimeSlice(time, configuration.getRawTimeSliceDuration())
+                .getMillis();
+
+            for (int scheduleId = 0; scheduleId < plan.getNumSchedules(); scheduleId += plan.getBatchSize()) {
+                int batchEnd = Math.min(scheduleId + plan.getBatchSize(), plan.getNumSchedules());
+                List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(
+                    (batchEnd - scheduleId) * 2);
+
+                Timer.Context context = insertTimer.time();
+                for (int i = scheduleId; i < batchEnd; ++i) {
+                    futures.add(metricsDAO.insertRawData(new MeasurementDataNumeric(time.getMillis(), i, random
+                        .nextDouble())));
+                    futures.add(metricsDAO.updateIndex(IndexBucket.RAW, collectionTimeSlice, i));
+                }
+                ListenableFuture<List<ResultSet>> insertsFuture = Futures.allAsList(futures);
+                insertsFuture.get();
+                ingestTime += context.stop();
+                numInserts += batchEnd - scheduleId;
+            }
+        }
+        dateTimeService.setNow(end);
+
+        phases.add(new BenchmarkReporter.Phase("ingest", ingestTime, numInserts));
+
+        if (aggregateHourly) {
+            aggregate("hourlyAggregation");
+        }
+    }
+
+    private void aggregate(String timerName) {
+        Timer.Context context = timer(timerName).time();
+        metricsServer.calculateAggregates();
+        long aggregationTime = context.stop();
+
+        if (!"hourlyAggregation".equals(timerName)) {
+            phases.add(new BenchmarkReporter.Phase(timerName, aggregationTime, 1));
+        }
+    }
+
+    /**
+     * Executes the read queries from {@link BenchmarkPlan#getNumReaders()} threads. The warm up queries are not
+     * timed. Each reader has its own random generator, seeded from the plan, so every reader makes the same
+     * sequence of queries on every run.
+     */
+    private void read(BenchmarkPlan plan, final QueryMix queries) throws Exception {
+        Random seeds = new Random(plan.getSeed() + 1);
+
+        log.info("Running " + plan.getWarmupQueries() + " warm up queries");
+        Random warmupRandom = new Random(seeds.nextLong());
+        for (int i = 0; i < plan.getWarmupQueries(); ++i) {
+            queries.execute(false, warmupRandom);
+        }
+
+        rowsRead.set(0);
+
+        log.info("Running " + plan.getNumQueries() + " queries from " + plan.getNumReaders() + " threads");
+        ExecutorService readers = Executors.newFixedThreadPool(plan.getNumReaders(), new SimulatorThreadFactory());
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(plan.getNumReaders());
+            for (int i = 0; i < plan.getNumReaders(); ++i) {
+                final int numQueries = plan.getNumQueries() / plan.getNumReaders()
+                    + (i < plan.getNumQueries() % plan.getNumReaders() ? 1 : 0);
+                final Random random = new Random(seeds.nextLong());
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < numQueries; ++j) {
+                            queries.execute(true, random);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Future<Void> future : readers.invokeAll(tasks)) {
+                future.get();
+            }
+            phases.add(new BenchmarkReporter.Phase("reads", System.nanoTime() - start, plan.getNumQueries(),
+                rowsRead.get()));
+            log.info("The queries read " + rowsRead.get() + " rows");
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            // Uniform sampling over the whole run rather than the default exponentially decaying reservoir,
+            // which favors the most recent measurements.
+            timer = new Timer(new UniformReservoir());
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    private void shutdown() {
+        if (metricsServer != null) {
+            metricsServer.shutdown();
+        }
+        if (session != null) {
+            session.getCluster().shutdown();
+        }
+        if (ccm != null) {
+            log.info("Shutting down storage cluster");
+            ccm.shutdownCluster();
+        }
+    }
+
+    private abstract class QueryMix {
+
+        protected final BenchmarkPlan plan;
+
+        protected final Timer[] queryTimers;
+
+        private final int[] weights;
+
+        private final int totalWeight;
+
+        /**
+         * @param plan The benchmark plan
+         * @param names The query names, also used as timer names
+         * @param weights The relative frequency of each query
+         */
+        QueryMix(BenchmarkPlan plan, String[] names, int[] weights) {
+            this.plan = plan;
+            this.weights = weights;
+            this.queryTimers = new Timer[names.length];
+
+            int total = 0;
+            for (int i = 0; i < names.length; ++i) {
+                queryTimers[i] = timer(names[i]);
+                total += weights[i];
+            }
+            this.totalWeight = total;
+        }
+
+        void execute(boolean timed, Random random) {
+            int value = random.nextInt(totalWeight);
+            int query = 0;
+            while (value >= weights[query]) {
+                value -= weights[query];
+                ++query;
+            }
+
+            long end = dateTimeService.nowInMillis();
+            if (timed) {
+                Timer.Context context = queryTimers[query].time();
+                try {
+                    execute(query, end, random);
+                } finally {
+                    context.stop();
+                }
+            } else {
+                execute(query, end, random);
+            }
+        }
+
+        protected long begin(long end, Duration duration) {
+            return end - duration.getMillis();
+        }
+
+        /**
+         * Reads all the rows of a query result, so the rows are actually fetched, and counts them.
+         */
+        protected void consume(Iterable<?> data) {
+            long rows = 0;
+            for (Iterator<?> iterator = data.iterator(); iterator.hasNext(); iterator.next()) {
+                ++rows;
+            }
+            rowsRead.addAndGet(rows);
+        }
+
+        protected abstract void execute(int query, long end, Random random);
+    }
+
+    /**
+     * The single resource queries behind the dashboard portlets and the resource monitoring graphs.
+     */
+    private class DashboardQueries extends QueryMix {
+
+        DashboardQueries(BenchmarkPlan plan) {
+            super(plan, new String[] { "latestValue", "resourceGraph8Hours", "resourceGraph24Hours",
+                "resourceGraph2Weeks", "resourceSummary24Hours" }, new int[] { 40, 25, 15, 10, 10 });
+        }
+
+        @Override
+        protected void execute(int query, long end, Random random) {
+            int scheduleId = random.nextInt(plan.getNumSchedules());
+            switch (query) {
+            case 0:
+                metricsServer.findLatestValueForResource(scheduleId);
+                break;
+            case 1:
+                consume(metricsServer.findDataForResource(scheduleId, begin(end, Hours.EIGHT.toStandardDuration()),
+                    end, NUM_GRAPH_BUCKETS));
+                break;
+            case 2:
+                consume(metricsServer.findDataForResource(scheduleId, begin(end, Hours.hours(24)
+                    .toStandardDuration()), end, NUM_GRAPH_BUCKETS));
+                break;
+            case 3:
+                consume(metricsServer.findDataForResource(scheduleId, begin(end, Hours.hours(24 * 14)
+                    .toStandardDuration()), end, NUM_GRAPH_BUCKETS));
+                break;
+            default:
+                metricsServer.getSummaryAggregate(scheduleId, begin(end, Hours.hours(24).toStandardDuration()), end);
+            }
+        }
+    }
+
+    /**
+     * The graph and summary queries of compatible group monitoring pages, for groups of
+     * {@link BenchmarkPlan#getGroupSize()} members.
+     */
+    private class GroupQueries extends QueryMix {
+
+        GroupQueries(BenchmarkPlan plan) {
+            super(plan, new String[] { "groupGraph8Hours", "groupGraph2Weeks", "groupSummary24Hours" }, new int[] {
+                50, 25, 25 });
+        }
+
+        @Override
+        protected void execute(int query, long end, Random random) {
+            int groupSize = Math.min(plan.getGroupSize(), plan.getNumSchedules());
+            int firstScheduleId = random.nextInt(plan.getNumSchedules() - groupSize + 1);
+            List<Integer> scheduleIds = new ArrayList<Integer>(groupSize);
+            for (int i = 0; i < groupSize; ++i) {
+                scheduleIds.add(firstScheduleId + i);
+            }
+            Collections.shuffle(scheduleIds, random);
+
+            switch (query) {
+            case 0:
+                consume(metricsServer.findDataForGroup(scheduleIds, begin(end, Hours.EIGHT.toStandardDuration()), end,
+                    NUM_GRAPH_BUCKETS));
+                break;
+            case 1:
+                consume(metricsServer.findDataForGroup(scheduleIds, begin(end, Hours.hours(24 * 14)
+                    .toStandardDuration()), end, NUM_GRAPH_BUCKETS));
+                break;
+            default:
+                metricsServer.getSummaryAggregate(scheduleIds, begin(end, Hours.hours(24).toStandardDuration()), end);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import org.rhq.metrics.simulator.plan.BenchmarkPlan;
+
+/**
+ * Writes the results of a {@link Benchmark} run as JSON. The results contain the plan, the environment, the
+ * throughput of each benchmark phase, and the latency distribution of every timed operation, so that the files of
+ * different runs can be compared by scripts.
+ */
+public class BenchmarkReporter {
+
+    /**
+     * Upper bounds, in milliseconds, of the latency histogram buckets. The last bucket is unbounded.
+     */
+    private static final long[] HISTOGRAM_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    /**
+     * A timed section of a benchmark, for example all the raw data inserts.
+     */
+    public static class Phase {
+
+        private final String name;
+
+        private final long durationNanos;
+
+        private final long operations;
+
+        private final long rows;
+
+        public Phase(String name, long durationNanos, long operations) {
+            this(name, durationNanos, operations, -1);
+        }
+
+        /**
+         * @param rows The number of rows the operations read, for phases that run queries
+         */
+        public Phase(String name, long durationNanos, long operations, long rows) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.operations = operations;
+            this.rows = rows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return The number of rows read, or -1 if the phase does not read any
+         */
+        public long getRows() {
+            return rows;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final BenchmarkPlan plan;
+
+    private final long startTime;
+
+    private final long duration;
+
+    private final List<Phase> phases;
+
+    private final Map<String, Timer> timers;
+
+    public BenchmarkReporter(BenchmarkPlan plan, long startTime, long duration, List<Phase> phases,
+        Map<String, Timer> timers) {
+        this.plan = plan;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.phases = phases;
+        this.timers = timers;
+    }
+
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(file, createResults());
+    }
+
+    ObjectNode createResults() {
+        ObjectNode results = mapper.createObjectNode();
+        results.put("benchmark", plan.getName());
+        results.put("workload", plan.getWorkload().getText());
+        results.put("startTime", new Date(startTime).toString());
+        results.put("durationMs", duration);
+        results.put("plan", createPlan());
+        results.put("environment", createEnvironment());
+
+        ArrayNode phasesNode = results.putArray("phases");
+        for (Phase phase : phases) {
+            ObjectNode phaseNode = phasesNode.addObject();
+            phaseNode.put("name", phase.getName());
+            phaseNode.put("durationMs", TimeUnit.NANOSECONDS.toMillis(phase.getDurationNanos()));
+            phaseNode.put("operations", phase.getOperations());
+            phaseNode.put("operationsPerSecond", phase.getDurationNanos() == 0 ? 0.0 : phase.getOperations()
+                / (phase.getDurationNanos() / (double) TimeUnit.SECONDS.toNanos(1)));
+            if (phase.getRows() >= 0) {
+                phaseNode.put("rows", phase.getRows());
+                phaseNode.put("rowsPerOperation", phase.getOperations() == 0 ? 0.0 : phase.getRows()
+                    / (double) phase.getOperations());
+            }
+        }
+
+        ObjectNode timersNode = results.putObject("latencies");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            timersNode.put(entry.getKey(), createLatencies(entry.getValue()));
+        }
+
+        return results;
+    }
+
+    private ObjectNode createPlan() {
+        ObjectNode planNode = mapper.createObjectNode();
+        planNode.put("numSchedules", plan.getNumSchedules());
+        planNode.put("batchSize", plan.getBatchSize());
+        planNode.put("collectionInterval", plan.getCollectionInterval());
+        planNode.put("hours", plan.getHours());
+        planNode.put("startTime", new DateTime(plan.getStartTime(), DateTimeZone.UTC).toString());
+        planNode.put("endTime", new DateTime(plan.getEndTime(), DateTimeZone.UTC).toString());
+        planNode.put("seed", plan.getSeed());
+        planNode.put("numQueries", plan.getNumQueries());
+        planNode.put("warmupQueries", plan.getWarmupQueries());
+        planNode.put("numReaders", plan.getNumReaders());
+        planNode.put("groupSize", plan.getGroupSize());
+        planNode.put("deployCluster", plan.isDeployCluster());
+        ArrayNode nodes = planNode.putArray("nodes");
+        for (String node : plan.getNodes()) {
+            nodes.add(node);
+        }
+        planNode.put("cqlPort", plan.getCqlPort());
+        return planNode;
+    }
+
+    private ObjectNode createEnvironment() {
+        ObjectNode environment = mapper.createObjectNode();
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        environment.put("maxHeapMB", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        return environment;
+    }
+
+    private ObjectNode createLatencies(Timer timer) {
+        Snapshot snapshot = timer.getSnapshot();
+
+        ObjectNode latencies = mapper.createObjectNode();
+        latencies.put("count", timer.getCount());
+        latencies.put("minMs", toMillis(snapshot.getMin()));
+        latencies.put("maxMs", toMillis(snapshot.getMax()));
+        latencies.put("meanMs", toMillis(snapshot.getMean()));
+        latencies.put("stdDevMs", toMillis(snapshot.getStdDev()));
+        latencies.put("p50Ms", toMillis(snapshot.getMedian()));
+        latencies.put("p75Ms", toMillis(snapshot.get75thPercentile()));
+        latencies.put("p95Ms", toMillis(snapshot.get95thPercentile()));
+        latencies.put("p99Ms", toMillis(snapshot.get99thPercentile()));
+        latencies.put("p999Ms", toMillis(snapshot.get999thPercentile()));
+
+        // The histogram is computed from the sampled values, so the bucket counts add up to the sample size
+        // rather than to the total count.
+        long[] counts = new long[HISTOGRAM_BOUNDS.length + 1];
+        for (long value : snapshot.getValues()) {
+            double millis = toMillis(value);
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && millis > HISTOGRAM_BOUNDS[bucket]) {
+                ++bucket;
+            }
+            ++counts[bucket];
+        }
+
+        latencies.put("samples", snapshot.size());
+        ArrayNode histogram = latencies.putArray("histogram");
+        for (int i = 0; i < counts.length; ++i) {
+            ObjectNode bucket = histogram.addObject();
+            if (i < HISTOGRAM_BOUNDS.length) {
+                bucket.put("upToMs", HISTOGRAM_BOUNDS[i]);
+            } else {
+                bucket.putNull("upToMs");
+            }
+            bucket.put("count", counts[i]);
+        }
+
+        return latencies;
+    }
+
+    private double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -37,6 +37,8 @@ import org.apache.commons.cli.PosixParser;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.rhq.metrics.simulator.plan.BenchmarkPlan;
+import org.rhq.metrics.simulator.plan.BenchmarkPlanner;
 import org.rhq.metrics.simulator.plan.SimulationPlan;
 import org.rhq.metrics.simulator.plan.SimulationPlanner;
 
@@ -57,6 +59,10 @@ public class SimulatorCLI {
 
         Option simulation = new Option("s", "simulation", true, "The simulation to run. Expected to be a JSON file.");
         options.addOption(simulation);
+
+        Option benchmark = new Option("b", "benchmark", true, "The benchmark to run. Expected to be a JSON file. " +
+            "The results are written to the JSON file named by the benchmark.");
+        options.addOption(benchmark);
     }
 
     public void exec(String[] args) {
@@ -72,6 +78,8 @@ public class SimulatorCLI {
                 printUsage();
             } else if (cmdLine.hasOption("s")) {
                 runSimulator(cmdLine.getOptionValue("s"));
+            } else if (cmdLine.hasOption("b")) {
+                runBenchmark(cmdLine.getOptionValue("b"));
             } else {
                 printUsage();
             }
@@ -115,6 +123,34 @@ public class SimulatorCLI {
         }
     }
 
+    public void runBenchmark(String file) {
+        File planFile = new File(file);
+        if (!planFile.exists()) {
+            throw new RuntimeException("Benchmark file [" + file + "] does not exist.");
+        }
+        if (planFile.isDirectory()) {
+            throw new RuntimeException("[" + file + "] is a directory. The --benchmark argument must refer to a " +
+                "file.");
+        }
+
+        BenchmarkPlanner planner = new BenchmarkPlanner();
+        BenchmarkPlan plan = null;
+        try {
+            plan = planner.create(planFile);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create benchmark: " + e.getMessage(), e);
+        }
+
+        Benchmark benchmark = new Benchmark();
+        try {
+            benchmark.run(plan);
+        } catch (Exception e) {
+            throw new RuntimeException("Benchmark " + plan.getName() + " failed: " + e.getMessage(), e);
+        }
+        // the storage client and metrics server thread pools are not daemon threads
+        System.exit(0);
+    }
+
     public static void main(String[] args) {
         SimulatorCLI cli = new SimulatorCLI();
         try {
@@ -0,0 +1,310 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator.plan;
+
+/**
+ * Describes a benchmark run: the workload, its size and the storage cluster it runs against. Benchmarks are
+ * created from JSON files by {@link BenchmarkPlanner}.
+ */
+public class BenchmarkPlan {
+
+    public static enum Workload {
+        /**
+         * Raw data inserts only, no aggregation and no reads.
+         */
+        INGEST("ingest"),
+
+        /**
+         * Inserts several hours of raw data without aggregating it, then times the aggregation run that catches
+         * up with all of it.
+         */
+        AGGREGATION_CATCH_UP("aggregation-catch-up"),
+
+        /**
+         * Mix of the single resource queries issued by the dashboard and the resource graphs.
+         */
+        DASHBOARD_READS("dashboard-reads"),
+
+        /**
+         * Graph and summary queries for compatible groups.
+         */
+        GROUP_QUERIES("group-queries");
+
+        private final String text;
+
+        Workload(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public static Workload fromText(String text) {
+            for (Workload workload : values()) {
+                if (workload.text.equals(text)) {
+                    return workload;
+                }
+            }
+            throw new IllegalArgumentException(text + " is not a valid benchmark workload");
+        }
+    }
+
+    private String name;
+
+    private Workload workload;
+
+    private int numSchedules;
+
+    private int batchSize;
+
+    private int collectionInterval;
+
+    private int hours;
+
+    private long startTime;
+
+    private long endTime;
+
+    private long seed;
+
+    private int numQueries;
+
+    private int warmupQueries;
+
+    private int numReaders;
+
+    private int groupSize;
+
+    private boolean deployCluster;
+
+    private String clusterDir;
+
+    private String[] nodes;
+
+    private int cqlPort;
+
+    private String heapSize;
+
+    private String heapNewSize;
+
+    private String resultsFile;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public void setWorkload(Workload workload) {
+        this.workload = workload;
+    }
+
+    /**
+     * @return The number of measurement schedules that report data
+     */
+    public int getNumSchedules() {
+        return numSchedules;
+    }
+
+    public void setNumSchedules(int numSchedules) {
+        this.numSchedules = numSchedules;
+    }
+
+    /**
+     * @return The number of raw measurements stored per insert request
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return The simulated collection interval of every schedule, in seconds
+     */
+    public int getCollectionInterval() {
+        return collectionInterval;
+    }
+
+    public void setCollectionInterval(int collectionInterval) {
+        this.collectionInterval = collectionInterval;
+    }
+
+    /**
+     * @return The number of hours of simulated raw data to store
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    public void setHours(int hours) {
+        this.hours = hours;
+    }
+
+    /**
+     * @return The simulated time of the first raw data, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * @return The simulated time at which the raw data ends and the queries are made, in milliseconds since the
+     * epoch. Always the top of an hour.
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    /**
+     * @return The seed of the random generators choosing the raw values and the queries
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return The number of queries measured by the read workloads
+     */
+    public int getNumQueries() {
+        return numQueries;
+    }
+
+    public void setNumQueries(int numQueries) {
+        this.numQueries = numQueries;
+    }
+
+    /**
+     * @return The number of queries executed by the read workloads before measuring
+     */
+    public int getWarmupQueries() {
+        return warmupQueries;
+    }
+
+    public void setWarmupQueries(int warmupQueries) {
+        this.warmupQueries = warmupQueries;
+    }
+
+    /**
+     * @return The number of threads executing the read workloads
+     */
+    public int getNumReaders() {
+        return numReaders;
+    }
+
+    public void setNumReaders(int numReaders) {
+        this.numReaders = numReaders;
+    }
+
+    /**
+     * @return The number of schedules in each group queried by the group workload
+     */
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    public void setGroupSize(int groupSize) {
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * @return True if a single node cluster should be deployed with ccm for the benchmark, false to run against
+     * the existing cluster specified by {@link #getNodes()}
+     */
+    public boolean isDeployCluster() {
+        return deployCluster;
+    }
+
+    public void setDeployCluster(boolean deployCluster) {
+        this.deployCluster = deployCluster;
+    }
+
+    public String getClusterDir() {
+        return clusterDir;
+    }
+
+    public void setClusterDir(String clusterDir) {
+        this.clusterDir = clusterDir;
+    }
+
+    public String[] getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(String[] nodes) {
+        this.nodes = nodes;
+    }
+
+    public int getCqlPort() {
+        return cqlPort;
+    }
+
+    public void setCqlPort(int cqlPort) {
+        this.cqlPort = cqlPort;
+    }
+
+    public String getHeapSize() {
+        return heapSize;
+    }
+
+    public void setHeapSize(String heapSize) {
+        this.heapSize = heapSize;
+    }
+
+    public String getHeapNewSize() {
+        return heapNewSize;
+    }
+
+    public void setHeapNewSize(String heapNewSize) {
+        this.heapNewSize = heapNewSize;
+    }
+
+    /**
+     * @return The file the JSON results are written to
+     */
+    public String getResultsFile() {
+        return resultsFile;
+    }
+
+    public void setResultsFile(String resultsFile) {
+        this.resultsFile = resultsFile;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator.plan;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser.Feature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Creates a {@link BenchmarkPlan} from a JSON benchmark definition. Only the workload is required, every other
+ * property has a default suited to a single node development cluster. The simulated end time and the random seed
+ * default to fixed values as well, so that a definition always produces the same data and queries.
+ */
+public class BenchmarkPlanner {
+
+    private static final String DEFAULT_END_TIME = "2014-01-01T00:00:00Z";
+
+    public BenchmarkPlan create(File jsonFile) throws Exception {
+        return create(createMapper().readTree(jsonFile));
+    }
+
+    public BenchmarkPlan create(InputStream inputStream) throws Exception {
+        return create(createMapper().readTree(inputStream));
+    }
+
+    private ObjectMapper createMapper() {
+        JsonFactory jsonFactory = new JsonFactory();
+        jsonFactory.enable(Feature.ALLOW_COMMENTS);
+        return new ObjectMapper(jsonFactory);
+    }
+
+    private BenchmarkPlan create(JsonNode root) throws Exception {
+        if (root.get("workload") == null) {
+            throw new IllegalArgumentException("The benchmark workload is required");
+        }
+
+        BenchmarkPlan plan = new BenchmarkPlan();
+        plan.setWorkload(BenchmarkPlan.Workload.fromText(root.get("workload").asText()));
+        plan.setName(getString(root.get("name"), plan.getWorkload().getText()));
+
+        plan.setNumSchedules(getInt(root.get("numSchedules"), 10000));
+        plan.setBatchSize(getInt(root.get("batchSize"), 5000));
+        plan.setCollectionInterval(getInt(root.get("collectionInterval"), 60));
+        plan.setHours(getInt(root.get("hours"), 1));
+        plan.setNumQueries(getInt(root.get("numQueries"), 1000));
+        plan.setWarmupQueries(getInt(root.get("warmupQueries"), 100));
+        plan.setNumReaders(getInt(root.get("numReaders"), 4));
+        plan.setGroupSize(getInt(root.get("groupSize"), 20));
+
+        if (plan.getNumSchedules() <= 0 || plan.getBatchSize() <= 0 || plan.getCollectionInterval() <= 0
+            || plan.getHours() <= 0 || plan.getNumReaders() <= 0 || plan.getGroupSize() <= 0) {
+            throw new IllegalArgumentException("The benchmark sizes and intervals must be positive numbers");
+        }
+
+        DateTime endTime = ISODateTimeFormat.dateTimeParser().withOffsetParsed()
+            .parseDateTime(getString(root.get("endTime"), DEFAULT_END_TIME));
+        if (!endTime.equals(endTime.hourOfDay().roundFloorCopy())) {
+            throw new IllegalArgumentException("The benchmark end time must be the top of an hour");
+        }
+        plan.setEndTime(endTime.getMillis());
+        plan.setStartTime(endTime.minusHours(plan.getHours()).getMillis());
+        plan.setSeed(getLong(root.get("seed"), 0L));
+
+        JsonNode cluster = root.get("cluster");
+        if (cluster == null) {
+            cluster = createMapper().createObjectNode();
+        }
+        plan.setDeployCluster(getBoolean(cluster.get("deploy"), true));
+        plan.setClusterDir(getString(cluster.get("clusterDir"), new File("target", "benchmark-cluster")
+            .getAbsolutePath()));
+        plan.setHeapSize(getString(cluster.get("heapSize"), "512M"));
+        plan.setHeapNewSize(getString(cluster.get("heapNewSize"), "128M"));
+        plan.setCqlPort(getInt(cluster.get("cqlPort"), 9142));
+
+        String[] nodes;
+        if (cluster.get("nodes") == null || cluster.get("nodes").size() == 0) {
+            nodes = new String[] {InetAddress.getLocalHost().getHostAddress()};
+        } else {
+            nodes = new String[cluster.get("nodes").size()];
+            int i = 0;
+            for (JsonNode node : cluster.get("nodes")) {
+                nodes[i++] = node.asText();
+            }
+        }
+        plan.setNodes(nodes);
+
+        plan.setResultsFile(getString(root.get("resultsFile"), plan.getName() + "-results.json"));
+
+        return plan;
+    }
+
+    private String getString(JsonNode node, String defaultValue) {
+        if (node == null) {
+            return defaultValue;
+        }
+        return node.asText();
+    }
+
+    private int getInt(JsonNode node, int defaultValue) {
+        if (node == null) {
+            return defaultValue;
+        }
+        return node.intValue();
+    }
+
+    private long getLong(JsonNode node, long defaultValue) {
+        if (node == null) {
+            return defaultValue;
+        }
+        return node.longValue();
+    }
+
+    private boolean getBoolean(JsonNode node, boolean defaultValue) {
+        if (node == null) {
+            return defaultValue;
+        }
+        return node.booleanValue();
+    }
+
+}
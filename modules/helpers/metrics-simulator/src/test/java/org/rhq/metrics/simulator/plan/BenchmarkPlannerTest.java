@@ -0,0 +1,92 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.metrics.simulator.plan;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.Test;
+
+import org.rhq.metrics.simulator.plan.BenchmarkPlan.Workload;
+
+public class BenchmarkPlannerTest {
+
+    @Test
+    public void createPlanFromBundledBenchmark() throws Exception {
+        BenchmarkPlanner planner = new BenchmarkPlanner();
+        BenchmarkPlan plan = planner.create(getClass().getResourceAsStream("/benchmarks/group-queries.json"));
+
+        assertEquals(plan.getWorkload(), Workload.GROUP_QUERIES);
+        assertEquals(plan.getName(), "group-queries-10k");
+        assertEquals(plan.getNumSchedules(), 10000);
+        assertEquals(plan.getHours(), 24);
+        assertEquals(plan.getGroupSize(), 50);
+        assertEquals(plan.getNumReaders(), 4);
+        assertTrue(plan.isDeployCluster());
+        assertEquals(plan.getResultsFile(), "results/group-queries-10k.json");
+    }
+
+    @Test
+    public void createPlanWithDefaults() throws Exception {
+        BenchmarkPlanner planner = new BenchmarkPlanner();
+        BenchmarkPlan plan = planner.create(new ByteArrayInputStream(
+            "{\"workload\": \"aggregation-catch-up\", \"cluster\": {\"deploy\": false, \"nodes\": [\"127.0.0.2\"]}}"
+                .getBytes("UTF-8")));
+
+        assertEquals(plan.getWorkload(), Workload.AGGREGATION_CATCH_UP);
+        assertEquals(plan.getName(), "aggregation-catch-up");
+        assertEquals(plan.getResultsFile(), "aggregation-catch-up-results.json");
+        assertFalse(plan.isDeployCluster());
+        assertEquals(plan.getNodes(), new String[] { "127.0.0.2" });
+        assertEquals(plan.getCqlPort(), 9142);
+        assertEquals(plan.getEndTime(), new DateTime(2014, 1, 1, 0, 0, DateTimeZone.UTC).getMillis());
+        assertEquals(plan.getStartTime(), plan.getEndTime() - 3600 * 1000L);
+        assertEquals(plan.getSeed(), 0L);
+    }
+
+    @Test
+    public void createPlanWithFixedTimeAndSeed() throws Exception {
+        BenchmarkPlanner planner = new BenchmarkPlanner();
+        BenchmarkPlan plan = planner.create(new ByteArrayInputStream(
+            "{\"workload\": \"ingest\", \"hours\": 6, \"endTime\": \"2013-06-15T12:00:00Z\", \"seed\": 42}"
+                .getBytes("UTF-8")));
+
+        assertEquals(plan.getEndTime(), new DateTime(2013, 6, 15, 12, 0, DateTimeZone.UTC).getMillis());
+        assertEquals(plan.getStartTime(), new DateTime(2013, 6, 15, 6, 0, DateTimeZone.UTC).getMillis());
+        assertEquals(plan.getSeed(), 42L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectEndTimeWithinAnHour() throws Exception {
+        new BenchmarkPlanner().create(new ByteArrayInputStream(
+            "{\"workload\": \"ingest\", \"endTime\": \"2013-06-15T12:30:00Z\"}".getBytes("UTF-8")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectUnknownWorkload() throws Exception {
+        new BenchmarkPlanner().create(new ByteArrayInputStream("{\"workload\": \"write-only\"}".getBytes("UTF-8")));
+    }
+
+}
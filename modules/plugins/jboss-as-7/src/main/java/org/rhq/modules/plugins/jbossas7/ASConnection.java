@@ -429,8 +429,17 @@ public class ASConnection {
 
     private void updateStatistics(long requestStartTime, long requestEndTime) {
         PluginStats stats = PluginStats.getInstance();
+        long requestTime = NANOSECONDS.toMillis(requestEndTime - requestStartTime);
         stats.incrementRequestCount();
-        stats.addRequestTime(NANOSECONDS.toMillis(requestEndTime - requestStartTime));
+        stats.addRequestTime(requestTime);
+        stats.addConnectionRequest(getManagementEndpoint(), requestTime);
+    }
+
+    /**
+     * @return the "host:port" of the management interface this connection talks to
+     */
+    public String getManagementEndpoint() {
+        return asConnectionParams.getHost() + ":" + asConnectionParams.getPort();
     }
 
     /** Method parses Operation.getAddress().getPath() for invalid spaces in the path passed in.
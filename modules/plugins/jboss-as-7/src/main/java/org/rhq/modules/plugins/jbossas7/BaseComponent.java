@@ -23,10 +23,14 @@ import static org.rhq.modules.plugins.jbossas7.ASConnection.verbose;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
@@ -67,6 +71,7 @@ import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.pluginapi.util.StartScriptConfiguration;
 import org.rhq.modules.plugins.jbossas7.helper.Deployer;
 import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
 import org.rhq.modules.plugins.jbossas7.json.Operation;
 import org.rhq.modules.plugins.jbossas7.json.ReadAttribute;
 import org.rhq.modules.plugins.jbossas7.json.ReadChildrenNames;
@@ -95,6 +100,19 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
     static final String EXPRESSION_VALUE_KEY = "EXPRESSION_VALUE";
     static final int AVAIL_OP_TIMEOUT_SECONDS = 60;
 
+    /**
+     * Whether {@link #getValues(MeasurementReport, Set)} collects all metrics of a resource with a single management
+     * request instead of one request per metric.
+     */
+    static final boolean BATCHED_METRIC_COLLECTION = Boolean.valueOf(System.getProperty(
+        "as7.plugin.metric-collection.batched", "true"));
+    /**
+     * Number of distinct attributes from which on the batched collection reads the whole resource (including runtime
+     * attributes) instead of the individual attributes. Disabled if not positive.
+     */
+    static final int READ_RESOURCE_THRESHOLD = Integer.getInteger("as7.plugin.metric-collection.read-resource-threshold",
+        0);
+
     public static final String MANAGED_SERVER = "Managed Server";
 
     private static final String PROFILE_SUFFIX = " (Profile)";
@@ -117,6 +135,13 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
     private BaseServerComponent serverComponent;
     protected ASConnection testConnection;
 
+    /**
+     * Attributes whose last read failed. They are left out of the batched reads, so that a single missing or broken
+     * attribute does not fail the whole composite operation at every collection, and read one by one until they can
+     * be read again.
+     */
+    private final Set<String> failingAttributes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     /**
      * Start the resource connection
      * @see org.rhq.core.pluginapi.inventory.ResourceComponent#start(org.rhq.core.pluginapi.inventory.ResourceContext)
@@ -190,12 +215,195 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
      */
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
+        if (BATCHED_METRIC_COLLECTION) {
+            getMetricValues(report, metrics, null);
+            return;
+        }
 
         for (MeasurementScheduleRequest req : metrics) {
             getMetricValue(report, req, null);
         }
     }
 
+    /**
+     * Gets the values of all given requests with as few management requests as possible: the attributes are read
+     * with a single composite operation (or a single read-resource operation for resources with many requested
+     * metrics), and the expressions found in the results are resolved with another single composite operation.
+     * If the batched read fails as a whole, e.g. because one of the attributes does not exist on this server version
+     * (which rolls back the entire composite), the metrics are read one by one. The attributes which fail to be read
+     * on their own are then remembered, and read one by one instead of being batched with the others, until a read
+     * succeeds again.
+     *
+     * @param report
+     * @param requests
+     * @param explicitExpressions set of metric names that could be represented by expression instead of value on AS7 (can be null)
+     */
+    protected void getMetricValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests,
+        Set<String> explicitExpressions) {
+        List<MeasurementScheduleRequest> serverRequests = new ArrayList<MeasurementScheduleRequest>(requests.size());
+        List<MeasurementScheduleRequest> individualRequests = new ArrayList<MeasurementScheduleRequest>();
+        Set<String> attributeNames = new LinkedHashSet<String>();
+        for (MeasurementScheduleRequest req : requests) {
+            if (req.getName().startsWith(INTERNAL)) {
+                processPluginStats(req, report);
+            } else if (failingAttributes.contains(getAttributeName(req.getName()))) {
+                individualRequests.add(req);
+            } else {
+                serverRequests.add(req);
+                attributeNames.add(getAttributeName(req.getName()));
+            }
+        }
+
+        getMetricValuesIndividually(report, individualRequests, explicitExpressions);
+
+        if (serverRequests.size() < 2) {
+            getMetricValuesIndividually(report, serverRequests, explicitExpressions);
+            return;
+        }
+
+        Map<String, Object> values = readAttributes(attributeNames);
+        if (values == null) {
+            getMetricValuesIndividually(report, serverRequests, explicitExpressions);
+            return;
+        }
+
+        resolveExpressions(serverRequests, explicitExpressions, values);
+
+        for (MeasurementScheduleRequest req : serverRequests) {
+            String attributeName = getAttributeName(req.getName());
+            if (!values.containsKey(attributeName)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Getting metric [" + req.getName() + "] at [ " + address + "] failed: no such attribute");
+                }
+                continue;
+            }
+            addMetricValue(report, req, explicitExpressions, values.get(attributeName));
+        }
+    }
+
+    /**
+     * Reads the given requests one by one, and keeps {@link #failingAttributes} up to date with the outcome.
+     */
+    private void getMetricValuesIndividually(MeasurementReport report, List<MeasurementScheduleRequest> requests,
+        Set<String> explicitExpressions) {
+        for (MeasurementScheduleRequest req : requests) {
+            String attributeName = getAttributeName(req.getName());
+            if (getMetricValue(report, req, explicitExpressions) == ReadMetricResult.RequestFailed) {
+                if (failingAttributes.add(attributeName) && LOG.isDebugEnabled()) {
+                    LOG.debug("Attribute [" + attributeName + "] at [" + address + "] will not be batched anymore");
+                }
+            } else {
+                failingAttributes.remove(attributeName);
+            }
+        }
+    }
+
+    /**
+     * @return the attribute values by name, or null if the attributes could not be read
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readAttributes(Set<String> attributeNames) {
+        if (READ_RESOURCE_THRESHOLD > 0 && attributeNames.size() >= READ_RESOURCE_THRESHOLD) {
+            ReadResource readResource = new ReadResource(address);
+            readResource.attributesOnly(true);
+            readResource.includeRuntime(true);
+            Result res = getASConnection().execute(readResource);
+            if (res.isSuccess() && res.getResult() instanceof Map) {
+                return (Map<String, Object>) res.getResult();
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Reading resource [" + address + "] failed: " + res.getFailureDescription());
+            }
+            return null;
+        }
+
+        List<String> names = new ArrayList<String>(attributeNames);
+        CompositeOperation compositeOperation = new CompositeOperation();
+        for (String name : names) {
+            compositeOperation.addStep(new ReadAttribute(address, name));
+        }
+        Map<String, Object> stepResults = executeComposite(compositeOperation);
+        if (stepResults == null) {
+            return null;
+        }
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < names.size(); i++) {
+            Map<String, Object> stepResult = (Map<String, Object>) stepResults.get("step-" + (i + 1));
+            if (stepResult != null && Result.SUCCESS.equals(stepResult.get("outcome"))) {
+                values.put(names.get(i), stepResult.get("result"));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Replaces the expressions found in the values of the given requests with their resolved values, using a single
+     * composite operation. Values which cannot be resolved here are left untouched and resolved individually later on.
+     */
+    @SuppressWarnings("unchecked")
+    private void resolveExpressions(List<MeasurementScheduleRequest> requests, Set<String> explicitExpressions,
+        Map<String, Object> values) {
+        List<String> names = new ArrayList<String>();
+        CompositeOperation compositeOperation = new CompositeOperation();
+        for (MeasurementScheduleRequest req : requests) {
+            String reqName = req.getName();
+            boolean resolveExpression = reqName.startsWith(EXPRESSION)
+                || (explicitExpressions != null && explicitExpressions.contains(reqName));
+            String attributeName = getAttributeName(reqName);
+            if (!resolveExpression || stripExpressionPrefix(reqName).contains(":") || names.contains(attributeName)) {
+                // complex requests are resolved one by one, see addMetric2Report
+                continue;
+            }
+            Object val = values.get(attributeName);
+            if (val instanceof Map && ((Map) val).containsKey(EXPRESSION_VALUE_KEY)) {
+                names.add(attributeName);
+                compositeOperation.addStep(new ResolveExpression((String) ((Map) val).get(EXPRESSION_VALUE_KEY)));
+            }
+        }
+
+        if (names.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> stepResults = executeComposite(compositeOperation);
+        if (stepResults == null) {
+            return;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            Map<String, Object> stepResult = (Map<String, Object>) stepResults.get("step-" + (i + 1));
+            if (stepResult != null && Result.SUCCESS.equals(stepResult.get("outcome"))) {
+                values.put(names.get(i), stepResult.get("result"));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> executeComposite(CompositeOperation compositeOperation) {
+        Result res = getASConnection().execute(compositeOperation);
+        if (!res.isSuccess() || !(res.getResult() instanceof Map)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Batched read at [" + address + "] failed: " + res.getFailureDescription());
+            }
+            return null;
+        }
+        return (Map<String, Object>) res.getResult();
+    }
+
+    private static String stripExpressionPrefix(String reqName) {
+        return reqName.startsWith(EXPRESSION) ? reqName.substring(EXPRESSION_SIZE) : reqName;
+    }
+
+    /**
+     * @return the name of the attribute to read for the given request name
+     */
+    private static String getAttributeName(String reqName) {
+        reqName = stripExpressionPrefix(reqName);
+        if (reqName.contains(":")) {
+            return ComplexRequest.create(reqName).getProp();
+        }
+        return reqName;
+    }
+
     /**
      * gets metric value for given request
      * @param report
@@ -205,84 +413,85 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
      */
     protected ReadMetricResult getMetricValue(MeasurementReport report, MeasurementScheduleRequest req,
         Set<String> explicitExpressions) {
-        if (req.getName().startsWith(INTERNAL))
+        if (req.getName().startsWith(INTERNAL)) {
             processPluginStats(req, report);
-        else {
-            // Metrics from the application server
+            return ReadMetricResult.Success;
+        }
 
-            String reqName = req.getName();
-            boolean resolveExpression = false;
-            if (reqName.startsWith(EXPRESSION)) {
-                resolveExpression = true;
-                reqName = reqName.substring(EXPRESSION_SIZE);
-            } else if (explicitExpressions != null && explicitExpressions.contains(reqName)) {
-                resolveExpression = true;
+        // Metrics from the application server
+        Operation op = new ReadAttribute(address, getAttributeName(req.getName()));
+        Result res = getASConnection().execute(op);
+        if (!res.isSuccess()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Getting metric [" + req.getName() + "] at [ " + address + "] failed: "
+                    + res.getFailureDescription());
             }
+            return ReadMetricResult.RequestFailed;
+        }
 
-            ComplexRequest complexRequest = null;
-            Operation op;
-            if (reqName.contains(":")) {
-                complexRequest = ComplexRequest.create(reqName);
-                op = new ReadAttribute(address, complexRequest.getProp());
-            } else {
-                op = new ReadAttribute(address, reqName);
-            }
+        return addMetricValue(report, req, explicitExpressions, res.getResult());
+    }
 
-            Result res = getASConnection().execute(op);
-            if (!res.isSuccess()) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Getting metric [" + req.getName() + "] at [ " + address + "] failed: "
-                        + res.getFailureDescription());
-                }
-                return ReadMetricResult.RequestFailed;
-            }
+    private ReadMetricResult addMetricValue(MeasurementReport report, MeasurementScheduleRequest req,
+        Set<String> explicitExpressions, Object val) {
+        String reqName = req.getName();
+        boolean resolveExpression = false;
+        if (reqName.startsWith(EXPRESSION)) {
+            resolveExpression = true;
+            reqName = reqName.substring(EXPRESSION_SIZE);
+        } else if (explicitExpressions != null && explicitExpressions.contains(reqName)) {
+            resolveExpression = true;
+        }
 
-            Object val = res.getResult();
-            if (val == null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
-                return ReadMetricResult.Null;
+        ComplexRequest complexRequest = null;
+        if (reqName.contains(":")) {
+            complexRequest = ComplexRequest.create(reqName);
+        }
 
-            if (req.getDataType() == DataType.MEASUREMENT) {
-                if (val instanceof String && ((String) val).startsWith("JBAS018003")) // AS7 way of saying "no value available"
-                    return ReadMetricResult.Null;
-                try {
-                    if (complexRequest != null) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Number> myValues = (Map<String, Number>) val;
-                        for (String key : myValues.keySet()) {
-                            String sub = complexRequest.getSub();
-                            if (key.equals(sub)) {
-                                addMetric2Report(report, req, myValues.get(key), resolveExpression);
-                            }
+        if (val == null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
+            return ReadMetricResult.Null;
+
+        if (req.getDataType() == DataType.MEASUREMENT) {
+            if (val instanceof String && ((String) val).startsWith("JBAS018003")) // AS7 way of saying "no value available"
+                return ReadMetricResult.Null;
+            try {
+                if (complexRequest != null) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Number> myValues = (Map<String, Number>) val;
+                    for (String key : myValues.keySet()) {
+                        String sub = complexRequest.getSub();
+                        if (key.equals(sub)) {
+                            addMetric2Report(report, req, myValues.get(key), resolveExpression);
                         }
-                    } else {
-                        addMetric2Report(report, req, val, resolveExpression);
-                    }
-                } catch (NumberFormatException e) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Non numeric input for [" + req.getName() + "] : [" + val + "]");
                     }
-                    return ReadMetricResult.ResolveFailed;
+                } else {
+                    addMetric2Report(report, req, val, resolveExpression);
                 }
-            } else if (req.getDataType() == DataType.TRAIT) {
-
-                if (resolveExpression && val instanceof Map && ((Map) val).containsKey(EXPRESSION_VALUE_KEY)) {
-                    String expression = (String) ((Map) val).get(EXPRESSION_VALUE_KEY);
-                    ResolveExpression resolveExpressionOperation = new ResolveExpression(expression);
-                    Result result = getASConnection().execute(resolveExpressionOperation);
-                    if (!result.isSuccess()) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Skipping trait [" + req.getName()
-                                            + "] in measurement report. Could not resolve expression [" + expression
-                                            + "], failureDescription:" + result.getFailureDescription());
-                            return ReadMetricResult.ResolveFailed;
-                        }
-                    }
-                    val = result.getResult();
+            } catch (NumberFormatException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Non numeric input for [" + req.getName() + "] : [" + val + "]");
                 }
+                return ReadMetricResult.ResolveFailed;
+            }
+        } else if (req.getDataType() == DataType.TRAIT) {
 
-                MeasurementDataTrait data = new MeasurementDataTrait(req, getStringValue(val));
-                report.addData(data);
+            if (resolveExpression && val instanceof Map && ((Map) val).containsKey(EXPRESSION_VALUE_KEY)) {
+                String expression = (String) ((Map) val).get(EXPRESSION_VALUE_KEY);
+                ResolveExpression resolveExpressionOperation = new ResolveExpression(expression);
+                Result result = getASConnection().execute(resolveExpressionOperation);
+                if (!result.isSuccess()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Skipping trait [" + req.getName()
+                                        + "] in measurement report. Could not resolve expression [" + expression
+                                        + "], failureDescription:" + result.getFailureDescription());
+                        return ReadMetricResult.ResolveFailed;
+                    }
+                }
+                val = result.getResult();
             }
+
+            MeasurementDataTrait data = new MeasurementDataTrait(req, getStringValue(val));
+            report.addData(data);
         }
         return ReadMetricResult.Success;
 
@@ -339,6 +548,8 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
             val = (double) stats.getRequestTime();
         } else if (name.equals("maxTime")) {
             val = (double) stats.getMaxTime();
+        } else if (name.startsWith("connection")) {
+            val = getConnectionStatValue(stats, name);
         } else
             val = Double.NaN;
 
@@ -346,6 +557,22 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
         report.addData(data);
     }
 
+    private Double getConnectionStatValue(PluginStats stats, String name) {
+        ASConnection connection = getASConnection();
+        if (connection == null || connection.getAsConnectionParams() == null) {
+            return Double.NaN;
+        }
+        PluginStats.ConnectionStats connectionStats = stats.getConnectionStats(connection.getManagementEndpoint());
+        if (name.equals("connectionRequests")) {
+            return (double) connectionStats.getRequestCount();
+        } else if (name.equals("connectionRequestTime")) {
+            return (double) connectionStats.getRequestTime();
+        } else if (name.equals("connectionMaxTime")) {
+            return (double) connectionStats.getMaxTime();
+        }
+        return Double.NaN;
+    }
+
     @Override
     public ASConnection getASConnection() {
         return (this.testConnection != null) ? this.testConnection : getServerComponent().getASConnection();
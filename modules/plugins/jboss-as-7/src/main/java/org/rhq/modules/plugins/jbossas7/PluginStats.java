@@ -19,6 +19,8 @@
 
 package org.rhq.modules.plugins.jbossas7;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -33,6 +35,8 @@ public class PluginStats {
     AtomicLong requestTime = new AtomicLong();
     AtomicLong maxTime = new AtomicLong();
 
+    private final ConcurrentMap<String, ConnectionStats> connectionStats = new ConcurrentHashMap<String, ConnectionStats>();
+
     public static PluginStats getInstance() {
         return ourInstance;
     }
@@ -46,10 +50,44 @@ public class PluginStats {
 
     public void addRequestTime(long time) {
         requestTime.addAndGet(time);
+        updateMax(maxTime, time);
+    }
+
+    /**
+     * Records a request sent over the connection to the given management endpoint, in addition to the plugin wide
+     * counters.
+     *
+     * @param endpoint the management endpoint ("host:port") the request was sent to
+     * @param time the request time in milliseconds
+     */
+    public void addConnectionRequest(String endpoint, long time) {
+        ConnectionStats stats = getConnectionStats(endpoint);
+        stats.requestCount.incrementAndGet();
+        stats.requestTime.addAndGet(time);
+        updateMax(stats.maxTime, time);
+    }
+
+    /**
+     * @param endpoint the management endpoint ("host:port")
+     * @return the statistics of the requests sent to the given endpoint, never null
+     */
+    public ConnectionStats getConnectionStats(String endpoint) {
+        ConnectionStats stats = connectionStats.get(endpoint);
+        if (stats == null) {
+            stats = new ConnectionStats();
+            ConnectionStats previous = connectionStats.putIfAbsent(endpoint, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    private static void updateMax(AtomicLong max, long time) {
         long currentMax;
         do {
-            currentMax = maxTime.get();
-        } while (currentMax < time && !maxTime.compareAndSet(currentMax, time));
+            currentMax = max.get();
+        } while (currentMax < time && !max.compareAndSet(currentMax, time));
     }
 
     public long getRequestCount() {
@@ -63,4 +101,31 @@ public class PluginStats {
     public long getMaxTime() {
         return maxTime.getAndSet(0);
     }
+
+    /**
+     * Request statistics of a single management connection.
+     */
+    public static class ConnectionStats {
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong requestTime = new AtomicLong();
+        private final AtomicLong maxTime = new AtomicLong();
+
+        private ConnectionStats() {
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        public long getRequestTime() {
+            return requestTime.get();
+        }
+
+        /**
+         * @return the maximum request time since the last call of this method
+         */
+        public long getMaxTime() {
+            return maxTime.getAndSet(0);
+        }
+    }
 }
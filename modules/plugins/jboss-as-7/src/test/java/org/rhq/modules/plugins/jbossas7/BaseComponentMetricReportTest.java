@@ -19,7 +19,10 @@
 
 package org.rhq.modules.plugins.jbossas7;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.rhq.core.domain.measurement.DataType.MEASUREMENT;
 import static org.rhq.core.domain.measurement.DataType.TRAIT;
@@ -37,6 +40,8 @@ import java.util.Set;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -46,6 +51,8 @@ import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
+import org.rhq.modules.plugins.jbossas7.json.Operation;
 import org.rhq.modules.plugins.jbossas7.json.ReadAttribute;
 import org.rhq.modules.plugins.jbossas7.json.ResolveExpression;
 import org.rhq.modules.plugins.jbossas7.json.Result;
@@ -170,6 +177,110 @@ public class BaseComponentMetricReportTest {
         assertEquals(trait.getValue(), traitValue);
     }
 
+    @Test
+    public void testBatchedMetrics() throws Exception {
+        final Map<String, Object> attributeValues = new HashMap<String, Object>();
+        attributeValues.put("pipo", 13d);
+        attributeValues.put("molo", 14d);
+        attributeValues.put("ville", "marseille");
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo"));
+        requests.add(newTraitRequest("ville"));
+
+        when(asConnection.execute(compositeOperation())).thenAnswer(new Answer<Result>() {
+            @Override
+            public Result answer(InvocationOnMock invocation) throws Throwable {
+                CompositeOperation compositeOperation = (CompositeOperation) invocation.getArguments()[0];
+                Map<String, Object> stepResults = new HashMap<String, Object>();
+                for (int i = 0; i < compositeOperation.numberOfSteps(); i++) {
+                    Operation step = compositeOperation.step(i);
+                    Map<String, Object> stepResult = new HashMap<String, Object>();
+                    stepResult.put("outcome", SUCCESS);
+                    stepResult.put("result", attributeValues.get(step.getAdditionalProperties().get("name")));
+                    stepResults.put("step-" + (i + 1), stepResult);
+                }
+                return result(stepResults);
+            }
+        });
+        sampleComponent.getValues(report, requests);
+
+        verify(asConnection, times(1)).execute(any(Operation.class));
+        Set<MeasurementDataNumeric> numericMetrics = report.getNumericData();
+        assertEquals(numericMetrics.size(), 2);
+        for (MeasurementDataNumeric numericMetric : numericMetrics) {
+            assertEquals(numericMetric.getValue(), attributeValues.get(numericMetric.getName()));
+        }
+        Set<MeasurementDataTrait> traits = report.getTraitData();
+        assertEquals(traits.size(), 1);
+        assertEquals(traits.iterator().next().getValue(), "marseille");
+    }
+
+    @Test
+    public void testBatchedMetricsFallBackToSingleReads() throws Exception {
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo"));
+
+        Result failure = new Result();
+        failure.setFailureDescription("JBAS014792: Unknown attribute molo");
+        when(asConnection.execute(compositeOperation())).thenReturn(failure);
+        when(asConnection.execute(readAttribute(address, "pipo"))).thenReturn(result(13d));
+        when(asConnection.execute(readAttribute(address, "molo"))).thenReturn(failure);
+        sampleComponent.getValues(report, requests);
+
+        Set<MeasurementDataNumeric> numericMetrics = report.getNumericData();
+        assertEquals(numericMetrics.size(), 1);
+        MeasurementDataNumeric numericMetric = numericMetrics.iterator().next();
+        assertEquals(numericMetric.getName(), "pipo");
+        assertEquals(numericMetric.getValue(), 13d);
+    }
+
+    @Test
+    public void testFailingAttributeIsLeftOutOfLaterBatches() throws Exception {
+        final Map<String, Object> attributeValues = new HashMap<String, Object>();
+        attributeValues.put("pipo", 13d);
+        attributeValues.put("ville", "marseille");
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo"));
+        requests.add(newTraitRequest("ville"));
+
+        final Result failure = new Result();
+        failure.setFailureDescription("JBAS014792: Unknown attribute molo");
+        when(asConnection.execute(compositeOperation())).thenAnswer(new Answer<Result>() {
+            @Override
+            public Result answer(InvocationOnMock invocation) throws Throwable {
+                CompositeOperation compositeOperation = (CompositeOperation) invocation.getArguments()[0];
+                Map<String, Object> stepResults = new HashMap<String, Object>();
+                for (int i = 0; i < compositeOperation.numberOfSteps(); i++) {
+                    Object name = compositeOperation.step(i).getAdditionalProperties().get("name");
+                    if (!attributeValues.containsKey(name)) {
+                        return failure;
+                    }
+                    Map<String, Object> stepResult = new HashMap<String, Object>();
+                    stepResult.put("outcome", SUCCESS);
+                    stepResult.put("result", attributeValues.get(name));
+                    stepResults.put("step-" + (i + 1), stepResult);
+                }
+                return result(stepResults);
+            }
+        });
+        when(asConnection.execute(readAttribute(address, "pipo"))).thenReturn(result(13d));
+        when(asConnection.execute(readAttribute(address, "molo"))).thenReturn(failure);
+        when(asConnection.execute(readAttribute(address, "ville"))).thenReturn(result("marseille"));
+
+        sampleComponent.getValues(report, requests);
+        report = new MeasurementReport();
+        sampleComponent.getValues(report, requests);
+
+        // the first composite fails because of molo, the second one is sent without it and succeeds
+        verify(asConnection, times(2)).execute(compositeOperation());
+        verify(asConnection, times(1)).execute(readAttribute(address, "pipo"));
+        verify(asConnection, times(2)).execute(readAttribute(address, "molo"));
+        Set<MeasurementDataNumeric> numericMetrics = report.getNumericData();
+        assertEquals(numericMetrics.size(), 1);
+        assertEquals(numericMetrics.iterator().next().getValue(), 13d);
+        assertEquals(report.getTraitData().size(), 1);
+    }
+
     private class SampleComponent extends BaseComponent {
 
         private SampleComponent() {
@@ -206,6 +317,15 @@ public class BaseComponentMetricReportTest {
         return map;
     }
 
+    private static CompositeOperation compositeOperation() {
+        return argThat(new ArgumentMatcher<CompositeOperation>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof CompositeOperation;
+            }
+        });
+    }
+
     private static ResolveExpression resolveExpression(String expressionValue) {
         return argThat(new IsResolveExpression(expressionValue));
     }
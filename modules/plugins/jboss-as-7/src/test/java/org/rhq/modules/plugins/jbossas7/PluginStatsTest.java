@@ -72,6 +72,23 @@ public class PluginStatsTest {
         assertEquals(0, pluginStats.getMaxTime(), "max time stat should have been reset to 0");
     }
 
+    @Test
+    public void testConnectionStats() throws Exception {
+        pluginStats.addConnectionRequest("host1:9990", 10);
+        pluginStats.addConnectionRequest("host1:9990", 30);
+        pluginStats.addConnectionRequest("host2:9990", 20);
+
+        PluginStats.ConnectionStats host1Stats = pluginStats.getConnectionStats("host1:9990");
+        assertEquals(host1Stats.getRequestCount(), 2);
+        assertEquals(host1Stats.getRequestTime(), 40);
+        assertEquals(host1Stats.getMaxTime(), 30);
+        assertEquals(host1Stats.getMaxTime(), 0, "max time stat should have been reset to 0");
+
+        PluginStats.ConnectionStats host2Stats = pluginStats.getConnectionStats("host2:9990");
+        assertEquals(host2Stats.getRequestCount(), 1);
+        assertEquals(host2Stats.getRequestTime(), 20);
+    }
+
     private Callable<Long> newRequestTimeGenerator() {
         return new Callable<Long>() {
             @Override
@@ -0,0 +1,329 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+
+/**
+ * Coordinates the attribute reads of all the MBean components under one {@link JMXServerComponent}.
+ *
+ * <p>The plugin container collects the metrics of each resource separately, so without coordination every MBean
+ * resource makes its own JMX round trip. This collector remembers which attributes are read from which beans, and how
+ * often. The first collection in a collection window starts a round that reads every bean expected to be collected
+ * during the window, with one bulk <code>getAttributes</code> call per bean, in parallel over a small thread pool. The
+ * other collections in the window are then served the values read by the round. Reads the round did not cover fall
+ * back to reading the bean directly.</p>
+ *
+ * <p>A round, and the wait of the collections served by it, is cut short after a maximum wait that does not depend on
+ * the window, so a slow bean cannot hold the collections of its siblings until the plugin container times them
+ * out.</p>
+ */
+class BulkAttributeCollector {
+
+    private static final Log log = LogFactory.getLog(BulkAttributeCollector.class);
+
+    // a bean not requested for this many of its collection periods is assumed to be gone
+    private static final int MAX_MISSED_PERIODS = 3;
+
+    private final String serverName;
+    private final long window;
+    private final long maxWait;
+    private final ThreadPoolExecutor executor;
+
+    // keyed on bean name, guarded by this
+    private final Map<String, Demand> demands = new HashMap<String, Demand>();
+    // guarded by this
+    private Round currentRound;
+
+    private final AtomicLong fallbackReads = new AtomicLong();
+    private final AtomicLong failedReads = new AtomicLong();
+    private volatile long lastRoundTime;
+    private volatile int lastRoundBeans;
+
+    /**
+     * @param serverName identifies the server in thread names and log messages
+     * @param window the collection window in milliseconds
+     * @param maxWait how long a round may take, in milliseconds, before the beans it did not read yet are left to
+     *        direct reads
+     * @param threads the maximum number of beans read at the same time
+     */
+    BulkAttributeCollector(String serverName, long window, long maxWait, int threads) {
+        this.serverName = serverName;
+        this.window = window;
+        this.maxWait = maxWait;
+
+        // remote calls must run with the classloader the plugin container gave us, not whatever the pool inherits
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JMXBulkCollector-" + BulkAttributeCollector.this.serverName + "-"
+                        + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setContextClassLoader(contextClassLoader);
+                    return thread;
+                }
+            });
+        // idle servers should not keep threads around
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Same as {@link EmsBean#refreshAttributes(List)}, except that the values may come from a bulk read that happened
+     * earlier in the current collection window.
+     *
+     * @param bean the bean to read
+     * @param attributeNames the attributes to read
+     * @return the refreshed attributes
+     */
+    List<EmsAttribute> refreshAttributes(EmsBean bean, List<String> attributeNames) {
+        String beanName = bean.getBeanName().getCanonicalName();
+        long now = System.currentTimeMillis();
+
+        Round round;
+        List<Demand> roundDemands = null;
+        synchronized (this) {
+            addDemand(beanName, bean, attributeNames, now);
+            round = currentRound;
+            if (round == null || (now - round.start) >= window) {
+                round = new Round(now);
+                currentRound = round;
+                roundDemands = getDueDemands(beanName, now);
+            }
+        }
+
+        if (roundDemands != null) {
+            collect(round, roundDemands);
+        } else {
+            try {
+                long wait = Math.max(1L, (round.start + maxWait) - System.currentTimeMillis());
+                if (!round.done.await(wait, TimeUnit.MILLISECONDS)) {
+                    log.debug("Bulk collection round for [" + serverName + "] is taking too long - reading ["
+                        + beanName + "] directly");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        BeanRead read = round.reads.get(beanName);
+        if (read != null && read.attributeNames.containsAll(attributeNames)) {
+            List<EmsAttribute> attributes = new ArrayList<EmsAttribute>(attributeNames.size());
+            for (String attributeName : attributeNames) {
+                EmsAttribute attribute = read.attributes.get(attributeName);
+                if (attribute != null) {
+                    attributes.add(attribute);
+                }
+            }
+            return attributes;
+        }
+
+        fallbackReads.incrementAndGet();
+        return bean.refreshAttributes(attributeNames);
+    }
+
+    /**
+     * @return how long the last bulk collection round took, in milliseconds
+     */
+    long getLastRoundTime() {
+        return lastRoundTime;
+    }
+
+    /**
+     * @return how many beans the last bulk collection round read
+     */
+    int getLastRoundBeans() {
+        return lastRoundBeans;
+    }
+
+    /**
+     * @return how many reads could not be served by a bulk collection round so far
+     */
+    long getFallbackReads() {
+        return fallbackReads.get();
+    }
+
+    /**
+     * @return how many bean reads failed during bulk collection rounds so far
+     */
+    long getFailedReads() {
+        return failedReads.get();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        synchronized (this) {
+            demands.clear();
+            currentRound = null;
+        }
+    }
+
+    private void addDemand(String beanName, EmsBean bean, List<String> attributeNames, long now) {
+        Demand demand = demands.get(beanName);
+        if (demand == null) {
+            demand = new Demand();
+            demands.put(beanName, demand);
+        } else if ((now - demand.lastRequest) >= window) {
+            // repeated requests within a window belong to the same collection
+            demand.period = now - demand.lastRequest;
+        }
+        demand.bean = bean; // the component reloads its bean when the connection changes
+        demand.attributeNames.addAll(attributeNames);
+        demand.lastRequest = now;
+    }
+
+    private List<Demand> getDueDemands(String requestedBeanName, long now) {
+        List<Demand> due = new ArrayList<Demand>();
+        for (Iterator<Map.Entry<String, Demand>> i = demands.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, Demand> entry = i.next();
+            Demand demand = entry.getValue();
+            if (entry.getKey().equals(requestedBeanName)) {
+                due.add(demand.copy());
+            } else if (demand.period > 0L) {
+                if ((now - demand.lastRequest) > (MAX_MISSED_PERIODS * demand.period)) {
+                    i.remove(); // the resource is not collected anymore
+                } else if ((demand.lastRequest + demand.period) < (now + window)) {
+                    due.add(demand.copy());
+                }
+            } else if ((now - demand.lastRequest) > (MAX_MISSED_PERIODS * window)) {
+                i.remove(); // requested once but never again
+            }
+        }
+        return due;
+    }
+
+    private void collect(Round round, List<Demand> roundDemands) {
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(roundDemands.size());
+            for (final Demand demand : roundDemands) {
+                final Round thisRound = round;
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        read(thisRound, demand);
+                    }
+                }));
+            }
+
+            long deadline = round.start + maxWait;
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(1L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                } catch (ExecutionException e) {
+                    log.debug("Bulk read failed on [" + serverName + "]", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // e.g. the collector was shut down while we were submitting - readers will fall back to direct reads
+            log.debug("Bulk collection round failed on [" + serverName + "]: " + e);
+        } finally {
+            lastRoundTime = System.currentTimeMillis() - round.start;
+            lastRoundBeans = round.reads.size();
+            round.done.countDown();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Bulk collection round on [" + serverName + "] read [" + lastRoundBeans + "] of ["
+                + roundDemands.size() + "] beans in [" + lastRoundTime + "]ms");
+        }
+    }
+
+    private void read(Round round, Demand demand) {
+        try {
+            List<String> attributeNames = new ArrayList<String>(demand.attributeNames);
+            List<EmsAttribute> attributes = demand.bean.refreshAttributes(attributeNames);
+            Map<String, EmsAttribute> attributesByName = new HashMap<String, EmsAttribute>(attributes.size());
+            for (EmsAttribute attribute : attributes) {
+                attributesByName.put(attribute.getName(), attribute);
+            }
+            round.reads.put(demand.bean.getBeanName().getCanonicalName(), new BeanRead(demand.attributeNames,
+                attributesByName));
+        } catch (RuntimeException e) {
+            // the bean may have been unregistered - its component will find out when it reads it directly
+            failedReads.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Bulk read of [" + demand.bean.getBeanName() + "] failed on [" + serverName + "]: " + e);
+            }
+        }
+    }
+
+    private static class Demand {
+        EmsBean bean;
+        Set<String> attributeNames = new HashSet<String>();
+        long lastRequest;
+        long period;
+
+        Demand copy() {
+            Demand copy = new Demand();
+            copy.bean = bean;
+            copy.attributeNames.addAll(attributeNames);
+            return copy;
+        }
+    }
+
+    private static class Round {
+        final long start;
+        final CountDownLatch done = new CountDownLatch(1);
+        final Map<String, BeanRead> reads = new ConcurrentHashMap<String, BeanRead>();
+
+        Round(long start) {
+            this.start = start;
+        }
+    }
+
+    private static class BeanRead {
+        final Set<String> attributeNames;
+        final Map<String, EmsAttribute> attributes;
+
+        BeanRead(Set<String> attributeNames, Map<String, EmsAttribute> attributes) {
+            this.attributeNames = attributeNames;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /*
  * RHQ Management Platform
- * Copyright (C) 2005-2012 Red Hat, Inc.
+ * Copyright (C) 2005-2014 Red Hat, Inc.
  * All rights reserved.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -22,6 +22,8 @@
  */
 package org.rhq.plugins.jmx;
 
+import java.util.Set;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mc4j.ems.connection.EmsConnection;
@@ -29,9 +31,13 @@ import org.mc4j.ems.connection.support.ConnectionProvider;
 
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.plugins.jmx.util.ConnectionProviderFactory;
 
 /**
@@ -44,15 +50,32 @@ import org.rhq.plugins.jmx.util.ConnectionProviderFactory;
  * to different versions of the Hibernate MBean and due to the isolation of each connection, there
  * are no version incompatibility errors that will occur.
  *
+ * <p>The component also coordinates the metric collection of the MBean components below it, so that their attributes
+ * are read in bulk once per collection window rather than with one round trip per resource.</p>
+ *
  * @author Greg Hinkle
  * @author John Mazzitelli
  */
-public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXComponent<T> {
+public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXComponent<T>, MeasurementFacet {
 
     private static final Log log = LogFactory.getLog(JMXServerComponent.class);
 
+    public static final String BULK_COLLECTION_WINDOW_PROP = "bulkCollectionWindow";
+    public static final String BULK_COLLECTION_THREADS_PROP = "bulkCollectionThreads";
+
+    private static final long DEFAULT_BULK_COLLECTION_WINDOW = 10L; // seconds
+    // how long a bulk round may hold collections, well below the plugin container's facet method timeout
+    private static final long BULK_COLLECTION_MAX_WAIT = 5000L; // milliseconds
+    private static final int DEFAULT_BULK_COLLECTION_THREADS = 4;
+
+    private static final String METRIC_BULK_COLLECTION_ROUND_TIME = "BulkCollection.RoundTime";
+    private static final String METRIC_BULK_COLLECTION_ROUND_BEANS = "BulkCollection.RoundBeans";
+    private static final String METRIC_BULK_COLLECTION_FALLBACK_READS = "BulkCollection.FallbackReads";
+    private static final String METRIC_BULK_COLLECTION_FAILED_READS = "BulkCollection.FailedReads";
+
     private volatile EmsConnection connection;
     private volatile ConnectionProvider connectionProvider;
+    private volatile BulkAttributeCollector bulkAttributeCollector;
 
     /**
      * The context of a component that is started. Note, other classes should use #getResourceContext(), rather than
@@ -64,6 +87,8 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
         this.context = context;
         log.debug("Starting connection to " + context.getResourceType() + "[" + context.getResourceKey() + "]...");
 
+        startBulkAttributeCollector();
+
         // If connecting to the EMS fails, log a warning but still succeed in starting. getAvailability() will keep
         // trying to connect each time it is called.
         try {
@@ -106,6 +131,11 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
     }
 
     public void stop() {
+        if (bulkAttributeCollector != null) {
+            bulkAttributeCollector.shutdown();
+            bulkAttributeCollector = null;
+        }
+
         if (connection != null) {
             try {
                 connection.close();
@@ -133,6 +163,55 @@ public class JMXServerComponent<T extends ResourceComponent<?>> implements JMXCo
         return this.context;
     }
 
+    public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
+        BulkAttributeCollector collector = this.bulkAttributeCollector;
+        if (collector == null) {
+            return;
+        }
+
+        for (MeasurementScheduleRequest request : metrics) {
+            String name = request.getName();
+            if (METRIC_BULK_COLLECTION_ROUND_TIME.equals(name)) {
+                report.addData(new MeasurementDataNumeric(request, (double) collector.getLastRoundTime()));
+            } else if (METRIC_BULK_COLLECTION_ROUND_BEANS.equals(name)) {
+                report.addData(new MeasurementDataNumeric(request, (double) collector.getLastRoundBeans()));
+            } else if (METRIC_BULK_COLLECTION_FALLBACK_READS.equals(name)) {
+                report.addData(new MeasurementDataNumeric(request, (double) collector.getFallbackReads()));
+            } else if (METRIC_BULK_COLLECTION_FAILED_READS.equals(name)) {
+                report.addData(new MeasurementDataNumeric(request, (double) collector.getFailedReads()));
+            }
+        }
+    }
+
+    /**
+     * Returns the collector that reads the attributes of the MBeans below this server in bulk.
+     *
+     * @return the collector, or <code>null</code> if bulk collection is disabled
+     */
+    BulkAttributeCollector getBulkAttributeCollector() {
+        return this.bulkAttributeCollector;
+    }
+
+    private void startBulkAttributeCollector() {
+        Configuration pluginConfig = context.getPluginConfiguration();
+        long window = DEFAULT_BULK_COLLECTION_WINDOW;
+        int threads = DEFAULT_BULK_COLLECTION_THREADS;
+        try {
+            window = Long.parseLong(pluginConfig.getSimpleValue(BULK_COLLECTION_WINDOW_PROP,
+                String.valueOf(DEFAULT_BULK_COLLECTION_WINDOW)));
+            threads = Integer.parseInt(pluginConfig.getSimpleValue(BULK_COLLECTION_THREADS_PROP,
+                String.valueOf(DEFAULT_BULK_COLLECTION_THREADS)));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid bulk collection settings for " + context.getResourceType() + "["
+                + context.getResourceKey() + "], using defaults: " + e.getMessage());
+        }
+
+        if (window > 0L && threads > 0) {
+            this.bulkAttributeCollector = new BulkAttributeCollector(context.getResourceKey(), window * 1000L,
+                BULK_COLLECTION_MAX_WAIT, threads);
+        }
+    }
+
     /**
      * This method will attempt to reestablish the connection to the JMX server
      * if it detects that the current connection is no longer open or valid.
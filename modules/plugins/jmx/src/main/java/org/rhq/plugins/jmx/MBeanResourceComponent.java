@@ -1,6 +1,6 @@
 /*
  * RHQ Management Platform
- * Copyright (C) 2005-2011 Red Hat, Inc.
+ * Copyright (C) 2005-2014 Red Hat, Inc.
  * All rights reserved.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -379,7 +379,13 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
             }
         }
 
-        List<EmsAttribute> refreshedAttributes = thisBean.refreshAttributes(props);
+        List<EmsAttribute> refreshedAttributes;
+        BulkAttributeCollector collector = getBulkAttributeCollector();
+        if (collector != null) {
+            refreshedAttributes = collector.refreshAttributes(thisBean, props);
+        } else {
+            refreshedAttributes = thisBean.refreshAttributes(props);
+        }
 
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
@@ -580,6 +586,26 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
         return this.resourceContext.getParentResourceComponent().getEmsConnection();
     }
 
+    /**
+     * Returns the collector of the JMX server this resource lives in, which can serve the attribute values of its
+     * MBeans from bulk reads.
+     *
+     * @return the collector, or <code>null</code> if the ancestor JMX server does not collect in bulk
+     */
+    BulkAttributeCollector getBulkAttributeCollector() {
+        ResourceContext<T> context = this.resourceContext;
+        if (context == null) {
+            return null;
+        }
+        T parent = context.getParentResourceComponent();
+        if (parent instanceof JMXServerComponent) {
+            return ((JMXServerComponent<?>) parent).getBulkAttributeCollector();
+        } else if (parent instanceof MBeanResourceComponent) {
+            return ((MBeanResourceComponent<?>) parent).getBulkAttributeCollector();
+        }
+        return null;
+    }
+
     public OperationResult invokeOperation(String name, Configuration parameters) throws Exception {
         return invokeOperation(name, parameters, getEmsBean());
     }
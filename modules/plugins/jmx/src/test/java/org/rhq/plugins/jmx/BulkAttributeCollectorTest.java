@@ -0,0 +1,165 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.EmsBeanName;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class BulkAttributeCollectorTest {
+
+    private static final long WINDOW = 200L;
+
+    private BulkAttributeCollector collector;
+
+    @BeforeMethod
+    public void createCollector() {
+        collector = new BulkAttributeCollector("test", WINDOW, WINDOW, 2);
+    }
+
+    @AfterMethod
+    public void shutdownCollector() {
+        collector.shutdown();
+    }
+
+    public void testRoundReadsRequestedBean() {
+        EmsBean bean = mockBean("test:name=a", "A1", "A2");
+
+        List<EmsAttribute> attributes = collector.refreshAttributes(bean, Arrays.asList("A1", "A2"));
+        assertEquals(attributes.size(), 2);
+        assertEquals(attributes.get(0).getName(), "A1");
+        assertEquals(attributes.get(1).getName(), "A2");
+
+        // a second request in the same window is served by the round
+        attributes = collector.refreshAttributes(bean, Arrays.asList("A2"));
+        assertEquals(attributes.size(), 1);
+        assertEquals(attributes.get(0).getName(), "A2");
+
+        verify(bean, times(1)).refreshAttributes(anyListOf(String.class));
+        assertEquals(collector.getFallbackReads(), 0L);
+        assertEquals(collector.getLastRoundBeans(), 1);
+    }
+
+    public void testRoundPrefetchesDueBeans() throws Exception {
+        EmsBean a = mockBean("test:name=a", "A");
+        EmsBean b = mockBean("test:name=b", "B");
+        List<String> aNames = Arrays.asList("A");
+        List<String> bNames = Arrays.asList("B");
+
+        // we don't know yet how often b is collected, so b is read directly
+        collector.refreshAttributes(a, aNames);
+        collector.refreshAttributes(b, bNames);
+        Thread.sleep(WINDOW + 100L);
+        collector.refreshAttributes(a, aNames);
+        collector.refreshAttributes(b, bNames);
+        assertEquals(collector.getFallbackReads(), 2L);
+
+        // now b is known to be due with a, so the round started by a reads it too
+        Thread.sleep(WINDOW + 100L);
+        collector.refreshAttributes(a, aNames);
+        assertEquals(collector.getLastRoundBeans(), 2);
+        List<EmsAttribute> attributes = collector.refreshAttributes(b, bNames);
+        assertEquals(attributes.size(), 1);
+        assertEquals(attributes.get(0).getName(), "B");
+
+        assertEquals(collector.getFallbackReads(), 2L);
+        verify(a, times(3)).refreshAttributes(anyListOf(String.class));
+        verify(b, times(3)).refreshAttributes(anyListOf(String.class));
+    }
+
+    public void testFailedBulkReadFallsBack() {
+        EmsBean bean = mockBean("test:name=a", "A");
+        when(bean.refreshAttributes(anyListOf(String.class))).thenThrow(new RuntimeException("unregistered"))
+            .thenReturn(Arrays.asList(mockAttribute("A")));
+
+        List<EmsAttribute> attributes = collector.refreshAttributes(bean, Arrays.asList("A"));
+        assertEquals(attributes.size(), 1);
+        assertEquals(collector.getFailedReads(), 1L);
+        assertEquals(collector.getFallbackReads(), 1L);
+    }
+
+    public void testSlowRoundIsCutShort() {
+        // a long window must not let a slow bean hold its collection for the whole window
+        BulkAttributeCollector slowCollector = new BulkAttributeCollector("slow", 60000L, WINDOW, 2);
+        try {
+            EmsBean bean = mockBean("test:name=a", "A");
+            final List<EmsAttribute> values = Arrays.asList(mockAttribute("A"));
+            final AtomicInteger calls = new AtomicInteger();
+            when(bean.refreshAttributes(anyListOf(String.class))).thenAnswer(new Answer<List<EmsAttribute>>() {
+                public List<EmsAttribute> answer(InvocationOnMock invocation) throws Throwable {
+                    if (calls.getAndIncrement() == 0) {
+                        Thread.sleep(10000L); // the bulk read hangs until the round gives up on it
+                    }
+                    return values;
+                }
+            });
+
+            long start = System.currentTimeMillis();
+            List<EmsAttribute> attributes = slowCollector.refreshAttributes(bean, Arrays.asList("A"));
+            assertTrue((System.currentTimeMillis() - start) < 5000L);
+            assertEquals(attributes.size(), 1);
+            assertEquals(slowCollector.getFallbackReads(), 1L);
+        } finally {
+            slowCollector.shutdown();
+        }
+    }
+
+    private static EmsBean mockBean(String name, String... attributeNames) {
+        EmsBeanName beanName = mock(EmsBeanName.class);
+        when(beanName.getCanonicalName()).thenReturn(name);
+
+        EmsAttribute[] attributes = new EmsAttribute[attributeNames.length];
+        for (int i = 0; i < attributeNames.length; i++) {
+            attributes[i] = mockAttribute(attributeNames[i]);
+        }
+
+        EmsBean bean = mock(EmsBean.class);
+        when(bean.getBeanName()).thenReturn(beanName);
+        when(bean.refreshAttributes(anyListOf(String.class))).thenReturn(Arrays.asList(attributes));
+        return bean;
+    }
+
+    private static EmsAttribute mockAttribute(String name) {
+        EmsAttribute attribute = mock(EmsAttribute.class);
+        when(attribute.getName()).thenReturn(name);
+        return attribute;
+    }
+}
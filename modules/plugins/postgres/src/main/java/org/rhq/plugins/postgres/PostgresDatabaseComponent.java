@@ -65,6 +65,9 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     private static final String QUERY_DATABASE_SIZE = "SELECT *, pg_database_size(datname) AS size FROM pg_stat_database where datname = ?";
 
+    static final String TABLE_STATISTICS_CACHE_TIMEOUT_PROP = "tableStatisticsCacheTimeout";
+    static final long DEFAULT_TABLE_STATISTICS_CACHE_TIMEOUT = 30;
+
     private ResourceContext<PostgresServerComponent<?>> resourceContext;
     private String databaseName;
     private PostgresServerComponent<?> postgresServerComponent;
@@ -72,6 +75,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
     @Deprecated
     private Connection databaseConnection;
     private PostgresPooledConnectionProvider pooledConnectionProvider;
+    private PostgresTableStatisticsCache tableStatisticsCache;
 
     @Override
     public void start(ResourceContext<PostgresServerComponent<?>> context) throws Exception {
@@ -84,10 +88,30 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
             buildDatabaseConnectionIfNeeded();
             pooledConnectionProvider = new PostgresPooledConnectionProvider(createDatabaseSpecificConfig());
         }
+        long tableStatisticsCacheTimeout = getTableStatisticsCacheTimeout(resourceContext.getPluginConfiguration());
+        if (tableStatisticsCacheTimeout > 0) {
+            tableStatisticsCache = new PostgresTableStatisticsCache(this, tableStatisticsCacheTimeout * 1000L);
+        }
+    }
+
+    private static long getTableStatisticsCacheTimeout(Configuration pluginConfiguration) {
+        String value = pluginConfiguration.getSimpleValue(TABLE_STATISTICS_CACHE_TIMEOUT_PROP,
+            String.valueOf(DEFAULT_TABLE_STATISTICS_CACHE_TIMEOUT));
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid " + TABLE_STATISTICS_CACHE_TIMEOUT_PROP + " [" + value + "], using default of "
+                + DEFAULT_TABLE_STATISTICS_CACHE_TIMEOUT);
+            return DEFAULT_TABLE_STATISTICS_CACHE_TIMEOUT;
+        }
     }
 
     @Override
     public void stop() {
+        if (tableStatisticsCache != null) {
+            tableStatisticsCache.clear();
+            tableStatisticsCache = null;
+        }
         this.resourceContext = null;
         databaseName = null;
         postgresServerComponent = null;
@@ -173,6 +197,13 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
         return databaseName;
     }
 
+    /**
+     * @return the statistics snapshot shared by the tables of this database, or null if sharing is disabled
+     */
+    PostgresTableStatisticsCache getTableStatisticsCache() {
+        return tableStatisticsCache;
+    }
+
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
         Connection jdbcConnection = null;
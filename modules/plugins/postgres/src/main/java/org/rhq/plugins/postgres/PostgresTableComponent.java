@@ -192,7 +192,7 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
         String tableName = getTableNameFromContext(resourceContext);
         String schemaName = getSchemaNameFromContext(resourceContext);
-        Map<String, Double> results = getNumericQueryValues(this, TABLE_STATS_QUERY, schemaName, tableName);
+        Map<String, Double> results = null;
         for (MeasurementScheduleRequest request : requests) {
             String metricName = request.getName();
             Double value;
@@ -201,6 +201,9 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
             } else if (metricName.equals("rows_approx")) {
                 value = getSingleNumericQueryValue(this, TABLE_ROW_COUNT_APPROX_QUERY, schemaName, tableName);
             } else {
+                if (results == null) {
+                    results = getTableStatistics(schemaName, tableName);
+                }
                 value = results.get(metricName);
             }
             if (value != null) {
@@ -210,6 +213,15 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
         }
     }
 
+    private Map<String, Double> getTableStatistics(String schemaName, String tableName) {
+        PostgresTableStatisticsCache tableStatisticsCache = resourceContext.getParentResourceComponent()
+            .getTableStatisticsCache();
+        if (tableStatisticsCache != null) {
+            return tableStatisticsCache.getTableStatistics(schemaName, tableName);
+        }
+        return getNumericQueryValues(this, TABLE_STATS_QUERY, schemaName, tableName);
+    }
+
     private String getCountQuery(String schemaName, String tableName) {
         return "select count(1) from " + getFullyQualifiedTableName(schemaName, getQuoted(tableName));
     }
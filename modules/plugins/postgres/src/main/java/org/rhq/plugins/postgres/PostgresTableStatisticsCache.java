@@ -0,0 +1,144 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.plugins.postgres;
+
+import static org.rhq.plugins.database.DatabasePluginUtil.safeClose;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.plugins.database.ConnectionPoolingSupport;
+
+/**
+ * Holds a snapshot of the statistics (including relation sizes) of all user tables of a database. The snapshot is
+ * loaded with a single query and shared by all the table components of the database; it is reloaded once it is older
+ * than the configured staleness window.
+ */
+class PostgresTableStatisticsCache {
+
+    private static final Log LOG = LogFactory.getLog(PostgresTableStatisticsCache.class);
+
+    static final String ALL_TABLES_STATS_QUERY = "select ts.*,  "
+        + "pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, "
+        + "ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, "
+        + "ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit "
+        + "from pg_stat_user_tables ts left join pg_statio_user_tables ios on ts.relid = ios.relid";
+
+    private static final String SCHEMA_NAME_COLUMN = "schemaname";
+    private static final String TABLE_NAME_COLUMN = "relname";
+
+    private final ConnectionPoolingSupport databaseComponent;
+    private final long maxAgeMillis;
+
+    // schema name -> table name -> metric name -> value
+    private Map<String, Map<String, Map<String, Double>>> snapshot;
+    private long snapshotTime;
+
+    PostgresTableStatisticsCache(ConnectionPoolingSupport databaseComponent, long maxAgeMillis) {
+        this.databaseComponent = databaseComponent;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the numeric statistics of the table, or an empty map if the table is unknown or the statistics could not
+     * be loaded
+     */
+    synchronized Map<String, Double> getTableStatistics(String schemaName, String tableName) {
+        long now = System.currentTimeMillis();
+        if (snapshot == null || (now - snapshotTime) >= maxAgeMillis || now < snapshotTime) {
+            Map<String, Map<String, Map<String, Double>>> newSnapshot = loadSnapshot();
+            if (newSnapshot == null) {
+                // Do not keep serving data which is known to be stale
+                snapshot = null;
+                return Collections.emptyMap();
+            }
+            snapshot = newSnapshot;
+            snapshotTime = now;
+        }
+        Map<String, Map<String, Double>> schemaTables = snapshot.get(schemaName);
+        if (schemaTables == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> tableStatistics = schemaTables.get(tableName);
+        return tableStatistics == null ? Collections.<String, Double> emptyMap() : tableStatistics;
+    }
+
+    synchronized void clear() {
+        snapshot = null;
+    }
+
+    private Map<String, Map<String, Map<String, Double>>> loadSnapshot() {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = databaseComponent.getPooledConnectionProvider().getPooledConnection();
+            statement = connection.prepareStatement(ALL_TABLES_STATS_QUERY);
+            resultSet = statement.executeQuery();
+
+            ResultSetMetaData md = resultSet.getMetaData();
+            int columnCount = md.getColumnCount();
+            String[] names = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names[i] = md.getColumnName(i + 1);
+            }
+
+            Map<String, Map<String, Map<String, Double>>> result = new HashMap<String, Map<String, Map<String, Double>>>();
+            int tableCount = 0;
+            while (resultSet.next()) {
+                String schemaName = resultSet.getString(SCHEMA_NAME_COLUMN);
+                String tableName = resultSet.getString(TABLE_NAME_COLUMN);
+                Map<String, Double> row = new HashMap<String, Double>();
+                for (int i = 0; i < columnCount; i++) {
+                    try {
+                        row.put(names[i], resultSet.getDouble(i + 1));
+                    } catch (SQLException e) {
+                        // Ignore columns that can't be read as doubles
+                    }
+                }
+                Map<String, Map<String, Double>> schemaTables = result.get(schemaName);
+                if (schemaTables == null) {
+                    schemaTables = new HashMap<String, Map<String, Double>>();
+                    result.put(schemaName, schemaTables);
+                }
+                schemaTables.put(tableName, row);
+                tableCount++;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded statistics of " + tableCount + " tables");
+            }
+            return result;
+        } catch (SQLException e) {
+            LOG.debug("Unable to load table statistics", e);
+            return null;
+        } finally {
+            safeClose(connection, statement, resultSet);
+        }
+    }
+}